@@ -0,0 +1,134 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.integration.saca;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Compares suffix array construction time.
+ * </p>
+ *
+ * The payloads follow the typical descriptor values distributions:
+ * <ul>
+ *   <li>FLAGS - long runs of the same flags</li>
+ *   <li>RLEN  - the constant read length with rare trimmed reads</li>
+ *   <li>MMPOS - geometrically distributed distances between the mismatches</li>
+ *   <li>QV    - quality values correlated with the previous one</li>
+ * </ul>
+ *
+ * The <code>dc3</code> benchmark sorts the same payload as long symbols
+ * (shifted by one, as DC3 does not allow zero symbols).
+ *
+ * @author Dmitry Repchevsky
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SuffixArrayBenchmark {
+
+    @Param({"FLAGS", "RLEN", "MMPOS", "QV"})
+    public String payload;
+
+    @Param({"65536", "4194304"})
+    public int size;
+
+    private ByteBuffer bytes;
+    private LongBuffer longs;
+    private int[] sa;
+
+    private ForkJoinPool pool;
+    private SuffixArrayBuilder parallel;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(0);
+
+        final byte[] b = new byte[size];
+        for (int i = 0, prv = 30; i < size; i++) {
+            switch(payload) {
+                case "FLAGS": b[i] = (byte)(random.nextInt(1000) == 0 ? 1 + random.nextInt(3) : 0); break;
+                case "RLEN":  b[i] = (byte)(random.nextInt(32) == 0 ? 50 + random.nextInt(101) : 151); break;
+                case "MMPOS": b[i] = (byte)Math.min(255, -Math.log(1 - random.nextDouble()) * 50); break;
+                default:      b[i] = (byte)(prv = Math.max(2, Math.min(41, prv + random.nextInt(7) - 3)));
+            }
+        }
+
+        final long[] l = new long[size];
+        for (int i = 0; i < size; i++) {
+            l[i] = (b[i] & 0xFF) + 1;
+        }
+
+        bytes = ByteBuffer.wrap(b);
+        longs = LongBuffer.wrap(l);
+        sa = new int[size];
+
+        pool = new ForkJoinPool();
+        parallel = new SuffixArrayBuilder(pool, 0);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int[] sais() {
+        SAIS.suffix(bytes, sa);
+        return sa;
+    }
+
+    @Benchmark
+    public int[] dc3() {
+        DC3.dc3(longs, sa);
+        return sa;
+    }
+
+    @Benchmark
+    public int[] parallel() {
+        return parallel.suffix(bytes);
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+package es.gencom.mpegg.CABAC.binarization;
+
+import es.gencom.mpegg.CABAC.decoder.SyntaxElementDecoder;
+import es.gencom.mpegg.CABAC.mcoder.FastMDecoder;
+import es.gencom.mpegg.CABAC.mcoder.FastMEncoder;
+import es.gencom.mpegg.io.BitReader;
+import es.gencom.mpegg.io.MSBitBuffer;
+import es.gencom.mpegg.io.MSBitOutputArray;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>
+ * Compares binarizations decoding throughput in symbols per second.
+ * </p>
+ *
+ * The <code>perBin</code> benchmark decodes the symbols bin by bin through
+ * the generic {@link MCoderBitReader} while the <code>fused</code> one uses
+ * the decoder specialized paths of the {@link SyntaxElementDecoder.CABACBitReader}.
+ * Exponential golomb binarizations are bypass coded.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinarizationBenchmark {
+
+    public final static int SYMBOLS = 1 << 16;
+
+    @Param({"TU", "SUTU", "EG", "TEG"})
+    public String binarization_id;
+
+    private AbstractBinarization binarization;
+    private int numContexts;
+    private ByteBuffer stream;
+
+    @Setup
+    public void setup() throws IOException {
+        final Random random = new Random(0);
+        final double mean;
+        long max = Long.MAX_VALUE;
+
+        switch(binarization_id) {
+            case "TU":   binarization = new TruncatedUnaryBinarization(255);
+                         mean = 30;
+                         max = 255;
+                         break;
+            case "SUTU": binarization = new SplitUnitWiseTruncatedUnaryBinarization((byte)4, (byte)32);
+                         mean = 20;
+                         break;
+            case "EG":   binarization = new ExponentialGolombBinarization();
+                         mean = 100;
+                         break;
+            case "TEG":  binarization = new TruncatedExponentialGolombBinarization((byte)8);
+                         mean = 100;
+                         break;
+            default: throw new IllegalArgumentException(binarization_id);
+        }
+
+        // enough contexts for TU (cMax = 255) and SUTU (120)
+        numContexts = binarization.binarization_id == BINARIZATION_ID.EG ||
+                      binarization.binarization_id == BINARIZATION_ID.TEG ? 0 : 256;
+
+        final MSBitOutputArray out = new MSBitOutputArray();
+        final FastMEncoder encoder = new FastMEncoder(out, getContextTable(), true);
+        final MCoderBitWriter writer = new MCoderBitWriter() {
+            @Override
+            public void bypass(final short bit) throws IOException {
+                encoder.bypass(bit);
+            }
+
+            @Override
+            public void writeBit(final int ctxIdx, final short bit) throws IOException {
+                encoder.encode(ctxIdx, bit);
+            }
+        };
+
+        for (int i = 0; i < SYMBOLS; i++) {
+            final long symVal = Math.min(max, (long)(-Math.log(1 - random.nextDouble()) * mean));
+            writer.ctxIdx = 0;
+            binarization.encode(writer, symVal);
+        }
+        encoder.terminate((short)1);
+        stream = out.toByteBuffer();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public void perBin(final Blackhole bh) throws IOException {
+        final MCoderBitReader reader = new PerBinBitReader(
+                new MSBitBuffer(stream.duplicate()), getContextTable());
+        for (int i = 0; i < SYMBOLS; i++) {
+            reader.ctxIdx = 0;
+            bh.consume(binarization.decode(reader));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public void fused(final Blackhole bh) throws IOException {
+        final MCoderBitReader reader = new SyntaxElementDecoder.CABACBitReader(
+                new MSBitBuffer(stream.duplicate()), getContextTable(), true);
+        for (int i = 0; i < SYMBOLS; i++) {
+            reader.ctxIdx = 0;
+            bh.consume(binarization.decode(reader));
+        }
+    }
+
+    private short[][] getContextTable() {
+        if (numContexts == 0) {
+            return null;
+        }
+        final short[][] ctxTable = new short[2][numContexts];
+        Arrays.fill(ctxTable[1], (short)1);
+        return ctxTable;
+    }
+
+    /**
+     * Generic reader which decodes bins one by one.
+     */
+    private static class PerBinBitReader extends MCoderBitReader {
+
+        private final FastMDecoder decoder;
+
+        private PerBinBitReader(final BitReader reader,
+                                final short[][] ctxTable) throws IOException {
+            this.decoder = new FastMDecoder(reader, ctxTable, true);
+        }
+
+        @Override
+        public long readBits(int ctxIdx, int nbits, final boolean bypass) throws IOException {
+            long val = 0;
+            while (nbits-- > 0) {
+                val = (val << 1) | (bypass ? decoder.bypass() : decoder.decode(ctxIdx++));
+            }
+            return val;
+        }
+    }
+}
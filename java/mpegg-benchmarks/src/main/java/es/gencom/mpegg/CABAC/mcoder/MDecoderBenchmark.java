@@ -0,0 +1,148 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.mpegg.CABAC.mcoder;
+
+import es.gencom.mpegg.io.MSBitBuffer;
+import es.gencom.mpegg.io.MSBitOutputArray;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>
+ * Compares M-Decoders throughput in bins per second.
+ * </p>
+ * 
+ * The stream mimics the binarized descriptors: every symbol has 
+ * <code>BINS_PER_SYMBOL</code> bins - a context coded prefix followed by 
+ * the bypass coded suffix of <code>suffix</code> bins.
+ * 
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MDecoderBenchmark {
+
+    public final static int SYMBOLS = 1 << 16;
+    public final static int BINS_PER_SYMBOL = 16;
+
+    @Param({"0", "4", "12"})
+    public int suffix;
+
+    private int prefix;
+    private ByteBuffer stream;
+
+    @Setup
+    public void setup() throws IOException {
+        prefix = BINS_PER_SYMBOL - suffix;
+
+        final Random random = new Random(0);
+        final MSBitOutputArray out = new MSBitOutputArray();
+        final MEncoder encoder = new MEncoder(out, getContextTable(), true);
+        
+        for (int i = 0; i < SYMBOLS; i++) {
+            for (int j = 0; j < prefix; j++) {
+                encoder.encode(j, (short)(random.nextInt(j + 2) == 0 ? 1 : 0));
+            }
+            for (int j = 0; j < suffix; j++) {
+                encoder.bypass((short)random.nextInt(2));
+            }
+        }
+        encoder.terminate((short)1);
+        out.flush();
+        stream = out.toByteBuffer();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS * BINS_PER_SYMBOL)
+    public void mdecoder(final Blackhole bh) throws IOException {
+        final MDecoder decoder = new MDecoder(
+                new MSBitBuffer(stream.duplicate()), getContextTable(), true);
+        for (int i = 0; i < SYMBOLS; i++) {
+            for (int j = 0; j < prefix; j++) {
+                bh.consume(decoder.decode(j));
+            }
+            for (int j = 0; j < suffix; j++) {
+                bh.consume(decoder.bypass());
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS * BINS_PER_SYMBOL)
+    public void fastMDecoder(final Blackhole bh) throws IOException {
+        final FastMDecoder decoder = new FastMDecoder(
+                new MSBitBuffer(stream.duplicate()), getContextTable(), true);
+        for (int i = 0; i < SYMBOLS; i++) {
+            for (int j = 0; j < prefix; j++) {
+                bh.consume(decoder.decode(j));
+            }
+            for (int j = 0; j < suffix; j++) {
+                bh.consume(decoder.bypass());
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS * BINS_PER_SYMBOL)
+    public void fastMDecoderBatchedBypass(final Blackhole bh) throws IOException {
+        final FastMDecoder decoder = new FastMDecoder(
+                new MSBitBuffer(stream.duplicate()), getContextTable(), true);
+        for (int i = 0; i < SYMBOLS; i++) {
+            for (int j = 0; j < prefix; j++) {
+                bh.consume(decoder.decode(j));
+            }
+            bh.consume(decoder.bypass(suffix));
+        }
+    }
+
+    private static short[][] getContextTable() {
+        final short[][] ctxTable = new short[2][BINS_PER_SYMBOL];
+        for (int i = 0; i < BINS_PER_SYMBOL; i++) {
+            ctxTable[0][i] = (short)(i * 4);
+        }
+        return ctxTable;
+    }
+}
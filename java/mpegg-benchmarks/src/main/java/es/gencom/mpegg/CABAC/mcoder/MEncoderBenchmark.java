@@ -0,0 +1,249 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+package es.gencom.mpegg.CABAC.mcoder;
+
+import es.gencom.mpegg.CABAC.binarization.AbstractBinarization;
+import es.gencom.mpegg.CABAC.binarization.ExponentialGolombBinarization;
+import es.gencom.mpegg.CABAC.binarization.MCoderBitWriter;
+import es.gencom.mpegg.CABAC.configuration.CodecConfiguration;
+import es.gencom.mpegg.CABAC.configuration.DefaultCodecConfigurations;
+import es.gencom.mpegg.coder.compression.ALPHABET_ID;
+import es.gencom.mpegg.coder.compression.DESCRIPTOR_ID;
+import es.gencom.mpegg.io.MSBitOutputArray;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * Compares M-Encoders throughput in symbols per second.
+ * </p>
+ *
+ * The bins are recorded from the default descriptor binarizations and context
+ * selection (no LUT transform) of the symbols following the typical descriptor
+ * values distributions:
+ * <ul>
+ *   <li>POS   - geometrically distributed distances between the reads</li>
+ *   <li>RLEN  - the constant read length with rare trimmed reads</li>
+ *   <li>EG    - bypass coded exponential golomb values</li>
+ * </ul>
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MEncoderBenchmark {
+
+    public final static int SYMBOLS = 1 << 16;
+
+    @Param({"POS", "RLEN", "EG"})
+    public String trace;
+
+    private short[][] ctxTable;
+    private TraceBitWriter bins;
+
+    @Setup
+    public void setup() throws IOException {
+        final Random random = new Random(0);
+
+        final CodecConfiguration configuration;
+        final AbstractBinarization binarization;
+        switch(trace) {
+            case "POS":  configuration = DefaultCodecConfigurations.getDefaultCodecConfiguration(
+                                DESCRIPTOR_ID.POS, 0, ALPHABET_ID.DNA, true);
+                         binarization = DefaultCodecConfigurations.getDefaultBinarization(
+                                DESCRIPTOR_ID.POS, 0, ALPHABET_ID.DNA, true);
+                         break;
+            case "RLEN": configuration = DefaultCodecConfigurations.getDefaultCodecConfiguration(
+                                DESCRIPTOR_ID.RLEN, 0, ALPHABET_ID.DNA, true);
+                         binarization = DefaultCodecConfigurations.getDefaultBinarization(
+                                DESCRIPTOR_ID.RLEN, 0, ALPHABET_ID.DNA, true);
+                         break;
+            default:     configuration = null;
+                         binarization = new ExponentialGolombBinarization();
+        }
+
+        ctxTable = configuration == null ? null : configuration.ctxTable;
+        bins = new TraceBitWriter(configuration == null);
+
+        for (int i = 0; i < SYMBOLS; i++) {
+            final long symVal;
+            switch(trace) {
+                case "POS":  symVal = (long)(-Math.log(1 - random.nextDouble()) * 20); break;
+                case "RLEN": symVal = random.nextInt(32) == 0 ? 50 + random.nextInt(101) : 151; break;
+                default:     symVal = (long)(-Math.log(1 - random.nextDouble()) * 100);
+            }
+            if (configuration == null) {
+                binarization.encode(bins, symVal);
+            } else {
+                encode_symbol(configuration, binarization, symVal);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public int mencoder() throws IOException {
+        final MSBitOutputArray out = new MSBitOutputArray();
+        final MEncoder encoder = new MEncoder(out, copyContextTable(), true);
+        for (int i = 0; i < bins.size; i++) {
+            int ctxIdx = bins.ctx[i];
+            for (int j = bins.nbits[i] - 1; j >= 0; j--) {
+                final short bit = (short)((bins.bits[i] >>> j) & 1);
+                if (ctxIdx < 0) {
+                    encoder.bypass(bit);
+                } else {
+                    encoder.encode(ctxIdx++, bit);
+                }
+            }
+        }
+        encoder.terminate((short)1);
+        return out.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public int fastMEncoder() throws IOException {
+        final MSBitOutputArray out = new MSBitOutputArray();
+        final FastMEncoder encoder = new FastMEncoder(out, copyContextTable(), true);
+        for (int i = 0; i < bins.size; i++) {
+            int ctxIdx = bins.ctx[i];
+            for (int j = bins.nbits[i] - 1; j >= 0; j--) {
+                final short bit = (short)((bins.bits[i] >>> j) & 1);
+                if (ctxIdx < 0) {
+                    encoder.bypass(bit);
+                } else {
+                    encoder.encode(ctxIdx++, bit);
+                }
+            }
+        }
+        encoder.terminate((short)1);
+        return out.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SYMBOLS)
+    public int fastMEncoderMultiBin() throws IOException {
+        final MSBitOutputArray out = new MSBitOutputArray();
+        final FastMEncoder encoder = new FastMEncoder(out, copyContextTable(), true);
+        for (int i = 0; i < bins.size; i++) {
+            if (bins.ctx[i] < 0) {
+                encoder.bypass(bins.bits[i], bins.nbits[i]);
+            } else {
+                encoder.encode(bins.ctx[i], bins.bits[i], bins.nbits[i]);
+            }
+        }
+        encoder.terminate((short)1);
+        return out.size();
+    }
+
+    /*
+     * Mimics SyntaxElementEncoder.encode_symbol() without LUT transform.
+     */
+    private void encode_symbol(final CodecConfiguration configuration,
+                               final AbstractBinarization binarization,
+                               final long symVal) throws IOException {
+
+        for (int subSymIdx = 0, symBits = 0; symBits < configuration.output_symbol_size; subSymIdx++) {
+            final int prvValsSubSymIdx = configuration.share_subsym_prv_flag ? 0 : subSymIdx;
+            final long mask = 0xFFFFFFFFFFFFFFFFL >>> (64 - configuration.coding_subsym_size);
+            final int subSymVal = (int)((symVal >> symBits) & mask);
+
+            symBits += configuration.coding_subsym_size;
+
+            bins.ctxIdx = configuration.context_selection(subSymIdx, prvValsSubSymIdx);
+            binarization.encode(bins, subSymVal);
+
+            if (configuration.coding_order > 0) {
+                configuration.updateStateValues(prvValsSubSymIdx, subSymVal);
+            }
+        }
+    }
+
+    private short[][] copyContextTable() {
+        return ctxTable == null ? null :
+                new short[][] {ctxTable[0].clone(), ctxTable[1].clone()};
+    }
+
+    /**
+     * Records the sequences of bins (context index is -1 for bypass bins).
+     */
+    private static class TraceBitWriter extends MCoderBitWriter {
+
+        private final boolean bypass;
+
+        private int size;
+        private int[] ctx = new int[SYMBOLS];
+        private long[] bits = new long[SYMBOLS];
+        private int[] nbits = new int[SYMBOLS];
+
+        private TraceBitWriter(final boolean bypass) {
+            this.bypass = bypass;
+        }
+
+        @Override
+        public void writeBits(final int ctxIdx, final long bits, final int nbits, final boolean bypass) {
+            if (nbits > 0) {
+                if (size == ctx.length) {
+                    ctx = Arrays.copyOf(ctx, size << 1);
+                    this.bits = Arrays.copyOf(this.bits, size << 1);
+                    this.nbits = Arrays.copyOf(this.nbits, size << 1);
+                }
+                ctx[size] = bypass || this.bypass ? -1 : ctxIdx;
+                this.bits[size] = bits;
+                this.nbits[size] = nbits;
+                size++;
+            }
+        }
+
+        @Override
+        public void bypass(final short bit) {
+            writeBits(ctxIdx, bit, 1, true);
+        }
+
+        @Override
+        public void writeBit(final int ctxIdx, final short bit) {
+            writeBits(ctxIdx, bit, 1, false);
+        }
+    }
+}
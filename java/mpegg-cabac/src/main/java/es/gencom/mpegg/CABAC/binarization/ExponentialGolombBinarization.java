@@ -108,10 +108,7 @@ public class ExponentialGolombBinarization extends AbstractBinarization {
      * @throws IOException 
      */
     static long decodeSymbolValue(MCoderBitReader reader) throws IOException {
-        int zeros = 0;
-        while (reader.readBits(1, false) == 0) {
-            zeros++;
-        }
+        final int zeros = reader.readZeros(reader.ctxIdx);
         return zeros == 0 ? 0 : (1 << zeros) + reader.readBits(zeros, true) - 1;
     }
 
@@ -61,4 +61,43 @@ public abstract class MCoderBitReader {
      * @throws IOException 
      */
     public abstract long readBits(int ctxIdx, int nbits, boolean bypass) throws IOException;
+
+    /**
+     * Reads the bins of one terminated by the bin of zero or by reaching
+     * <code>cMax</code> bins. Each bin uses the next context index.
+     * Implementations may override the method to decode all the bins at once.
+     *
+     * @param ctxIdx the context index of the first bin
+     * @param cMax   the maximum number of the bins of one
+     *
+     * @return the number of the bins of one
+     *
+     * @throws IOException
+     */
+    public int readUnary(final int ctxIdx, final int cMax) throws IOException {
+        int val = 0;
+        while (val < cMax && readBits(ctxIdx + val, 1, false) != 0) {
+            val++;
+        }
+        return val;
+    }
+
+    /**
+     * Reads the bins of zero terminated by the bin of one.
+     * All bins use the same context index.
+     * Implementations may override the method to decode all the bins at once.
+     *
+     * @param ctxIdx the context index of the bins
+     *
+     * @return the number of the bins of zero
+     *
+     * @throws IOException
+     */
+    public int readZeros(final int ctxIdx) throws IOException {
+        int val = 0;
+        while (readBits(ctxIdx, 1, false) == 0) {
+            val++;
+        }
+        return val;
+    }
 }
@@ -51,7 +51,19 @@ public abstract class MCoderBitWriter {
         writeBits(ctxIdx, bits, nbits, bypass);
     }
 
-    public final void writeBits(int ctxIdx, long bits, int nbits, boolean bypass) throws IOException {
+    /**
+     * Writes the sequence of bins. Context coded bins use incrementing context
+     * indexes. Implementations may override the method to encode all the bins
+     * at once.
+     *
+     * @param ctxIdx the context index of the first bin
+     * @param bits   bins to write where the first bin is the most significant one
+     * @param nbits  number of bins to write (up to 64)
+     * @param bypass whether the bins are bypass coded
+     *
+     * @throws IOException
+     */
+    public void writeBits(int ctxIdx, long bits, int nbits, boolean bypass) throws IOException {
         if (bypass) {
             while (nbits-- > 0) {
                 bypass((short) ((bits >> nbits) & 1));
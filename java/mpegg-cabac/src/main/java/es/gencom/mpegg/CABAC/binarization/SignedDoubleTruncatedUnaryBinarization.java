@@ -57,7 +57,9 @@ public class SignedDoubleTruncatedUnaryBinarization extends DoubleTruncatedUnary
     @Override
     public void encode(final MCoderBitWriter writer, final long sym_val) throws IOException {
         super.encode(writer, Math.abs(sym_val));
-        writer.writeBits(sym_val >>> 63, 1);
+        if (sym_val != 0) {
+            writer.writeBits(sym_val >>> 63, 1);
+        }
     }
     
     @Override
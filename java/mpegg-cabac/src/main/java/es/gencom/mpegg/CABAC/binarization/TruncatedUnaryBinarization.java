@@ -81,22 +81,21 @@ public class TruncatedUnaryBinarization extends AbstractBinarization {
 
     public static void encodeSymbolValue(final MCoderBitWriter writer, final int cMax, long sym_val) throws IOException {
         int ctxIdx = writer.ctxIdx;
-        for (int i = 0; i < sym_val; i++, ctxIdx++) {
-            writer.writeBit(ctxIdx, (short)1);
+
+        // write the ones by the runs of up to 32 bins
+        long ones = Math.max(sym_val, 0);
+        for (; ones > 32; ones -= 32, ctxIdx += 32) {
+            writer.writeBits(ctxIdx, 0xFFFFFFFFL, 32);
         }
         if (sym_val < cMax) {
-            writer.writeBit(ctxIdx, (short)0);
+            writer.writeBits(ctxIdx, ((1L << ones) - 1) << 1, (int)ones + 1);
+        } else {
+            writer.writeBits(ctxIdx, (1L << ones) - 1, (int)ones);
         }
     }
     
     public static long decodeSymbolValue(final MCoderBitReader reader, final int cMax) throws IOException {
-        int sym_val = 0;
-        
-        while (sym_val < cMax && reader.readBits(reader.ctxIdx + sym_val, 1) != 0) {
-            sym_val++;
-        }
-
-        return sym_val;
+        return reader.readUnary(reader.ctxIdx, cMax);
     }
     
     public static TruncatedUnaryBinarization read(final BitReader reader) throws IOException {
@@ -44,6 +44,7 @@ import es.gencom.mpegg.io.MPEGReader;
 import es.gencom.mpegg.io.MPEGWriter;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * <p>
@@ -75,6 +76,12 @@ public class CABAC_SubsequenceEncodingConfiguration {
     public final AbstractBinarization binarization;
     public final CABAC_ContextParameters context_parameters;
 
+    /*
+     * prototypes of the codec configurations for (alphabet, descriptor, subsequence)
+     */
+    private final ConcurrentHashMap<Integer, CodecConfiguration> configurations =
+            new ConcurrentHashMap<>();
+
     /**
      * <p>
      * Constructor for default tokentype subsequence configuration.
@@ -258,10 +265,34 @@ public class CABAC_SubsequenceEncodingConfiguration {
 
     }
     
+    /**
+     * Get the codec configuration for the subsequence.
+     *
+     * Configurations are created once for the parameter set and then copied,
+     * so every returned configuration has its own contexts.
+     *
+     * @param alphabet_id the alphabet (may be null for tokentype descriptors)
+     * @param descriptor_id
+     * @param descriptor_subsequence_id
+     *
+     * @return the new codec configuration
+     */
     public CodecConfiguration getSubsequenceCodecConfiguration(
             final ALPHABET_ID alphabet_id,
             final DESCRIPTOR_ID descriptor_id,
             final short descriptor_subsequence_id) {
+
+        final int key = ((alphabet_id == null ? 0xFF : alphabet_id.ID & 0xFF) << 24) |
+                        ((descriptor_id.ID & 0xFF) << 16) | (descriptor_subsequence_id & 0xFFFF);
+
+        return new CodecConfiguration(configurations.computeIfAbsent(key,
+                k -> createSubsequenceCodecConfiguration(alphabet_id, descriptor_id, descriptor_subsequence_id)));
+    }
+
+    private CodecConfiguration createSubsequenceCodecConfiguration(
+            final ALPHABET_ID alphabet_id,
+            final DESCRIPTOR_ID descriptor_id,
+            final short descriptor_subsequence_id) {
         
         int numAlphabetSymbols = 1 << symbol_encoding_params.coding_subsym_size;
         
@@ -124,6 +124,43 @@ public class CodecConfiguration {
         codingOrderCtxOffset[2] = numCtxSubsym * num_alphabet_symbols;
     }
     
+    /**
+     * Creates the configuration sharing all the immutable parameters with the
+     * prototype, but with its own contexts (copied from the prototype),
+     * previous values and (empty) LUTs, so that the prototype may be cached
+     * and used concurrently.
+     *
+     * @param prototype the configuration to copy
+     */
+    public CodecConfiguration(final CodecConfiguration prototype) {
+        coding_order = prototype.coding_order;
+        output_symbol_size = prototype.output_symbol_size;
+        coding_subsym_size = prototype.coding_subsym_size;
+        subsym_transform_id = prototype.subsym_transform_id;
+        num_alphabet_symbols = prototype.num_alphabet_symbols;
+        share_subsym_ctx_flag = prototype.share_subsym_ctx_flag;
+        share_subsym_lut_flag = prototype.share_subsym_lut_flag;
+        share_subsym_prv_flag = prototype.share_subsym_prv_flag;
+        numCtxLuts = prototype.numCtxLuts;
+        codingSizeCtxOffset = prototype.codingSizeCtxOffset;
+        numCtxSubsym = prototype.numCtxSubsym;
+        codingOrderCtxOffset = prototype.codingOrderCtxOffset;
+
+        ctxTable = prototype.ctxTable == null ? null :
+                new short[][] {prototype.ctxTable[0].clone(), prototype.ctxTable[1].clone()};
+
+        prvValues = new int[prototype.prvValues.length][2];
+
+        if (prototype.lutValues == null) {
+            lutValues = null;
+        } else {
+            lutValues = new int[prototype.lutValues.length][][][];
+            for (int i = 0; i < lutValues.length; i++) {
+                lutValues[i] = new int[prototype.lutValues[i].length][num_alphabet_symbols][];
+            }
+        }
+    }
+
     public void resetStateValues() {
         for (int i = 0; i < prvValues.length; i++) {
             for (int j = 0; j < prvValues[i].length; j++) {
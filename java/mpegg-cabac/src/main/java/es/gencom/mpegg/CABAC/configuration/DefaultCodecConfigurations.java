@@ -38,6 +38,7 @@ import static es.gencom.mpegg.coder.compression.ALPHABET_ID.IUPAC;
 import es.gencom.mpegg.coder.compression.COMPRESSION_METHOD_ID;
 import es.gencom.mpegg.coder.compression.QV_CODING_MODE;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class it to provide good enough CABAC configuration parameters for given
@@ -47,6 +48,20 @@ import java.util.Arrays;
  */
 
 public class DefaultCodecConfigurations {
+
+    /*
+     * Prototypes of the default configurations are created once and never
+     * modified: every caller gets its own copy with fresh contexts.
+     * Binarizations are immutable and shared.
+     */
+    private final static ConcurrentHashMap<COMPRESSION_METHOD_ID, CodecConfiguration> TOKENTYPE_CONFIGURATIONS =
+            new ConcurrentHashMap<>();
+    private final static ConcurrentHashMap<Integer, CodecConfiguration> QV_CONFIGURATIONS =
+            new ConcurrentHashMap<>();
+    private final static ConcurrentHashMap<Integer, CodecConfiguration> DESCRIPTOR_CONFIGURATIONS =
+            new ConcurrentHashMap<>();
+    private final static ConcurrentHashMap<Integer, AbstractBinarization> DESCRIPTOR_BINARIZATIONS =
+            new ConcurrentHashMap<>();
     
     /**
      * Create default binarization for Tokentype descriptors (MSAR or RNAME).
@@ -102,6 +117,18 @@ public class DefaultCodecConfigurations {
                 final int descriptor_subsequence_id,
                 final ALPHABET_ID alphabet_id,
                 final boolean primary_alignments_only) {
+
+        return DESCRIPTOR_BINARIZATIONS.computeIfAbsent(
+                key(descriptor_id, descriptor_subsequence_id, alphabet_id, primary_alignments_only),
+                k -> createDefaultBinarization(
+                        descriptor_id, descriptor_subsequence_id, alphabet_id, primary_alignments_only));
+    }
+
+    private static AbstractBinarization createDefaultBinarization(
+                final DESCRIPTOR_ID descriptor_id,
+                final int descriptor_subsequence_id,
+                final ALPHABET_ID alphabet_id,
+                final boolean primary_alignments_only) {
         
         switch(descriptor_id) {
             case POS:
@@ -178,7 +205,14 @@ public class DefaultCodecConfigurations {
      * @return default CABAC configuration for decoding Tokentype descriptors
      */
     public static CodecConfiguration getDefaultCodecConfiguration(
-                        COMPRESSION_METHOD_ID method_id) {
+                        final COMPRESSION_METHOD_ID method_id) {
+
+        return new CodecConfiguration(TOKENTYPE_CONFIGURATIONS.computeIfAbsent(
+                method_id, k -> createDefaultCodecConfiguration(method_id)));
+    }
+
+    private static CodecConfiguration createDefaultCodecConfiguration(
+                        final COMPRESSION_METHOD_ID method_id) {
 
         final byte coding_order;
         final byte output_symbol_size;
@@ -237,6 +271,15 @@ public class DefaultCodecConfigurations {
                         final QV_CODING_MODE qv_coding_mode,
                         final int descriptor_subsequence_id) {
 
+        return new CodecConfiguration(QV_CONFIGURATIONS.computeIfAbsent(
+                (qv_coding_mode.ID << 16) | (descriptor_subsequence_id & 0xFFFF),
+                k -> createDefaultCodecConfiguration(qv_coding_mode, descriptor_subsequence_id)));
+    }
+
+    private static CodecConfiguration createDefaultCodecConfiguration(
+                        final QV_CODING_MODE qv_coding_mode,
+                        final int descriptor_subsequence_id) {
+
         final byte coding_order;
         final byte output_symbol_size;
         final byte coding_subsym_size;
@@ -298,6 +341,18 @@ public class DefaultCodecConfigurations {
      * @return default CABAC configuration for decoding Tokentype descriptors
      */
     public static CodecConfiguration getDefaultCodecConfiguration(
+                        final DESCRIPTOR_ID descriptor_id,
+                        final int descriptor_subsequence_id,
+                        final ALPHABET_ID alphabet_id,
+                        final boolean primary_alignments_only) {
+
+        return new CodecConfiguration(DESCRIPTOR_CONFIGURATIONS.computeIfAbsent(
+                key(descriptor_id, descriptor_subsequence_id, alphabet_id, primary_alignments_only),
+                k -> createDefaultCodecConfiguration(
+                        descriptor_id, descriptor_subsequence_id, alphabet_id, primary_alignments_only)));
+    }
+
+    private static CodecConfiguration createDefaultCodecConfiguration(
                         final DESCRIPTOR_ID descriptor_id, 
                         final int descriptor_subsequence_id,
                         final ALPHABET_ID alphabet_id,
@@ -554,8 +609,8 @@ public class DefaultCodecConfigurations {
                          numAlphabetSymbols = 256;
                          
                          //SUTU: ( = Math.ceil(outputSymSize / splitUnitSize) * (1 << splitUnitSize) - 1 )
-                         numCtxSubsym = 15; // ( 8 / 4) * ( 1 << 4) - 1
-                         numCtxLuts = 31;
+                         numCtxSubsym = 31; // ( 8 / 4) * ( 1 << 4) - 1
+                         numCtxLuts = 0;    // coding_order == 0
                          break;
             case RFTP:   coding_order = 0;
                          output_symbol_size = 32;
@@ -669,4 +724,12 @@ public class DefaultCodecConfigurations {
                         ctxTable,
                         null);
     }
+
+    private static int key(final DESCRIPTOR_ID descriptor_id,
+                           final int descriptor_subsequence_id,
+                           final ALPHABET_ID alphabet_id,
+                           final boolean primary_alignments_only) {
+        return (descriptor_id.ID << 24) | (alphabet_id.ID << 17) |
+               (primary_alignments_only ? 1 << 16 : 0) | (descriptor_subsequence_id & 0xFFFF);
+    }
 }
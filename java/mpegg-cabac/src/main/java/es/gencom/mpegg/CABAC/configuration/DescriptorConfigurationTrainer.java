@@ -0,0 +1,481 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+package es.gencom.mpegg.CABAC.configuration;
+
+import es.gencom.mpegg.CABAC.binarization.AbstractBinarization;
+import es.gencom.mpegg.CABAC.binarization.BinaryCodingBinarization;
+import es.gencom.mpegg.CABAC.binarization.TruncatedUnaryBinarization;
+import es.gencom.mpegg.CABAC.configuration.subseq.CABAC_DescriptorSubsequenceConfiguration;
+import es.gencom.mpegg.CABAC.configuration.subseq.CABAC_SubsequenceCoderConfiguration;
+import es.gencom.mpegg.CABAC.configuration.subseq.SubsequenceCoderConfiguration;
+import es.gencom.mpegg.CABAC.decoder.CABAC_DescriptorDecoder;
+import es.gencom.mpegg.CABAC.encoder.CABAC_DescriptorEncoder;
+import es.gencom.mpegg.coder.compression.ALPHABET_ID;
+import es.gencom.mpegg.coder.compression.DESCRIPTOR_ID;
+import es.gencom.mpegg.io.MSBitOutputArray;
+import es.gencom.mpegg.io.Payload;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * <p>
+ * Selects CABAC descriptor subsequences configurations for the sampled symbols.
+ * </p>
+ *
+ * Every subsequence sample is trial encoded with the configuration it already
+ * has and a number of alternatives derived from it:
+ *
+ * <ul>
+ *   <li>other coding orders (for the alphabets of up to 8 bits)</li>
+ *   <li>binary coding of 8 bits subsymbols (for the wide unsigned symbols)</li>
+ * </ul>
+ *
+ * The alternatives keep the alphabet of the original configuration, so they
+ * can encode any symbol the original one does. Every trial is decoded back and
+ * the candidates which fail to reproduce the sample are discarded.
+ * Transformed subsequences (equality coding, BWT) are not tried as this
+ * implementation can not decode them back.
+ * The smallest candidate is selected (the earliest one of the same size) unless
+ * the size tolerance is given. In this case the fastest to decode candidate not
+ * exceeding the smallest size by more than the tolerance is selected. Trials
+ * run concurrently, so the decoding times are measured afterwards on the
+ * caller thread one candidate at a time as the median of several runs.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class DescriptorConfigurationTrainer {
+
+    /**
+     * The maximum number of contexts of the candidate configuration.
+     */
+    public final static int MAX_CONTEXTS = 1 << 14;
+
+    /**
+     * The number of timed decoding runs (after the warm up one) of the candidate.
+     */
+    private final static int TIMING_RUNS = 5;
+
+    private final double sizeTolerance;
+    private final ExecutorService executor;
+
+    /**
+     * @param sizeTolerance the size increase (i.e. 0.05 for 5%) accepted for
+     *        the faster decoding or 0 to select the smallest configuration
+     * @param executor the executor to run trials on or null
+     */
+    public DescriptorConfigurationTrainer(
+            final double sizeTolerance,
+            final ExecutorService executor) {
+
+        if (sizeTolerance < 0) {
+            throw new IllegalArgumentException("negative size tolerance: " + sizeTolerance);
+        }
+
+        this.sizeTolerance = sizeTolerance;
+        this.executor = executor;
+    }
+
+    /**
+     * Trains the descriptor configuration on the symbols sample.
+     *
+     * @param configuration the current descriptor configuration
+     * @param descriptor_id the descriptor
+     * @param alphabet_id the alphabet
+     * @param samples the symbols indexed by the subsequence id
+     *        (null for the subsequences to leave as is)
+     * @param lengths the number of symbols in the samples
+     *
+     * @return the trained configuration (the same one if nothing has changed)
+     *
+     * @throws IOException
+     */
+    public CABAC_DescriptorDecoderConfiguration train(
+            final CABAC_DescriptorDecoderConfiguration configuration,
+            final DESCRIPTOR_ID descriptor_id,
+            final ALPHABET_ID alphabet_id,
+            final long[][] samples,
+            final int[] lengths) throws IOException {
+
+        final CABAC_DescriptorSubsequenceConfiguration[] subsequenceConfigurations =
+                configuration.subsequenceConfigurations;
+        if (subsequenceConfigurations == null) {
+            return configuration;
+        }
+
+        final List<List<Future<Trial>>> futures =
+                new ArrayList<>(Collections.nCopies(subsequenceConfigurations.length, null));
+        try {
+            for (int i = 0; i < subsequenceConfigurations.length; i++) {
+                final short descriptor_subsequence_id = subsequenceConfigurations[i].descriptor_subsequence_id;
+                if (descriptor_subsequence_id >= samples.length ||
+                    samples[descriptor_subsequence_id] == null ||
+                    lengths[descriptor_subsequence_id] == 0) {
+                    continue;
+                }
+
+                final long[] symbols = samples[descriptor_subsequence_id];
+                final int length = lengths[descriptor_subsequence_id];
+
+                final List<Future<Trial>> trials = new ArrayList<>();
+                futures.set(i, trials);
+                final List<SubsequenceCoderConfiguration> candidates = getCandidates(subsequenceConfigurations[i]);
+                for (int j = 0; j < candidates.size(); j++) {
+                    final SubsequenceCoderConfiguration candidate = candidates.get(j);
+                    if (j > 0 && !fits(candidate, descriptor_id, alphabet_id, descriptor_subsequence_id)) {
+                        continue;
+                    }
+                    final CABAC_DescriptorSubsequenceConfiguration subsequenceConfiguration =
+                            new CABAC_DescriptorSubsequenceConfiguration(descriptor_subsequence_id, candidate);
+                    trials.add(submit(() -> trial(
+                            subsequenceConfiguration, descriptor_id, alphabet_id, symbols, length)));
+                }
+            }
+
+            boolean trained = false;
+            final CABAC_DescriptorSubsequenceConfiguration[] selected = subsequenceConfigurations.clone();
+            for (int i = 0; i < futures.size(); i++) {
+                final List<Future<Trial>> list = futures.get(i);
+                if (list == null) {
+                    continue;
+                }
+                final List<Trial> trials = new ArrayList<>(list.size());
+                for (Future<Trial> future : list) {
+                    trials.add(get(future));
+                }
+
+                // the original configuration must pass the trial to be replaced
+                if (trials.get(0) != null) {
+                    final Trial trial = select(trials, descriptor_id, alphabet_id);
+                    if (trial != trials.get(0)) {
+                        selected[i] = trial.configuration;
+                        trained = true;
+                    }
+                }
+            }
+
+            return trained ? new CABAC_DescriptorDecoderConfiguration(selected) : configuration;
+        } finally {
+            for (List<Future<Trial>> list : futures) {
+                if (list != null) {
+                    for (Future<Trial> future : list) {
+                        future.cancel(true);
+                    }
+                }
+            }
+        }
+    }
+
+    private Trial select(
+            final List<Trial> trials,
+            final DESCRIPTOR_ID descriptor_id,
+            final ALPHABET_ID alphabet_id) throws IOException {
+
+        Trial smallest = null;
+        for (Trial trial : trials) {
+            if (trial != null && (smallest == null || trial.size < smallest.size)) {
+                smallest = trial;
+            }
+        }
+
+        if (sizeTolerance == 0) {
+            return smallest;
+        }
+
+        Trial fastest = null;
+        long fastestTime = Long.MAX_VALUE;
+        final double budget = smallest.size * (1 + sizeTolerance);
+        for (Trial trial : trials) {
+            if (trial != null && trial.size <= budget) {
+                final long time = time(trial, descriptor_id, alphabet_id);
+                if (time < fastestTime) {
+                    fastest = trial;
+                    fastestTime = time;
+                }
+            }
+        }
+        return fastest;
+    }
+
+    /**
+     * Measures the decoding time of the trial output.
+     *
+     * @return the median decoding time in nanoseconds
+     */
+    private static long time(
+            final Trial trial,
+            final DESCRIPTOR_ID descriptor_id,
+            final ALPHABET_ID alphabet_id) throws IOException {
+
+        final long[] times = new long[TIMING_RUNS];
+        for (int run = -1; run < TIMING_RUNS; run++) {
+            final long time = System.nanoTime();
+            final CABAC_DescriptorDecoder decoder = new CABAC_DescriptorDecoder(
+                    new Payload(trial.output.duplicate()), descriptor_id, alphabet_id,
+                    trial.decoderConfiguration, null);
+            while (decoder.hasNext()) {
+                decoder.read();
+            }
+            if (run >= 0) {
+                times[run] = System.nanoTime() - time;
+            }
+        }
+        Arrays.sort(times);
+        return times[TIMING_RUNS / 2];
+    }
+
+    /**
+     * Gets candidate configurations for the subsequence.
+     * The first candidate is always the original configuration.
+     *
+     * @param subsequenceConfiguration the original subsequence configuration
+     *
+     * @return the list of candidate configurations
+     */
+    public static List<SubsequenceCoderConfiguration> getCandidates(
+            final CABAC_DescriptorSubsequenceConfiguration subsequenceConfiguration) {
+
+        final List<SubsequenceCoderConfiguration> candidates = new ArrayList<>();
+        candidates.add(subsequenceConfiguration.subsequence_coder_configuration);
+
+        if (!(subsequenceConfiguration.subsequence_coder_configuration instanceof CABAC_SubsequenceCoderConfiguration)) {
+            return candidates;
+        }
+
+        final CABAC_SubsequenceEncodingConfiguration configuration =
+                ((CABAC_SubsequenceCoderConfiguration)subsequenceConfiguration.subsequence_coder_configuration).configuration;
+        if (configuration.context_parameters == null) {
+            return candidates;
+        }
+
+        final CABAC_SymbolEncodingConfiguration symbol_encoding_params = configuration.symbol_encoding_params;
+        final AbstractBinarization binarization = configuration.binarization;
+
+        if (symbol_encoding_params.coding_subsym_size <= 8) {
+            for (byte coding_order = 0; coding_order <= 2; coding_order++) {
+                if (coding_order == symbol_encoding_params.coding_order &&
+                    symbol_encoding_params.transform_ID_subsym == CABAC_SUBSYM_TRANSFORM_ID.NO_TRANSFORM) {
+                    continue;
+                }
+                final CABAC_SubsequenceEncodingConfiguration candidate =
+                        new CABAC_SubsequenceEncodingConfiguration(
+                            new CABAC_SymbolEncodingConfiguration(
+                                CABAC_SUBSYM_TRANSFORM_ID.NO_TRANSFORM,
+                                symbol_encoding_params.output_symbol_size,
+                                symbol_encoding_params.coding_subsym_size,
+                                coding_order,
+                                false,
+                                symbol_encoding_params.share_subsym_prv_flag),
+                            binarization,
+                            new CABAC_ContextParameters(
+                                true,
+                                new byte[0],
+                                configuration.context_parameters.share_subsym_ctx_flag));
+
+                if (fits(candidate)) {
+                    candidates.add(new CABAC_SubsequenceCoderConfiguration(candidate));
+                }
+            }
+        }
+
+        if (symbol_encoding_params.output_symbol_size >= 16 &&
+            symbol_encoding_params.output_symbol_size % 8 == 0) {
+            switch(binarization.binarization_id) {
+                case SEG:
+                case STEG:
+                case SSUTU:
+                case SDTU: break;
+                default:
+                    for (byte coding_order = 0; coding_order <= 1; coding_order++) {
+                        final CABAC_SubsequenceEncodingConfiguration candidate =
+                                new CABAC_SubsequenceEncodingConfiguration(
+                                    new CABAC_SymbolEncodingConfiguration(
+                                        CABAC_SUBSYM_TRANSFORM_ID.NO_TRANSFORM,
+                                        symbol_encoding_params.output_symbol_size,
+                                        (byte)8,
+                                        coding_order,
+                                        false,
+                                        false),
+                                    new BinaryCodingBinarization((byte)8),
+                                    new CABAC_ContextParameters(true, new byte[0], false));
+
+                        if (fits(candidate)) {
+                            candidates.add(new CABAC_SubsequenceCoderConfiguration(candidate));
+                        }
+                    }
+            }
+        }
+
+        return candidates;
+    }
+
+    private static boolean fits(final CABAC_SubsequenceEncodingConfiguration configuration) {
+
+        final CABAC_SymbolEncodingConfiguration symbol_encoding_params = configuration.symbol_encoding_params;
+        final long numAlphabetSymbols = 1L << symbol_encoding_params.coding_subsym_size;
+
+        long numContexts = configuration.binarization.getNumContextsSymbol(numAlphabetSymbols);
+        for (int i = 0; i < symbol_encoding_params.coding_order; i++) {
+            numContexts *= numAlphabetSymbols;
+        }
+        if (!configuration.context_parameters.share_subsym_ctx_flag) {
+            numContexts *= symbol_encoding_params.output_symbol_size / symbol_encoding_params.coding_subsym_size;
+        }
+
+        return numContexts <= MAX_CONTEXTS;
+    }
+
+    /**
+     * Checks that the truncated unary bins of the candidate have their own
+     * contexts. The alphabet of some subsequences is smaller than the one
+     * the binarization is defined for (Table 69), so the bins of the symbols
+     * coded without the previous ones would run out of the contexts.
+     */
+    private static boolean fits(
+            final SubsequenceCoderConfiguration candidate,
+            final DESCRIPTOR_ID descriptor_id,
+            final ALPHABET_ID alphabet_id,
+            final short descriptor_subsequence_id) {
+
+        if (!(candidate instanceof CABAC_SubsequenceCoderConfiguration)) {
+            return true;
+        }
+        final CABAC_SubsequenceEncodingConfiguration configuration =
+                ((CABAC_SubsequenceCoderConfiguration)candidate).configuration;
+        if (!(configuration.binarization instanceof TruncatedUnaryBinarization)) {
+            return true;
+        }
+        final CodecConfiguration codecConfiguration = configuration.getSubsequenceCodecConfiguration(
+                alphabet_id, descriptor_id, descriptor_subsequence_id);
+        return ((TruncatedUnaryBinarization)configuration.binarization).cMax <= codecConfiguration.numCtxSubsym;
+    }
+
+    /**
+     * Encodes the symbols with the configuration and decodes them back.
+     * The configuration is also written and read back, so the decoder gets
+     * exactly what it finds in the parameter set.
+     *
+     * @return the trial result or null if the symbols are not reproduced
+     */
+    private static Trial trial(
+            final CABAC_DescriptorSubsequenceConfiguration configuration,
+            final DESCRIPTOR_ID descriptor_id,
+            final ALPHABET_ID alphabet_id,
+            final long[] symbols,
+            final int length) {
+
+        try {
+            final MSBitOutputArray parameters = new MSBitOutputArray();
+            configuration.write(parameters);
+            parameters.flush();
+
+            final CABAC_DescriptorSubsequenceConfiguration decoderConfiguration =
+                    CABAC_DescriptorSubsequenceConfiguration.read(new Payload(parameters.getArray()));
+
+            final MSBitOutputArray output = new MSBitOutputArray();
+            output.writeInt(Integer.reverseBytes(length));
+
+            final CABAC_DescriptorEncoder encoder = new CABAC_DescriptorEncoder(
+                    output, descriptor_id, alphabet_id, configuration, null);
+            for (int i = 0; i < length; i++) {
+                encoder.write(symbols[i]);
+            }
+            encoder.close();
+
+            final ByteBuffer data = output.toByteBuffer();
+            final CABAC_DescriptorDecoder decoder = new CABAC_DescriptorDecoder(
+                    new Payload(data.duplicate()), descriptor_id, alphabet_id, decoderConfiguration, null);
+            for (int i = 0; i < length; i++) {
+                if (!decoder.hasNext() || decoder.read() != symbols[i]) {
+                    return null;
+                }
+            }
+
+            return new Trial(configuration, decoderConfiguration, data, 
+                    output.getLength() + parameters.getLength());
+        } catch (IOException ex) {
+            // the trial is done in memory, so the configuration is just not 
+            // able to encode the symbols
+            return null;
+        }
+    }
+
+    private Future<Trial> submit(final Callable<Trial> task) {
+        if (executor != null) {
+            return executor.submit(task);
+        }
+
+        final FutureTask<Trial> future = new FutureTask<>(task);
+        future.run();
+        return future;
+    }
+
+    private static Trial get(final Future<Trial> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static class Trial {
+        final CABAC_DescriptorSubsequenceConfiguration configuration;
+        final CABAC_DescriptorSubsequenceConfiguration decoderConfiguration;
+        final ByteBuffer output;
+        final long size;
+
+        Trial(final CABAC_DescriptorSubsequenceConfiguration configuration,
+              final CABAC_DescriptorSubsequenceConfiguration decoderConfiguration,
+              final ByteBuffer output,
+              final long size) {
+
+            this.configuration = configuration;
+            this.decoderConfiguration = decoderConfiguration;
+            this.output = output;
+            this.size = size;
+        }
+    }
+}
@@ -32,7 +32,7 @@ import es.gencom.mpegg.CABAC.binarization.SplitUnitWiseTruncatedUnaryBinarizatio
 import es.gencom.mpegg.CABAC.binarization.TruncatedUnaryBinarization;
 import es.gencom.mpegg.CABAC.configuration.CodecConfiguration;
 import es.gencom.mpegg.CABAC.configuration.DefaultCodecConfigurations;
-import es.gencom.mpegg.CABAC.mcoder.MDecoder;
+import es.gencom.mpegg.CABAC.mcoder.FastMDecoder;
 import es.gencom.mpegg.coder.compression.DESCRIPTOR_ID;
 import es.gencom.mpegg.coder.compression.ALPHABET_ID;
 import es.gencom.mpegg.coder.compression.COMPRESSION_METHOD_ID;
@@ -54,6 +54,14 @@ public class SyntaxElementDecoder {
     public final AbstractBinarization binarization;
     public final CodecConfiguration configuration;
     private final InputStream ref_source;
+
+    /*
+     * The decoding path is selected once: TU subsymbols are decoded directly
+     * by the reader with cMax either of the binarization (as the encoder does)
+     * or precomputed for every LUT.
+     */
+    private final TruncatedUnaryBinarization tu;
+    private final int[][][] lutsCMax;
     
     public SyntaxElementDecoder(
                 final BitReader reader,
@@ -100,6 +108,29 @@ public class SyntaxElementDecoder {
         if (configuration.coding_order > 0 && configuration.numCtxLuts > 0) {
             decode_luts();
         }
+
+        tu = binarization.binarization_id == BINARIZATION_ID.TU ? (TruncatedUnaryBinarization)binarization : null;
+        lutsCMax = tu != null && configuration.lutValues != null ? getLutsCMax() : null;
+    }
+
+    /*
+     * cMax of TU binarization is limited by the number of values in LUT.
+     */
+    private int[][][] getLutsCMax() {
+        final int[][][][] lutValues = configuration.lutValues;
+        final int[][][] cMax = new int[lutValues.length][][];
+        for (int i = 0; i < lutValues.length; i++) {
+            cMax[i] = new int[lutValues[i].length][];
+            for (int j = 0; j < lutValues[i].length; j++) {
+                cMax[i][j] = new int[lutValues[i][j].length];
+                for (int k = 0; k < lutValues[i][j].length; k++) {
+                    final int[] luts = lutValues[i][j][k];
+                    cMax[i][j][k] = Math.min(configuration.numCtxSubsym,
+                                             luts == null ? -1 : luts.length - 1);
+                }
+            }
+        }
+        return cMax;
     }
 
     private void decode_luts() throws IOException {
@@ -142,19 +173,17 @@ public class SyntaxElementDecoder {
             reader.ctxIdx = configuration.context_selection(subSymIdx, prvValsSubSymIdx);
 
             int subSymVal;
-            if (binarization.binarization_id == BINARIZATION_ID.TU) {
-                int cMax;
-                if (configuration.lutValues != null) {
-                    if(configuration.coding_order == 1) {
-                        cMax = Math.min(configuration.numCtxSubsym, configuration.lutValues[lutValsSubSymIdx][0][configuration.prvValues[prvValsSubSymIdx][0]].length - 1);
-                    } else { // coding_order == 2
-                        cMax = Math.min(configuration.numCtxSubsym, configuration.lutValues[lutValsSubSymIdx][configuration.prvValues[prvValsSubSymIdx][1]][configuration.prvValues[prvValsSubSymIdx][0]].length - 1);
-                    }
-                } else {
-                    cMax = configuration.numCtxSubsym;
+            if (tu != null) {
+                final int cMax;
+                if (lutsCMax == null) {
+                    cMax = tu.cMax;
+                } else if (configuration.coding_order == 1) {
+                    cMax = lutsCMax[lutValsSubSymIdx][0][configuration.prvValues[prvValsSubSymIdx][0]];
+                } else { // coding_order == 2
+                    cMax = lutsCMax[lutValsSubSymIdx][configuration.prvValues[prvValsSubSymIdx][1]][configuration.prvValues[prvValsSubSymIdx][0]];
                 }
 
-                subSymVal = (int)TruncatedUnaryBinarization.decodeSymbolValue(reader, cMax);
+                subSymVal = reader.readUnary(reader.ctxIdx, cMax);
             } else {
                 subSymVal = (int)binarization.decode(reader);
             }
@@ -180,28 +209,33 @@ public class SyntaxElementDecoder {
     
     public static class CABACBitReader extends MCoderBitReader {
 
-        private final MDecoder decoder;
+        private final FastMDecoder decoder;
         
         public CABACBitReader(final BitReader reader,
                               final short[][] ctxTable,
                               final boolean adaptive_mode_flag) throws IOException {
-            this.decoder = new MDecoder(reader, ctxTable, adaptive_mode_flag);
+            this.decoder = new FastMDecoder(reader, ctxTable, adaptive_mode_flag);
         }
         
         @Override
-        public long readBits(int ctxIdx, int nbits, final boolean bypass) throws IOException {
-            long val = 0;
-
+        public long readBits(final int ctxIdx, final int nbits, final boolean bypass) throws IOException {
             if (bypass) {
-                while (nbits-- > 0) {
-                    val = (val << 1) | decoder.bypass();
-                }
-            } else {
-                while (nbits-- > 0) {
-                    val = (val << 1) | decoder.decode(ctxIdx++);
-                }
+                return decoder.bypass(nbits);
+            }
+            if (nbits == 1) {
+                return decoder.decode(ctxIdx);
             }
-            return val;
+            return decoder.decode(ctxIdx, nbits);
+        }
+
+        @Override
+        public int readUnary(final int ctxIdx, final int cMax) throws IOException {
+            return decoder.decodeUnary(ctxIdx, cMax);
+        }
+
+        @Override
+        public int readZeros(final int ctxIdx) throws IOException {
+            return decoder.decodeZeros(ctxIdx);
         }
     }
 }
@@ -27,7 +27,7 @@ package es.gencom.mpegg.CABAC.encoder;
 
 import es.gencom.mpegg.CABAC.binarization.AbstractBinarization;
 import es.gencom.mpegg.CABAC.configuration.CodecConfiguration;
-import es.gencom.mpegg.coder.compression.transform.SAIS;
+import es.gencom.integration.saca.SuffixArrayBuilder;
 import es.gencom.mpegg.io.MPEGWriter;
 import java.io.IOException;
 import java.io.InputStream;
@@ -43,6 +43,7 @@ public class CABAC_BWTTransformEncoder extends CABAC_NoTransformEncoder {
     private int size;
     private byte[] data;
     private int first_char_index;
+    private final SuffixArrayBuilder suffixArrayBuilder;
     
     public CABAC_BWTTransformEncoder(
             final MPEGWriter writer,
@@ -55,6 +56,7 @@ public class CABAC_BWTTransformEncoder extends CABAC_NoTransformEncoder {
         super(writer, configuration, binarization, adaptive_mode_flag, ref_source);
         
         data = new byte[0xFFFF]; // default size = 64K
+        suffixArrayBuilder = new SuffixArrayBuilder();
     }
 
     /**
@@ -78,10 +80,10 @@ public class CABAC_BWTTransformEncoder extends CABAC_NoTransformEncoder {
 
     @Override
     public void close() throws IOException {
-        final int[] sa = SAIS.suffix(ByteBuffer.wrap(data));
+        final int[] sa = suffixArrayBuilder.suffix(ByteBuffer.wrap(data));
 
         first_char_index = -1;
-        for (int i = 1; i < sa.length; i++) {
+        for (int i = 1; i < data.length; i++) {
             if (sa[i - 1] == 0) {
                 first_char_index = i;
             }
@@ -25,7 +25,7 @@
 
 package es.gencom.mpegg.CABAC.encoder;
 
-import es.gencom.mpegg.coder.compression.transform.DC3;
+import es.gencom.integration.saca.SuffixArrayBuilder;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.LongBuffer;
@@ -51,6 +51,8 @@ public abstract class MatchCodingEncoder implements Closeable, AutoCloseable {
     private int size;
     private long[] data;
     
+    private final SuffixArrayBuilder suffixArrayBuilder;
+
     public MatchCodingEncoder() {
         this(0x10000); // default size = 64K
     }
@@ -67,6 +69,7 @@ public abstract class MatchCodingEncoder implements Closeable, AutoCloseable {
         this.min_pattern_length = min_pattern_length;
 
         data = new long[match_coding_buffer_size];
+        suffixArrayBuilder = new SuffixArrayBuilder();
     }
     
     public void write(final long value) throws IOException {
@@ -100,13 +103,10 @@ public abstract class MatchCodingEncoder implements Closeable, AutoCloseable {
     private void lz() throws IOException {
         final LongBuffer buf = LongBuffer.wrap(data, 0, size);
         
-        final int[] sa = new int[size];
-        DC3.dc3(buf, sa);
-        
-        final int[] lcp = new int[sa.length];
-        final int[] inv = new int[sa.length]; // inverse SA
-        
-        lcp(buf, sa, lcp, inv);
+        // the arrays are reused by the builder and may be longer than the data
+        final int[] sa = suffixArrayBuilder.suffix(buf);
+        final int[] lcp = suffixArrayBuilder.lcp(buf);
+        final int[] inv = suffixArrayBuilder.getInverse();
         
         int pos = size > match_coding_buffer_size ? match_coding_buffer_size : 0;
         
@@ -115,7 +115,7 @@ public abstract class MatchCodingEncoder implements Closeable, AutoCloseable {
             int distance = match_coding_buffer_size; // limit max distance
             
             /* simple pattern search with no heuristic */
-            for (int p = inv[pos] + 1, l = Integer.MAX_VALUE; p < lcp.length && (l = Math.min(l, lcp[p])) >= length; p++) {
+            for (int p = inv[pos] + 1, l = Integer.MAX_VALUE; p < size && (l = Math.min(l, lcp[p])) >= length; p++) {
                 final int d = pos - sa[p];
                 if (d > 0 && d < distance) {
                     distance = d;
@@ -143,46 +143,6 @@ public abstract class MatchCodingEncoder implements Closeable, AutoCloseable {
                 
                 pos += length;
             }
-        } while (++pos < sa.length);
-    }
-    
-    /**
-     * Construct Longest Common Prefix (lcp) array using Kasai's algorithm
-     * (doi:10.1007/3-540-48194-X_17).
-     * 
-     * @param buf original data
-     * @param sa  suffix array
-     * @param lcp resulted lcp array
-     * @param inv resulted inverted suffix array
-     * 
-     * @return value position where (sa[x] == match_coding_buffer_size)
-     */
-    private void lcp(final LongBuffer buf, 
-                     final int[] sa, 
-                     final int[] lcp, 
-                     final int[] inv) {
-        
-        for (int i = 0, n = inv.length; i < n; i++) {
-            inv[sa[i]] = i;
-        }
-
-        for (int i = 0, k = 0, n = inv.length; i < n; i++) {
-            if (inv[i] == n - 1) {
-                k = 0;
-                continue;
-            }
-
-            final int j = sa[inv[i] + 1];
-            while (i + k < n && j + k < n &&
-                   buf.get(i + k) == buf.get(j + k)) {
-                k++;
-            }
-
-            lcp[inv[i] + 1] = k;
-
-            if (k > 0) {
-                k--;
-            }
-        }
+        } while (++pos < size);
     }
 }
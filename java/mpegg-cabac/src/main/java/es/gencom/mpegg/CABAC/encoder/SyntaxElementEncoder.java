@@ -32,7 +32,7 @@ import es.gencom.mpegg.CABAC.binarization.SplitUnitWiseTruncatedUnaryBinarizatio
 import es.gencom.mpegg.CABAC.binarization.TruncatedUnaryBinarization;
 import es.gencom.mpegg.CABAC.configuration.CodecConfiguration;
 import es.gencom.mpegg.CABAC.configuration.DefaultCodecConfigurations;
-import es.gencom.mpegg.CABAC.mcoder.MEncoder;
+import es.gencom.mpegg.CABAC.mcoder.FastMEncoder;
 import es.gencom.mpegg.coder.compression.DESCRIPTOR_ID;
 import es.gencom.mpegg.coder.compression.ALPHABET_ID;
 import es.gencom.mpegg.coder.compression.COMPRESSION_METHOD_ID;
@@ -312,12 +312,23 @@ public class SyntaxElementEncoder implements Closeable {
 
     public static class CABACBitWriter extends MCoderBitWriter {
 
-        private final MEncoder encoder;
+        private final FastMEncoder encoder;
         
         public CABACBitWriter(final BitWriter writer,
                               final short[][] ctxTable,
                               final boolean adaptive_mode_flag) throws IOException {
-            this.encoder = new MEncoder(writer, ctxTable, adaptive_mode_flag);
+            this.encoder = new FastMEncoder(writer, ctxTable, adaptive_mode_flag);
+        }
+
+        @Override
+        public void writeBits(final int ctxIdx, final long bits, final int nbits, final boolean bypass) throws IOException {
+            if (bypass) {
+                encoder.bypass(bits, nbits);
+            } else if (nbits == 1) {
+                encoder.encode(ctxIdx, (short)(bits & 1));
+            } else {
+                encoder.encode(ctxIdx, bits, nbits);
+            }
         }
 
         @Override
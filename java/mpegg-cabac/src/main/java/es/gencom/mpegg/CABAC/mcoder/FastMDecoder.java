@@ -0,0 +1,249 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.mpegg.CABAC.mcoder;
+
+import es.gencom.mpegg.io.BitReader;
+import java.io.IOException;
+
+/**
+ * <p>
+ * Adapting binary arithmetic decoder implementation which renormalizes in one step.
+ * </p>
+ * 
+ * The decoder is bit-exact with the {@link MDecoder}. Instead of pulling the bits
+ * one by one, renormalization computes the shift from the leading zeros of the 
+ * range and reads all the bits at once, while a sequence of bypass bins is 
+ * decoded by a single division of the offset window. 
+ * The decoder never reads more bits than the {@link MDecoder} does, so the 
+ * underlying reader may be shared with the data that follows the CABAC stream.
+ * 
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class FastMDecoder {
+    
+    /**
+     * the maximum number of bypass bins decoded by one division
+     */
+    private final static int MAX_BYPASS_BITS = 32;
+    
+    private final BitReader reader;
+    private final boolean adaptive_mode_flag;
+    private final short[] pStateIdx;
+    private final short[] valMps;
+    
+    private int ivlCurrRange;
+    private int ivlOffset;
+
+    public FastMDecoder(final BitReader reader) throws IOException {
+        this(reader, null, false);
+    }
+    
+    /**
+     * Initializes M-Decoder
+     * 
+     * @param reader             encoded bit stream reader
+     * @param ctxTable           initial context values.
+     * @param adaptive_mode_flag whether the coder works in adapting mode.
+     * 
+     * @throws IOException 
+     */
+    public FastMDecoder(final BitReader reader, 
+                        final short[][] ctxTable, 
+                        final boolean adaptive_mode_flag) throws IOException {
+
+        this.reader = reader;
+        this.adaptive_mode_flag = adaptive_mode_flag;
+        
+        if (ctxTable == null) {
+            pStateIdx = null;
+            valMps = null;
+        } else {
+            pStateIdx = ctxTable[0];
+            valMps = ctxTable[1];
+        }
+        
+        ivlCurrRange = 510;
+        ivlOffset = (int)reader.readBits(9); // BIG ENDIAN
+    }
+
+    public short decode(final int ctxId) throws IOException {
+        if (pStateIdx == null) {
+            return bypass();
+        }
+        return decode_decision(ctxId);
+    }
+
+    /**
+     * Decodes the sequence of context coded bins using incrementing context indexes.
+     * 
+     * @param ctxId the context index of the first bin
+     * @param nbins number of bins to decode (up to 64)
+     * 
+     * @return decoded bins where the first decoded bin is the most significant one
+     * 
+     * @throws IOException 
+     */
+    public long decode(int ctxId, int nbins) throws IOException {
+        if (pStateIdx == null) {
+            return bypass(nbins);
+        }
+        long val = 0;
+        while (nbins-- > 0) {
+            val = (val << 1) | decode_decision(ctxId++);
+        }
+        return val;
+    }
+
+    /**
+     * Decodes the truncated unary sequence of context coded bins: the bins of
+     * one terminated by the bin of zero or by reaching <code>cMax</code> bins.
+     * Each bin uses the next context index.
+     *
+     * @param ctxId the context index of the first bin
+     * @param cMax  the maximum number of the bins of one
+     *
+     * @return the number of decoded bins of one
+     *
+     * @throws IOException
+     */
+    public int decodeUnary(int ctxId, final int cMax) throws IOException {
+        int val = 0;
+        if (pStateIdx == null) {
+            while (val < cMax && bypass() != 0) {
+                val++;
+            }
+        } else {
+            while (val < cMax && decode_decision(ctxId++) != 0) {
+                val++;
+            }
+        }
+        return val;
+    }
+
+    /**
+     * Decodes the sequence of context coded bins of zero terminated by the
+     * bin of one (the exponential golomb prefix). All bins use the same context.
+     *
+     * @param ctxId the context index of the bins
+     *
+     * @return the number of decoded bins of zero
+     *
+     * @throws IOException
+     */
+    public int decodeZeros(final int ctxId) throws IOException {
+        int val = 0;
+        if (pStateIdx == null) {
+            while (bypass() == 0) {
+                val++;
+            }
+        } else {
+            while (decode_decision(ctxId) == 0) {
+                val++;
+            }
+        }
+        return val;
+    }
+
+    /*
+    * 12.5.2.2 Arithmetic decoding process for a binary decision
+    */
+    private short decode_decision(final int ctxId) throws IOException {
+        final short state = pStateIdx[ctxId];
+        final short ivlLpsRange = LPSRangeTable.DATA[(ivlCurrRange >> 6) & 0x3][state];
+        ivlCurrRange -= ivlLpsRange;
+        
+        final short binVal;
+        if (ivlOffset >= ivlCurrRange) {
+            ivlOffset -= ivlCurrRange;
+            ivlCurrRange = ivlLpsRange;
+
+            binVal = (short) (1 - valMps[ctxId]);
+            
+            if (adaptive_mode_flag) {
+                if (state == 0) {
+                    valMps[ctxId] = binVal;
+                }
+                pStateIdx[ctxId] = LPSTransTable.DATA[state];
+            }
+        } else {
+            binVal = valMps[ctxId];
+            
+            if (adaptive_mode_flag && state < 62) {
+                pStateIdx[ctxId] = (short)(state + 1);
+            }
+        }
+        
+        /*
+         * 12.5.2.3 Renormalization process in the arithmetic decoding engine.
+         * The range is 9 bits wide (bit 8 set once normalized).
+         */
+        if (ivlCurrRange < 256) {
+            final int shift = Integer.numberOfLeadingZeros(ivlCurrRange) - 23;
+            ivlCurrRange <<= shift;
+            ivlOffset = (ivlOffset << shift) | (int)reader.readBits(shift);
+        }
+
+        return binVal;
+    }
+    
+    /*
+     * 12.5.2.4 Bypass decoding process for binary decisions
+     */
+    public short bypass() throws IOException {
+        ivlOffset = (ivlOffset << 1) | (int)reader.readBits(1);
+        if (ivlOffset >= ivlCurrRange) {
+            ivlOffset -= ivlCurrRange;
+            return 1;
+        }
+        return 0;
+    }
+    
+    /**
+     * Decodes the sequence of bypass bins.
+     * 
+     * Decoding of each bypass bin is a step of binary long division of the 
+     * offset by the (unchanged) range, so the bins are the quotient of the 
+     * offset window extended with the next input bits.
+     * 
+     * @param nbins number of bins to decode (up to 64)
+     * 
+     * @return decoded bins where the first decoded bin is the most significant one
+     * 
+     * @throws IOException 
+     */
+    public long bypass(int nbins) throws IOException {
+        long val = 0;
+        while (nbins > 0) {
+            final int nbits = Math.min(nbins, MAX_BYPASS_BITS);
+            final long window = ((long)ivlOffset << nbits) | reader.readBits(nbits);
+            val = (val << nbits) | (window / ivlCurrRange);
+            ivlOffset = (int)(window % ivlCurrRange);
+            nbins -= nbits;
+        }
+        return val;
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+package es.gencom.mpegg.CABAC.mcoder;
+
+import es.gencom.mpegg.io.BitWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Adapting binary arithmetic encoder implementation which outputs whole bytes.
+ * </p>
+ *
+ * The encoder is bit-exact with the {@link MEncoder}. Instead of resolving the
+ * outstanding bits one by one, the low register is kept in a wide integer and
+ * the bits above the range are taken out by bytes. A byte of all ones may still
+ * be changed by a carry, so such bytes are only counted until the next byte
+ * resolves them. A sequence of bypass bins is encoded by a single
+ * multiplication of the range.
+ * The encoded bytes are kept in the internal buffer and written to the
+ * underlying writer when the stream is terminated.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class FastMEncoder {
+
+    /**
+     * the maximum number of bypass bins encoded by one multiplication
+     */
+    private final static int MAX_BYPASS_BITS = 32;
+
+    private final BitWriter writer;
+    private final boolean adaptive_mode_flag;
+    private final short[] pStateIdx;
+    private final short[] valMps;
+
+    private int ivlCurrRange;
+
+    /*
+     * The low register: 9 bits of the range precision and 'bitsQueued' bits
+     * not yet taken out (plus the carry bit on the top).
+     * The carry bit of the very first byte corresponds to the first bit of 
+     * the {@link MEncoder} which is always 0 and never written.
+     */
+    private long ivlLow;
+    private int bitsQueued;
+
+    private int bufferedByte;
+    private int bytesOutstanding;
+
+    private byte[] buf;
+    private int size;
+
+    public FastMEncoder(final BitWriter writer) throws IOException {
+        this(writer, null, false);
+    }
+
+    /**
+     * Initializes M-Encoder
+     *
+     * @param writer             encoded bit stream writer
+     * @param ctxTable           initial context values.
+     * @param adaptive_mode_flag whether the coder works in adapting mode.
+     *
+     * @throws IOException
+     */
+    public FastMEncoder(final BitWriter writer,
+                        final short[][] ctxTable,
+                        final boolean adaptive_mode_flag) throws IOException {
+
+        this.writer = writer;
+        this.adaptive_mode_flag = adaptive_mode_flag;
+
+        if (ctxTable == null) {
+            pStateIdx = null;
+            valMps = null;
+        } else {
+            pStateIdx = ctxTable[0];
+            valMps = ctxTable[1];
+        }
+
+        ivlCurrRange = 510;
+        bufferedByte = -1;
+        buf = new byte[256];
+    }
+
+    public void encode(final int ctxId, final short binVal) throws IOException {
+        if (pStateIdx == null) {
+            bypass(binVal);
+        } else {
+            encode_decision(ctxId, binVal);
+        }
+    }
+
+    /**
+     * Encodes the sequence of context coded bins using incrementing context indexes.
+     *
+     * @param ctxId the context index of the first bin
+     * @param bins  bins to encode where the first bin is the most significant one
+     * @param nbins number of bins to encode (up to 64)
+     *
+     * @throws IOException
+     */
+    public void encode(int ctxId, final long bins, int nbins) throws IOException {
+        if (pStateIdx == null) {
+            bypass(bins, nbins);
+        } else {
+            while (nbins-- > 0) {
+                encode_decision(ctxId++, (short)((bins >>> nbins) & 1));
+            }
+        }
+    }
+
+    private void encode_decision(final int ctxId, final short binVal) {
+        final short state = pStateIdx[ctxId];
+        final short ivlLpsRange = LPSRangeTable.DATA[(ivlCurrRange >> 6) & 0x3][state];
+        ivlCurrRange -= ivlLpsRange;
+
+        if (binVal != valMps[ctxId]) {
+            ivlLow += ivlCurrRange;
+            ivlCurrRange = ivlLpsRange;
+
+            if (adaptive_mode_flag) {
+                if (state == 0) {
+                    valMps[ctxId] = binVal;
+                }
+                pStateIdx[ctxId] = LPSTransTable.DATA[state];
+            }
+        } else if (adaptive_mode_flag && state < 62) {
+            pStateIdx[ctxId] = (short)(state + 1);
+        }
+
+        // the range is 9 bits wide (bit 8 set once normalized)
+        if (ivlCurrRange < 256) {
+            final int shift = Integer.numberOfLeadingZeros(ivlCurrRange) - 23;
+            ivlCurrRange <<= shift;
+            ivlLow <<= shift;
+            bitsQueued += shift;
+            if (bitsQueued >= 8) {
+                put_bytes();
+            }
+        }
+    }
+
+    public void bypass(final short binVal) {
+        ivlLow <<= 1;
+        if (binVal != 0) {
+            ivlLow += ivlCurrRange;
+        }
+        if (++bitsQueued >= 8) {
+            put_bytes();
+        }
+    }
+
+    /**
+     * Encodes the sequence of bypass bins.
+     *
+     * Encoding of each bypass bin doubles the low register adding the range
+     * for the bin of one, so the bins are the multiplier of the (unchanged)
+     * range added to the low register shifted by the number of bins.
+     *
+     * @param bins  bins to encode where the first bin is the most significant one
+     * @param nbins number of bins to encode (up to 64)
+     */
+    public void bypass(final long bins, int nbins) {
+        while (nbins > 0) {
+            final int nbits = Math.min(nbins, MAX_BYPASS_BITS);
+            nbins -= nbits;
+
+            final long val = (bins >>> nbins) & (-1L >>> (64 - nbits));
+            ivlLow = (ivlLow << nbits) + val * ivlCurrRange;
+            bitsQueued += nbits;
+            put_bytes();
+        }
+    }
+
+    public void terminate(final short binVal) throws IOException {
+        ivlCurrRange -= 2;
+
+        if (binVal != 0) {
+            ivlLow += ivlCurrRange;
+            flush();
+        } else if (ivlCurrRange < 256) {
+            ivlCurrRange <<= 1;
+            ivlLow <<= 1;
+            if (++bitsQueued >= 8) {
+                put_bytes();
+            }
+        }
+
+        writer.flush();
+    }
+
+    /*
+     * Renormalizes the range of 2 (7 bits shift) and writes out the bits
+     * of the low register down to the 7th bit which is always set.
+     */
+    private void flush() throws IOException {
+        ivlCurrRange = 256;
+        ivlLow = (ivlLow << 7) | 0x80;
+        bitsQueued += 7;
+        put_bytes();
+
+        final int nbits = bitsQueued + 2;
+        final long bits = ivlLow >>> 7;
+        put_byte((int)(bits >>> nbits) << 8); // resolve the carry
+        bufferedByte = -1;
+        ivlLow = 0;
+        bitsQueued = 0;
+
+        write_bytes();
+        writer.writeBits(bits, nbits);
+    }
+
+    /*
+     * Takes out the bytes above the range precision along with the carry bit.
+     */
+    private void put_bytes() {
+        while (bitsQueued >= 8) {
+            bitsQueued -= 8;
+            final int shift = bitsQueued + 9;
+            put_byte((int)(ivlLow >>> shift));
+            ivlLow &= (1L << shift) - 1;
+        }
+    }
+
+    /*
+     * Classic carry propagation: the byte of 0xFF is kept outstanding as the
+     * carry would turn it to 0x00 incrementing the previous byte.
+     *
+     * @param value the byte value with the carry in the 9th bit.
+     */
+    private void put_byte(final int value) {
+        if (value == 0xFF) {
+            bytesOutstanding++;
+        } else {
+            final int carry = value >> 8;
+            if (bufferedByte >= 0) {
+                write(bufferedByte + carry);
+            }
+            for (; bytesOutstanding > 0; bytesOutstanding--) {
+                write(0xFF + carry);
+            }
+            bufferedByte = value & 0xFF;
+        }
+    }
+
+    private void write(final int value) {
+        if (size == buf.length) {
+            buf = Arrays.copyOf(buf, size << 1);
+        }
+        buf[size++] = (byte)value;
+    }
+
+    private void write_bytes() throws IOException {
+        int i = 0;
+        for (; i + 8 <= size; i += 8) {
+            writer.writeBits(getLong(i), 64);
+        }
+        for (; i < size; i++) {
+            writer.writeBits(buf[i], 8);
+        }
+        size = 0;
+    }
+
+    private long getLong(final int i) {
+        return ((long)buf[i] << 56) |
+               ((buf[i + 1] & 0xFFL) << 48) |
+               ((buf[i + 2] & 0xFFL) << 40) |
+               ((buf[i + 3] & 0xFFL) << 32) |
+               ((buf[i + 4] & 0xFFL) << 24) |
+               ((buf[i + 5] & 0xFFL) << 16) |
+               ((buf[i + 6] & 0xFFL) << 8) |
+               (buf[i + 7] & 0xFFL);
+    }
+}
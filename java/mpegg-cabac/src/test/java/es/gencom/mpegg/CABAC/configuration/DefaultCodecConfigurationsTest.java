@@ -0,0 +1,204 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+package es.gencom.mpegg.CABAC.configuration;
+
+import es.gencom.mpegg.CABAC.binarization.AbstractBinarization;
+import es.gencom.mpegg.CABAC.decoder.SyntaxElementDecoder;
+import es.gencom.mpegg.CABAC.encoder.SyntaxElementEncoder;
+import es.gencom.mpegg.coder.compression.ALPHABET_ID;
+import es.gencom.mpegg.coder.compression.COMPRESSION_METHOD_ID;
+import es.gencom.mpegg.coder.compression.DESCRIPTOR_ID;
+import es.gencom.mpegg.coder.compression.QV_CODING_MODE;
+import es.gencom.mpegg.io.MSBitOutputArray;
+import es.gencom.mpegg.io.Payload;
+import java.io.IOException;
+import java.util.Random;
+import java.util.function.Supplier;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class DefaultCodecConfigurationsTest {
+
+    private final static int SYMBOLS = 5000;
+
+    /**
+     * Number of the descriptor subsequences which have the default
+     * configurations (indexed by the descriptor identifier).
+     */
+    private final static int[] SUBSEQUENCES = {2, 1, 3, 2, 3, 4, 1, 1, 10, 1, 5, 2, 1, 1, 1, 2, 1, 3};
+
+    @Test
+    public void test() {
+        final CodecConfiguration conf1 = DefaultCodecConfigurations.getDefaultCodecConfiguration(
+                DESCRIPTOR_ID.MMPOS, 1, ALPHABET_ID.DNA, true);
+
+        // modify the state of the first configuration
+        conf1.ctxTable[0][0] = 10;
+        conf1.updateStateValues(0, 5);
+        conf1.lutValues[0][0][0] = new int[] {1, 2};
+
+        final CodecConfiguration conf2 = DefaultCodecConfigurations.getDefaultCodecConfiguration(
+                DESCRIPTOR_ID.MMPOS, 1, ALPHABET_ID.DNA, true);
+
+        Assert.assertNotSame(conf1, conf2);
+        Assert.assertEquals(conf1.codingSizeCtxOffset, conf2.codingSizeCtxOffset);
+        Assert.assertEquals(conf1.ctxTable[0].length, conf2.ctxTable[0].length);
+
+        Assert.assertEquals(0, conf2.ctxTable[0][0]);
+        Assert.assertEquals(0, conf2.prvValues[0][0]);
+        Assert.assertNull(conf2.lutValues[0][0][0]);
+    }
+
+    @Test
+    public void testDescriptors() throws IOException {
+        for (DESCRIPTOR_ID descriptor_id : DESCRIPTOR_ID.values()) {
+            for (int subsequence = 0; subsequence < SUBSEQUENCES[descriptor_id.ID]; subsequence++) {
+                for (ALPHABET_ID alphabet_id : ALPHABET_ID.values()) {
+                    for (boolean primary_alignments_only : new boolean[] {true, false}) {
+                        final int descriptor_subsequence_id = subsequence;
+                        test(descriptor_id + " " + subsequence + " " + alphabet_id + " " + primary_alignments_only,
+                             () -> DefaultCodecConfigurations.getDefaultCodecConfiguration(
+                                    descriptor_id, descriptor_subsequence_id, alphabet_id, primary_alignments_only),
+                             DefaultCodecConfigurations.getDefaultBinarization(
+                                    descriptor_id, descriptor_subsequence_id, alphabet_id, primary_alignments_only));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTokentype() throws IOException {
+        for (COMPRESSION_METHOD_ID method_id : new COMPRESSION_METHOD_ID[] {
+                COMPRESSION_METHOD_ID.CABAC_ORDER_0, COMPRESSION_METHOD_ID.CABAC_ORDER_1}) {
+            test(method_id.name(),
+                 () -> DefaultCodecConfigurations.getDefaultCodecConfiguration(method_id),
+                 DefaultCodecConfigurations.getDefaultBinarization(method_id));
+        }
+    }
+
+    @Test
+    public void testQualityValues() throws IOException {
+        test(QV_CODING_MODE.UNQUANTIZED.name(),
+             () -> DefaultCodecConfigurations.getDefaultCodecConfiguration(QV_CODING_MODE.UNQUANTIZED, 1),
+             DefaultCodecConfigurations.getDefaultBinarization(QV_CODING_MODE.UNQUANTIZED, 1));
+        for (int subsequence = 1; subsequence <= 3; subsequence++) {
+            final int descriptor_subsequence_id = subsequence;
+            test(QV_CODING_MODE.QUANTIZED.name() + " " + subsequence,
+                 () -> DefaultCodecConfigurations.getDefaultCodecConfiguration(
+                        QV_CODING_MODE.QUANTIZED, descriptor_subsequence_id),
+                 DefaultCodecConfigurations.getDefaultBinarization(
+                        QV_CODING_MODE.QUANTIZED, descriptor_subsequence_id));
+        }
+    }
+
+    /**
+     * Encodes two streams at once with the copies of the same default
+     * configuration and decodes them at once with other copies, so the
+     * copies must not share any state.
+     *
+     * @param name the name of the configuration to report
+     * @param configurations the supplier of the configuration copies
+     * @param binarization the binarization of the configuration
+     */
+    private static void test(
+            final String name,
+            final Supplier<CodecConfiguration> configurations,
+            final AbstractBinarization binarization) throws IOException {
+
+        final CodecConfiguration configuration = configurations.get();
+        final Random random = new Random(name.hashCode());
+        final long[][] symbols = new long[2][SYMBOLS];
+        for (long[] stream : symbols) {
+            for (int i = 0; i < stream.length; i++) {
+                stream[i] = symbol(random, configuration, binarization);
+            }
+        }
+
+        final MSBitOutputArray[] outputs = new MSBitOutputArray[symbols.length];
+        final SyntaxElementEncoder[] encoders = new SyntaxElementEncoder[symbols.length];
+        for (int s = 0; s < symbols.length; s++) {
+            outputs[s] = new MSBitOutputArray();
+            encoders[s] = new SyntaxElementEncoder(outputs[s], configurations.get(), binarization, true, null);
+        }
+        for (int i = 0; i < SYMBOLS; i++) {
+            for (int s = 0; s < symbols.length; s++) {
+                encoders[s].encode(symbols[s][i]);
+            }
+        }
+
+        final SyntaxElementDecoder[] decoders = new SyntaxElementDecoder[symbols.length];
+        for (int s = 0; s < symbols.length; s++) {
+            encoders[s].close();
+            decoders[s] = new SyntaxElementDecoder(
+                    new Payload(outputs[s].toByteBuffer()), configurations.get(), binarization, true, null);
+        }
+        for (int i = 0; i < SYMBOLS; i++) {
+            for (int s = 0; s < symbols.length; s++) {
+                Assert.assertEquals(name, symbols[s][i], decoders[s].decode());
+            }
+        }
+    }
+
+    /**
+     * The symbols are decoded into int, so 32 bits symbols keep to the
+     * positive values. The LUT size is coded in coding_subsym_size bits, so
+     * the LUT may not hold every value of the subsymbol.
+     * 
+     * @return the random symbol which every subsymbol fits the alphabet
+     *         of the configuration, mostly small values, half of them
+     *         negative for the signed binarizations
+     */
+    private static long symbol(
+            final Random random,
+            final CodecConfiguration configuration,
+            final AbstractBinarization binarization) {
+
+        final long size = 1L << configuration.coding_subsym_size;
+        final long alphabet = configuration.subsym_transform_id == CABAC_SUBSYM_TRANSFORM_ID.LUT_TRANSFORM ?
+                Math.min(configuration.num_alphabet_symbols, size - 1) :
+                Math.min(configuration.num_alphabet_symbols, size);
+        final boolean small = random.nextInt(8) != 0;
+
+        long symbol = 0;
+        for (int bits = 0; bits < configuration.output_symbol_size; bits += configuration.coding_subsym_size) {
+            final long max = small ? Math.min(alphabet, 4) : alphabet;
+            symbol |= (long)(random.nextDouble() * max) << bits;
+        }
+        symbol &= Integer.MAX_VALUE;
+
+        switch(binarization.binarization_id) {
+            case SEG:
+            case STEG:
+            case SSUTU:
+            case SDTU: return random.nextBoolean() ? -symbol : symbol;
+        }
+        return symbol;
+    }
+}
@@ -0,0 +1,202 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+package es.gencom.mpegg.CABAC.configuration;
+
+import es.gencom.mpegg.CABAC.configuration.subseq.CABAC_DescriptorSubsequenceConfiguration;
+import es.gencom.mpegg.coder.compression.ALPHABET_ID;
+import es.gencom.mpegg.coder.compression.DESCRIPTOR_ID;
+import es.gencom.mpegg.coder.compression.DescriptorDecoder;
+import es.gencom.mpegg.coder.compression.DescriptorEncoder;
+import es.gencom.mpegg.io.MSBitOutputArray;
+import es.gencom.mpegg.io.Payload;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class DescriptorConfigurationTrainerTest {
+
+    private final static int SYMBOLS = 50000;
+
+    @Test
+    public void test() throws IOException {
+        final Random random = new Random(0);
+
+        // long runs of flags (the second subsequence is not sampled)
+        final long[][] flags = {new long[SYMBOLS], null, new long[SYMBOLS]};
+        for (int i = 0; i < SYMBOLS; i++) {
+            flags[0][i] = (i / 1000) & 1;
+        }
+
+        // read lengths around 100
+        final long[][] rlen = new long[1][SYMBOLS];
+        for (int i = 0; i < SYMBOLS; i++) {
+            rlen[0][i] = 100 + random.nextInt(4);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // order 1 beats the default order 2 for the runs
+            Assert.assertTrue(test(DESCRIPTOR_ID.FLAGS, flags, new DescriptorConfigurationTrainer(0, null)));
+
+            test(DESCRIPTOR_ID.RLEN, rlen, new DescriptorConfigurationTrainer(0, executor));
+            test(DESCRIPTOR_ID.FLAGS, flags, new DescriptorConfigurationTrainer(0.1, executor));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Without the size tolerance the selection only depends on the sizes,
+     * so the trials run concurrently select the same configurations.
+     */
+    @Test
+    public void testDeterministic() throws IOException {
+        final Random random = new Random(1);
+        final long[][] samples = new long[3][SYMBOLS];
+        for (int i = 0; i < SYMBOLS; i++) {
+            samples[0][i] = (i / 100) % 3;
+            samples[1][i] = (i * 31 + 1) % 17 % 16;
+            samples[2][i] = random.nextInt(10) == 0 ? random.nextInt(10) : 0;
+        }
+
+        final byte[] expected = train(DESCRIPTOR_ID.MMTYPE, samples, new DescriptorConfigurationTrainer(0, null));
+        Assert.assertFalse(Arrays.equals(train(DESCRIPTOR_ID.MMTYPE, samples, null), expected));
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int run = 0; run < 5; run++) {
+                Assert.assertArrayEquals(expected,
+                        train(DESCRIPTOR_ID.MMTYPE, samples, new DescriptorConfigurationTrainer(0, executor)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return the trained (or the default if the trainer is null) configuration
+     *         as it is written to the parameter set
+     */
+    private byte[] train(
+            final DESCRIPTOR_ID descriptor_id,
+            final long[][] samples,
+            final DescriptorConfigurationTrainer trainer) throws IOException {
+
+        final CABAC_DescriptorSubsequenceConfiguration[] subsequenceConfigurations =
+                new CABAC_DescriptorSubsequenceConfiguration[samples.length];
+        final int[] lengths = new int[samples.length];
+        for (short i = 0; i < samples.length; i++) {
+            subsequenceConfigurations[i] = new CABAC_DescriptorSubsequenceConfiguration(
+                    descriptor_id, i, ALPHABET_ID.IUPAC, true);
+            lengths[i] = samples[i].length;
+        }
+
+        final CABAC_DescriptorDecoderConfiguration configuration =
+                new CABAC_DescriptorDecoderConfiguration(subsequenceConfigurations);
+        final CABAC_DescriptorDecoderConfiguration trained = trainer == null ? configuration :
+                trainer.train(configuration, descriptor_id, ALPHABET_ID.IUPAC, samples, lengths);
+
+        final MSBitOutputArray parameters = new MSBitOutputArray();
+        trained.write(parameters);
+        parameters.flush();
+        return parameters.getArray();
+    }
+
+    /**
+     * @return whether the trained configuration differs from the default one
+     */
+    private boolean test(
+            final DESCRIPTOR_ID descriptor_id,
+            final long[][] samples,
+            final DescriptorConfigurationTrainer trainer) throws IOException {
+
+        final CABAC_DescriptorSubsequenceConfiguration[] subsequenceConfigurations =
+                new CABAC_DescriptorSubsequenceConfiguration[samples.length];
+        final int[] lengths = new int[samples.length];
+        for (short i = 0; i < samples.length; i++) {
+            subsequenceConfigurations[i] = new CABAC_DescriptorSubsequenceConfiguration(
+                    descriptor_id, i, ALPHABET_ID.IUPAC, true);
+            lengths[i] = samples[i] == null ? 0 : samples[i].length;
+        }
+
+        final CABAC_DescriptorDecoderConfiguration configuration =
+                new CABAC_DescriptorDecoderConfiguration(subsequenceConfigurations);
+
+        final CABAC_DescriptorDecoderConfiguration trained = trainer.train(
+                configuration, descriptor_id, ALPHABET_ID.IUPAC, samples, lengths);
+
+        // the decoder reads the configuration from the parameter set
+        final MSBitOutputArray parameters = new MSBitOutputArray();
+        trained.write(parameters);
+        parameters.flush();
+        final CABAC_DescriptorDecoderConfiguration decoderConfiguration =
+                CABAC_DescriptorDecoderConfiguration.read(new Payload(parameters.getArray()));
+
+        for (int i = 0; i < samples.length; i++) {
+            if (samples[i] == null) {
+                continue;
+            }
+            final long size = encode(configuration, descriptor_id, i, samples[i]).getLength();
+            final MSBitOutputArray output = encode(trained, descriptor_id, i, samples[i]);
+
+            Assert.assertTrue(output.getLength() <= size);
+
+            final DescriptorDecoder decoder = decoderConfiguration.getDescriptorDecoder(
+                    new Payload(output.toByteBuffer()), descriptor_id, i, ALPHABET_ID.IUPAC, true, null);
+            for (int j = 0; j < samples[i].length; j++) {
+                Assert.assertEquals(samples[i][j], decoder.read());
+            }
+            Assert.assertFalse(decoder.hasNext());
+        }
+
+        return trained != configuration;
+    }
+
+    private MSBitOutputArray encode(
+            final CABAC_DescriptorDecoderConfiguration configuration,
+            final DESCRIPTOR_ID descriptor_id,
+            final int descriptor_subsequence_id,
+            final long[] symbols) throws IOException {
+
+        final MSBitOutputArray output = new MSBitOutputArray();
+        output.writeInt(Integer.reverseBytes(symbols.length));
+
+        final DescriptorEncoder encoder = configuration.getDescriptorEncoder(
+                output, descriptor_id, descriptor_subsequence_id, ALPHABET_ID.IUPAC, true, null);
+        for (int i = 0; i < symbols.length; i++) {
+            encoder.write(symbols[i]);
+        }
+        encoder.close();
+
+        return output;
+    }
+}
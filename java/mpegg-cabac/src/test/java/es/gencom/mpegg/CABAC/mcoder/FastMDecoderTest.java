@@ -0,0 +1,159 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.mpegg.CABAC.mcoder;
+
+import es.gencom.mpegg.io.MSBitBuffer;
+import es.gencom.mpegg.io.MSBitOutputArray;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class FastMDecoderTest {
+    
+    private final static int CONTEXTS = 16;
+    private final static int BINS = 100000;
+    
+    @Test
+    public void test() throws IOException {
+        final Random random = new Random(42);
+        
+        final short[] bins = new short[BINS];
+        final int[] ctx = new int[BINS];
+        
+        // skewed context coded bins mixed with the runs of bypass ones
+        for (int i = 0; i < BINS; i++) {
+            ctx[i] = random.nextInt(8) == 0 ? -1 : random.nextInt(CONTEXTS);
+            bins[i] = (short)(random.nextInt(ctx[i] < 0 ? 2 : ctx[i] + 2) == 0 ? 1 : 0);
+        }
+
+        final MSBitOutputArray out = new MSBitOutputArray();
+        out.writeBits(0x5A, 8); // data preceding CABAC stream
+        
+        final MEncoder encoder = new MEncoder(out, getContextTable(), true);
+        for (int i = 0; i < BINS; i++) {
+            if (ctx[i] < 0) {
+                encoder.bypass(bins[i]);
+            } else {
+                encoder.encode(ctx[i], bins[i]);
+            }
+        }
+        encoder.terminate((short)1);
+        out.writeBits(0xA5, 8); // data following CABAC stream
+        out.flush();
+
+        final MSBitBuffer in1 = new MSBitBuffer(out.toByteBuffer());
+        final MSBitBuffer in2 = new MSBitBuffer(out.toByteBuffer());
+        Assert.assertEquals(0x5A, in1.readBits(8));
+        Assert.assertEquals(0x5A, in2.readBits(8));
+
+        final MDecoder decoder = new MDecoder(in1, getContextTable(), true);
+        final FastMDecoder fast = new FastMDecoder(in2, getContextTable(), true);
+
+        for (int i = 0; i < BINS; i++) {
+            if (ctx[i] >= 0) {
+                Assert.assertEquals(bins[i], decoder.decode(ctx[i]));
+                Assert.assertEquals(bins[i], fast.decode(ctx[i]));
+            } else {
+                // decode the whole run of bypass bins at once
+                int n = 1;
+                while (i + n < BINS && ctx[i + n] < 0 && n < 64) {
+                    n++;
+                }
+                final long val = fast.bypass(n);
+                for (int j = 0; j < n; j++, i++) {
+                    Assert.assertEquals(bins[i], decoder.bypass());
+                    Assert.assertEquals(bins[i], (val >>> (n - j - 1)) & 1);
+                }
+                i--;
+            }
+        }
+        
+        // both decoders must consume exactly the same number of bits
+        Assert.assertEquals(remaining(in1), remaining(in2));
+    }
+    
+    @Test
+    public void testUnary() throws IOException {
+        final Random random = new Random(42);
+
+        final int[] vals = new int[BINS];
+        for (int i = 0; i < BINS; i++) {
+            vals[i] = random.nextInt(CONTEXTS);
+        }
+
+        final MSBitOutputArray out = new MSBitOutputArray();
+        final MEncoder encoder = new MEncoder(out, getContextTable(), true);
+        for (int i = 0; i < BINS; i++) {
+            // truncated unary (cMax = CONTEXTS - 1) followed by the zeros run
+            for (int j = 0; j < vals[i]; j++) {
+                encoder.encode(j, (short)1);
+            }
+            if (vals[i] < CONTEXTS - 1) {
+                encoder.encode(vals[i], (short)0);
+            }
+            for (int j = 0; j < vals[i]; j++) {
+                encoder.encode(0, (short)0);
+            }
+            encoder.encode(0, (short)1);
+        }
+        encoder.terminate((short)1);
+        out.flush();
+
+        final FastMDecoder fast = new FastMDecoder(
+                new MSBitBuffer(out.toByteBuffer()), getContextTable(), true);
+        for (int i = 0; i < BINS; i++) {
+            Assert.assertEquals(vals[i], fast.decodeUnary(0, CONTEXTS - 1));
+            Assert.assertEquals(vals[i], fast.decodeZeros(0));
+        }
+    }
+
+    private static int remaining(final MSBitBuffer in) {
+        int bits = 0;
+        try {
+            while (true) {
+                in.readBits(1);
+                bits++;
+            }
+        } catch (EOFException ex) {
+            return bits;
+        }
+    }
+    
+    private static short[][] getContextTable() {
+        final short[][] ctxTable = new short[2][CONTEXTS];
+        for (int i = 0; i < CONTEXTS; i++) {
+            ctxTable[0][i] = (short)(i * 4);
+            ctxTable[1][i] = (short)(i & 1);
+        }
+        return ctxTable;
+    }
+}
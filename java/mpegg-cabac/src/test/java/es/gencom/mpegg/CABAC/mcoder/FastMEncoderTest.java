@@ -0,0 +1,128 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+package es.gencom.mpegg.CABAC.mcoder;
+
+import es.gencom.mpegg.io.MSBitOutputArray;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class FastMEncoderTest {
+
+    private final static int CONTEXTS = 16;
+    private final static int BINS = 100000;
+
+    @Test
+    public void test() throws IOException {
+        for (int seed = 0; seed < 8; seed++) {
+            final Random random = new Random(seed);
+
+            final short[] bins = new short[BINS];
+            final int[] ctx = new int[BINS];
+
+            // skewed context coded bins mixed with the runs of bypass ones
+            for (int i = 0; i < BINS; i++) {
+                ctx[i] = random.nextInt(8) == 0 ? -1 : random.nextInt(CONTEXTS);
+                bins[i] = (short)(random.nextInt(ctx[i] < 0 ? 2 : ctx[i] + 2) == 0 ? 1 : 0);
+            }
+
+            final MSBitOutputArray out1 = new MSBitOutputArray();
+            final MSBitOutputArray out2 = new MSBitOutputArray();
+            out1.writeBits(0x5A, 3); // data preceding CABAC stream
+            out2.writeBits(0x5A, 3);
+
+            final MEncoder encoder = new MEncoder(out1, getContextTable(), true);
+            final FastMEncoder fast = new FastMEncoder(out2, getContextTable(), true);
+
+            for (int i = 0; i < BINS; i++) {
+                if (ctx[i] >= 0) {
+                    encoder.encode(ctx[i], bins[i]);
+                    fast.encode(ctx[i], bins[i]);
+                } else {
+                    // encode the whole run of bypass bins at once
+                    int n = 1;
+                    while (i + n < BINS && ctx[i + n] < 0 && n < 64) {
+                        n++;
+                    }
+                    long val = 0;
+                    for (int j = 0; j < n; j++, i++) {
+                        encoder.bypass(bins[i]);
+                        val = (val << 1) | bins[i];
+                    }
+                    fast.bypass(val, n);
+                    i--;
+                }
+            }
+            encoder.terminate((short)1);
+            fast.terminate((short)1);
+
+            assertEquals(out1, out2);
+        }
+    }
+
+    @Test
+    public void testBypass() throws IOException {
+        final Random random = new Random(42);
+
+        final MSBitOutputArray out1 = new MSBitOutputArray();
+        final MSBitOutputArray out2 = new MSBitOutputArray();
+
+        final MEncoder encoder = new MEncoder(out1, null, false);
+        final FastMEncoder fast = new FastMEncoder(out2);
+
+        for (int i = 0; i < BINS; i++) {
+            final int n = random.nextInt(65);
+            final long val = random.nextLong();
+            for (int j = n - 1; j >= 0; j--) {
+                encoder.bypass((short)((val >>> j) & 1));
+            }
+            fast.encode(0, val, n);
+        }
+        encoder.terminate((short)1);
+        fast.terminate((short)1);
+
+        assertEquals(out1, out2);
+    }
+
+    private static void assertEquals(final MSBitOutputArray out1,
+                                     final MSBitOutputArray out2) {
+        Assert.assertEquals(out1.getLength(), out2.getLength());
+        Assert.assertArrayEquals(out1.getArray(), out2.getArray());
+    }
+
+    private static short[][] getContextTable() {
+        final short[][] ctxTable = new short[2][CONTEXTS];
+        for (int i = 0; i < CONTEXTS; i++) {
+            ctxTable[0][i] = (short)(i * 4);
+            ctxTable[1][i] = (short)(i & 1);
+        }
+        return ctxTable;
+    }
+}
@@ -0,0 +1,422 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.mpegg;
+
+import es.gencom.mpegg.format.DATA_CLASS;
+import es.gencom.mpegg.format.SequenceIdentifier;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Single alignment templates to be encoded stored column-wise.
+ * </p>
+ *
+ * The batch is the encoder counterpart of the {@link RecordBatch} restricted
+ * to the templates that have one alignment per segment without splices:
+ * unpaired reads, pairs with both segments in the record and pairs which
+ * mate is stored in another record. Positions, flags and mate information
+ * are kept in per-template columns, while the bases, qualities and the
+ * alignment operations of the segments are appended to shared pools,
+ * so the batch reused for the consecutive templates does not allocate.
+ * The arrays returned by the pools getters are valid until the batch
+ * is modified.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class AlignmentBatch {
+
+    private final static byte READ1_FIRST = 1;
+    private final static byte UNPAIRED = 2;
+    private final static byte REVERSE_COMPLIMENT = 4; // segment 0, segment 1 is shifted by one
+
+    private int size;
+
+    private long[] readIds;
+    private String[] readNames;
+    private String[] readGroups;
+    private byte[] flags;
+    private byte[] dataClasses;
+    private byte[] numberSegments;
+    private SequenceIdentifier[] sequenceIds;
+    private SequenceIdentifier[] mateSequenceIds;
+
+    // two entries per template, the segment 1 is either stored or the mate
+    private long[] positions;
+    private int[] basesStarts;
+    private int[] basesLengths;
+    private int[] qualitiesStarts;
+    private int[] qualitiesLengths;
+    private int[] operationsStarts;
+    private int[] operationsEnds;
+
+    private byte[] bases;
+    private int basesSize;
+    private short[] qualities;
+    private int qualitiesSize;
+    private byte[] operations;
+    private int[] operationLengths;
+    private int operationsSize;
+
+    public AlignmentBatch() {
+        this(256);
+    }
+
+    /**
+     * @param capacity initial number of templates
+     */
+    public AlignmentBatch(final int capacity) {
+        final int templates = Math.max(1, capacity);
+
+        readIds = new long[templates];
+        readNames = new String[templates];
+        readGroups = new String[templates];
+        flags = new byte[templates];
+        dataClasses = new byte[templates];
+        numberSegments = new byte[templates];
+        sequenceIds = new SequenceIdentifier[templates];
+        mateSequenceIds = new SequenceIdentifier[templates];
+
+        positions = new long[templates * 2];
+        basesStarts = new int[templates * 2];
+        basesLengths = new int[templates * 2];
+        qualitiesStarts = new int[templates * 2];
+        qualitiesLengths = new int[templates * 2];
+        operationsStarts = new int[templates * 2];
+        operationsEnds = new int[templates * 2];
+
+        bases = new byte[templates * 256];
+        qualities = new short[templates * 256];
+        operations = new byte[templates * 256];
+        operationLengths = new int[templates * 256];
+    }
+
+    /**
+     * @return the number of templates in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all the templates keeping the allocated memory.
+     */
+    public void clear() {
+        Arrays.fill(readNames, 0, size, null);
+        Arrays.fill(readGroups, 0, size, null);
+        Arrays.fill(sequenceIds, 0, size, null);
+        Arrays.fill(mateSequenceIds, 0, size, null);
+
+        size = 0;
+        basesSize = 0;
+        qualitiesSize = 0;
+        operationsSize = 0;
+    }
+
+    /**
+     * Appends the new template without segments.
+     * The segments are added in the encoding order, the first added segment
+     * is the one the template is positioned by.
+     *
+     * @param readId the read identifier
+     * @param readName the read name
+     * @param readGroup the read group
+     * @param sequenceId the sequence of the first segment
+     * @param read1First whether the first segment is the read 1
+     * @param unpaired whether the template has only one segment
+     *
+     * @return the index of the template in the batch
+     */
+    public int add(
+            final long readId,
+            final String readName,
+            final String readGroup,
+            final SequenceIdentifier sequenceId,
+            final boolean read1First,
+            final boolean unpaired) {
+
+        if (size == readIds.length) {
+            final int capacity = size * 2;
+            readIds = Arrays.copyOf(readIds, capacity);
+            readNames = Arrays.copyOf(readNames, capacity);
+            readGroups = Arrays.copyOf(readGroups, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            dataClasses = Arrays.copyOf(dataClasses, capacity);
+            numberSegments = Arrays.copyOf(numberSegments, capacity);
+            sequenceIds = Arrays.copyOf(sequenceIds, capacity);
+            mateSequenceIds = Arrays.copyOf(mateSequenceIds, capacity);
+
+            positions = Arrays.copyOf(positions, capacity * 2);
+            basesStarts = Arrays.copyOf(basesStarts, capacity * 2);
+            basesLengths = Arrays.copyOf(basesLengths, capacity * 2);
+            qualitiesStarts = Arrays.copyOf(qualitiesStarts, capacity * 2);
+            qualitiesLengths = Arrays.copyOf(qualitiesLengths, capacity * 2);
+            operationsStarts = Arrays.copyOf(operationsStarts, capacity * 2);
+            operationsEnds = Arrays.copyOf(operationsEnds, capacity * 2);
+        }
+
+        readIds[size] = readId;
+        readNames[size] = readName;
+        readGroups[size] = readGroup;
+        flags[size] = (byte)((read1First ? READ1_FIRST : 0) | (unpaired ? UNPAIRED : 0));
+        dataClasses[size] = DATA_CLASS.CLASS_P.ID;
+        numberSegments[size] = 0;
+        sequenceIds[size] = sequenceId;
+        mateSequenceIds[size] = null;
+
+        Arrays.fill(positions, size * 2, size * 2 + 2, 0);
+        Arrays.fill(basesLengths, size * 2, size * 2 + 2, 0);
+        Arrays.fill(qualitiesLengths, size * 2, size * 2 + 2, 0);
+        Arrays.fill(operationsStarts, size * 2, size * 2 + 2, operationsSize);
+        Arrays.fill(operationsEnds, size * 2, size * 2 + 2, operationsSize);
+
+        return size++;
+    }
+
+    /**
+     * Appends the segment stored in the record to the last template.
+     * The alignment operations of the segment are added afterwards.
+     *
+     * @param sequenceId the sequence the segment is aligned to
+     * @param position 0-based mapping position of the segment
+     * @param reverseCompliment whether the segment is reverse complemented
+     * @param sequence the bases of the segment
+     * @param quality the quality values of the segment
+     */
+    public void addSegment(
+            final SequenceIdentifier sequenceId,
+            final long position,
+            final boolean reverseCompliment,
+            final byte[] sequence,
+            final byte[] quality) {
+
+        final int template = size - 1;
+        final int segment = numberSegments[template];
+        if (segment > 1 || mateSequenceIds[template] != null) {
+            throw new IllegalArgumentException();
+        }
+        if (segment == 1) {
+            mateSequenceIds[template] = sequenceId;
+        }
+
+        final int index = template * 2 + segment;
+        positions[index] = position;
+        if (reverseCompliment) {
+            flags[template] |= REVERSE_COMPLIMENT << segment;
+        }
+
+        if (basesSize + sequence.length > bases.length) {
+            bases = Arrays.copyOf(bases, Math.max(bases.length * 2, basesSize + sequence.length));
+        }
+        System.arraycopy(sequence, 0, bases, basesSize, sequence.length);
+        basesStarts[index] = basesSize;
+        basesLengths[index] = sequence.length;
+        basesSize += sequence.length;
+
+        if (qualitiesSize + quality.length > qualities.length) {
+            qualities = Arrays.copyOf(qualities, Math.max(qualities.length * 2, qualitiesSize + quality.length));
+        }
+        for (int i = 0; i < quality.length; i++) {
+            qualities[qualitiesSize + i] = quality[i];
+        }
+        qualitiesStarts[index] = qualitiesSize;
+        qualitiesLengths[index] = quality.length;
+        qualitiesSize += quality.length;
+
+        operationsStarts[index] = operationsSize;
+        operationsEnds[index] = operationsSize;
+
+        numberSegments[template]++;
+    }
+
+    /**
+     * Appends the alignment operation to the last added segment.
+     *
+     * @param operation the operation as defined in the <code>Operation</code>
+     * @param length the length of the operation
+     */
+    public void addOperation(final byte operation, final int length) {
+        if (operationsSize == operations.length) {
+            operations = Arrays.copyOf(operations, operationsSize * 2);
+            operationLengths = Arrays.copyOf(operationLengths, operationsSize * 2);
+        }
+        operations[operationsSize] = operation;
+        operationLengths[operationsSize] = length;
+        operationsSize++;
+
+        final int template = size - 1;
+        operationsEnds[template * 2 + numberSegments[template] - 1] = operationsSize;
+    }
+
+    /**
+     * Sets the position of the mate of the last template which
+     * is stored in another record.
+     *
+     * @param sequenceId the sequence the mate is aligned to
+     * @param position 0-based mapping position of the mate
+     * @param reverseCompliment whether the mate is reverse complemented
+     */
+    public void setMate(
+            final SequenceIdentifier sequenceId,
+            final long position,
+            final boolean reverseCompliment) {
+
+        final int template = size - 1;
+        if (numberSegments[template] != 1 || mateSequenceIds[template] != null) {
+            throw new IllegalArgumentException();
+        }
+
+        mateSequenceIds[template] = sequenceId;
+        positions[template * 2 + 1] = position;
+        if (reverseCompliment) {
+            flags[template] |= REVERSE_COMPLIMENT << 1;
+        }
+    }
+
+    /**
+     * @param dataClass the class of the last template
+     */
+    public void setDataClass(final DATA_CLASS dataClass) {
+        dataClasses[size - 1] = dataClass.ID;
+    }
+
+    public long getReadId(final int index) {
+        return readIds[index];
+    }
+
+    public String getReadName(final int index) {
+        return readNames[index];
+    }
+
+    public String getReadGroup(final int index) {
+        return readGroups[index];
+    }
+
+    public DATA_CLASS getDataClass(final int index) {
+        return DATA_CLASS.getDataClass(dataClasses[index]);
+    }
+
+    public boolean isRead1First(final int index) {
+        return (flags[index] & READ1_FIRST) != 0;
+    }
+
+    public boolean isUnpaired(final int index) {
+        return (flags[index] & UNPAIRED) != 0;
+    }
+
+    /**
+     * @param index the index of the template
+     *
+     * @return the number of segments stored in the record (1 or 2)
+     */
+    public byte getNumberSegments(final int index) {
+        return numberSegments[index];
+    }
+
+    public boolean isTwoSegmentsStoredTogether(final int index) {
+        return numberSegments[index] == 2;
+    }
+
+    public SequenceIdentifier getSequenceId(final int index) {
+        return sequenceIds[index];
+    }
+
+    /**
+     * @param index the index of the template
+     *
+     * @return the sequence of the segment 1 or null for the unpaired template
+     */
+    public SequenceIdentifier getMateSequenceId(final int index) {
+        return mateSequenceIds[index];
+    }
+
+    /**
+     * @param index the index of the template
+     * @param segment the segment (0 or 1), the segment 1 may be the mate
+     *
+     * @return 0-based mapping position of the segment
+     */
+    public long getPosition(final int index, final int segment) {
+        return positions[index * 2 + segment];
+    }
+
+    public boolean isReverseCompliment(final int index, final int segment) {
+        return (flags[index] & (REVERSE_COMPLIMENT << segment)) != 0;
+    }
+
+    public int getBasesStart(final int index, final int segment) {
+        return basesStarts[index * 2 + segment];
+    }
+
+    public int getBasesLength(final int index, final int segment) {
+        return basesLengths[index * 2 + segment];
+    }
+
+    public int getQualitiesStart(final int index, final int segment) {
+        return qualitiesStarts[index * 2 + segment];
+    }
+
+    public int getQualitiesLength(final int index, final int segment) {
+        return qualitiesLengths[index * 2 + segment];
+    }
+
+    public int getOperationsStart(final int index, final int segment) {
+        return operationsStarts[index * 2 + segment];
+    }
+
+    public int getOperationsEnd(final int index, final int segment) {
+        return operationsEnds[index * 2 + segment];
+    }
+
+    /**
+     * @return the pool of the bases of all the segments
+     */
+    public byte[] getBases() {
+        return bases;
+    }
+
+    /**
+     * @return the pool of the quality values of all the segments
+     */
+    public short[] getQualities() {
+        return qualities;
+    }
+
+    /**
+     * @return the pool of the alignment operations of all the segments
+     */
+    public byte[] getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return the pool of the alignment operations lengths of all the segments
+     */
+    public int[] getOperationLengths() {
+        return operationLengths;
+    }
+}
@@ -195,6 +195,14 @@ public class Record {
         return result;
     }
 
+    public long getReadId() {
+        return readId;
+    }
+
+    public String getReadGroup() {
+        return readGroup;
+    }
+
     public boolean isRead1First() {
         return read1First;
     }
@@ -397,4 +405,8 @@ public class Record {
     public short[][][] getQualityValues() {
         return qualityValues;
     }
+
+    public long[][][] getMappingScore() {
+        return mapping_score;
+    }
 }
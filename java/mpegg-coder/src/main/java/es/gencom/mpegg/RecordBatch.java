@@ -0,0 +1,1234 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.mpegg;
+
+import es.gencom.mpegg.format.SequenceIdentifier;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Records of an access unit stored column-wise.
+ * </p>
+ *
+ * Scalar fields of the records are kept in per-record columns, while the
+ * nested arrays of all the records are flattened into a few primitive pools
+ * together with their shape (the lengths of every nested array, -1 for null).
+ * The batch keeps its capacity when cleared, so decoding access units one
+ * after another into the same batch does not allocate per record.
+ * Decoders may write the record components straight into the pools
+ * ({@link #begin}, the put methods and {@link #end()}) instead of passing
+ * them as arrays to {@link #build}.
+ * Records are accessed through the reusable {@link Cursor} view or
+ * materialized as {@link Record} objects on demand.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class RecordBatch implements RecordBuilder<RecordBatch> {
+
+    private final static int NULL = -1;
+
+    private final static byte READ1_FIRST = 1;
+    private final static byte UNPAIRED = 2;
+
+    // shape, bytes, shorts, ints, longs and objects pools start positions
+    private final static int STARTS = 6;
+    private final static int BYTES = 1;
+    private final static int SHORTS = 2;
+    private final static int INTS = 3;
+    private final static int LONGS = 4;
+    private final static int OBJECTS = 5;
+
+    // record components in the order they are written to the pools
+    private final static int SEQUENCE_BYTES = 0;
+    private final static int QUALITY_VALUES = 1;
+    private final static int MAPPING_POSITIONS_SEGMENT0 = 2;
+    private final static int SPLIT_MATE = 3;
+    private final static int SEQUENCE_ID_SEGMENT1 = 4;
+    private final static int MAPPING_POSITIONS_SEGMENT1 = 5;
+    private final static int OPERATION_TYPE = 7;
+    private final static int OPERATION_LENGTH = 8;
+    private final static int ORIGINAL_BASE = 9;
+    private final static int REVERSE_COMPLIMENT = 10;
+    private final static int ALIGN_PTR = 12;
+
+    // nesting depth and the pool of every component
+    private final static int[] DEPTHS = {2, 3, 2, 1, 1, 2, 3, 4, 4, 4, 3, 3, 2};
+    private final static int[] POOLS = {BYTES, SHORTS, LONGS, OBJECTS, OBJECTS, LONGS, LONGS,
+                                        BYTES, INTS, BYTES, BYTES, LONGS, INTS};
+
+    private int size;
+
+    private long[] readIds;
+    private String[] readNames;
+    private String[] readGroups;
+    private byte[] flags;
+    private SequenceIdentifier[] sequenceIds;
+    private int[] starts;
+
+    private int[] shape;
+    private int shapeSize;
+    private byte[] bytes;
+    private int bytesSize;
+    private short[] shorts;
+    private int shortsSize;
+    private int[] ints;
+    private int intsSize;
+    private long[] longs;
+    private int longsSize;
+    private Object[] objects;
+    private int objectsSize;
+
+    public RecordBatch() {
+        this(1024);
+    }
+
+    /**
+     * @param capacity initial number of records
+     */
+    public RecordBatch(final int capacity) {
+        final int records = Math.max(1, capacity);
+
+        readIds = new long[records];
+        readNames = new String[records];
+        readGroups = new String[records];
+        flags = new byte[records];
+        sequenceIds = new SequenceIdentifier[records];
+        starts = new int[records * STARTS];
+
+        shape = new int[records * 32];
+        bytes = new byte[records * 256];
+        shorts = new short[records * 256];
+        ints = new int[records * 8];
+        longs = new long[records * 8];
+        objects = new Object[records * 4];
+    }
+
+    /**
+     * @return the number of records in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes all the records keeping the allocated memory.
+     */
+    public void clear() {
+        Arrays.fill(readNames, 0, size, null);
+        Arrays.fill(readGroups, 0, size, null);
+        Arrays.fill(sequenceIds, 0, size, null);
+        Arrays.fill(objects, 0, objectsSize, null);
+
+        size = 0;
+        shapeSize = 0;
+        bytesSize = 0;
+        shortsSize = 0;
+        intsSize = 0;
+        longsSize = 0;
+        objectsSize = 0;
+    }
+
+    /**
+     * Appends the record to the batch copying all its components.
+     *
+     * @return this batch
+     */
+    @Override
+    public RecordBatch build(
+            final long readId,
+            final String readName,
+            final String readGroup,
+            final boolean read1First,
+            final boolean unpaired,
+            final byte[][] sequenceBytes,
+            final short[][][] qualityValues,
+            final SequenceIdentifier sequenceId,
+            final long[][] mappingPositionsSegment0,
+            final SplitType[] splitMate,
+            final SequenceIdentifier[] sequenceMappingPositionSegment1,
+            final long[][] mappingPositionsSegment1,
+            final long[][][] lengthSplices,
+            final byte[][][][] operationType,
+            final int[][][][] operationLength,
+            final byte[][][][] originalBase,
+            final boolean[][][] reverseCompliment,
+            final long[][][] mapping_score,
+            final int[][] alignPtr) {
+
+        begin(readId, readName, readGroup, read1First, unpaired, sequenceId);
+
+        putBytes(sequenceBytes);
+        putShorts(qualityValues);
+        putLongs(mappingPositionsSegment0);
+        putObjects(splitMate);
+        putObjects(sequenceMappingPositionSegment1);
+        putLongs(mappingPositionsSegment1);
+        putLongs(lengthSplices);
+        putBytes(operationType);
+        putInts(operationLength);
+        putBytes(originalBase);
+        putBooleans(reverseCompliment);
+        putLongs(mapping_score);
+        putInts(alignPtr);
+
+        return end();
+    }
+
+    /**
+     * <p>
+     * Starts appending the record component by component.
+     * </p>
+     *
+     * The components are written with the put methods in the order of the
+     * {@link #build} parameters (the sequence identifier excluded), a nested
+     * array as its length ({@link #putArray(int)}) followed by its elements.
+     * The record is completed by {@link #end()}.
+     *
+     * @return this batch
+     */
+    public RecordBatch begin(
+            final long readId,
+            final String readName,
+            final String readGroup,
+            final boolean read1First,
+            final boolean unpaired,
+            final SequenceIdentifier sequenceId) {
+
+        if (size == readIds.length) {
+            final int capacity = size * 2;
+            readIds = Arrays.copyOf(readIds, capacity);
+            readNames = Arrays.copyOf(readNames, capacity);
+            readGroups = Arrays.copyOf(readGroups, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            sequenceIds = Arrays.copyOf(sequenceIds, capacity);
+            starts = Arrays.copyOf(starts, capacity * STARTS);
+        }
+
+        readIds[size] = readId;
+        readNames[size] = readName;
+        readGroups[size] = readGroup;
+        flags[size] = (byte)((read1First ? READ1_FIRST : 0) | (unpaired ? UNPAIRED : 0));
+        sequenceIds[size] = sequenceId;
+
+        final int start = size * STARTS;
+        starts[start] = shapeSize;
+        starts[start + 1] = bytesSize;
+        starts[start + 2] = shortsSize;
+        starts[start + 3] = intsSize;
+        starts[start + 4] = longsSize;
+        starts[start + 5] = objectsSize;
+
+        return this;
+    }
+
+    /**
+     * Completes the record started by {@link #begin}.
+     *
+     * @return this batch
+     */
+    public RecordBatch end() {
+        size++;
+        return this;
+    }
+
+    /**
+     * Appends the record to the batch.
+     *
+     * @param record the record to copy
+     */
+    public void add(final Record record) {
+        build(record.getReadId(),
+              record.getReadName(),
+              record.getReadGroup(),
+              record.isRead1First(),
+              record.isUnpaired(),
+              record.getSequenceBytes(),
+              record.getQualityValues(),
+              record.getSequenceId(),
+              record.getMappingPositionsSegment0(),
+              record.getSplitMate(),
+              record.getSequenceIdSegment1(),
+              record.getMappingPositionsSegment1(),
+              record.getSpliceLengths(),
+              record.getOperationType(),
+              record.getOperationLength(),
+              record.getOriginalBase(),
+              record.getReverseCompliment(),
+              record.getMappingScore(),
+              record.getAlignPtr());
+    }
+
+    /**
+     * Materializes the record.
+     *
+     * @param index the index of the record in the batch
+     *
+     * @return newly created record
+     */
+    public Record getRecord(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return new Reader(index).read();
+    }
+
+    /**
+     * @return new cursor positioned before the first record
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    private void putShape(final int value) {
+        if (shapeSize == shape.length) {
+            shape = Arrays.copyOf(shape, shape.length * 2);
+        }
+        shape[shapeSize++] = value;
+    }
+
+    /**
+     * Starts the nested array which elements are written next.
+     *
+     * @param length the number of the array elements
+     */
+    public void putArray(final int length) {
+        putShape(length);
+    }
+
+    /**
+     * Writes the null array of any depth.
+     */
+    public void putNull() {
+        putShape(NULL);
+    }
+
+    public void putBytes(final byte[] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putBytes(values, 0, values.length);
+    }
+
+    public void putBytes(final byte[] values, final int offset, final int length) {
+        putShape(length);
+        if (bytesSize + length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, bytesSize + length));
+        }
+        System.arraycopy(values, offset, bytes, bytesSize, length);
+        bytesSize += length;
+    }
+
+    public void putBytes(final byte[][] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putShape(values.length);
+        for (byte[] value : values) {
+            putBytes(value);
+        }
+    }
+
+    public void putBytes(final byte[][][] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putShape(values.length);
+        for (byte[][] value : values) {
+            putBytes(value);
+        }
+    }
+
+    public void putBytes(final byte[][][][] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putShape(values.length);
+        for (byte[][][] value : values) {
+            putBytes(value);
+        }
+    }
+
+    public void putBooleans(final boolean[] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putShape(values.length);
+        if (bytesSize + values.length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, bytesSize + values.length));
+        }
+        for (boolean value : values) {
+            bytes[bytesSize++] = value ? (byte)1 : 0;
+        }
+    }
+
+    public void putBooleans(final boolean[][] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putShape(values.length);
+        for (boolean[] value : values) {
+            putBooleans(value);
+        }
+    }
+
+    public void putBooleans(final boolean[][][] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putShape(values.length);
+        for (boolean[][] value : values) {
+            putBooleans(value);
+        }
+    }
+
+    public void putShorts(final short[] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putShorts(values, 0, values.length);
+    }
+
+    public void putShorts(final short[] values, final int offset, final int length) {
+        putShape(length);
+        if (shortsSize + length > shorts.length) {
+            shorts = Arrays.copyOf(shorts, Math.max(shorts.length * 2, shortsSize + length));
+        }
+        System.arraycopy(values, offset, shorts, shortsSize, length);
+        shortsSize += length;
+    }
+
+    public void putShorts(final short[][] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putShape(values.length);
+        for (short[] value : values) {
+            putShorts(value);
+        }
+    }
+
+    public void putShorts(final short[][][] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putShape(values.length);
+        for (short[][] value : values) {
+            putShorts(value);
+        }
+    }
+
+    public void putInts(final int[] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putInts(values, 0, values.length);
+    }
+
+    public void putInts(final int[] values, final int offset, final int length) {
+        putShape(length);
+        if (intsSize + length > ints.length) {
+            ints = Arrays.copyOf(ints, Math.max(ints.length * 2, intsSize + length));
+        }
+        System.arraycopy(values, offset, ints, intsSize, length);
+        intsSize += length;
+    }
+
+    public void putInts(final int[][] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putShape(values.length);
+        for (int[] value : values) {
+            putInts(value);
+        }
+    }
+
+    public void putInts(final int[][][] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putShape(values.length);
+        for (int[][] value : values) {
+            putInts(value);
+        }
+    }
+
+    public void putInts(final int[][][][] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putShape(values.length);
+        for (int[][][] value : values) {
+            putInts(value);
+        }
+    }
+
+    public void putLongs(final long[] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putShape(values.length);
+        if (longsSize + values.length > longs.length) {
+            longs = Arrays.copyOf(longs, Math.max(longs.length * 2, longsSize + values.length));
+        }
+        System.arraycopy(values, 0, longs, longsSize, values.length);
+        longsSize += values.length;
+    }
+
+    public void putLongs(final long[][] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putShape(values.length);
+        for (long[] value : values) {
+            putLongs(value);
+        }
+    }
+
+    public void putLongs(final long[][][] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putShape(values.length);
+        for (long[][] value : values) {
+            putLongs(value);
+        }
+    }
+
+    public void putObjects(final Object[] values) {
+        if (values == null) {
+            putShape(NULL);
+            return;
+        }
+        putShape(values.length);
+        if (objectsSize + values.length > objects.length) {
+            objects = Arrays.copyOf(objects, Math.max(objects.length * 2, objectsSize + values.length));
+        }
+        System.arraycopy(values, 0, objects, objectsSize, values.length);
+        objectsSize += values.length;
+    }
+
+    /**
+     * Reconstructs the record nested arrays reading the pools sequentially.
+     */
+    private class Reader {
+        private final int index;
+
+        private int shapePos;
+        private int bytesPos;
+        private int shortsPos;
+        private int intsPos;
+        private int longsPos;
+        private int objectsPos;
+
+        Reader(final int index) {
+            this.index = index;
+
+            final int start = index * STARTS;
+            shapePos = starts[start];
+            bytesPos = starts[start + 1];
+            shortsPos = starts[start + 2];
+            intsPos = starts[start + 3];
+            longsPos = starts[start + 4];
+            objectsPos = starts[start + 5];
+        }
+
+        Record read() {
+            final byte[][] sequenceBytes = nextBytes2D();
+            final short[][][] qualityValues = nextShorts3D();
+            final long[][] mappingPositionsSegment0 = nextLongs2D();
+            final SplitType[] splitMate = nextObjects(SplitType.class);
+            final SequenceIdentifier[] sequenceMappingPositionSegment1 =
+                    nextObjects(SequenceIdentifier.class);
+            final long[][] mappingPositionsSegment1 = nextLongs2D();
+            final long[][][] lengthSplices = nextLongs3D();
+            final byte[][][][] operationType = nextBytes4D();
+            final int[][][][] operationLength = nextInts4D();
+            final byte[][][][] originalBase = nextBytes4D();
+            final boolean[][][] reverseCompliment = nextBooleans3D();
+            final long[][][] mapping_score = nextLongs3D();
+            final int[][] alignPtr = nextInts2D();
+
+            return new Record(
+                    readIds[index],
+                    readNames[index],
+                    readGroups[index],
+                    (flags[index] & READ1_FIRST) != 0,
+                    (flags[index] & UNPAIRED) != 0,
+                    sequenceBytes,
+                    qualityValues,
+                    sequenceIds[index],
+                    mappingPositionsSegment0,
+                    splitMate,
+                    sequenceMappingPositionSegment1,
+                    mappingPositionsSegment1,
+                    lengthSplices,
+                    operationType,
+                    operationLength,
+                    originalBase,
+                    reverseCompliment,
+                    mapping_score,
+                    alignPtr);
+        }
+
+        private byte[] nextBytes() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final byte[] values = Arrays.copyOfRange(bytes, bytesPos, bytesPos + length);
+            bytesPos += length;
+            return values;
+        }
+
+        private byte[][] nextBytes2D() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final byte[][] values = new byte[length][];
+            for (int i = 0; i < length; i++) {
+                values[i] = nextBytes();
+            }
+            return values;
+        }
+
+        private byte[][][] nextBytes3D() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final byte[][][] values = new byte[length][][];
+            for (int i = 0; i < length; i++) {
+                values[i] = nextBytes2D();
+            }
+            return values;
+        }
+
+        private byte[][][][] nextBytes4D() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final byte[][][][] values = new byte[length][][][];
+            for (int i = 0; i < length; i++) {
+                values[i] = nextBytes3D();
+            }
+            return values;
+        }
+
+        private boolean[] nextBooleans() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final boolean[] values = new boolean[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = bytes[bytesPos++] != 0;
+            }
+            return values;
+        }
+
+        private boolean[][] nextBooleans2D() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final boolean[][] values = new boolean[length][];
+            for (int i = 0; i < length; i++) {
+                values[i] = nextBooleans();
+            }
+            return values;
+        }
+
+        private boolean[][][] nextBooleans3D() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final boolean[][][] values = new boolean[length][][];
+            for (int i = 0; i < length; i++) {
+                values[i] = nextBooleans2D();
+            }
+            return values;
+        }
+
+        private short[] nextShorts() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final short[] values = Arrays.copyOfRange(shorts, shortsPos, shortsPos + length);
+            shortsPos += length;
+            return values;
+        }
+
+        private short[][] nextShorts2D() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final short[][] values = new short[length][];
+            for (int i = 0; i < length; i++) {
+                values[i] = nextShorts();
+            }
+            return values;
+        }
+
+        private short[][][] nextShorts3D() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final short[][][] values = new short[length][][];
+            for (int i = 0; i < length; i++) {
+                values[i] = nextShorts2D();
+            }
+            return values;
+        }
+
+        private int[] nextInts() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final int[] values = Arrays.copyOfRange(ints, intsPos, intsPos + length);
+            intsPos += length;
+            return values;
+        }
+
+        private int[][] nextInts2D() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final int[][] values = new int[length][];
+            for (int i = 0; i < length; i++) {
+                values[i] = nextInts();
+            }
+            return values;
+        }
+
+        private int[][][] nextInts3D() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final int[][][] values = new int[length][][];
+            for (int i = 0; i < length; i++) {
+                values[i] = nextInts2D();
+            }
+            return values;
+        }
+
+        private int[][][][] nextInts4D() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final int[][][][] values = new int[length][][][];
+            for (int i = 0; i < length; i++) {
+                values[i] = nextInts3D();
+            }
+            return values;
+        }
+
+        private long[] nextLongs() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final long[] values = Arrays.copyOfRange(longs, longsPos, longsPos + length);
+            longsPos += length;
+            return values;
+        }
+
+        private long[][] nextLongs2D() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final long[][] values = new long[length][];
+            for (int i = 0; i < length; i++) {
+                values[i] = nextLongs();
+            }
+            return values;
+        }
+
+        private long[][][] nextLongs3D() {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final long[][][] values = new long[length][][];
+            for (int i = 0; i < length; i++) {
+                values[i] = nextLongs2D();
+            }
+            return values;
+        }
+
+        private <T> T[] nextObjects(final Class<T> clazz) {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return null;
+            }
+            final T[] values = (T[])Array.newInstance(clazz, length);
+            for (int i = 0; i < length; i++) {
+                values[i] = clazz.cast(objects[objectsPos++]);
+            }
+            return values;
+        }
+    }
+
+    /**
+     * <p>
+     * Reusable view of the batch records.
+     * </p>
+     *
+     * The cursor gives access to the record components straight from the
+     * batch pools without creating any objects.
+     * The cursor is invalidated by any modification of the batch.
+     */
+    public class Cursor {
+        private int index;
+
+        // shape and pool positions of every record component
+        private final int[] componentShapes;
+        private final int[] componentPools;
+        private final int[] positions;
+
+        // position of the nested array being walked
+        private int shapePos;
+        private int poolPos;
+
+        private int numberSegments;
+        private int[] sequenceOffsets;
+        private int[] sequenceLengths;
+        private int[] qualitiesOffsets;
+        private int[] qualitiesLengths;
+        private long mappingPosition;
+
+        private Cursor() {
+            index = -1;
+            componentShapes = new int[DEPTHS.length];
+            componentPools = new int[DEPTHS.length];
+            positions = new int[STARTS];
+            sequenceOffsets = new int[2];
+            sequenceLengths = new int[2];
+            qualitiesOffsets = new int[2];
+            qualitiesLengths = new int[2];
+        }
+
+        /**
+         * Moves the cursor to the next record.
+         *
+         * @return false if there are no more records
+         */
+        public boolean next() {
+            if (index + 1 >= size) {
+                return false;
+            }
+            moveTo(index + 1);
+            return true;
+        }
+
+        /**
+         * Moves the cursor to the record.
+         *
+         * @param index the index of the record in the batch
+         *
+         * @return this cursor
+         */
+        public Cursor moveTo(final int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(Integer.toString(index));
+            }
+            this.index = index;
+
+            System.arraycopy(starts, index * STARTS, positions, 0, STARTS);
+            for (int component = 0; component < DEPTHS.length; component++) {
+                final int pool = POOLS[component];
+                componentShapes[component] = shapePos = positions[0];
+                componentPools[component] = poolPos = positions[pool];
+                skip(DEPTHS[component]);
+                positions[0] = shapePos;
+                positions[pool] = poolPos;
+            }
+
+            numberSegments = getLength(SEQUENCE_BYTES);
+            if (numberSegments > sequenceOffsets.length) {
+                sequenceOffsets = new int[numberSegments];
+                sequenceLengths = new int[numberSegments];
+                qualitiesOffsets = new int[numberSegments];
+                qualitiesLengths = new int[numberSegments];
+            }
+            for (int segment_i = 0; segment_i < numberSegments; segment_i++) {
+                sequenceLengths[segment_i] = locate(SEQUENCE_BYTES, 1, segment_i, 0, 0);
+                sequenceOffsets[segment_i] = poolPos;
+                qualitiesLengths[segment_i] = locate(QUALITY_VALUES, 2, segment_i, 0, 0);
+                qualitiesOffsets[segment_i] = poolPos;
+            }
+
+            mappingPosition = locate(MAPPING_POSITIONS_SEGMENT0, 1, 0, 0, 0) > 0 ? longs[poolPos] : NULL;
+
+            return this;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getReadId() {
+            return readIds[index];
+        }
+
+        public String getReadName() {
+            return readNames[index];
+        }
+
+        public String getReadGroup() {
+            return readGroups[index];
+        }
+
+        public boolean isRead1First() {
+            return (flags[index] & READ1_FIRST) != 0;
+        }
+
+        public boolean isUnpaired() {
+            return (flags[index] & UNPAIRED) != 0;
+        }
+
+        public SequenceIdentifier getSequenceId() {
+            return sequenceIds[index];
+        }
+
+        /**
+         * @return the mapping position of the first splice of the first
+         *         alignment of the first segment or -1 if there is none
+         */
+        public long getMappingPosition() {
+            return mappingPosition;
+        }
+
+        /**
+         * @return the number of segments the record stores the sequences for
+         */
+        public int getNumberSegments() {
+            return numberSegments;
+        }
+
+        /**
+         * @param segment the segment index
+         *
+         * @return the length of the segment sequence or -1 if it is absent
+         */
+        public int getSequenceLength(final int segment) {
+            return sequenceLengths[checkSegment(segment)];
+        }
+
+        public byte getBase(final int segment, final int position) {
+            return bytes[sequenceOffsets[checkSegment(segment)] + position];
+        }
+
+        /**
+         * Copies the segment sequence into the array.
+         *
+         * @param segment the segment index
+         * @param dst destination array
+         * @param offset position in the destination array
+         */
+        public void copySequence(final int segment, final byte[] dst, final int offset) {
+            final int length = sequenceLengths[checkSegment(segment)];
+            if (length > 0) {
+                System.arraycopy(bytes, sequenceOffsets[segment], dst, offset, length);
+            }
+        }
+
+        /**
+         * @param segment the segment index
+         *
+         * @return the number of the segment qualities (of the first set)
+         *         or -1 if there are none
+         */
+        public int getQualitiesLength(final int segment) {
+            return qualitiesLengths[checkSegment(segment)];
+        }
+
+        public short getQuality(final int segment, final int position) {
+            return shorts[qualitiesOffsets[checkSegment(segment)] + position];
+        }
+
+        /**
+         * Copies the segment qualities (of the first set) into the array.
+         *
+         * @param segment the segment index
+         * @param dst destination array
+         * @param offset position in the destination array
+         */
+        public void copyQualities(final int segment, final short[] dst, final int offset) {
+            final int length = qualitiesLengths[checkSegment(segment)];
+            if (length > 0) {
+                System.arraycopy(shorts, qualitiesOffsets[segment], dst, offset, length);
+            }
+        }
+
+        /**
+         * @return the number of the first segment alignments
+         */
+        public int getNumberAlignments() {
+            return getLength(MAPPING_POSITIONS_SEGMENT0);
+        }
+
+        /**
+         * @param alignment the alignment of the first segment
+         *
+         * @return the number of the alignment splices or -1 if there are none
+         */
+        public int getNumberSplices(final int alignment) {
+            return locate(MAPPING_POSITIONS_SEGMENT0, 1, alignment, 0, 0);
+        }
+
+        public long getMappingPosition(final int alignment, final int splice) {
+            return longs[leaf(locate(MAPPING_POSITIONS_SEGMENT0, 1, alignment, 0, 0), splice)];
+        }
+
+        /**
+         * @return the number of the second segment alignments
+         */
+        public int getNumberAlignmentsSegment1() {
+            return getLength(MAPPING_POSITIONS_SEGMENT1);
+        }
+
+        /**
+         * @param alignment the alignment of the second segment
+         *
+         * @return the number of the alignment splices or -1 if there are none
+         */
+        public int getNumberSplicesSegment1(final int alignment) {
+            return locate(MAPPING_POSITIONS_SEGMENT1, 1, alignment, 0, 0);
+        }
+
+        public long getMappingPositionSegment1(final int alignment, final int splice) {
+            return longs[leaf(locate(MAPPING_POSITIONS_SEGMENT1, 1, alignment, 0, 0), splice)];
+        }
+
+        public SplitType getSplitMate(final int alignment) {
+            return (SplitType)objects[leaf(locate(SPLIT_MATE, 0, 0, 0, 0), alignment)];
+        }
+
+        /**
+         * @param alignment the alignment of the second segment
+         *
+         * @return the sequence of the alignment or null if there are none
+         */
+        public SequenceIdentifier getSequenceIdSegment1(final int alignment) {
+            final int length = locate(SEQUENCE_ID_SEGMENT1, 0, 0, 0, 0);
+            return length == NULL ? null : (SequenceIdentifier)objects[leaf(length, alignment)];
+        }
+
+        /**
+         * @return the number of segments the record stores the alignment
+         *         operations for
+         */
+        public int getNumberAlignedSegments() {
+            return getLength(OPERATION_TYPE);
+        }
+
+        /**
+         * @return the number of the operations or -1 if there are none
+         */
+        public int getNumberOperations(final int segment, final int alignment, final int splice) {
+            return locate(OPERATION_TYPE, 3, segment, alignment, splice);
+        }
+
+        public void copyOperations(
+                final int segment,
+                final int alignment,
+                final int splice,
+                final byte[] dst) {
+
+            final int length = locate(OPERATION_TYPE, 3, segment, alignment, splice);
+            if (length > 0) {
+                System.arraycopy(bytes, poolPos, dst, 0, length);
+            }
+        }
+
+        public void copyOperationLengths(
+                final int segment,
+                final int alignment,
+                final int splice,
+                final int[] dst) {
+
+            final int length = locate(OPERATION_LENGTH, 3, segment, alignment, splice);
+            if (length > 0) {
+                System.arraycopy(ints, poolPos, dst, 0, length);
+            }
+        }
+
+        /**
+         * @return the number of the substituted and deleted reference bases
+         *         or -1 if there are none
+         */
+        public int getNumberOriginalBases(final int segment, final int alignment, final int splice) {
+            return locate(ORIGINAL_BASE, 3, segment, alignment, splice);
+        }
+
+        public void copyOriginalBases(
+                final int segment,
+                final int alignment,
+                final int splice,
+                final byte[] dst) {
+
+            final int length = locate(ORIGINAL_BASE, 3, segment, alignment, splice);
+            if (length > 0) {
+                System.arraycopy(bytes, poolPos, dst, 0, length);
+            }
+        }
+
+        public boolean isReverseCompliment(final int segment, final int alignment, final int splice) {
+            return bytes[leaf(locate(REVERSE_COMPLIMENT, 2, segment, alignment, 0), splice)] != 0;
+        }
+
+        /**
+         * @return the number of the alignments pairs
+         */
+        public int getNumberAlignPairs() {
+            return getLength(ALIGN_PTR);
+        }
+
+        /**
+         * @param pair the alignments pair
+         * @param segment the segment index
+         *
+         * @return the alignment of the segment in the pair
+         */
+        public int getAlignPtr(final int pair, final int segment) {
+            return ints[leaf(locate(ALIGN_PTR, 1, pair, 0, 0), segment)];
+        }
+
+        /**
+         * @return newly created record the cursor is positioned at
+         */
+        public Record toRecord() {
+            return getRecord(index);
+        }
+
+        private int checkSegment(final int segment) {
+            if (segment < 0 || segment >= numberSegments) {
+                throw new IndexOutOfBoundsException(Integer.toString(segment));
+            }
+            return segment;
+        }
+
+        /**
+         * @return the length of the component outer array, 0 for null
+         */
+        private int getLength(final int component) {
+            return Math.max(0, shape[componentShapes[component]]);
+        }
+
+        /**
+         * Finds the nested array of the component element leaving its pool
+         * position in the <code>poolPos</code>.
+         *
+         * @param component the record component
+         * @param indexes the number of the indexes to descend by
+         *
+         * @return the length of the found array or -1 if it is null or absent
+         */
+        private int locate(
+                final int component,
+                final int indexes,
+                final int i,
+                final int j,
+                final int k) {
+
+            shapePos = componentShapes[component];
+            poolPos = componentPools[component];
+
+            int depth = DEPTHS[component];
+            for (int level = 0; level < indexes; level++) {
+                final int length = shape[shapePos++];
+                final int element = level == 0 ? i : level == 1 ? j : k;
+                if (length == NULL || element < 0 || element >= length) {
+                    return NULL;
+                }
+                depth--;
+                for (int n = 0; n < element; n++) {
+                    skip(depth);
+                }
+            }
+            return shape[shapePos];
+        }
+
+        /**
+         * @return the pool position of the found array element
+         */
+        private int leaf(final int length, final int element) {
+            if (element < 0 || element >= length) {
+                throw new IndexOutOfBoundsException(Integer.toString(element));
+            }
+            return poolPos + element;
+        }
+
+        /**
+         * Moves over the nested array of the depth.
+         */
+        private void skip(final int depth) {
+            final int length = shape[shapePos++];
+            if (length == NULL) {
+                return;
+            }
+            if (depth == 1) {
+                poolPos += length;
+            } else {
+                for (int i = 0; i < length; i++) {
+                    skip(depth - 1);
+                }
+            }
+        }
+    }
+}
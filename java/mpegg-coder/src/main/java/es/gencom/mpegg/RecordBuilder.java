@@ -0,0 +1,68 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.mpegg;
+
+import es.gencom.mpegg.format.SequenceIdentifier;
+
+/**
+ * <p>
+ * Consumer of the decoded record components.
+ * </p>
+ *
+ * Decoders pass the record components to the builder instead of creating
+ * the Record directly, so the same decoder either creates records
+ * (<code>Record::new</code>) or appends them to the columnar
+ * {@link RecordBatch} without the intermediate objects.
+ * Decoders never reuse the component arrays, so the builder may keep them.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ *
+ * @param <T> the type of the result
+ */
+
+@FunctionalInterface
+public interface RecordBuilder<T> {
+
+    T build(long readId,
+            String readName,
+            String readGroup,
+            boolean read1First,
+            boolean unpaired,
+            byte[][] sequenceBytes,
+            short[][][] qualityValues,
+            SequenceIdentifier sequenceId,
+            long[][] mappingPositionsSegment0,
+            SplitType[] splitMate,
+            SequenceIdentifier[] sequenceMappingPositionSegment1,
+            long[][] mappingPositionsSegment1,
+            long[][][] lengthSplices,
+            byte[][][][] operationType,
+            int[][][][] operationLength,
+            byte[][][][] originalBase,
+            boolean[][][] reverseCompliment,
+            long[][][] mapping_score,
+            int[][] alignPtr);
+}
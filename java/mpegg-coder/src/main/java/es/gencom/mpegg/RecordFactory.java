@@ -330,6 +330,41 @@ public class RecordFactory {
             boolean[][] reverseCompliment,
             long[][] mapping_score) {
 
+        return createOneAlignedOneUnmapped(
+                Record::new,
+                readId,
+                readName,
+                readGroup,
+                read1First,
+                sequenceBytes,
+                qualityValues,
+                sequenceId,
+                mappingPositionsSegment0,
+                operationType,
+                operationLength,
+                originalBase,
+                spliceLength,
+                reverseCompliment,
+                mapping_score);
+    }
+
+    public static <T> T createOneAlignedOneUnmapped(
+            RecordBuilder<T> builder,
+            long readId,
+            String readName,
+            String readGroup,
+            boolean read1First,
+            byte[][] sequenceBytes,
+            short[][][] qualityValues,
+            SequenceIdentifier sequenceId,
+            long[][] mappingPositionsSegment0,
+            byte[][][] operationType,
+            int[][][] operationLength,
+            byte[][][] originalBase,
+            long[][][] spliceLength,
+            boolean[][] reverseCompliment,
+            long[][] mapping_score) {
+
         byte[][][][] operationTypeResized = new byte[][][][]{operationType};
         int[][][][] operationLengthResized = new int[][][][]{operationLength};
         byte[][][][] originalBaseResized = new byte[][][][]{originalBase};
@@ -337,7 +372,7 @@ public class RecordFactory {
         long[][][] mapping_scoreResized = new long[][][]{mapping_score};
         SplitType[] splitTypes = new SplitType[]{SplitType.UnmappedSameRecord};
 
-        return new Record(
+        return builder.build(
                 readId,
                 readName,
                 readGroup,
@@ -27,6 +27,7 @@ package es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders;
 
 import es.gencom.SubstreamsPerDescriptor;
 import es.gencom.mpegg.coder.quality.AbstractQualityValueParameterSet;
+import es.gencom.mpegg.AlignmentBatch;
 import es.gencom.mpegg.Record;
 import es.gencom.mpegg.format.DATA_CLASS;
 import es.gencom.mpegg.coder.compression.ALPHABET_ID;
@@ -45,8 +46,16 @@ import es.gencom.mpegg.coder.dataunits.DataUnitParameters;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public abstract class AbstractAccessUnitEncoder {
     private final AbstractQualityValueParameterSet qualityValueParameterSet;
@@ -68,8 +77,9 @@ public abstract class AbstractAccessUnitEncoder {
     private final boolean splicedRead;
     private final boolean multipleAlignment;
 
-    protected final long[][][] symbols;
-    protected final byte[][][] auxiliaryData_symbols;
+    protected final SymbolsBuffer[][] symbols;
+    protected final SymbolsBuffer[][] auxiliaryData_symbols;
+    private final SymbolsBuffer.Allocation allocation;
     protected final int[][] number_symbols;
     protected final int[][] number_auxiliaryDataSymbols;
 
@@ -77,7 +87,6 @@ public abstract class AbstractAccessUnitEncoder {
     protected final DATA_CLASS auType;
 
     private final DataUnitParameters dataUnitParameters;
-    private long totalSizeInMemory;
 
 
     public AbstractAccessUnitEncoder(
@@ -107,8 +116,15 @@ public abstract class AbstractAccessUnitEncoder {
         this.readIdentifierEncoder = readIdentifierEncoder;
         this.numberTemplateSegments = encodingParameters.getNumberOfTemplateSegments();
 
-        symbols = new long[DESCRIPTOR_ID.values().length][10][1024];
-        auxiliaryData_symbols = new byte[DESCRIPTOR_ID.values().length][10][1024];
+        allocation = new SymbolsBuffer.Allocation();
+        symbols = new SymbolsBuffer[DESCRIPTOR_ID.values().length][10];
+        auxiliaryData_symbols = new SymbolsBuffer[DESCRIPTOR_ID.values().length][10];
+        for(int descriptor_i = 0; descriptor_i < symbols.length; descriptor_i++){
+            for(int subsequence_i = 0; subsequence_i < symbols[descriptor_i].length; subsequence_i++){
+                symbols[descriptor_i][subsequence_i] = new SymbolsBuffer(allocation);
+                auxiliaryData_symbols[descriptor_i][subsequence_i] = new SymbolsBuffer(allocation);
+            }
+        }
         number_symbols = new int[DESCRIPTOR_ID.values().length][10];
         number_auxiliaryDataSymbols = new int[DESCRIPTOR_ID.values().length][10];
 
@@ -131,78 +147,101 @@ public abstract class AbstractAccessUnitEncoder {
             long symbol,
             DESCRIPTOR_ID descriptor_id,
             byte subsequence_id,
-            long[][][] symbols,
+            SymbolsBuffer[][] symbols,
             int[][] numberSymbols
     ){
-        symbols[descriptor_id.ID][subsequence_id][numberSymbols[descriptor_id.ID][subsequence_id]] = symbol;
+        symbols[descriptor_id.ID][subsequence_id].set(numberSymbols[descriptor_id.ID][subsequence_id], symbol);
         numberSymbols[descriptor_id.ID][subsequence_id]++;
-        if(numberSymbols[descriptor_id.ID][subsequence_id] == symbols[descriptor_id.ID][subsequence_id].length){
-            symbols[descriptor_id.ID][subsequence_id] = Arrays.copyOf(
-                    symbols[descriptor_id.ID][subsequence_id],
-                    symbols[descriptor_id.ID][subsequence_id].length*2
-            );
-        }
     }
 
     protected static void addAuxiliarySymbol(
             byte symbol,
             DESCRIPTOR_ID descriptor_id,
             byte subsequence_id,
-            byte[][][] symbols,
+            SymbolsBuffer[][] symbols,
             int[][] numberSymbols
     ){
-        symbols[descriptor_id.ID][subsequence_id][numberSymbols[descriptor_id.ID][subsequence_id]] = symbol;
+        symbols[descriptor_id.ID][subsequence_id].set(numberSymbols[descriptor_id.ID][subsequence_id], symbol & 0xFF);
         numberSymbols[descriptor_id.ID][subsequence_id]++;
-        if(numberSymbols[descriptor_id.ID][subsequence_id] == symbols[descriptor_id.ID][subsequence_id].length){
-            symbols[descriptor_id.ID][subsequence_id] = Arrays.copyOf(
-                    symbols[descriptor_id.ID][subsequence_id],
-                    symbols[descriptor_id.ID][subsequence_id].length*2
-            );
-        }
+    }
+
+    /**
+     * Grows the number of the subsequence symbols up to the given one.
+     * The symbols which were never added are zeros and are not stored,
+     * so the zero tail of the subsequence costs no memory.
+     */
+    protected static void growNumberSymbols(
+            int number,
+            DESCRIPTOR_ID descriptor_id,
+            byte subsequence_id,
+            int[][] numberSymbols
+    ){
+        numberSymbols[descriptor_id.ID][subsequence_id] = Integer.max(
+                numberSymbols[descriptor_id.ID][subsequence_id], number);
     }
 
     public void write(Record record) throws IOException{
         readIdentifierEncoder.encode(record.getReadName());
-        for(byte[] val1 : record.getSequenceBytes()){
-            if(val1 != null) {
-                totalSizeInMemory += val1.length;
-            }
-        }
         writeSpecific(record);
     }
 
     protected abstract void writeSpecific(Record record) throws IOException;
 
+    /**
+     * Writes the template stored in the batch without materializing
+     * the <code>Record</code>.
+     *
+     * @param batch the batch of templates
+     * @param index the index of the template in the batch
+     *
+     * @throws IOException
+     */
+    public void write(AlignmentBatch batch, int index) throws IOException{
+        readIdentifierEncoder.encode(batch.getReadName(index));
+        writeSpecific(batch, index);
+    }
+
+    protected abstract void writeSpecific(AlignmentBatch batch, int index) throws IOException;
+
     public long getReadCount(){
         return readCount;
     }
 
     public void writeDescriptors(MPEGWriter output) throws IOException {
+        writeDescriptors(output, null);
+    }
+
+    /**
+     * <p>
+     * Encodes and writes all descriptors of the access unit.
+     * </p>
+     *
+     * When the executor is provided, every descriptor subsequence (as well as
+     * read identifiers) is entropy coded as a separate task. The blocks are
+     * still written in the canonical descriptors order, so the result is the
+     * same as for the sequential encoding.
+     *
+     * @param output the writer to write descriptor blocks to
+     * @param executor the executor to encode subsequences on or null
+     *
+     * @throws IOException
+     */
+    public void writeDescriptors(
+            final MPEGWriter output,
+            final ExecutorService executor) throws IOException {
+
+        final List<List<Future<Payload>>> futures =
+                new ArrayList<>(Collections.nCopies(symbols.length, null));
         for(int descriptor_i = 0; descriptor_i < symbols.length; descriptor_i++){
             if(descriptor_i == DESCRIPTOR_ID.RNAME.ID){
-
-                MSBitOutputArray tmpOutput = new MSBitOutputArray();
-
-                EncodedTokensWriter.write(
-                        tmpOutput,
-                        readIdentifierEncoder,
-                        DESCRIPTOR_ID.RNAME,
-                        dataUnitParameters.getEncodingParameters().getDecoderConfiguration(DESCRIPTOR_ID.RNAME, auType)
-                );
-                tmpOutput.flush();
-
-                DataUnitAccessUnit.Block block = new DataUnitAccessUnit.Block(
-                        DESCRIPTOR_ID.getDescriptorId((byte) descriptor_i),
-                        new Payload(ByteBuffer.wrap(tmpOutput.getArray()))
-                );
-                block.write(output);
-
+                futures.set(descriptor_i, Collections.singletonList(
+                        submit(executor, this::encodeReadIdentifiers)));
                 continue;
             }
 
             int numberPayloads_ = 0;
             for(int subsequence_i = 0; subsequence_i < symbols[descriptor_i].length; subsequence_i++) {
-                if(!(symbols[descriptor_i][subsequence_i] == null || number_symbols[descriptor_i][subsequence_i]==0)){
+                if(number_symbols[descriptor_i][subsequence_i] != 0){
                     numberPayloads_++;
                 }
             }
@@ -215,52 +254,136 @@ public abstract class AbstractAccessUnitEncoder {
                     dataUnitParameters.getEncodingParameters(),
                     auType
             );
-            Payload[] payloads = new Payload[subsequencesForDescriptor];
+            final List<Future<Payload>> descriptorFutures = new ArrayList<>(subsequencesForDescriptor);
+            futures.set(descriptor_i, descriptorFutures);
             for(int subsequence_i = 0; subsequence_i < subsequencesForDescriptor; subsequence_i++) {
-                InputStream externalReference = null;
-                if(number_auxiliaryDataSymbols[descriptor_i][subsequence_i] != 0) {
-                    if (number_auxiliaryDataSymbols[descriptor_i][subsequence_i]
-                            != number_symbols[descriptor_i][subsequence_i]) {
-                        throw new IllegalArgumentException("auxiliary data size and symbols size differ");
+                final int descriptor = descriptor_i;
+                final int subsequence = subsequence_i;
+                descriptorFutures.add(
+                        submit(executor, () -> encodeSubsequence(descriptor, subsequence)));
+            }
+        }
+
+        try {
+            for(int descriptor_i = 0; descriptor_i < futures.size(); descriptor_i++){
+                final List<Future<Payload>> descriptorFutures = futures.get(descriptor_i);
+                if(descriptorFutures == null){
+                    continue;
+                }
+                Payload[] payloads = new Payload[descriptorFutures.size()];
+                for(int subsequence_i = 0; subsequence_i < payloads.length; subsequence_i++) {
+                    payloads[subsequence_i] = get(descriptorFutures.get(subsequence_i));
+                }
+                DataUnitAccessUnit.Block block = new DataUnitAccessUnit.Block(
+                        DESCRIPTOR_ID.getDescriptorId((byte) descriptor_i), payloads);
+                block.write(output);
+            }
+        } finally {
+            for(List<Future<Payload>> descriptorFutures : futures){
+                if(descriptorFutures != null){
+                    for(Future<Payload> future : descriptorFutures){
+                        future.cancel(true);
                     }
-                    externalReference = new ByteArrayInputStream(auxiliaryData_symbols[descriptor_i][subsequence_i]);
                 }
+            }
+        }
+    }
 
-                MSBitOutputArray outputStream = new MSBitOutputArray();
-                outputStream.writeInt(Integer.reverseBytes(number_symbols[descriptor_i][subsequence_i]));
+    private static Future<Payload> submit(
+            final ExecutorService executor,
+            final Callable<Payload> task) {
 
+        if(executor != null){
+            return executor.submit(task);
+        }
 
-                DescriptorEncoder encoder;
+        final FutureTask<Payload> future = new FutureTask<>(task);
+        future.run();
+        return future;
+    }
 
+    private static Payload get(final Future<Payload> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
 
-                DescriptorDecoderConfiguration decoderConfiguration = dataUnitParameters
-                        .getEncodingParameters()
-                        .getDecoderConfiguration(
-                                DESCRIPTOR_ID.getDescriptorId((byte) descriptor_i),
-                                auType
-                        );
-                encoder = decoderConfiguration.getDescriptorEncoder(
-                        outputStream,
-                        DESCRIPTOR_ID.getDescriptorId((byte) descriptor_i),
-                        subsequence_i,
-                        getAlphabetId(),
-                        externalReference
-                );
+    private Payload encodeReadIdentifiers() throws IOException {
+        MSBitOutputArray tmpOutput = new MSBitOutputArray();
 
+        EncodedTokensWriter.write(
+                tmpOutput,
+                readIdentifierEncoder,
+                DESCRIPTOR_ID.RNAME,
+                dataUnitParameters.getEncodingParameters().getDecoderConfiguration(DESCRIPTOR_ID.RNAME, auType)
+        );
+        tmpOutput.flush();
 
-                for(int symbol_i = 0; symbol_i < number_symbols[descriptor_i][subsequence_i]; symbol_i++) {
-                    final long value = symbols[descriptor_i][subsequence_i][symbol_i];
-                    encoder.write(value);
+        return new Payload(ByteBuffer.wrap(tmpOutput.getArray()));
+    }
 
-                }
+    private Payload encodeSubsequence(
+            final int descriptor_i,
+            final int subsequence_i) throws IOException {
 
-                encoder.close();
-                payloads[subsequence_i] = new Payload(outputStream.toByteBuffer());
+        InputStream externalReference = null;
+        if(number_auxiliaryDataSymbols[descriptor_i][subsequence_i] != 0) {
+            if (number_auxiliaryDataSymbols[descriptor_i][subsequence_i]
+                    != number_symbols[descriptor_i][subsequence_i]) {
+                throw new IllegalArgumentException("auxiliary data size and symbols size differ");
             }
+            final SymbolsBuffer auxiliaryData = auxiliaryData_symbols[descriptor_i][subsequence_i];
+            final byte[] reference = new byte[number_auxiliaryDataSymbols[descriptor_i][subsequence_i]];
+            for(int i = 0; i < reference.length; i++){
+                reference[i] = (byte)auxiliaryData.get(i);
+            }
+            externalReference = new ByteArrayInputStream(reference);
+        }
+
+        MSBitOutputArray outputStream = new MSBitOutputArray();
+        outputStream.writeInt(Integer.reverseBytes(number_symbols[descriptor_i][subsequence_i]));
+
+
+        DescriptorEncoder encoder;
+
+
+        DescriptorDecoderConfiguration decoderConfiguration = dataUnitParameters
+                .getEncodingParameters()
+                .getDecoderConfiguration(
+                        DESCRIPTOR_ID.getDescriptorId((byte) descriptor_i),
+                        auType
+                );
+        encoder = decoderConfiguration.getDescriptorEncoder(
+                outputStream,
+                DESCRIPTOR_ID.getDescriptorId((byte) descriptor_i),
+                subsequence_i,
+                getAlphabetId(),
+                externalReference
+        );
+
+
+        final SymbolsBuffer values = symbols[descriptor_i][subsequence_i];
+        for(int symbol_i = 0; symbol_i < number_symbols[descriptor_i][subsequence_i]; symbol_i++) {
+            final long value = values.get(symbol_i);
+            encoder.write(value);
 
-            DataUnitAccessUnit.Block block = new DataUnitAccessUnit.Block(DESCRIPTOR_ID.getDescriptorId((byte) descriptor_i), payloads);
-            block.write(output);
         }
+
+        encoder.close();
+        return new Payload(outputStream.toByteBuffer());
     }
 
 
@@ -309,6 +432,62 @@ public abstract class AbstractAccessUnitEncoder {
         return alphabet_id;
     }
 
+    /**
+     * Gets the number of the descriptor subsequences the encoder buffers.
+     *
+     * @param descriptor_id the descriptor
+     *
+     * @return the number of the descriptor subsequences
+     */
+    public int getNumberSubsequences(DESCRIPTOR_ID descriptor_id){
+        return symbols[descriptor_id.ID] == null ? 0 : symbols[descriptor_id.ID].length;
+    }
+
+    /**
+     * Gets the number of the symbols buffered for the descriptor subsequence.
+     *
+     * @param descriptor_id the descriptor
+     * @param subsequence_id the descriptor subsequence
+     *
+     * @return the number of the subsequence symbols
+     */
+    public int getNumberSymbols(DESCRIPTOR_ID descriptor_id, int subsequence_id){
+        if(symbols[descriptor_id.ID] == null || subsequence_id >= symbols[descriptor_id.ID].length){
+            return 0;
+        }
+        return number_symbols[descriptor_id.ID][subsequence_id];
+    }
+
+    /**
+     * Gets the buffered symbol of the descriptor subsequence.
+     *
+     * @param descriptor_id the descriptor
+     * @param subsequence_id the descriptor subsequence
+     * @param index the index of the symbol (less than the number of symbols)
+     *
+     * @return the symbol value
+     */
+    public long getSymbol(DESCRIPTOR_ID descriptor_id, int subsequence_id, int index){
+        final SymbolsBuffer values = symbols[descriptor_id.ID][subsequence_id];
+        return values.get(index);
+    }
+
+    /**
+     * Checks whether the descriptor subsequence is coded with the auxiliary
+     * (i.e. reference) data.
+     *
+     * @param descriptor_id the descriptor
+     * @param subsequence_id the descriptor subsequence
+     *
+     * @return true if the subsequence has the auxiliary data
+     */
+    public boolean hasAuxiliaryData(DESCRIPTOR_ID descriptor_id, int subsequence_id){
+        if(symbols[descriptor_id.ID] == null || subsequence_id >= symbols[descriptor_id.ID].length){
+            return false;
+        }
+        return number_auxiliaryDataSymbols[descriptor_id.ID][subsequence_id] != 0;
+    }
+
     public short getNumberDescriptors(){
         short numberBlocks = 0;
         for(int descriptor_i=0; descriptor_i < symbols.length; descriptor_i++){
@@ -361,7 +540,15 @@ public abstract class AbstractAccessUnitEncoder {
         return qualityValueParameterSet;
     }
 
+    /**
+     * Gets the memory retained by the access unit being encoded: the
+     * buffered descriptors symbols, their auxiliary data and the read
+     * identifiers tokens. The buffers count their memory as they grow,
+     * so the call does not walk them.
+     *
+     * @return the size of the buffered data in bytes
+     */
     public long getTotalSizeInMemory() {
-        return totalSizeInMemory;
+        return allocation.getSize() + readIdentifierEncoder.getSizeInMemory();
     }
 }
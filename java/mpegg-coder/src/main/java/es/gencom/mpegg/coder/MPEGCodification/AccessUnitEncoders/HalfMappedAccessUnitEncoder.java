@@ -26,6 +26,7 @@
 package es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders;
 
 import es.gencom.mpegg.coder.quality.AbstractQualityValueParameterSet;
+import es.gencom.mpegg.AlignmentBatch;
 import es.gencom.mpegg.Record;
 import es.gencom.mpegg.coder.tokens.AbstractReadIdentifierEncoder;
 import es.gencom.mpegg.format.DATA_CLASS;
@@ -75,16 +76,6 @@ public class HalfMappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
         long lengthAU = Long.max(auEndPosition, extendedEndPosition) - Long.min(auStartPosition, extendedStartPosition);
         //this 3 is only to be on the safe side
         qualityBookIndexes = new byte[Math.toIntExact(lengthAU + 3 * mm_threshold)];
-        for(int qualityBookIndex_i = 0; qualityBookIndex_i < qualityBookIndexes.length; qualityBookIndex_i++){
-            addSymbol(
-                    qualityBookIndexes[qualityBookIndex_i],
-                    DESCRIPTOR_ID.QV,
-                    (byte)1,
-                    symbols,
-                    number_symbols
-            );
-        }
-        number_symbols[DESCRIPTOR_ID.QV.ID][1] = 0;
     }
 
     @Override
@@ -112,6 +103,14 @@ public class HalfMappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
         readCount++;
     }
 
+    /**
+     * The batch only holds the templates of the P, N, M and I classes.
+     */
+    @Override
+    protected void writeSpecific(AlignmentBatch batch, int index) {
+        throw new IllegalArgumentException();
+    }
+
 
     static void writeRecord(
             Record record,
@@ -124,9 +123,9 @@ public class HalfMappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
             ALPHABET_ID alphabet_id,
             AbstractSequencesSource sequencesSource,
             long previousPosition,
-            long[][][] symbolValues,
+            SymbolsBuffer[][] symbolValues,
             int[][] numberSymbols,
-            byte[][][] auxiliaryData,
+            SymbolsBuffer[][] auxiliaryData,
             int[][] numberAuxiliaryData,
             AbstractQualityValueParameterSet qualityValueParameterSet,
             byte[] qualityBookIndexes,
@@ -225,7 +224,7 @@ public class HalfMappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
 
     private static void writeUnmappedMate(
             Record record,
-            long[][][] symbolValues,
+            SymbolsBuffer[][] symbolValues,
             int[][] numberSymbols,
             ALPHABET_ID alphabet_id
     ) {
@@ -247,7 +246,7 @@ public class HalfMappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
             ALPHABET_ID alphabet_id,
             byte[][][] softClips,
             int[][] hardClips,
-            long[][][] symbolValues,
+            SymbolsBuffer[][] symbolValues,
             int[][] numberSymbols
     ){
         boolean hasClips = false;
@@ -337,7 +336,7 @@ public class HalfMappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
             int[][] hardClipsLength,
             long readsLengthParameter,
             boolean splicedReads,
-            long[][][] symbolValues,
+            SymbolsBuffer[][] symbolValues,
             int[][] numberSymbols
     ){
         boolean hasSplicedReads = false;
@@ -386,7 +385,7 @@ public class HalfMappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
 
     private static void writeRcompHalfMapped(
             boolean[][][] reverseComp,
-            long[][][] symbols,
+            SymbolsBuffer[][] symbols,
             int[][] numSymbols
     ){
         for(
@@ -413,9 +412,9 @@ public class HalfMappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
     private static void writeMMposAndMMtypeHalfMapped(
             DATA_CLASS dataClass,
             Record record,
-            long[][][] symbols,
+            SymbolsBuffer[][] symbols,
             int[][] numSymbols,
-            byte[][][] auxiliaryData,
+            SymbolsBuffer[][] auxiliaryData,
             int[][] numAuxiliaryData,
             ALPHABET_ID alphabet_id,
             AbstractSequencesSource sequencesSource
@@ -439,7 +438,7 @@ public class HalfMappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
             AbstractQualityValueParameterSet parameterSet,
             byte[] qualityBookIndexes,
             long auStartPosition,
-            long[][][] symbols,
+            SymbolsBuffer[][] symbols,
             int[][] numSymbols
     ){
         writeQualityAlignedSegment(
@@ -466,7 +465,7 @@ public class HalfMappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
     private static void writeQualityUnalignedSegment(
             AbstractQualityValueParameterSet parameterSet,
             short[] qualities,
-            long[][][] symbols,
+            SymbolsBuffer[][] symbols,
             int[][] numSymbols
     ) {
         addSymbol(1, DESCRIPTOR_ID.QV, (byte) 0, symbols, numSymbols);
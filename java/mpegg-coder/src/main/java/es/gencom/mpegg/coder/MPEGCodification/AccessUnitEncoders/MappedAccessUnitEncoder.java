@@ -26,6 +26,7 @@
 package es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders;
 
 import es.gencom.mpegg.coder.quality.AbstractQualityValueParameterSet;
+import es.gencom.mpegg.AlignmentBatch;
 import es.gencom.mpegg.Record;
 import es.gencom.mpegg.SplitType;
 import es.gencom.mpegg.coder.tokens.AbstractReadIdentifierEncoder;
@@ -77,16 +78,6 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
         long lengthAU = Long.max(auEndPosition, extendedEndPosition) - Long.min(auStartPosition, extendedStartPosition);
         //this 3 is only to be on the safe side
         qualityBookIndexes = new byte[Math.toIntExact(lengthAU + 3 * mm_threshold)];
-        for(int qualityBookIndex_i = 0; qualityBookIndex_i < qualityBookIndexes.length; qualityBookIndex_i++){
-            addSymbol(
-                    qualityBookIndexes[qualityBookIndex_i],
-                    DESCRIPTOR_ID.QV,
-                    (byte)1,
-                    symbols,
-                    number_symbols
-            );
-        }
-        number_symbols[DESCRIPTOR_ID.QV.ID][1] = 0;
 
 
     }
@@ -118,6 +109,123 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
         readCount++;
     }
 
+    @Override
+    protected void writeSpecific(AlignmentBatch batch, int index) throws IOException {
+        if(batch.getDataClass(index) != auType){
+            throw new IllegalArgumentException();
+        }
+        MappedAccessUnitEncoder.writeRecord(
+                batch,
+                index,
+                auType,
+                numberTemplateSegments,
+                getReadLength(),
+                isSplicedRead(),
+                isMultipleAlignment(),
+                Math.toIntExact(readCount),
+                getAlphabetId(),
+                sequencesSource,
+                previousPosition,
+                symbols,
+                number_symbols,
+                auxiliaryData_symbols,
+                number_auxiliaryDataSymbols,
+                getQualityValueParameterSet(),
+                qualityBookIndexes,
+                getAuStartPosition()
+        );
+        previousPosition = batch.getPosition(index, 0);
+        readCount++;
+    }
+
+    /**
+     * Writes the template of the batch producing the same symbols as for
+     * the equivalent <code>Record</code>. The batched templates have one
+     * alignment per segment and no splices, so the symbols are derived
+     * straight from the batch columns.
+     */
+    static void writeRecord(
+            AlignmentBatch batch,
+            int index,
+            DATA_CLASS dataClass,
+            byte numberTemplateSegments,
+            int readLengthParameter,
+            boolean splicedReads,
+            boolean multipleAlignmentFlag,
+            int readCount,
+            ALPHABET_ID alphabet_id,
+            AbstractSequencesSource sequencesSource,
+            long previousPosition,
+            SymbolsBuffer[][] symbolValues,
+            int[][] numberSymbols,
+            SymbolsBuffer[][] auxiliaryData,
+            int[][] numberAuxiliaryData,
+            AbstractQualityValueParameterSet qualityValueParameterSet,
+            byte[] qualityBookIndexes,
+            long auStartPosition
+    ) throws IOException {
+        final byte recordSegments = batch.getNumberSegments(index);
+        if(recordSegments > numberTemplateSegments){
+            throw new IllegalArgumentException();
+        }
+
+        writePairFirstSymbol(batch, index, numberTemplateSegments, symbolValues, numberSymbols);
+
+        writeClips(dataClass, readCount, alphabet_id, batch, index, symbolValues, numberSymbols);
+
+        writeRlen(batch, index, readLengthParameter, splicedReads, symbolValues, numberSymbols);
+
+        writeMMAP(dataClass, multipleAlignmentFlag, batch, index, symbolValues, numberSymbols);
+
+        addSymbol(
+                batch.getPosition(index, 0) - previousPosition,
+                DESCRIPTOR_ID.POS,
+                (byte) 0,
+                symbolValues,
+                numberSymbols
+        );
+
+        writeSecondHalfPair(batch, index, symbolValues, numberSymbols);
+
+        addSymbol(batch.isReverseCompliment(index, 0) ? 1:0, DESCRIPTOR_ID.RCOMP, (byte)0, symbolValues, numberSymbols);
+        if(!batch.isUnpaired(index)){
+            addSymbol(batch.isReverseCompliment(index, 1) ? 1:0, DESCRIPTOR_ID.RCOMP, (byte)0, symbolValues, numberSymbols);
+        }
+
+        for(int segment_i=0; segment_i < recordSegments; segment_i++){
+            writeMMposAndMMtypeSegment(
+                    dataClass,
+                    batch,
+                    index,
+                    segment_i,
+                    symbolValues,
+                    numberSymbols,
+                    auxiliaryData,
+                    numberAuxiliaryData,
+                    alphabet_id,
+                    sequencesSource
+            );
+        }
+
+        for(int segment_i=0; segment_i < recordSegments; segment_i++){
+            addSymbol(1, DESCRIPTOR_ID.QV, (byte)0, symbolValues, numberSymbols);
+            writeQualitySplice(
+                    batch.getPosition(index, segment_i),
+                    batch.getOperationLengths(),
+                    batch.getOperations(),
+                    batch.getOperationsStart(index, segment_i),
+                    batch.getOperationsEnd(index, segment_i),
+                    qualityBookIndexes,
+                    qualityValueParameterSet,
+                    batch.getQualities(),
+                    batch.getQualitiesStart(index, segment_i),
+                    auStartPosition,
+                    symbolValues,
+                    numberSymbols
+            );
+        }
+    }
+
     static void writeRecord(
             Record record,
             DATA_CLASS dataClass,
@@ -129,9 +237,9 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
             ALPHABET_ID alphabet_id,
             AbstractSequencesSource sequencesSource,
             long previousPosition,
-            long[][][] symbolValues,
+            SymbolsBuffer[][] symbolValues,
             int[][] numberSymbols,
-            byte[][][] auxiliaryData,
+            SymbolsBuffer[][] auxiliaryData,
             int[][] numberAuxiliaryData,
             AbstractQualityValueParameterSet qualityValueParameterSet,
             byte[] qualityBookIndexes,
@@ -231,7 +339,7 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
             AbstractQualityValueParameterSet parameterSet,
             byte[] qualityBookIndexes,
             long auStartPosition,
-            long[][][] symbols,
+            SymbolsBuffer[][] symbols,
             int[][] numSymbols
     ){
         writeQualityAlignedSegment(
@@ -268,7 +376,7 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
             AbstractQualityValueParameterSet parameterSet,
             short[] qualities,
             long auStart,
-            long[][][] symbols,
+            SymbolsBuffer[][] symbols,
             int[][] numSymbols
     ) {
         addSymbol(
@@ -279,53 +387,86 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
                 numSymbols
         );
         for(int splice_i=0; splice_i < mappingPositions.length; splice_i++){
-            int currentPosition = Math.toIntExact(mappingPositions[splice_i] - auStart);
-            int currentQualityIndex = 0;
-            for(int operation_i = 0; operation_i < operations[splice_i].length; operation_i++){
-                if(operations[splice_i][operation_i] == Operation.HardClip) {
-                    continue;
-                } else if (operations[splice_i][operation_i] == Operation.Delete) {
-                    currentPosition += operationLengths[splice_i][operation_i];
-                    continue;
-                }
-
-                byte codebookId;
-
-                if(operations[splice_i][operation_i] == Operation.Insert
-                    || operations[splice_i][operation_i] == Operation.SoftClip
-                ) {
-                    codebookId = (byte) (parameterSet.getNumberQualityBooks()-1);
-                } else {
-                    codebookId = qualityBookIndexes[currentPosition];
-                }
-
-
-
+            writeQualitySplice(
+                    mappingPositions[splice_i],
+                    operationLengths[splice_i],
+                    operations[splice_i],
+                    0,
+                    operations[splice_i].length,
+                    qualityBookIndexes,
+                    parameterSet,
+                    qualities,
+                    0,
+                    auStart,
+                    symbols,
+                    numSymbols
+            );
+        }
+    }
 
-                for(int operationBase_i = 0;
-                        operationBase_i < operationLengths[splice_i][operation_i];
-                        operationBase_i++) {
+    /**
+     * Writes the quality values of the splice which operations are
+     * the <code>operations[operationsFrom, operationsTo)</code> range
+     * and which qualities start at <code>qualities[qualitiesFrom]</code>.
+     */
+    private static void writeQualitySplice(
+            long mappingPosition,
+            int[] operationLengths,
+            byte[] operations,
+            int operationsFrom,
+            int operationsTo,
+            byte[] qualityBookIndexes,
+            AbstractQualityValueParameterSet parameterSet,
+            short[] qualities,
+            int qualitiesFrom,
+            long auStart,
+            SymbolsBuffer[][] symbols,
+            int[][] numSymbols
+    ) {
+        int currentPosition = Math.toIntExact(mappingPosition - auStart);
+        int currentQualityIndex = qualitiesFrom;
+        for(int operation_i = operationsFrom; operation_i < operationsTo; operation_i++){
+            if(operations[operation_i] == Operation.HardClip) {
+                continue;
+            } else if (operations[operation_i] == Operation.Delete) {
+                currentPosition += operationLengths[operation_i];
+                continue;
+            }
 
-                    numSymbols[DESCRIPTOR_ID.QV.ID][1] = Integer.max(
-                            numSymbols[DESCRIPTOR_ID.QV.ID][1],
-                            Math.toIntExact(currentPosition));
+            byte codebookId;
 
-                    short encoded = parameterSet.getQualityBook(codebookId).encode(qualities[currentQualityIndex]);
-                    addSymbol(encoded,
-                              DESCRIPTOR_ID.QV,
-                              (byte)(codebookId + 2),
-                              symbols,
-                              numSymbols);
-                    currentQualityIndex++;
-                }
+            if(operations[operation_i] == Operation.Insert
+                || operations[operation_i] == Operation.SoftClip
+            ) {
+                codebookId = (byte) (parameterSet.getNumberQualityBooks()-1);
+            } else {
+                codebookId = qualityBookIndexes[currentPosition];
+            }
 
+            for(int operationBase_i = 0;
+                    operationBase_i < operationLengths[operation_i];
+                    operationBase_i++) {
+
+                growNumberSymbols(
+                        Math.toIntExact(currentPosition),
+                        DESCRIPTOR_ID.QV,
+                        (byte)1,
+                        numSymbols);
+
+                short encoded = parameterSet.getQualityBook(codebookId).encode(qualities[currentQualityIndex]);
+                addSymbol(encoded,
+                          DESCRIPTOR_ID.QV,
+                          (byte)(codebookId + 2),
+                          symbols,
+                          numSymbols);
+                currentQualityIndex++;
+            }
 
-                if(operations[splice_i][operation_i] == Operation.Match
-                        || operations[splice_i][operation_i] == Operation.Substitution
-                        || operations[splice_i][operation_i] == Operation.SubstitutionToN) {
+            if(operations[operation_i] == Operation.Match
+                    || operations[operation_i] == Operation.Substitution
+                    || operations[operation_i] == Operation.SubstitutionToN) {
 
-                    currentPosition++;
-                }
+                currentPosition++;
             }
         }
     }
@@ -342,7 +483,7 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
             DATA_CLASS auType,
             Record record,
             int templateRecordSegments,
-            long[][][] symbolValues,
+            SymbolsBuffer[][] symbolValues,
             int[][] numberSymbols) {
 
         if(templateRecordSegments == 1) {
@@ -387,13 +528,36 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
         }
     }
 
+    private static void writePairFirstSymbol(
+            AlignmentBatch batch,
+            int index,
+            int templateRecordSegments,
+            SymbolsBuffer[][] symbolValues,
+            int[][] numberSymbols) {
+
+        if(templateRecordSegments == 1) {
+            return;
+        }
+
+        final boolean read1First = batch.isRead1First(index);
+        if(batch.isUnpaired(index)){
+            addSymbol(read1First ? 6 : 5, DESCRIPTOR_ID.PAIR, (byte)0, symbolValues, numberSymbols);
+        } else if(batch.isTwoSegmentsStoredTogether(index)) {
+            addSymbol(0, DESCRIPTOR_ID.PAIR, (byte) 0, symbolValues, numberSymbols);
+        } else if(batch.getMateSequenceId(index) == batch.getSequenceId(index)) {
+            addSymbol(read1First ? 2 : 1, DESCRIPTOR_ID.PAIR, (byte)0, symbolValues, numberSymbols);
+        } else {
+            addSymbol(read1First ? 4 : 3, DESCRIPTOR_ID.PAIR, (byte)0, symbolValues, numberSymbols);
+        }
+    }
+
     static void writeClips(
         DATA_CLASS auType,
         int readCount,
         ALPHABET_ID alphabet_id,
         byte[][][] softClips,
         int[][] hardClips,
-        long[][][] symbolValues,
+        SymbolsBuffer[][] symbolValues,
         int[][] numberSymbols
     ){
         boolean hasClips = false;
@@ -417,41 +581,23 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
         addSymbol(readCount, DESCRIPTOR_ID.CLIPS, (byte) 0, symbolValues, numberSymbols);
         for(int segment_i=0; segment_i < softClips.length; segment_i++) {
             if (softClips[segment_i][0].length != 0) {
-                addSymbol(segment_i << 1, DESCRIPTOR_ID.CLIPS, (byte) 1, symbolValues, numberSymbols);
-                for (int symbol_i = 0; symbol_i < softClips[segment_i][0].length; symbol_i++) {
-                    byte charToRepresent = softClips[segment_i][0][symbol_i];
-                    addSymbol(
-                            S_alphabets.charToId(alphabet_id, (char) charToRepresent),
-                            DESCRIPTOR_ID.CLIPS,
-                            (byte) 2,
-                            symbolValues,
-                            numberSymbols
-                    );
-                }
-                addSymbol(
-                        S_alphabets.alphabets[alphabet_id.ID].length,
-                        DESCRIPTOR_ID.CLIPS,
-                        (byte) 2,
+                writeSoftClip(
+                        segment_i << 1,
+                        softClips[segment_i][0],
+                        0,
+                        softClips[segment_i][0].length,
+                        alphabet_id,
                         symbolValues,
                         numberSymbols
                 );
             }
             if (softClips[segment_i][1].length != 0) {
-                addSymbol((segment_i << 1) + 1, DESCRIPTOR_ID.CLIPS, (byte) 1, symbolValues, numberSymbols);
-                for (int symbol_i = 0; symbol_i < softClips[segment_i][1].length; symbol_i++) {
-                    byte charToRepresent = softClips[segment_i][1][symbol_i];
-                    addSymbol(
-                            S_alphabets.charToId(alphabet_id, (char) charToRepresent),
-                            DESCRIPTOR_ID.CLIPS,
-                            (byte) 2,
-                            symbolValues,
-                            numberSymbols
-                    );
-                }
-                addSymbol(
-                        S_alphabets.alphabets[alphabet_id.ID].length,
-                        DESCRIPTOR_ID.CLIPS,
-                        (byte) 2,
+                writeSoftClip(
+                        (segment_i << 1) + 1,
+                        softClips[segment_i][1],
+                        0,
+                        softClips[segment_i][1].length,
+                        alphabet_id,
                         symbolValues,
                         numberSymbols
                 );
@@ -470,6 +616,104 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
         addSymbol(8, DESCRIPTOR_ID.CLIPS, (byte)1, symbolValues, numberSymbols);
     }
 
+    private static void writeClips(
+        DATA_CLASS auType,
+        int readCount,
+        ALPHABET_ID alphabet_id,
+        AlignmentBatch batch,
+        int index,
+        SymbolsBuffer[][] symbolValues,
+        int[][] numberSymbols
+    ){
+        final int segments = batch.getNumberSegments(index);
+
+        // the batch has no hard clips, only the soft ones at the segment ends
+        boolean hasClips = false;
+        for(int segment_i=0; segment_i < segments; segment_i++){
+            if(getSoftClipLength(batch, index, segment_i, false) != 0
+                    || getSoftClipLength(batch, index, segment_i, true) != 0){
+                hasClips = true;
+            }
+        }
+        if(hasClips && (auType != DATA_CLASS.CLASS_I && auType != DATA_CLASS.CLASS_HM)){
+            throw new IllegalArgumentException();
+        }
+        if(!hasClips){
+            return;
+        }
+        addSymbol(readCount, DESCRIPTOR_ID.CLIPS, (byte) 0, symbolValues, numberSymbols);
+        for(int segment_i=0; segment_i < segments; segment_i++) {
+            final int from = batch.getBasesStart(index, segment_i);
+            final int to = from + batch.getBasesLength(index, segment_i);
+            final int firstSoftClip = getSoftClipLength(batch, index, segment_i, false);
+            final int lastSoftClip = getSoftClipLength(batch, index, segment_i, true);
+            if (firstSoftClip != 0) {
+                writeSoftClip(
+                        segment_i << 1,
+                        batch.getBases(),
+                        from,
+                        from + firstSoftClip,
+                        alphabet_id,
+                        symbolValues,
+                        numberSymbols
+                );
+            }
+            if (lastSoftClip != 0) {
+                writeSoftClip(
+                        (segment_i << 1) + 1,
+                        batch.getBases(),
+                        to - lastSoftClip,
+                        to,
+                        alphabet_id,
+                        symbolValues,
+                        numberSymbols
+                );
+            }
+        }
+        addSymbol(8, DESCRIPTOR_ID.CLIPS, (byte)1, symbolValues, numberSymbols);
+    }
+
+    private static int getSoftClipLength(AlignmentBatch batch, int index, int segment, boolean end) {
+        final int operation_i = end ?
+                batch.getOperationsEnd(index, segment) - 1 : batch.getOperationsStart(index, segment);
+        return batch.getOperations()[operation_i] == Operation.SoftClip ?
+                batch.getOperationLengths()[operation_i] : 0;
+    }
+
+    /**
+     * Writes the soft clip which bases are the <code>bases[from, to)</code> range.
+     *
+     * @param clipType the position of the clip: segment &lt;&lt; 1 | (0 - start, 1 - end)
+     */
+    private static void writeSoftClip(
+        int clipType,
+        byte[] bases,
+        int from,
+        int to,
+        ALPHABET_ID alphabet_id,
+        SymbolsBuffer[][] symbolValues,
+        int[][] numberSymbols
+    ){
+        addSymbol(clipType, DESCRIPTOR_ID.CLIPS, (byte) 1, symbolValues, numberSymbols);
+        for (int symbol_i = from; symbol_i < to; symbol_i++) {
+            byte charToRepresent = bases[symbol_i];
+            addSymbol(
+                    S_alphabets.charToId(alphabet_id, (char) charToRepresent),
+                    DESCRIPTOR_ID.CLIPS,
+                    (byte) 2,
+                    symbolValues,
+                    numberSymbols
+            );
+        }
+        addSymbol(
+                S_alphabets.alphabets[alphabet_id.ID].length,
+                DESCRIPTOR_ID.CLIPS,
+                (byte) 2,
+                symbolValues,
+                numberSymbols
+        );
+    }
+
     /**
      * @param spliceLength Matrix of splice lengths: first dimension corresponds to the segment, the second to the
      *                     splice. These lengths do not take into account the hard clips
@@ -485,7 +729,7 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
             int[][] hardClipsLength,
             long readsLengthParameter,
             boolean splicedReads,
-            long[][][] symbolValues,
+            SymbolsBuffer[][] symbolValues,
             int[][] numberSymbols) {
 
         boolean hasSplicedReads = false;
@@ -565,11 +809,37 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
         }
     }
 
+    private static void writeRlen(
+            AlignmentBatch batch,
+            int index,
+            long readsLengthParameter,
+            boolean splicedReads,
+            SymbolsBuffer[][] symbolValues,
+            int[][] numberSymbols) {
+
+        if(readsLengthParameter != 0) {
+            return;
+        }
+
+        final int segments = batch.getNumberSegments(index);
+        for(int segment_i=0; segment_i < segments; segment_i++){
+            addSymbol(batch.getBasesLength(index, segment_i) - 1, DESCRIPTOR_ID.RLEN, (byte) 0, symbolValues, numberSymbols);
+        }
+
+        if(!splicedReads) return;
+
+        // the whole segment length followed by the length of its only splice
+        for(int segment_i=0; segment_i < segments; segment_i++){
+            addSymbol(batch.getBasesLength(index, segment_i) - 1, DESCRIPTOR_ID.RLEN, (byte) 0, symbolValues, numberSymbols);
+            addSymbol(batch.getBasesLength(index, segment_i) - 1, DESCRIPTOR_ID.RLEN, (byte) 0, symbolValues, numberSymbols);
+        }
+    }
+
     static void writeMMAP(
             DATA_CLASS dataClass,
             boolean multiple_alignment_flag,
             Record record,
-            long[][][] symbols,
+            SymbolsBuffer[][] symbols,
             int[][] numSymbols
     ){
         if(dataClass != DATA_CLASS.CLASS_U){
@@ -640,10 +910,34 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
 
 
 
+    private static void writeMMAP(
+            DATA_CLASS dataClass,
+            boolean multiple_alignment_flag,
+            AlignmentBatch batch,
+            int index,
+            SymbolsBuffer[][] symbols,
+            int[][] numSymbols
+    ){
+        if(!multiple_alignment_flag){
+            return;
+        }
+        if(dataClass != DATA_CLASS.CLASS_U){
+            addSymbol(1, DESCRIPTOR_ID.MMAP, (byte)0, symbols, numSymbols);
+        }
+        if (
+                !(
+                        (batch.isUnpaired(index) || dataClass == DATA_CLASS.CLASS_HM)
+                        || dataClass == DATA_CLASS.CLASS_U
+                )
+        ){
+            addSymbol(1, DESCRIPTOR_ID.MMAP, (byte)0, symbols, numSymbols);
+        }
+    }
+
     static void encodeGenomicPosition(
             long[] positions,
             long previousPosition,
-            long[][][] symbolValues,
+            SymbolsBuffer[][] symbolValues,
             int[][] numberSymbols
     ){
         if(positions.length < 1){
@@ -664,7 +958,7 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
     static void writeSecondHalfPair(
             DATA_CLASS dataClass,
             Record record,
-            long[][][] symbols,
+            SymbolsBuffer[][] symbols,
             int[][] numSymbols,
             boolean splicedReads){
         if(dataClass == DATA_CLASS.CLASS_HM){
@@ -856,9 +1150,40 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
         }
     }
 
+    private static void writeSecondHalfPair(
+            AlignmentBatch batch,
+            int index,
+            SymbolsBuffer[][] symbols,
+            int[][] numSymbols){
+        if(batch.isUnpaired(index)){
+            return;
+        }
+
+        final boolean read1First = batch.isRead1First(index);
+        final long position = batch.getPosition(index, 0);
+        final long matePosition = batch.getPosition(index, 1);
+        if(batch.isTwoSegmentsStoredTogether(index)){
+            long symbolToWrite = Math.abs(matePosition - position);
+            symbolToWrite <<= 1;
+            symbolToWrite |= matePosition < position ? 1 : 0;
+            addSymbol(symbolToWrite, DESCRIPTOR_ID.PAIR, (byte)1, symbols, numSymbols);
+        }else if(batch.getMateSequenceId(index) == batch.getSequenceId(index)){
+            addSymbol(matePosition, DESCRIPTOR_ID.PAIR, (byte) (read1First ? 3 : 2), symbols, numSymbols);
+        }else{
+            addSymbol(
+                    batch.getMateSequenceId(index).getSequenceIdentifier(),
+                    DESCRIPTOR_ID.PAIR,
+                    (byte) (read1First ? 5 : 4),
+                    symbols,
+                    numSymbols
+            );
+            addSymbol(matePosition, DESCRIPTOR_ID.PAIR, (byte) (read1First ? 7 : 6), symbols, numSymbols);
+        }
+    }
+
     static void writeRcomp(
             boolean[][][] reverseComp,
-            long[][][] symbols,
+            SymbolsBuffer[][] symbols,
             int[][] numSymbols
     ){
         for(
@@ -967,9 +1292,9 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
     private static void writeMMposAndMMtype(
             DATA_CLASS dataClass,
             Record record,
-            long[][][] symbols,
+            SymbolsBuffer[][] symbols,
             int[][] numSymbols,
-            byte[][][] auxiliaryData,
+            SymbolsBuffer[][] auxiliaryData,
             int[][] numAuxiliaryData,
             ALPHABET_ID alphabet_id,
             AbstractSequencesSource sequencesSource) throws IOException {
@@ -992,9 +1317,9 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
     static void writeMMposAndMMtypeSegment(
             DATA_CLASS dataClass,
             Record record,
-            long[][][] symbols,
+            SymbolsBuffer[][] symbols,
             int[][] numSymbols,
-            byte[][][] auxiliaryData,
+            SymbolsBuffer[][] auxiliaryData,
             int[][] numAuxiliaryData,
             ALPHABET_ID alphabet_id,
             AbstractSequencesSource sequencesSource,
@@ -1104,15 +1429,121 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
         }
     }
 
+    /**
+     * Writes the mismatches of the batched segment against the reference.
+     * Soft clips are written as clips, so only the aligned bases are compared.
+     */
+    private static void writeMMposAndMMtypeSegment(
+            DATA_CLASS dataClass,
+            AlignmentBatch batch,
+            int index,
+            int segment_i,
+            SymbolsBuffer[][] symbols,
+            int[][] numSymbols,
+            SymbolsBuffer[][] auxiliaryData,
+            int[][] numAuxiliaryData,
+            ALPHABET_ID alphabet_id,
+            AbstractSequencesSource sequencesSource
+    ) throws IOException {
+        if(dataClass == DATA_CLASS.CLASS_P){
+            // perfect matches, no need to read the reference
+            return;
+        }
+
+        final byte[] operations = batch.getOperations();
+        final int[] operationLengths = batch.getOperationLengths();
+
+        int operationsFrom = batch.getOperationsStart(index, segment_i);
+        int operationsTo = batch.getOperationsEnd(index, segment_i);
+        int lengthFirstSoftClip = 0;
+        if(operations[operationsFrom] == Operation.SoftClip){
+            lengthFirstSoftClip = operationLengths[operationsFrom];
+            operationsFrom++;
+        }
+        if(operations[operationsTo - 1] == Operation.SoftClip){
+            operationsTo--;
+        }
+
+        long maxLength = batch.getBasesLength(index, segment_i);
+        for(int operation_i = operationsFrom; operation_i < operationsTo; operation_i++) {
+            if(operations[operation_i] == Operation.Delete) {
+                maxLength++;
+            }
+        }
+
+        final long startPos = batch.getPosition(index, segment_i);
+        Payload reference = sequencesSource.getSubsequenceBytes(
+                batch.getSequenceId(index),
+                Math.toIntExact(startPos),
+                Math.toIntExact(startPos + maxLength)
+        );
+
+        writeMMposAndMMtypeForOneSegmentOneAlignmentOneSplice(
+                dataClass,
+                operations,
+                operationLengths,
+                operationsFrom,
+                operationsTo,
+                batch.getBases(),
+                batch.getBasesStart(index, segment_i) + lengthFirstSoftClip,
+                reference,
+                symbols,
+                numSymbols,
+                auxiliaryData,
+                numAuxiliaryData,
+                alphabet_id,
+                0
+        );
+    }
+
     static void writeMMposAndMMtypeForOneSegmentOneAlignmentOneSplice(
             DATA_CLASS dataClass,
             byte[] operations,
             int[] operationLength,
             byte[] nucleotidesRead,
             Payload referenceSequence,
-            long[][][] symbols,
+            SymbolsBuffer[][] symbols,
+            int[][] numSymbols,
+            SymbolsBuffer[][] auxiliaryData,
+            int[][] numAuxiliaryData,
+            ALPHABET_ID alphabet_id,
+            long totalSizePreviousSplice
+    ) throws IOException {
+        writeMMposAndMMtypeForOneSegmentOneAlignmentOneSplice(
+                dataClass,
+                operations,
+                operationLength,
+                0,
+                operations.length,
+                nucleotidesRead,
+                0,
+                referenceSequence,
+                symbols,
+                numSymbols,
+                auxiliaryData,
+                numAuxiliaryData,
+                alphabet_id,
+                totalSizePreviousSplice
+        );
+    }
+
+    /**
+     * @param operationsFrom the first operation of the splice in the <code>operations</code>
+     * @param operationsTo the end (exclusive) of the splice operations
+     * @param nucleotidesFrom the first nucleotide of the splice in the <code>nucleotidesRead</code>
+     */
+    private static void writeMMposAndMMtypeForOneSegmentOneAlignmentOneSplice(
+            DATA_CLASS dataClass,
+            byte[] operations,
+            int[] operationLength,
+            int operationsFrom,
+            int operationsTo,
+            byte[] nucleotidesRead,
+            int nucleotidesFrom,
+            Payload referenceSequence,
+            SymbolsBuffer[][] symbols,
             int[][] numSymbols,
-            byte[][][] auxiliaryData,
+            SymbolsBuffer[][] auxiliaryData,
             int[][] numAuxiliaryData,
             ALPHABET_ID alphabet_id,
             long totalSizePreviousSplice
@@ -1123,17 +1554,17 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
 
         int positionOnReadSequence = 0;
         int positionOnReferenceSequence = 0;
-        int firstOperation = 0;
-        if(operations[0] == Operation.HardClip){
-            if(operations[1] == Operation.SoftClip){
-                positionOnReadSequence = operationLength[1];
-                positionOnReferenceSequence = operationLength[1];
-                firstOperation = 2;
+        int firstOperation = operationsFrom;
+        if(operations[operationsFrom] == Operation.HardClip){
+            if(operations[operationsFrom + 1] == Operation.SoftClip){
+                positionOnReadSequence = operationLength[operationsFrom + 1];
+                positionOnReferenceSequence = operationLength[operationsFrom + 1];
+                firstOperation = operationsFrom + 2;
             }
-        }else if(operations[0] == Operation.SoftClip){
-            positionOnReadSequence = operationLength[0];
-            positionOnReferenceSequence = operationLength[0];
-            firstOperation = 1;
+        }else if(operations[operationsFrom] == Operation.SoftClip){
+            positionOnReadSequence = operationLength[operationsFrom];
+            positionOnReferenceSequence = operationLength[operationsFrom];
+            firstOperation = operationsFrom + 1;
         }
 
         long previousReportedPosition = 0;
@@ -1141,7 +1572,7 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
 
         int previousDeletes = 0;
 
-        for(int i=firstOperation; i<operations.length; i++) {
+        for(int i=firstOperation; i<operationsTo; i++) {
             byte mutationTypeIdentifier;
             byte newBaseIdentifier = 0;
             byte oldBaseIdentifier = 0;
@@ -1159,9 +1590,9 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
 
                 newBaseIdentifier = S_alphabets.charToId(
                         alphabet_id,
-                        (char) nucleotidesRead[positionOnReadSequence]);
+                        (char) nucleotidesRead[nucleotidesFrom + positionOnReadSequence]);
 
-                if(nucleotidesRead[positionOnReadSequence] != 'N' && dataClass == DATA_CLASS.CLASS_N) {
+                if(nucleotidesRead[nucleotidesFrom + positionOnReadSequence] != 'N' && dataClass == DATA_CLASS.CLASS_N) {
                     throw new IllegalArgumentException();
                 }
 
@@ -1170,7 +1601,7 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
                 mutationTypeIdentifier = Operation.Insert;
                 newBaseIdentifier = S_alphabets.charToId(
                         alphabet_id,
-                        (char) nucleotidesRead[positionOnReadSequence]);
+                        (char) nucleotidesRead[nucleotidesFrom + positionOnReadSequence]);
                 
                 if(dataClass!=DATA_CLASS.CLASS_HM && dataClass != DATA_CLASS.CLASS_I){
                     throw new IllegalArgumentException();
@@ -1187,7 +1618,7 @@ public class MappedAccessUnitEncoder extends AbstractAccessUnitEncoder{
                 positionOnReferenceSequence += operationLength[i];
                 referenceSequence.readByte();
                 continue;
-            } else if(operations[i] == Operation.SoftClip && (i == operations.length-1 || i == operations.length-2)) {
+            } else if(operations[i] == Operation.SoftClip && (i == operationsTo-1 || i == operationsTo-2)) {
                 break;
             } else {
                 throw new IllegalArgumentException();
@@ -0,0 +1,188 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Growable buffer of the descriptor subsequence symbols.
+ * </p>
+ *
+ * Symbols are stored in fixed size chunks of the narrowest primitive type
+ * (byte, short, int or long) that fits all the symbols written so far.
+ * Most of the descriptors alphabets fit in a byte, so the buffer takes a
+ * fraction of the memory of a plain long array and never copies the
+ * symbols when it grows. Chunks are allocated on the first write, so the
+ * symbols which were never written are zeros and cost no memory.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class SymbolsBuffer {
+
+    private final static int CHUNK_BITS = 12;
+    private final static int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private final static int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final static Object[] EMPTY = new Object[0];
+
+    /**
+     * Running total of the memory taken by a group of the buffers,
+     * so the memory of all the buffers of an access unit is known
+     * without walking them.
+     */
+    public static class Allocation {
+        private long size;
+
+        /**
+         * @return the memory taken by the buffers chunks in bytes
+         */
+        public long getSize() {
+            return size;
+        }
+    }
+
+    private final Allocation allocation;
+    private byte width;
+    private Object[] chunks;
+    private int allocated;
+
+    public SymbolsBuffer() {
+        this(new Allocation());
+    }
+
+    public SymbolsBuffer(final Allocation allocation) {
+        this.allocation = allocation;
+        width = 1;
+        chunks = EMPTY;
+    }
+
+    /**
+     * @return the size of the stored symbol in bytes (1, 2, 4 or 8)
+     */
+    public byte getWidth() {
+        return width;
+    }
+
+    public void set(final int index, final long symbol) {
+        final byte symbolWidth = width(symbol);
+        if (symbolWidth > width) {
+            widen(symbolWidth);
+        }
+
+        final int chunk_i = index >>> CHUNK_BITS;
+        if (chunk_i >= chunks.length) {
+            final int length = Integer.max(chunks.length * 2, chunk_i + 1);
+            allocation.size += 8L * (length - chunks.length);
+            chunks = Arrays.copyOf(chunks, length);
+        }
+        Object chunk = chunks[chunk_i];
+        if (chunk == null) {
+            chunks[chunk_i] = chunk = allocate(width);
+            allocation.size += (long)CHUNK_SIZE * width;
+            allocated++;
+        }
+
+        final int i = index & CHUNK_MASK;
+        switch(width) {
+            case 1: ((byte[])chunk)[i] = (byte)symbol; break;
+            case 2: ((short[])chunk)[i] = (short)symbol; break;
+            case 4: ((int[])chunk)[i] = (int)symbol; break;
+            default: ((long[])chunk)[i] = symbol;
+        }
+    }
+
+    public long get(final int index) {
+        final int chunk_i = index >>> CHUNK_BITS;
+        if (chunk_i >= chunks.length) {
+            return 0;
+        }
+        final Object chunk = chunks[chunk_i];
+        if (chunk == null) {
+            return 0;
+        }
+
+        final int i = index & CHUNK_MASK;
+        switch(width) {
+            case 1: return ((byte[])chunk)[i] & 0xFFL;
+            case 2: return ((short[])chunk)[i] & 0xFFFFL;
+            case 4: return ((int[])chunk)[i] & 0xFFFFFFFFL;
+            default: return ((long[])chunk)[i];
+        }
+    }
+
+    /**
+     * @return the memory taken by the allocated chunks in bytes
+     */
+    public long getSizeInMemory() {
+        return (long)allocated * CHUNK_SIZE * width + 8L * chunks.length;
+    }
+
+    private void widen(final byte symbolWidth) {
+        for (int chunk_i = 0; chunk_i < chunks.length; chunk_i++) {
+            final Object chunk = chunks[chunk_i];
+            if (chunk != null) {
+                final Object wide = allocate(symbolWidth);
+                for (int i = 0; i < CHUNK_SIZE; i++) {
+                    final long symbol = get((chunk_i << CHUNK_BITS) | i);
+                    switch(symbolWidth) {
+                        case 2: ((short[])wide)[i] = (short)symbol; break;
+                        case 4: ((int[])wide)[i] = (int)symbol; break;
+                        default: ((long[])wide)[i] = symbol;
+                    }
+                }
+                chunks[chunk_i] = wide;
+            }
+        }
+        allocation.size += (long)allocated * CHUNK_SIZE * (symbolWidth - width);
+        width = symbolWidth;
+    }
+
+    private static Object allocate(final byte width) {
+        switch(width) {
+            case 1: return new byte[CHUNK_SIZE];
+            case 2: return new short[CHUNK_SIZE];
+            case 4: return new int[CHUNK_SIZE];
+            default: return new long[CHUNK_SIZE];
+        }
+    }
+
+    /**
+     * Gets the narrowest width the symbol fits in as an unsigned value.
+     * Negative symbols are always stored as longs.
+     */
+    private static byte width(final long symbol) {
+        if ((symbol & ~0xFFL) == 0) {
+            return 1;
+        } else if ((symbol & ~0xFFFFL) == 0) {
+            return 2;
+        } else if ((symbol & ~0xFFFFFFFFL) == 0) {
+            return 4;
+        }
+        return 8;
+    }
+}
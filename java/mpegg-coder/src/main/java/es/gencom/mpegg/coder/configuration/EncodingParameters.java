@@ -42,6 +42,7 @@ import es.gencom.mpegg.io.MPEGWriter;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.function.UnaryOperator;
 
 /**
  * Encoding Parameters serialization / deserialization.
@@ -553,6 +554,58 @@ public class EncodingParameters {
         throw new IllegalArgumentException("The class is not listed in the encoding parameters");
     }
 
+    /**
+     * Creates a shallow copy of these parameters where every decoder configuration
+     * is replaced by the one returned by the mapper.
+     * 
+     * @param mapper function to map the decoder configurations
+     * 
+     * @return the copy of the encoding parameters
+     */
+    public EncodingParameters mapDecoderConfigurations(
+            final UnaryOperator<DecoderConfiguration> mapper) {
+
+        final EncodingParameters copy = new EncodingParameters();
+        copy.dataset_type = dataset_type;
+        copy.alphabet_id = alphabet_id;
+        copy.read_length = read_length;
+        copy.number_of_template_segments = number_of_template_segments;
+        copy.reserved = reserved;
+        copy.max_au_data_unit_size = max_au_data_unit_size;
+        copy.pos_40_bits = pos_40_bits;
+        copy.qv_depth = qv_depth;
+        copy.as_depth = as_depth;
+        copy.clids = clids;
+        copy.encoding_mode_id = encoding_mode_id;
+        copy.rgroup_ID = rgroup_ID;
+        copy.multiple_alignments_flag = multiple_alignments_flag;
+        copy.spliced_reads_flag = spliced_reads_flag;
+        copy.multiple_signature_base = multiple_signature_base;
+        copy.u_signature_size = u_signature_size;
+        copy.qv_coding_mode = qv_coding_mode;
+        copy.qvps_flag = qvps_flag;
+        copy.parameter_set_qvpsFormats = parameter_set_qvpsFormats;
+        copy.qv_reverse_flag = qv_reverse_flag;
+        copy.default_qvps_ID = default_qvps_ID;
+        copy.crps_flag = crps_flag;
+        copy.parameter_set_crps = parameter_set_crps;
+        copy.parent = parent;
+        copy.terminator_size = terminator_size;
+        copy.teminator_value = teminator_value;
+
+        for (int i = 0; i < decoderConfigurations.length; i++) {
+            if (decoderConfigurations[i] != null) {
+                copy.decoderConfigurations[i] = new DecoderConfiguration[decoderConfigurations[i].length];
+                for (int j = 0; j < decoderConfigurations[i].length; j++) {
+                    if (decoderConfigurations[i][j] != null) {
+                        copy.decoderConfigurations[i][j] = mapper.apply(decoderConfigurations[i][j]);
+                    }
+                }
+            }
+        }
+        return copy;
+    }
+
     public AbstractQualityValueParameterSet getQualityValueParameterSet(DATA_CLASS dataClass){
         if(getQvps_flag(getClassIndex(dataClass))){
             return new QualityValueParameterSet(parameter_set_qvpsFormats[getClassIndex(dataClass)]);
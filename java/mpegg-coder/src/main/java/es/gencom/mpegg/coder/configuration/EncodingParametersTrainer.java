@@ -0,0 +1,216 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.mpegg.coder.configuration;
+
+import es.gencom.mpegg.CABAC.configuration.CABAC_DescriptorDecoderConfiguration;
+import es.gencom.mpegg.CABAC.configuration.DescriptorConfigurationTrainer;
+import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.AbstractAccessUnitEncoder;
+import es.gencom.mpegg.coder.compression.DESCRIPTOR_ID;
+import es.gencom.mpegg.coder.compression.DecoderConfiguration;
+import es.gencom.mpegg.format.DATA_CLASS;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * <p>
+ * Adapts CABAC descriptors configurations to the data being encoded.
+ * </p>
+ *
+ * The trainer samples the symbols of the first access units and selects
+ * the descriptors subsequences configurations which code the samples better
+ * than the default ones (see {@link DescriptorConfigurationTrainer}).
+ * Read identifiers and the subsequences coded with the auxiliary (reference)
+ * data are left as is.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class EncodingParametersTrainer {
+
+    /**
+     * The default maximum number of the sampled symbols per descriptor subsequence.
+     */
+    public final static int DEFAULT_MAX_SYMBOLS = 1 << 18;
+
+    private final int accessUnits;
+    private final int maxSymbols;
+
+    private final long[][][][] samples;
+    private final int[][][] lengths;
+    private final boolean[][][] auxiliary;
+    private int sampledAccessUnits;
+
+    /**
+     * @param accessUnits the number of the access units to sample
+     */
+    public EncodingParametersTrainer(final int accessUnits) {
+        this(accessUnits, DEFAULT_MAX_SYMBOLS);
+    }
+
+    /**
+     * @param accessUnits the number of the access units to sample
+     * @param maxSymbols the maximum number of the sampled symbols per subsequence
+     */
+    public EncodingParametersTrainer(final int accessUnits, final int maxSymbols) {
+        if (accessUnits < 1) {
+            throw new IllegalArgumentException("access units must be positive: " + accessUnits);
+        }
+        if (maxSymbols < 1) {
+            throw new IllegalArgumentException("max symbols must be positive: " + maxSymbols);
+        }
+
+        this.accessUnits = accessUnits;
+        this.maxSymbols = maxSymbols;
+
+        final int classes = DATA_CLASS.values().length;
+        samples = new long[classes][EncodingParameters.NUM_DESCRIPTORS][][];
+        lengths = new int[classes][EncodingParameters.NUM_DESCRIPTORS][];
+        auxiliary = new boolean[classes][EncodingParameters.NUM_DESCRIPTORS][];
+    }
+
+    /**
+     * Samples the symbols of the completed access unit.
+     * Access units submitted after the trainer is complete are ignored.
+     *
+     * @param encoder the encoder holding the access unit symbols
+     */
+    public synchronized void sample(final AbstractAccessUnitEncoder encoder) {
+        if (encoder.getReadCount() == 0 || isComplete()) {
+            return;
+        }
+        sampledAccessUnits++;
+
+        final int class_i = encoder.getAuType().ID - 1;
+        for (DESCRIPTOR_ID descriptor_id : DESCRIPTOR_ID.values()) {
+            if (descriptor_id == DESCRIPTOR_ID.RNAME || descriptor_id == DESCRIPTOR_ID.MSAR) {
+                continue;
+            }
+
+            final int subsequences = encoder.getNumberSubsequences(descriptor_id);
+            if (samples[class_i][descriptor_id.ID] == null) {
+                samples[class_i][descriptor_id.ID] = new long[subsequences][];
+                lengths[class_i][descriptor_id.ID] = new int[subsequences];
+                auxiliary[class_i][descriptor_id.ID] = new boolean[subsequences];
+            }
+
+            final long[][] descriptorSamples = samples[class_i][descriptor_id.ID];
+            final int[] descriptorLengths = lengths[class_i][descriptor_id.ID];
+            for (int subsequence_i = 0; subsequence_i < descriptorSamples.length; subsequence_i++) {
+                if (encoder.hasAuxiliaryData(descriptor_id, subsequence_i)) {
+                    auxiliary[class_i][descriptor_id.ID][subsequence_i] = true;
+                }
+                if (auxiliary[class_i][descriptor_id.ID][subsequence_i]) {
+                    continue;
+                }
+
+                final int length = descriptorLengths[subsequence_i];
+                final int n = Math.min(encoder.getNumberSymbols(descriptor_id, subsequence_i), maxSymbols - length);
+                if (n <= 0) {
+                    continue;
+                }
+
+                long[] sample = descriptorSamples[subsequence_i];
+                if (sample == null || sample.length < length + n) {
+                    sample = descriptorSamples[subsequence_i] = Arrays.copyOf(
+                            sample == null ? new long[0] : sample,
+                            Math.min(maxSymbols, Math.max(length + n, 2 * length)));
+                }
+                for (int i = 0; i < n; i++) {
+                    sample[length + i] = encoder.getSymbol(descriptor_id, subsequence_i, i);
+                }
+                descriptorLengths[subsequence_i] = length + n;
+            }
+        }
+    }
+
+    /**
+     * @return true if the required number of access units has been sampled
+     */
+    public synchronized boolean isComplete() {
+        return sampledAccessUnits >= accessUnits;
+    }
+
+    /**
+     * Trains the CABAC descriptors configurations of the data class parameters.
+     * The trained configurations replace the default ones, so the parameters
+     * are expected to be used by the data class only.
+     *
+     * @param parameters the encoding parameters to train
+     * @param data_class the data class which symbols are used for the training
+     * @param sizeTolerance the size increase (i.e. 0.05 for 5%) accepted for
+     *        the faster decoding or 0 to select the smallest configurations
+     * @param executor the executor to run trials on or null
+     *
+     * @return the number of the descriptors which configurations have changed
+     *
+     * @throws IOException
+     */
+    public synchronized int train(
+            final EncodingParameters parameters,
+            final DATA_CLASS data_class,
+            final double sizeTolerance,
+            final ExecutorService executor) throws IOException {
+
+        final DescriptorConfigurationTrainer trainer =
+                new DescriptorConfigurationTrainer(sizeTolerance, executor);
+
+        final int class_i = data_class.ID - 1;
+        int trained = 0;
+        for (DESCRIPTOR_ID descriptor_id : DESCRIPTOR_ID.values()) {
+            final long[][] descriptorSamples = samples[class_i][descriptor_id.ID];
+            if (descriptorSamples == null) {
+                continue;
+            }
+
+            final DecoderConfiguration configuration =
+                    parameters.getDecoderConfiguration(descriptor_id, data_class);
+            if (!(configuration instanceof CABAC_DescriptorDecoderConfiguration)) {
+                continue;
+            }
+
+            final long[][] subsequenceSamples = new long[descriptorSamples.length][];
+            for (int subsequence_i = 0; subsequence_i < descriptorSamples.length; subsequence_i++) {
+                if (!auxiliary[class_i][descriptor_id.ID][subsequence_i]) {
+                    subsequenceSamples[subsequence_i] = descriptorSamples[subsequence_i];
+                }
+            }
+
+            final CABAC_DescriptorDecoderConfiguration trainedConfiguration = trainer.train(
+                    (CABAC_DescriptorDecoderConfiguration)configuration,
+                    descriptor_id,
+                    parameters.getAlphabetId(),
+                    subsequenceSamples,
+                    lengths[class_i][descriptor_id.ID]);
+
+            if (trainedConfiguration != configuration) {
+                parameters.setDefaultDecoderConfiguration(descriptor_id, trainedConfiguration);
+                trained++;
+            }
+        }
+        return trained;
+    }
+}
@@ -39,6 +39,8 @@ import es.gencom.mpegg.coder.configuration.EncodingParameters;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
@@ -46,6 +48,9 @@ import java.util.Arrays;
 public class DataUnitAccessUnit extends AbstractDataUnit {
     private final DataUnitAccessUnitHeader header;
     private final Block blocks[];
+    private final BlocksLoader loader;
+    private final long blocksSize;
+    private SoftReference<Block[]> loaded;
     private long maximalPositionDecode = -1;
 
     public long getMaximalPositionDecode() {
@@ -562,6 +567,52 @@ public class DataUnitAccessUnit extends AbstractDataUnit {
 
         header = dataUnitAccessUnitHeader;
         this.blocks = blocks;
+        this.loader = null;
+        this.blocksSize = -1;
+    }
+
+    /**
+     * Creates the access unit which blocks are loaded on demand.
+     * Loaded blocks are kept softly reachable, so the loader may be called
+     * again once they have been collected.
+     * 
+     * @param dataUnitAccessUnitHeader the access unit header
+     * @param dataUnits the data units the access unit belongs to
+     * @param loader the loader of the access unit blocks
+     */
+    public DataUnitAccessUnit(
+        DataUnitAccessUnitHeader dataUnitAccessUnitHeader,
+        DataUnits dataUnits,
+        BlocksLoader loader
+    ) {
+
+        this(dataUnitAccessUnitHeader, dataUnits, loader, -1);
+    }
+
+    /**
+     * Creates the access unit which blocks are loaded on demand and which
+     * blocks size is known in advance, so it may be written to the file
+     * without loading the blocks.
+     *
+     * @param dataUnitAccessUnitHeader the access unit header
+     * @param dataUnits the data units the access unit belongs to
+     * @param loader the loader of the access unit blocks
+     * @param blocksSize the size of the access unit blocks (including the
+     *        block headers) or -1 if unknown
+     */
+    public DataUnitAccessUnit(
+        DataUnitAccessUnitHeader dataUnitAccessUnitHeader,
+        DataUnits dataUnits,
+        BlocksLoader loader,
+        long blocksSize
+    ) {
+
+        super(DATAUNIT_TYPE_ID.AU, dataUnits);
+
+        header = dataUnitAccessUnitHeader;
+        this.blocks = null;
+        this.loader = loader;
+        this.blocksSize = blocksSize;
     }
 
     public DataUnitAccessUnitHeader getHeader() {
@@ -587,6 +638,7 @@ public class DataUnitAccessUnit extends AbstractDataUnit {
 
     @Override
     protected void writeDataUnitContent(MPEGWriter writer) throws IOException {
+        final Block[] blocks = getBlocks();
         long data_unit_size = header.size(getParameter());
         for(Block block : blocks){
             data_unit_size += block.size();
@@ -601,6 +653,48 @@ public class DataUnitAccessUnit extends AbstractDataUnit {
     }
 
     public Block[] getBlocks() {
+        if(loader == null){
+            return blocks;
+        }
+        return load();
+    }
+
+    /**
+     * Get the size of all the access unit blocks (including the block headers).
+     * The blocks of the lazily read access unit are not loaded for this.
+     *
+     * @return the size of the access unit blocks in bytes
+     */
+    public long getBlocksSize() {
+        if(blocksSize >= 0){
+            return blocksSize;
+        }
+        long size = 0;
+        for(Block block : getBlocks()){
+            size += block.size();
+        }
+        return size;
+    }
+
+    /**
+     * Check whether the blocks of the access unit are loaded on demand.
+     *
+     * @return true if the access unit blocks are loaded on demand
+     */
+    public boolean isLazy() {
+        return loader != null;
+    }
+
+    private synchronized Block[] load() {
+        Block[] blocks = loaded != null ? loaded.get() : null;
+        if(blocks == null){
+            try {
+                blocks = loader.load();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            loaded = new SoftReference<>(blocks);
+        }
         return blocks;
     }
 
@@ -616,11 +710,18 @@ public class DataUnitAccessUnit extends AbstractDataUnit {
     }
 
     public Block getBlockByDescriptorId(DESCRIPTOR_ID descriptorId){
-        for(Block block : blocks){
+        for(Block block : getBlocks()){
             if(block.getDescriptorId() == descriptorId.ID){
                 return block;
             }
         }
         return null;
     }
+
+    /**
+     * Loader of the access unit blocks (i.e. mapped from an MPEG-G file).
+     */
+    public interface BlocksLoader {
+        Block[] load() throws IOException;
+    }
 }
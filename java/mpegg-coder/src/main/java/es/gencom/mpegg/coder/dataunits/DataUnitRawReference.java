@@ -124,6 +124,18 @@ public class DataUnitRawReference extends AbstractDataUnit {
         );
     }
 
+    public int getSequencesCount() {
+        return sequences.length;
+    }
+
+    public long getStartPos(int sequenceIdentifier) {
+        return startPos[sequenceIdentifier];
+    }
+
+    public long getEndPos(int sequenceIdentifier) {
+        return endPos[sequenceIdentifier];
+    }
+
     public Payload getSequence(int sequenceIdentifier) {
         sequences[sequenceIdentifier].rewind();
         return sequences[sequenceIdentifier];
@@ -138,9 +150,14 @@ public class DataUnitRawReference extends AbstractDataUnit {
         ByteBuffer[] byteBuffersTmp;
 
         long requestStart = Long.max(startPos[sequenceIdentifier], startPosSubsequence);
-        sequences[sequenceIdentifier].position(requestStart);
         long requestEnd = Long.min(endPos[sequenceIdentifier], endPosSubsequence);
-        Payload tmpPayload = sequences[sequenceIdentifier].readPayload(requestEnd - requestStart);
+        Payload tmpPayload;
+
+        // the sequence payload cursor is shared by the concurrent decoders
+        synchronized(sequences[sequenceIdentifier]) {
+            sequences[sequenceIdentifier].position(requestStart);
+            tmpPayload = sequences[sequenceIdentifier].readPayload(requestEnd - requestStart);
+        }
 
         if(requestStart == startPosSubsequence && requestEnd == endPosSubsequence){
             return tmpPayload;
@@ -27,13 +27,19 @@ package es.gencom.mpegg.coder.dataunits;
 
 import es.gencom.mpegg.io.MPEGReader;
 import es.gencom.mpegg.io.MPEGWriter;
+import es.gencom.mpegg.io.ReadableMSBitFileChannel;
 import java.io.EOFException;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 
 public class DataUnits {
+
+    // data_unit_type (u8), reserved (u3) and data_unit_size (u29)
+    private final static int RESERVED_DATA_UNIT_HEADER_SIZE = 5;
+
     private DataUnitRawReference dataUnitRawReference;
 
     private final List<DataUnitParameters> dataUnitParametersList;
@@ -103,9 +109,14 @@ public class DataUnits {
 
         while (true) {
             try {
-                final DATAUNIT_TYPE_ID dataunit_type_id = DATAUNIT_TYPE_ID.read(reader);
-                switch(dataunit_type_id) {
+                final short data_unit_type = reader.readUnsignedByte();
+                if (data_unit_type > DATAUNIT_TYPE_ID.AU.ID) {
+                    reader.readPayload(readReservedDataUnitSize(reader));
+                    continue;
+                }
+                switch(DATAUNIT_TYPE_ID.getDataUnitTypeId(data_unit_type)) {
                     case RAW_REF: dataUnits.setDataUnitRawReference(DataUnitRawReference.read(reader, dataUnits));
+                                  break;
                     case PARAMS: dataUnits.addDataUnitParameters(DataUnitParameters.read(reader, dataUnits));
                                  break;
                     case AU:     dataUnits.addDataUnit(DataUnitAccessUnit.read(reader, dataUnits));
@@ -119,6 +130,50 @@ public class DataUnits {
         return dataUnits;
     }
 
+    /**
+     * Reads the header of the data unit of a reserved type which follows the
+     * data_unit_type: reserved (u3) and data_unit_size (u29), the size of the
+     * whole data unit.
+     *
+     * @param reader the reader positioned after the data_unit_type
+     *
+     * @return the size of the data unit payload which follows the header
+     *
+     * @throws IOException
+     */
+    static long readReservedDataUnitSize(final MPEGReader reader) throws IOException {
+        reader.readBits(3);
+        final long data_unit_size = reader.readBits(29);
+        if (data_unit_size < RESERVED_DATA_UNIT_HEADER_SIZE) {
+            throw new IOException("invalid data_unit_size: " + data_unit_size);
+        }
+        return data_unit_size - RESERVED_DATA_UNIT_HEADER_SIZE;
+    }
+
+    /**
+     * Reads the data units of the bytestream file keeping only the access
+     * unit headers in memory. The blocks of the access units are mapped from
+     * the file when accessed.
+     *
+     * @param reader the reader of the bytestream file
+     *
+     * @return the data units of the bytestream
+     *
+     * @throws IOException
+     */
+    public static DataUnits map(final ReadableMSBitFileChannel reader) throws IOException {
+        final DataUnitsReader dataUnitsReader = new DataUnitsReader(reader);
+        final DataUnits dataUnits = dataUnitsReader.getDataUnits();
+        try {
+            while (dataUnitsReader.hasNext()) {
+                dataUnits.addDataUnit(dataUnitsReader.next());
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        return dataUnits;
+    }
+
     public Iterable<DataUnitParameters> getParameters() {
         return dataUnitParametersList;
     }
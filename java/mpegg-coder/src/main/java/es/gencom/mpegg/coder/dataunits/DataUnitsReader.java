@@ -0,0 +1,197 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.mpegg.coder.dataunits;
+
+import es.gencom.mpegg.coder.configuration.EncodingParameters;
+import es.gencom.mpegg.format.DATA_CLASS;
+import es.gencom.mpegg.io.Payload;
+import es.gencom.mpegg.io.ReadableMSBitFileChannel;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * Streaming reader of the MPEG-G bytestream data units.
+ * </p>
+ *
+ * The reader parses parameters and raw reference data units as soon as they
+ * are met in the bytestream, while access units are returned one at a time.
+ * Only the access unit header is parsed, the blocks are skipped to be mapped
+ * from the file when the access unit content is accessed, so iterating over
+ * the bytestream does not depend on its size.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class DataUnitsReader implements Iterator<DataUnitAccessUnit> {
+
+    private final ReadableMSBitFileChannel reader;
+    private final DataUnits dataUnits;
+
+    // whether the reader is positioned at the access unit
+    private boolean next;
+
+    /**
+     * Creates the reader and parses all the data units preceding the first
+     * access unit.
+     *
+     * @param reader the reader of the bytestream file
+     *
+     * @throws IOException
+     */
+    public DataUnitsReader(final ReadableMSBitFileChannel reader) throws IOException {
+        this.reader = reader;
+        this.dataUnits = new DataUnits();
+        next = seek();
+    }
+
+    /**
+     * Get the data units collection which holds the parameters and the raw
+     * reference read so far. Returned access units refer to this collection,
+     * but are not added to it.
+     *
+     * @return the data units collection of the bytestream
+     */
+    public DataUnits getDataUnits() {
+        return dataUnits;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next;
+    }
+
+    @Override
+    public DataUnitAccessUnit next() {
+        if (!next) {
+            throw new NoSuchElementException();
+        }
+        try {
+            final DataUnitAccessUnit dataUnitAccessUnit = read();
+            next = seek();
+            return dataUnitAccessUnit;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Reads data units until the next access unit. Data units of the reserved
+     * types are skipped.
+     *
+     * @return true if the access unit follows, false at the end of the bytestream
+     *
+     * @throws IOException
+     */
+    private boolean seek() throws IOException {
+        while (true) {
+            final short data_unit_type;
+            try {
+                data_unit_type = reader.readUnsignedByte();
+            } catch (EOFException ex) {
+                return false;
+            }
+            if (data_unit_type > DATAUNIT_TYPE_ID.AU.ID) {
+                final long size = DataUnits.readReservedDataUnitSize(reader);
+                reader.setPosition(reader.getPosition() + size);
+                continue;
+            }
+            switch(DATAUNIT_TYPE_ID.getDataUnitTypeId(data_unit_type)) {
+                case RAW_REF: dataUnits.setDataUnitRawReference(DataUnitRawReference.read(reader, dataUnits));
+                              break;
+                case PARAMS:  dataUnits.addDataUnitParameters(DataUnitParameters.read(reader, dataUnits));
+                              break;
+                case AU:      return true;
+            }
+        }
+    }
+
+    private DataUnitAccessUnit read() throws IOException {
+        // data_unit_size is not always set by the encoder, so blocks are skipped one by one
+        reader.readBits(32);
+
+        final DataUnitAccessUnit.DataUnitAccessUnitHeader header =
+                DataUnitAccessUnit.DataUnitAccessUnitHeader.read(reader, dataUnits);
+
+        final long blocksPosition = reader.getPosition();
+        for (int i = 0; i < header.getNum_blocks(); i++) {
+            reader.readBits(8); // reserved + descriptor_ID
+            final long block_size = reader.readBits(32);
+            reader.setPosition(reader.getPosition() + block_size);
+        }
+        final long blocksSize = reader.getPosition() - blocksPosition;
+
+        final EncodingParameters encodingParameters =
+                dataUnits.getParameter(header.getParameter_set_ID()).getEncodingParameters();
+
+        return new DataUnitAccessUnit(header, dataUnits,
+                new BlocksMapper(reader, blocksPosition, blocksSize, header.getNum_blocks(),
+                                 encodingParameters, header.getAU_type()),
+                blocksSize);
+    }
+
+    /**
+     * Maps the access unit blocks from the bytestream file.
+     */
+    private static class BlocksMapper implements DataUnitAccessUnit.BlocksLoader {
+        private final ReadableMSBitFileChannel reader;
+        private final long position;
+        private final long size;
+        private final int numberBlocks;
+        private final EncodingParameters encodingParameters;
+        private final DATA_CLASS dataClass;
+
+        BlocksMapper(
+                final ReadableMSBitFileChannel reader,
+                final long position,
+                final long size,
+                final int numberBlocks,
+                final EncodingParameters encodingParameters,
+                final DATA_CLASS dataClass) {
+
+            this.reader = reader;
+            this.position = position;
+            this.size = size;
+            this.numberBlocks = numberBlocks;
+            this.encodingParameters = encodingParameters;
+            this.dataClass = dataClass;
+        }
+
+        @Override
+        public DataUnitAccessUnit.Block[] load() throws IOException {
+            final Payload payload = reader.readPayload(position, size);
+            final DataUnitAccessUnit.Block[] blocks = new DataUnitAccessUnit.Block[numberBlocks];
+            for (int i = 0; i < numberBlocks; i++) {
+                blocks[i] = DataUnitAccessUnit.Block.readBlock(payload, encodingParameters, dataClass);
+            }
+            return blocks;
+        }
+    }
+}
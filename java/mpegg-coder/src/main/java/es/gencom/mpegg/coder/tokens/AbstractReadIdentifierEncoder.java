@@ -30,6 +30,13 @@ import java.util.Arrays;
 import static es.gencom.mpegg.coder.tokens.TokenType.*;
 
 public abstract class AbstractReadIdentifierEncoder {
+
+    /**
+     * Estimated per identifier memory of the tokens list in the ring buffer
+     * (objects headers and tokens) apart from the identifier characters.
+     */
+    private final static int IDENTIFIER_OVERHEAD = 160;
+
     private final int RING_SIZE;
     private short[][][] values;
     private int[][] numberValues;
@@ -37,6 +44,9 @@ public abstract class AbstractReadIdentifierEncoder {
     private final ReadIdentifierToReadId readIdentifierToReadId;
     private long encoded;
     private long numberEntries = 0;
+    private long identifiersSize;
+    private final int[] identifiersLengths;
+    private long valuesSize;
 
     protected long distance(TokensList tokensList, TokensList thatTokensList, int index){
         Token[] tokensFromRing = tokensList.getTokens();
@@ -114,10 +124,12 @@ public abstract class AbstractReadIdentifierEncoder {
         values = Arrays.copyOf(values, numberTokens);
         numberValues = Arrays.copyOf(numberValues, numberTokens);
 
+        valuesSize = 0;
         for(int token_i=0; token_i< numberValues.length; token_i++) {
             for (int subsequence_i = 0; subsequence_i < numberValues[token_i].length; subsequence_i++) {
-                values[token_i][subsequence_i] = Arrays.copyOf(
-                        values[token_i][subsequence_i], numberValues[token_i][subsequence_i]);
+                values[token_i][subsequence_i] = values[token_i][subsequence_i] == null ? new short[0] :
+                        Arrays.copyOf(values[token_i][subsequence_i], numberValues[token_i][subsequence_i]);
+                valuesSize += 2L * values[token_i][subsequence_i].length;
             }
         }
         return values;
@@ -152,8 +164,9 @@ public abstract class AbstractReadIdentifierEncoder {
             RING_SIZE = 1;
         }
         tokensListRingBuffer = new RingBuffer<>(RING_SIZE);
+        identifiersLengths = new int[RING_SIZE];
         readIdentifierToReadId = new ReadIdentifierToReadId();
-        values = new short[32][16][2048];
+        values = new short[32][16][];
         numberValues = new int[32][16];
     }
 
@@ -162,10 +175,15 @@ public abstract class AbstractReadIdentifierEncoder {
             int oldSize = values.length;
             values = Arrays.copyOf(values, Integer.max(values.length*2, token_i+1));
             for(int token_entry = oldSize; token_entry < values.length; token_entry++){
-                values[token_entry] = new short[16][2048];
+                values[token_entry] = new short[16][];
             }
         }
+        if(values[token_i][num_tokentype_sequence_i] == null){
+            values[token_i][num_tokentype_sequence_i] = new short[2048];
+            valuesSize += 2L * 2048;
+        }
         if(numberValues[token_i][num_tokentype_sequence_i] == values[token_i][num_tokentype_sequence_i].length){
+            valuesSize += 2L * numberValues[token_i][num_tokentype_sequence_i];
             values[token_i][num_tokentype_sequence_i] = Arrays.copyOf(
                 values[token_i][num_tokentype_sequence_i],
                 numberValues[token_i][num_tokentype_sequence_i]*2
@@ -233,8 +251,13 @@ public abstract class AbstractReadIdentifierEncoder {
                 addValue(EndToken.id, tokensList.getNumberTokens()+1, 0);
             }
         }
+        final String readIdentifier = tokensList.toString();
+        final int ring_i = (int)(encoded % RING_SIZE);
+        identifiersSize -= identifiersLengths[ring_i]; // evicted from the ring
+        identifiersLengths[ring_i] = IDENTIFIER_OVERHEAD + readIdentifier.length();
+        identifiersSize += identifiersLengths[ring_i];
         tokensListRingBuffer.addValue(tokensList);
-        readIdentifierToReadId.addReadIdentifier(tokensList.toString(), encoded);
+        readIdentifierToReadId.addReadIdentifier(readIdentifier, encoded);
         encoded++;
     }
 
@@ -327,4 +350,16 @@ public abstract class AbstractReadIdentifierEncoder {
     public long getNumberEntries() {
         return numberEntries;
     }
+
+    /**
+     * Estimates the memory retained by the encoder: the encoded token values,
+     * the recent tokens lists kept to find the best matching one and the
+     * identifiers kept to find the duplicates. The sizes are counted as the
+     * data is written, so the call is cheap enough to be made per record.
+     *
+     * @return the size of the retained data in bytes
+     */
+    public long getSizeInMemory() {
+        return identifiersSize + readIdentifierToReadId.getSizeInMemory() + valuesSize;
+    }
 }
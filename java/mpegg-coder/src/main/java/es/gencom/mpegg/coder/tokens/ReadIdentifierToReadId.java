@@ -28,19 +28,42 @@ package es.gencom.mpegg.coder.tokens;
 import java.util.HashMap;
 
 class ReadIdentifierToReadId {
+
+    /**
+     * Estimated memory of the hash map entry (node, table slot, boxed id and
+     * string header) apart from the identifier characters.
+     */
+    private final static int ENTRY_OVERHEAD = 96;
+
     private final HashMap<String, Long> map;
+    private long sizeInMemory;
 
     ReadIdentifierToReadId() {
         map = new HashMap<>();
     }
 
     void addReadIdentifier(String readIdentifier, long id){
-        map.put(readIdentifier, id);
+        if(map.put(readIdentifier, id) == null){
+            sizeInMemory += ENTRY_OVERHEAD + readIdentifier.length();
+        }
         if(map.size() > 40000){
-            map.entrySet().removeIf(entry -> entry.getValue() + 33000 < id);
+            map.entrySet().removeIf(entry -> {
+                if(entry.getValue() + 33000 < id){
+                    sizeInMemory -= ENTRY_OVERHEAD + entry.getKey().length();
+                    return true;
+                }
+                return false;
+            });
         }
     }
 
+    /**
+     * @return the estimated memory of the kept identifiers in bytes
+     */
+    long getSizeInMemory(){
+        return sizeInMemory;
+    }
+
     Long getId(String readIdentifier){
         return map.get(readIdentifier);
     }
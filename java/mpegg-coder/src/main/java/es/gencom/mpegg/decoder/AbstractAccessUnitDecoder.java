@@ -26,10 +26,26 @@
 package es.gencom.mpegg.decoder;
 
 import es.gencom.mpegg.Record;
+import es.gencom.mpegg.RecordBuilder;
 import java.io.IOException;
 
 public abstract class AbstractAccessUnitDecoder {
 
     public abstract boolean hasNext() throws IOException;
-    public abstract Record getRecord() throws IOException;
+
+    /**
+     * Decodes the next record passing its components to the builder.
+     *
+     * @param <T> the type of the builder result
+     * @param builder the builder which receives the record components
+     *
+     * @return the result of the builder
+     *
+     * @throws IOException
+     */
+    public abstract <T> T getRecord(RecordBuilder<T> builder) throws IOException;
+
+    public Record getRecord() throws IOException {
+        return getRecord(Record::new);
+    }
 }
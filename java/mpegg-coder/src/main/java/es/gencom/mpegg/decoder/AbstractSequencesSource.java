@@ -29,6 +29,7 @@ import es.gencom.mpegg.format.SequenceIdentifier;
 import es.gencom.mpegg.io.Payload;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public abstract class AbstractSequencesSource {
@@ -47,6 +48,29 @@ public abstract class AbstractSequencesSource {
 
     public abstract Payload getSubsequence(SequenceIdentifier sequenceIdentifier, int startPos, int endPos) throws IOException;
 
+    /**
+     * Copies the subsequence into the caller provided array.
+     * 
+     * @param sequenceIdentifier the sequence identifier
+     * @param startPos the start position of the subsequence (inclusive)
+     * @param endPos the end position of the subsequence (exclusive)
+     * @param dst the array to copy the subsequence into
+     * @param offset the offset in the array
+     * 
+     * @return the number of copied bytes
+     * 
+     * @throws IOException 
+     */
+    public int copySubsequence(SequenceIdentifier sequenceIdentifier, int startPos, int endPos, byte[] dst, int offset) throws IOException {
+        final Payload payload = getSubsequence(sequenceIdentifier, startPos, endPos);
+        for (ByteBuffer buf : payload.getByteBuffers()) {
+            final int length = buf.remaining();
+            buf.get(dst, offset, length);
+            offset += length;
+        }
+        return endPos - startPos;
+    }
+
     public class SequenceInformationEntry{
         private String name;
         private int length;
@@ -25,24 +25,108 @@
 
 package es.gencom.mpegg.decoder;
 
+import es.gencom.mpegg.coder.configuration.EncodingParameters;
 import es.gencom.mpegg.coder.dataunits.DataUnitAccessUnit;
 import es.gencom.mpegg.coder.dataunits.DataUnitParameters;
 import es.gencom.mpegg.coder.quality.AbstractQualityValueParameterSet;
 import es.gencom.mpegg.Record;
+import es.gencom.mpegg.RecordBatch;
 import es.gencom.mpegg.format.DATA_CLASS;
 import es.gencom.mpegg.coder.compression.DESCRIPTOR_ID;
+import es.gencom.mpegg.coder.compression.DescriptorDecoderConfiguration;
 import es.gencom.mpegg.coder.tokens.TokenValuesDecoder;
 import es.gencom.mpegg.decoder.descriptors.streams.*;
+import es.gencom.mpegg.io.MPEGReader;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class DataUnitAccessUnitDecoder {
     public static List<Record> decode(
             DataUnitAccessUnit dataUnitToDecode,
             AbstractSequencesSource sequencesSource
 
+    ) throws IOException {
+        return decode(dataUnitToDecode, sequencesSource, null);
+    }
+
+    /**
+     * Decodes all records of the access unit.
+     *
+     * When the executor is provided, every descriptor subsequence (and read identifiers)
+     * is entropy-decoded concurrently into the memory before the records reconstruction.
+     * This reduces the latency of decoding a single access unit at the cost of
+     * the memory needed to keep all decoded symbols.
+     *
+     * @param dataUnitToDecode the access unit to decode
+     * @param sequencesSource reference used to reconstruct the reads
+     * @param executor the executor to decode descriptors on or null to decode them
+     *        lazily on the caller thread
+     *
+     * @return decoded records
+     *
+     * @throws IOException
+     */
+    public static List<Record> decode(
+            DataUnitAccessUnit dataUnitToDecode,
+            AbstractSequencesSource sequencesSource,
+            ExecutorService executor
+    ) throws IOException {
+        AbstractAccessUnitDecoder abstractAccessUnitDecoder =
+                createAccessUnitDecoder(dataUnitToDecode, sequencesSource, executor);
+
+        List<Record> result = new ArrayList<>(10000);
+        while (abstractAccessUnitDecoder.hasNext()){
+            result.add(abstractAccessUnitDecoder.getRecord());
+        }
+
+        return result;
+    }
+
+    /**
+     * Decodes all records of the access unit appending them to the batch.
+     *
+     * Records are passed to the batch component by component, so neither
+     * Record objects nor their nested arrays outlive the decoding of a read.
+     * Reusing the same (cleared) batch for subsequent access units avoids
+     * the per record allocations of the decoded data.
+     *
+     * @param dataUnitToDecode the access unit to decode
+     * @param sequencesSource reference used to reconstruct the reads
+     * @param executor the executor to decode descriptors on or null to decode them
+     *        lazily on the caller thread
+     * @param batch the batch to append decoded records to
+     *
+     * @return the batch
+     *
+     * @throws IOException
+     */
+    public static RecordBatch decode(
+            DataUnitAccessUnit dataUnitToDecode,
+            AbstractSequencesSource sequencesSource,
+            ExecutorService executor,
+            RecordBatch batch
+    ) throws IOException {
+        AbstractAccessUnitDecoder abstractAccessUnitDecoder =
+                createAccessUnitDecoder(dataUnitToDecode, sequencesSource, executor);
+
+        while (abstractAccessUnitDecoder.hasNext()){
+            abstractAccessUnitDecoder.getRecord(batch);
+        }
+
+        return batch;
+    }
+
+    private static AbstractAccessUnitDecoder createAccessUnitDecoder(
+            DataUnitAccessUnit dataUnitToDecode,
+            AbstractSequencesSource sequencesSource,
+            ExecutorService executor
     ) throws IOException {
         DATA_CLASS dataUnitClass = dataUnitToDecode.getAUType();
 
@@ -50,6 +134,16 @@ public class DataUnitAccessUnitDecoder {
 
 
         DataUnitParameters dataUnitParameters = dataUnitToDecode.getParameter();
+        EncodingParameters encodingParameters = dataUnitParameters.getEncodingParameters();
+        if(executor != null){
+            IdentityHashMap<MPEGReader, PredecodedDescriptorDecoder> readers = new IdentityHashMap<>();
+            encodingParameters = encodingParameters.mapDecoderConfigurations(
+                    configuration -> configuration instanceof DescriptorDecoderConfiguration ?
+                            new PredecodingDecoderConfiguration(
+                                    (DescriptorDecoderConfiguration)configuration, executor, readers) :
+                            configuration
+            );
+        }
         AbstractQualityValueParameterSet qualityValueParameterSet =
                 dataUnitParameters.getQualityValueParameterSet(dataUnitClass);
 
@@ -62,14 +156,25 @@ public class DataUnitAccessUnitDecoder {
 
 
         short[][][] tokensReadIdentifiers = null;
+        Future<short[][][]> tokensReadIdentifiersFuture = null;
         DataUnitAccessUnit.Block rnameBlock = dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.RNAME);
         if(rnameBlock != null){
-            tokensReadIdentifiers = TokenValuesDecoder.decodeTokenValues(
-                    rnameBlock.getDescriptorSpecificData(),
-                    dataUnitParameters.getEncodingParameters(),
-                    DESCRIPTOR_ID.RNAME,
-                    dataUnitClass
-            );
+            final EncodingParameters rnameEncodingParameters = encodingParameters;
+            if(executor != null){
+                tokensReadIdentifiersFuture = executor.submit(() -> TokenValuesDecoder.decodeTokenValues(
+                        rnameBlock.getDescriptorSpecificData(),
+                        rnameEncodingParameters,
+                        DESCRIPTOR_ID.RNAME,
+                        dataUnitClass
+                ));
+            } else {
+                tokensReadIdentifiers = TokenValuesDecoder.decodeTokenValues(
+                        rnameBlock.getDescriptorSpecificData(),
+                        rnameEncodingParameters,
+                        DESCRIPTOR_ID.RNAME,
+                        dataUnitClass
+                );
+            }
         }
 
 
@@ -81,127 +186,138 @@ public class DataUnitAccessUnitDecoder {
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.POS),
                             genomicPosition,
                             dataUnitClass,
-                            dataUnitParameters.getEncodingParameters()
+                            encodingParameters
                     ),
                     new PairStream(
                             dataUnitClass,
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.PAIR),
                             dataUnitParameters.getNumberTemplateSegments(),
-                            dataUnitParameters.getEncodingParameters()
+                            encodingParameters
                     ),
                     new MMapStream(
                             dataUnitClass,
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.MMAP),
                             dataUnitParameters.isMultiple_alignments_flag(),
-                            dataUnitParameters.getEncodingParameters()
+                            encodingParameters
                     ),
                     new RCompStream(
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.RCOMP),
                             dataUnitClass,
-                            dataUnitParameters.getEncodingParameters()
+                            encodingParameters
                     ),
                     new FlagsStream(
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.FLAGS),
                             dataUnitClass,
-                            dataUnitParameters.getEncodingParameters()
+                            encodingParameters
                     ),
                     new RlenStream(
                             dataUnitClass,
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.RLEN),
                             (int)dataUnitParameters.getReadLength(),
                             dataUnitParameters.isSplicedReadsFlag(),
-                            dataUnitParameters.getEncodingParameters()
+                            encodingParameters
                     ),
                     new MMposStream(
                             dataUnitClass,
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.MMPOS),
-                            dataUnitParameters.getEncodingParameters()
+                            encodingParameters
                     ),
                     new MMTypeStream(
                             dataUnitClass,
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.MMTYPE),
-                            dataUnitParameters.getEncodingParameters()
+                            encodingParameters
                     ),
                     new ClipsStream(
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.CLIPS),
                             dataUnitClass,
-                            dataUnitParameters.getEncodingParameters()
+                            encodingParameters
                     ),
                     new QualityStream(
-                            dataUnitParameters.getEncodingParameters(),
+                            encodingParameters,
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.QV),
                             dataUnitClass
                     ),
                     sequencesSource,
-                    tokensReadIdentifiers,
-                    dataUnitParameters.getEncodingParameters().getAlphabetId(),
+                    // streams are created (and started decoding) before waiting for the tokens
+                    getTokensReadIdentifiers(tokensReadIdentifiers, tokensReadIdentifiersFuture),
+                    encodingParameters.getAlphabetId(),
                     qualityValueParameterSet
             );
         }else if(dataUnitClass == DATA_CLASS.CLASS_HM){
             abstractAccessUnitDecoder = new HalfMappedAccessUnitDecoder(
                     auId,
-                    dataUnitParameters.getEncodingParameters().getAlphabetId(),
+                    encodingParameters.getAlphabetId(),
                     genomicPosition,
                     sequencesSource,
                     new PosStream(
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.POS),
                             genomicPosition,
                             dataUnitClass,
-                            dataUnitParameters.getEncodingParameters()
+                            encodingParameters
                     ),
                     new RlenStream(
                             dataUnitClass,
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.RLEN),
                             (int)dataUnitParameters.getReadLength(),
                             dataUnitParameters.isSplicedReadsFlag(),
-                            dataUnitParameters.getEncodingParameters()
+                            encodingParameters
                     ),
                     new RCompStream(
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.RCOMP),
                             dataUnitClass,
-                            dataUnitParameters.getEncodingParameters()
+                            encodingParameters
                     ),
                     new MMposStream(
                             dataUnitClass,
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.MMPOS),
-                            dataUnitParameters.getEncodingParameters()
+                            encodingParameters
                     ),
                     new MMTypeStream(
                             dataUnitClass,
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.MMTYPE),
-                            dataUnitParameters.getEncodingParameters()
+                            encodingParameters
                     ),
                     new ClipsStream(
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.CLIPS),
                             dataUnitClass,
-                            dataUnitParameters.getEncodingParameters()
+                            encodingParameters
                     ),
                     new UReadsStream(
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.UREADS),
                             dataUnitClass,
-                            dataUnitParameters.getEncodingParameters()
+                            encodingParameters
                     ),
                     new QualityStream(
-                            dataUnitParameters.getEncodingParameters(),
+                            encodingParameters,
                             dataUnitToDecode.getBlockByDescriptorId(DESCRIPTOR_ID.QV),
                             dataUnitClass
                     ),
-                    tokensReadIdentifiers
+                    getTokensReadIdentifiers(tokensReadIdentifiers, tokensReadIdentifiersFuture)
             );
         }else{
             throw new IllegalArgumentException();
         }
 
-        List<Record> result = new ArrayList<>(10000);
-        while (abstractAccessUnitDecoder.hasNext()){
-            try {
-                result.add(abstractAccessUnitDecoder.getRecord());
-            }catch (Exception e){
-                e.printStackTrace();
-                break;
+        return abstractAccessUnitDecoder;
+    }
+
+    private static short[][][] getTokensReadIdentifiers(
+            short[][][] tokensReadIdentifiers,
+            Future<short[][][]> tokensReadIdentifiersFuture
+    ) throws IOException {
+        if(tokensReadIdentifiersFuture == null){
+            return tokensReadIdentifiers;
+        }
+        try {
+            return tokensReadIdentifiersFuture.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        } catch (ExecutionException ex) {
+            if(ex.getCause() instanceof IOException){
+                throw (IOException)ex.getCause();
             }
+            throw new IOException(ex.getCause());
         }
-
-        return result;
     }
 }
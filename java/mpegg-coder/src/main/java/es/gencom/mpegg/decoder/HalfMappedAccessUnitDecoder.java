@@ -25,10 +25,8 @@
 
 package es.gencom.mpegg.decoder;
 
-import es.gencom.mpegg.Record;
+import es.gencom.mpegg.RecordBuilder;
 import es.gencom.mpegg.RecordFactory;
-import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.Operation;
-import es.gencom.mpegg.format.SequenceIdentifier;
 import es.gencom.mpegg.coder.compression.ALPHABET_ID;
 import es.gencom.mpegg.coder.tokens.TokensStructureDecoder;
 import es.gencom.mpegg.decoder.descriptors.S_alphabets;
@@ -57,6 +55,7 @@ public class HalfMappedAccessUnitDecoder extends AbstractAccessUnitDecoder {
 
     final private byte[] changedNucleotides = new byte[]{};
     final private long[] changedPositions = new long[]{};
+    final private SegmentDecodingBuffers buffers = new SegmentDecodingBuffers();
 
     final private ALPHABET_ID alphabet_id;
 
@@ -102,57 +101,13 @@ public class HalfMappedAccessUnitDecoder extends AbstractAccessUnitDecoder {
         }
     }
 
-    static SegmentsDecodingResult decode_aligned_segment(
-            long[] splicedSegLength,
-            int[][] mmType,
-            int[][] mmOffsets,
-            MMTypeStreamInterface mmTypeStream,
-            byte[][] softClip,
-            long[][] mappingPos,
-            SequenceIdentifier sequenceIdentifier,
-            AbstractSequencesSource sequencesSource,
-            byte[] changedNucleotides,
-            long[] changedPositions,
-            ALPHABET_ID alphabet_id) throws IOException {
-
-        byte[][][] operations = new byte[1][][];
-        int[][][] operationLength = new int[1][][];
-        byte[][] decode_sequences;
-        byte[][][] original_nucleotides = new byte[1][][];
-        int[][] length_original_nucleotides = new int[1][];
-
-        decode_sequences = MappedAccessUnitDecoder.decode_aligned_segment(
-                splicedSegLength,
-                mmType,
-                mmOffsets,
-                mmTypeStream,
-                softClip,
-                mappingPos,
-                sequenceIdentifier,
-                sequencesSource,
-                changedNucleotides,
-                changedPositions,
-                alphabet_id,
-                operations,
-                operationLength,
-                original_nucleotides,
-                length_original_nucleotides
-        );
-
-        return new SegmentsDecodingResult(
-                new byte[][][]{decode_sequences},
-                new byte[][][][]{operations},
-                new int[][][][]{operationLength},
-                new byte[][][][]{original_nucleotides});
-    }
-
     @Override
     public boolean hasNext() throws IOException {
         return posStream.hasNext();
     }
 
     @Override
-    public Record getRecord() throws IOException {
+    public <T> T getRecord(final RecordBuilder<T> builder) throws IOException {
         String readName = "";
         if(readIdentifierDecoder != null){
             readName = readIdentifierDecoder.getString();
@@ -185,22 +140,21 @@ public class HalfMappedAccessUnitDecoder extends AbstractAccessUnitDecoder {
         int[][] mmOffsets = mPosStream.read(numberOfAlignedSegments);
         int[][] mmTypes = mmTypeStream.readMMType(mmOffsets);
         correctMmOffsetsByType(mmOffsets, mmTypes);
-        int[][][] mmOffsetsPerSlice = correctMmOffsetsBySplices(mmOffsets, rlenStreamSymbol.getSplicedSegLength());
-        int[][][] mmTypesPerSplice = correctMMTypesPerSlice(mmTypes, mmOffsetsPerSlice);
 
 
-        SegmentsDecodingResult alignedDecodingResult =  decode_aligned_segment(
+        decode_aligned_segment(
                 rlenStreamSymbol.getSplicedSegLength()[0],
-                mmTypesPerSplice[0],
-                mmOffsetsPerSlice[0],
+                mmTypes[0],
+                mmOffsets[0],
                 mmTypeStream,
                 clipsStream.getSoft_clips()[0],
-                positions,
+                positions[0],
                 initialPosition.getSequenceId(),
                 sequencesSource,
                 changedNucleotides,
                 changedPositions,
-                alphabet_id
+                alphabet_id,
+                buffers
         );
 
         byte[] decoded_unaligned = uReadsStream.read(
@@ -209,12 +163,16 @@ public class HalfMappedAccessUnitDecoder extends AbstractAccessUnitDecoder {
         );
 
         short[][][] qualityValues = new short[2][1][];
-        qualityValues[0][0] = qualityStream.getQualitiesAligned(
-                alignedDecodingResult.getOperations()[0][0],
-                alignedDecodingResult.getOperationLength()[0][0],
+        buffers.numberQualities = qualityStream.getQualitiesAligned(
+                buffers.operations,
+                buffers.operationLength,
+                buffers.operationsEnd,
+                buffers.splices,
                 positions[0],
-                initialPosition.getPosition()
+                initialPosition.getPosition(),
+                buffers.ensureQualities()
         );
+        qualityValues[0][0] = buffers.getQualities();
         qualityValues[1][0] = qualityStream.getQualitiesUnaligned(decoded_unaligned.length);
 
         long[][][] spliceLength = new long[2][1][];
@@ -223,20 +181,21 @@ public class HalfMappedAccessUnitDecoder extends AbstractAccessUnitDecoder {
 
         readCount++;
         return RecordFactory.createOneAlignedOneUnmapped(
+            builder,
             readCount,
             readName,
             "",
             true,
             new byte[][]{
-                    alignedDecodingResult.getDecode_sequences()[0],
+                    buffers.getSequence(),
                     decoded_unaligned
             },
             qualityValues,
             initialPosition.getSequenceId(),
             positions,
-            alignedDecodingResult.getOperations()[0],
-            alignedDecodingResult.getOperationLength()[0],
-            alignedDecodingResult.getOriginal_nucleotides()[0],
+            new byte[][][]{buffers.getOperations()},
+            new int[][][]{buffers.getOperationLength()},
+            new byte[][][]{buffers.getOriginalBases()},
             spliceLength,
             rCompSymbols[0],
             new long[][]{{0},{0}});
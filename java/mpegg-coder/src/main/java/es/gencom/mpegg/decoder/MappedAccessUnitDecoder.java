@@ -26,7 +26,8 @@
 package es.gencom.mpegg.decoder;
 
 import es.gencom.mpegg.coder.quality.AbstractQualityValueParameterSet;
-import es.gencom.mpegg.Record;
+import es.gencom.mpegg.RecordBatch;
+import es.gencom.mpegg.RecordBuilder;
 import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.Operation;
 import es.gencom.mpegg.format.SequenceIdentifier;
 import es.gencom.mpegg.coder.compression.ALPHABET_ID;
@@ -37,9 +38,10 @@ import es.gencom.mpegg.io.Payload;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MappedAccessUnitDecoder extends AbstractAccessUnitDecoder {
-    private static long auCreationCount = 0;
+    private final static AtomicLong auCreationCount = new AtomicLong();
 
     private final long auId;
 
@@ -64,6 +66,8 @@ public class MappedAccessUnitDecoder extends AbstractAccessUnitDecoder {
 
     final private byte[] changedNucleotides = new byte[]{};
     final private long[] changedPositions = new long[]{};
+    final private long[][][] splicedSegLengthPerAlignment = new long[2][1][];
+    private SegmentDecodingBuffers[] segments = {new SegmentDecodingBuffers(), new SegmentDecodingBuffers()};
 
     final private ALPHABET_ID alphabet_id;
 
@@ -115,8 +119,7 @@ public class MappedAccessUnitDecoder extends AbstractAccessUnitDecoder {
             readIdentifierDecoder = new TokensStructureDecoder(tokensReadIdentifiers);
         }
 
-        auId = auCreationCount;
-        auCreationCount++;
+        auId = auCreationCount.getAndIncrement();
     }
 
     @Override
@@ -124,7 +127,9 @@ public class MappedAccessUnitDecoder extends AbstractAccessUnitDecoder {
         return posStream.hasNext();
     }
 
-    public Record getRecord() throws IOException {
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getRecord(final RecordBuilder<T> builder) throws IOException {
         String readName = "";
         if(readIdentifierDecoder != null){
             readName = readIdentifierDecoder.getString();
@@ -146,6 +151,7 @@ public class MappedAccessUnitDecoder extends AbstractAccessUnitDecoder {
                 pairStreamFirstSymbol.getNumberOfRecordSegments()
         );
         long[][] mappingPos = posStream.read(mMapStreamSymbol.getNumberOfSegmentAlignments());
+        long[][] splicedSegLength = rlenStreamSymbol.getSplicedSegLength();
         PairStreamSymbol pairStreamSymbol = pairStream.readUnknown(
                 mMapStreamSymbol.getNumberOfSegmentAlignments(),
                 mappingPos,
@@ -154,221 +160,265 @@ public class MappedAccessUnitDecoder extends AbstractAccessUnitDecoder {
                 mMapStreamSymbol.getNumberOfAlignments(),
                 mMapStreamSymbol.getAlignPtr(),
                 pairStreamFirstSymbol.getNumberOfAlignedRecordSegments(),
-                rlenStreamSymbol.getSplicedSegLength()
+                splicedSegLength
         );
-        long[][][] resizedSplicedSegLength = new long[rlenStreamSymbol.getSplicedSegLength().length][1][];
-        for(
-                int segment_i = 0;
-                segment_i < resizedSplicedSegLength.length;
-                segment_i++
-        ){
-            resizedSplicedSegLength[segment_i][0] = rlenStreamSymbol.getSplicedSegLength()[segment_i];
+        for(int segment_i = 0; segment_i < splicedSegLengthPerAlignment.length; segment_i++){
+            splicedSegLengthPerAlignment[segment_i][0] =
+                    segment_i < splicedSegLength.length ? splicedSegLength[segment_i] : null;
         }
         boolean[][][] rCompSymbols = rCompStream.read(
                 mMapStreamSymbol.getNumberOfSegmentAlignments(),
-                resizedSplicedSegLength
+                splicedSegLengthPerAlignment
         );
         int[][] mmOffsets = mPosStream.read(pairStreamFirstSymbol.getNumberOfAlignedRecordSegments());
         int[][] mmTypes = mmTypeStream.readMMType(mmOffsets);
         correctMmOffsetsByType(mmOffsets, mmTypes);
-        int[][][] mmOffsetsPerSlice = correctMmOffsetsBySplices(mmOffsets, rlenStreamSymbol.getSplicedSegLength());
-        int[][][] mmTypesPerSplice = correctMMTypesPerSlice(mmTypes, mmOffsetsPerSlice);
 
+        int numberOfAlignedRecordSegments = mmTypes.length;
+        if(segments.length < numberOfAlignedRecordSegments){
+            segments = Arrays.copyOf(segments, numberOfAlignedRecordSegments);
+            for(int segment_i = 0; segment_i < segments.length; segment_i++){
+                if(segments[segment_i] == null){
+                    segments[segment_i] = new SegmentDecodingBuffers();
+                }
+            }
+        }
+        for(int segment_i = 0; segment_i < numberOfAlignedRecordSegments; segment_i++){
+            decode_aligned_segment(
+                    splicedSegLength[segment_i],
+                    mmTypes[segment_i],
+                    mmOffsets[segment_i],
+                    mmTypeStream,
+                    clipsStream.getSoft_clips()[segment_i],
+                    segment_i == 0 ? mappingPos[0] : pairStreamSymbol.getMateMappingPos()[0],
+                    initialPosition.getSequenceId(),
+                    sequencesSource,
+                    changedNucleotides,
+                    changedPositions,
+                    alphabet_id,
+                    segments[segment_i]
+            );
+        }
 
-        SegmentsDecodingResult segmentsDecodingResult =  decode_aligned_segments(
-                rlenStreamSymbol.getSplicedSegLength(),
-                mmTypesPerSplice,
-                mmOffsetsPerSlice,
-                mmTypeStream,
-                clipsStream.getSoft_clips(),
-                combineMappingPos(mappingPos, pairStreamSymbol.getMateMappingPos()),
-                initialPosition.getSequenceId(),
-                sequencesSource,
-                changedNucleotides,
-                changedPositions,
-                alphabet_id
-        );
+        int numberOfQualitySegments = pairStreamFirstSymbol.getNumberOfRecordSegments() == 2 ? 2 : 1;
+        for(int segment_i = 0; segment_i < numberOfQualitySegments; segment_i++){
+            SegmentDecodingBuffers segment = segments[segment_i];
+            segment.numberQualities = qualityStream.getQualitiesAligned(
+                    segment.operations,
+                    segment.operationLength,
+                    segment.operationsEnd,
+                    segment.splices,
+                    segment_i == 0 ? mappingPos[0] : pairStreamSymbol.getMateMappingPos()[0],
+                    initialPosition.getPosition(),
+                    segment.ensureQualities()
+            );
+        }
 
-        short[][][] qualities = new short[2][1][];
-        qualities[0][0] = qualityStream.getQualitiesAligned(
-                segmentsDecodingResult.getOperations()[0][0],
-                segmentsDecodingResult.getOperationLength()[0][0],
-                mappingPos[0],
-                initialPosition.getPosition()
-        );
-        if(pairStreamFirstSymbol.getNumberOfRecordSegments() == 2){
-            qualities[1][0] = qualityStream.getQualitiesAligned(
-                    segmentsDecodingResult.getOperations()[1][0],
-                    segmentsDecodingResult.getOperationLength()[1][0],
-                    pairStreamSymbol.getMateMappingPos()[0],
-                    initialPosition.getPosition()
+        T result;
+        if(builder instanceof RecordBatch){
+            result = (T) write(
+                    (RecordBatch)builder,
+                    readName,
+                    pairStreamFirstSymbol,
+                    pairStreamSymbol,
+                    mappingPos,
+                    splicedSegLength,
+                    numberOfAlignedRecordSegments,
+                    numberOfQualitySegments,
+                    rCompSymbols,
+                    mMapStreamSymbol.getAlignPtr());
+        } else {
+            byte[][] sequences = new byte[numberOfAlignedRecordSegments][];
+            byte[][][][] operations = new byte[numberOfAlignedRecordSegments][1][][];
+            int[][][][] operationLength = new int[numberOfAlignedRecordSegments][1][][];
+            byte[][][][] originalBases = new byte[numberOfAlignedRecordSegments][1][][];
+            for(int segment_i = 0; segment_i < numberOfAlignedRecordSegments; segment_i++){
+                sequences[segment_i] = segments[segment_i].getSequence();
+                operations[segment_i][0] = segments[segment_i].getOperations();
+                operationLength[segment_i][0] = segments[segment_i].getOperationLength();
+                originalBases[segment_i][0] = segments[segment_i].getOriginalBases();
+            }
+            short[][][] qualities = new short[2][1][];
+            for(int segment_i = 0; segment_i < numberOfQualitySegments; segment_i++){
+                qualities[segment_i][0] = segments[segment_i].getQualities();
+            }
+            long[][][] lengthSplices = new long[splicedSegLength.length][1][];
+            for(int segment_i = 0; segment_i < lengthSplices.length; segment_i++){
+                lengthSplices[segment_i][0] = splicedSegLength[segment_i];
+            }
+
+            result = builder.build(
+                    readCount,
+                    readName,
+                    "",
+                    pairStreamSymbol.isRead_1_first(),
+                    pairStreamFirstSymbol.isUnpairedRead(),
+                    sequences,
+                    qualities,
+                    initialPosition.getSequenceId(),
+                    mappingPos,
+                    pairStreamSymbol.getSplitMate(),
+                    pairStreamSymbol.getMateSeqId(),
+                    pairStreamSymbol.getMateMappingPos(),
+                    lengthSplices,
+                    operations,
+                    operationLength,
+                    originalBases,
+                    rCompSymbols,
+                    null,
+                    mMapStreamSymbol.getAlignPtr()
             );
         }
+        readCount++;
+        return result;
+    }
+
+    /**
+     * Writes the decoded record straight into the batch pools in the order
+     * of the {@link RecordBuilder#build} components.
+     */
+    private RecordBatch write(
+            RecordBatch batch,
+            String readName,
+            PairStreamFirstSymbol pairStreamFirstSymbol,
+            PairStreamSymbol pairStreamSymbol,
+            long[][] mappingPos,
+            long[][] splicedSegLength,
+            int numberOfAlignedRecordSegments,
+            int numberOfQualitySegments,
+            boolean[][][] rCompSymbols,
+            int[][] alignPtr) {
 
-        Record result = new Record(
+        batch.begin(
                 readCount,
                 readName,
                 "",
                 pairStreamSymbol.isRead_1_first(),
                 pairStreamFirstSymbol.isUnpairedRead(),
-                segmentsDecodingResult.getDecode_sequences(),
-                qualities,
-                initialPosition.getSequenceId(),
-                mappingPos,
-                pairStreamSymbol.getSplitMate(),
-                pairStreamSymbol.getMateSeqId(),
-                pairStreamSymbol.getMateMappingPos(),
-                resizedSplicedSegLength,
-                segmentsDecodingResult.getOperations(),
-                segmentsDecodingResult.getOperationLength(),
-                segmentsDecodingResult.getOriginal_nucleotides(),
-                rCompSymbols,
-                null,
-                mMapStreamSymbol.getAlignPtr()
-        );
-        readCount++;
-        return result;
-    }
-
-    private static long[][][] combineMappingPos(long[][] mappingPos, long[][] mateMappingPos) {
-        return new long[][][]{
-                mappingPos,
-                mateMappingPos
-        };
-    }
+                initialPosition.getSequenceId());
 
-
-    static int[][][] correctMMTypesPerSlice(int[][] mmTypes, int[][][] mmOffsetsPerSlice) {
-        int[][][] result = new int[mmTypes.length][][];
-        for(int segment_i=0; segment_i < result.length; segment_i++){
-            result[segment_i] = new int[mmOffsetsPerSlice[segment_i].length][];
-            int mm_operation_i = 0;
-            for(int splice_i = 0; splice_i < mmOffsetsPerSlice[segment_i].length; splice_i++){
-                result[segment_i][splice_i] = new int[mmOffsetsPerSlice[segment_i][splice_i].length];
-                for(
-                    int mm_operation_slice_i = 0;
-                    mm_operation_slice_i < mmOffsetsPerSlice[segment_i][splice_i].length;
-                    mm_operation_slice_i++
-                ){
-                    result[segment_i][splice_i][mm_operation_slice_i] = mmTypes[segment_i][mm_operation_i];
-                    mm_operation_i++;
-                }
+        batch.putArray(numberOfAlignedRecordSegments);
+        for(int segment_i = 0; segment_i < numberOfAlignedRecordSegments; segment_i++){
+            batch.putBytes(segments[segment_i].sequence, 0, segments[segment_i].sequenceLength);
+        }
+        batch.putArray(2);
+        for(int segment_i = 0; segment_i < 2; segment_i++){
+            batch.putArray(1);
+            if(segment_i < numberOfQualitySegments){
+                batch.putShorts(segments[segment_i].qualities, 0, segments[segment_i].numberQualities);
+            } else {
+                batch.putNull();
             }
         }
-        return result;
-    }
-
-    static SegmentsDecodingResult decode_aligned_segments(
-            long[][] splicedSegLength,
-            int[][][] mmType,
-            int[][][] mmOffsets,
-            MMTypeStreamInterface mmTypeStream,
-            byte[][][] softClip,
-            long[][][] mappingPos,
-            SequenceIdentifier sequenceIdentifier,
-            AbstractSequencesSource sequencesSource,
-            byte[] changedNucleotides,
-            long[] changedPositions,
-            ALPHABET_ID alphabet_id) throws IOException {
-
-        int numberOfAlignedRecordSegments = mmType.length;
-        byte[][][][] operations = new byte[numberOfAlignedRecordSegments][1][][];
-        int[][][][] operationLength = new int[numberOfAlignedRecordSegments][1][][];
-        byte[][][] decode_sequences = new byte[numberOfAlignedRecordSegments][][];
-        byte[][][][] original_nucleotides = new byte[numberOfAlignedRecordSegments][1][][];
-        int[][][] length_original_nucleotides = new int[numberOfAlignedRecordSegments][1][];
-        
-        for(short alignedRecordSegment_i = 0;
-                  alignedRecordSegment_i < numberOfAlignedRecordSegments;
-                  alignedRecordSegment_i++) {
-
-            decode_sequences[alignedRecordSegment_i] = decode_aligned_segment(
-                splicedSegLength[alignedRecordSegment_i],
-                mmType[alignedRecordSegment_i],
-                mmOffsets[alignedRecordSegment_i],
-                mmTypeStream,
-                softClip[alignedRecordSegment_i],
-                mappingPos[alignedRecordSegment_i],
-                sequenceIdentifier,
-                sequencesSource,
-                changedNucleotides,
-                changedPositions,
-                alphabet_id,
-                operations[alignedRecordSegment_i],
-                operationLength[alignedRecordSegment_i],
-                original_nucleotides[alignedRecordSegment_i],
-                length_original_nucleotides[alignedRecordSegment_i]);
+        batch.putLongs(mappingPos);
+        batch.putObjects(pairStreamSymbol.getSplitMate());
+        batch.putObjects(pairStreamSymbol.getMateSeqId());
+        batch.putLongs(pairStreamSymbol.getMateMappingPos());
+        batch.putArray(splicedSegLength.length);
+        for(int segment_i = 0; segment_i < splicedSegLength.length; segment_i++){
+            batch.putArray(1);
+            batch.putLongs(splicedSegLength[segment_i]);
         }
-        return new SegmentsDecodingResult(decode_sequences, operations, operationLength, original_nucleotides);
+        batch.putArray(numberOfAlignedRecordSegments);
+        for(int segment_i = 0; segment_i < numberOfAlignedRecordSegments; segment_i++){
+            batch.putArray(1);
+            segments[segment_i].putOperations(batch);
+        }
+        batch.putArray(numberOfAlignedRecordSegments);
+        for(int segment_i = 0; segment_i < numberOfAlignedRecordSegments; segment_i++){
+            batch.putArray(1);
+            segments[segment_i].putOperationLength(batch);
+        }
+        batch.putArray(numberOfAlignedRecordSegments);
+        for(int segment_i = 0; segment_i < numberOfAlignedRecordSegments; segment_i++){
+            batch.putArray(1);
+            segments[segment_i].putOriginalBases(batch);
+        }
+        batch.putBooleans(rCompSymbols);
+        batch.putNull();
+        batch.putInts(alignPtr);
+
+        return batch.end();
     }
 
-    static byte[][] decode_aligned_segment(
+    /**
+     * Decodes the splices of the aligned segment into the segment buffers.
+     *
+     * @param mmType the mismatches types of the segment
+     * @param mmOffsets the mismatches offsets of the segment corrected by their types
+     * @param mappingPos the mapping positions of the segment splices
+     */
+    static void decode_aligned_segment(
             long[] splicedSegLength,
-            int[][] mmType,
-            int[][] mmOffsets,
+            int[] mmType,
+            int[] mmOffsets,
             MMTypeStreamInterface mmTypeStream,
             byte[][] softClip,
-            long[][] mappingPos,
+            long[] mappingPos,
             SequenceIdentifier sequenceIdentifier,
             AbstractSequencesSource sequencesSource,
             byte[] changedNucleotides,
             long[] changedPositions,
             ALPHABET_ID alphabet_id,
-            byte[][][] operations,
-            int[][][] operationLength,
-            byte[][][] original_nucleotides,
-            int[][] length_original_nucleotides) throws IOException {
+            SegmentDecodingBuffers segment) throws IOException {
 
         int numberOfSplices = splicedSegLength.length;
+        segment.reset(numberOfSplices);
 
-        operations[0] = new byte[numberOfSplices][];
-        operationLength[0] = new int[numberOfSplices][];
-        byte[][] decode_sequences = new byte[numberOfSplices][];
-        original_nucleotides[0] = new byte[numberOfSplices][32];
-        length_original_nucleotides[0] = new int[numberOfSplices];
-
+        // mismatches offsets are ordered, so every splice takes a contiguous range of them
+        int mismatch_i = 0;
+        int splicedSegmentStartOffset = 0;
         for(
                 int splice_i=0;
                 splice_i < numberOfSplices;
                 splice_i++
         ){
 
-            long position = mappingPos[0][splice_i];
+            long position = mappingPos[splice_i];
             long mappedLength = splicedSegLength[splice_i];
 
-            operations[0][splice_i] = new byte[128];
-            operationLength[0][splice_i] = new int[128];
-            int numberOperations = 0;
-            decode_sequences[splice_i] = new byte[Math.toIntExact(mappedLength)];
-            int decodedPositions = 0;
-
-            if(splice_i == 0) {
-                mappedLength -= softClip[0].length;
-            }
-            if (splice_i == numberOfSplices - 1){
-                mappedLength -= softClip[1].length;
+            int splicedSegmentEndOffset = Math.toIntExact(splicedSegmentStartOffset + mappedLength);
+            int firstMismatch_i = mismatch_i;
+            while(mismatch_i < mmOffsets.length && mmOffsets[mismatch_i] < splicedSegmentEndOffset){
+                mismatch_i++;
             }
 
+            final int operationsStart = segment.numberOperations;
+            final int leadingClip = splice_i == 0 ? softClip[0].length : 0;
+            final int trailingClip = splice_i == numberOfSplices - 1 ? softClip[1].length : 0;
+            mappedLength -= leadingClip + trailingClip;
+
             long sizeToRequest = mappedLength;
 
             for(
-                    int operation_i = 0;
-                    operation_i < mmType[splice_i].length;
+                    int operation_i = firstMismatch_i;
+                    operation_i < mismatch_i;
                     operation_i++
             ){
-                if (mmType[splice_i][operation_i] == 2){
+                if (mmType[operation_i] == 2){
                     sizeToRequest++;
                 }
             }
 
-            byte[] base_decode = getNucleotidesSequence(
+            // the splice is decoded in place after the previous splices and the leading soft clip
+            final int spliceStart = segment.sequenceLength;
+            final int base = spliceStart + leadingClip;
+            final byte[] base_decode = segment.ensureSequence(
+                    Math.toIntExact(base + sizeToRequest + trailingClip));
+            int length = Math.toIntExact(sizeToRequest);
+
+            sequencesSource.copySubsequence(
+                    sequenceIdentifier,
+                    Math.toIntExact(position),
+                    Math.toIntExact(position + sizeToRequest),
+                    base_decode,
+                    base
+            );
+            getNucleotidesSequence(
                     position,
-                    sizeToRequest,
-                    sequencesSource.getSubsequenceBytes(
-                            sequenceIdentifier,
-                            Math.toIntExact(position),
-                            Math.toIntExact(position + sizeToRequest)
-                    ),
+                    base_decode,
+                    base,
+                    length,
                     changedNucleotides,
                     changedPositions
             );
@@ -376,236 +426,85 @@ public class MappedAccessUnitDecoder extends AbstractAccessUnitDecoder {
 
             int previousOffset = 0;
             for(
-                    int operation_i = 0;
-                    operation_i < mmType[splice_i].length;
+                    int operation_i = firstMismatch_i;
+                    operation_i < mismatch_i;
                     operation_i++
             ){
-                int offset = mmOffsets[splice_i][operation_i];
+                int offset = mmOffsets[operation_i] - splicedSegmentStartOffset;
 
                 int delta = offset - previousOffset;
                 previousOffset = offset;
                 if(delta > 0){
-                    numberOperations = addOperationAutomatic(
-                            operations,
-                            operationLength,
-                            splice_i,
-                            Operation.Match,
-                            numberOperations,
-                            delta);
+                    segment.addOperation(Operation.Match, delta);
                 }
 
-                if(mmType[splice_i][operation_i] == 0){
+                if(mmType[operation_i] == 0){
                     byte newBase = mmTypeStream.readNewMismatchBase(
                             S_alphabets.alphabets[alphabet_id.ID],
-                            base_decode[offset]
-                    );
-                    byte originalBase = base_decode[offset];
-                    base_decode[offset] = newBase;
-                    numberOperations = addOperationAutomatic(
-                            operations,
-                            operationLength,
-                            splice_i,
-                            Operation.Substitution,
-                            numberOperations,
-                            1
-                    );
-                    addOriginalBaseAutomatic(
-                            original_nucleotides,
-                            length_original_nucleotides[0],
-                            splice_i,
-                            originalBase
+                            base_decode[base + offset]
                     );
+                    byte originalBase = base_decode[base + offset];
+                    base_decode[base + offset] = newBase;
+                    segment.addOperation(Operation.Substitution, 1);
+                    segment.addOriginalBase(originalBase);
                     previousOffset++;
-                }else if(mmType[splice_i][operation_i] == 1){
+                }else if(mmType[operation_i] == 1){
                     byte newBase = mmTypeStream.readNewInsertBase(S_alphabets.alphabets[alphabet_id.ID]);
-                    insertAtPosition(base_decode, newBase, offset);
-                    numberOperations = addOperationAutomatic(
-                            operations,
-                            operationLength,
-                            splice_i,
-                            Operation.Insert,
-                            numberOperations,
-                            1
-                    );
+                    insertAtPosition(base_decode, base, length, newBase, offset);
+                    segment.addOperation(Operation.Insert, 1);
                     previousOffset++;
-                }else if(mmType[splice_i][operation_i] == 2){
-                    byte originalBase = base_decode[offset];
-                    base_decode = deleteAtPosition(base_decode, offset);
-                    numberOperations = addOperationAutomatic(
-                            operations,
-                            operationLength,
-                            splice_i,
-                            Operation.Delete,
-                            numberOperations,
-                            1
-                    );
-                    addOriginalBaseAutomatic(
-                            original_nucleotides,
-                            length_original_nucleotides[0],
-                            splice_i,
-                            originalBase
-                    );
+                }else if(mmType[operation_i] == 2){
+                    byte originalBase = base_decode[base + offset];
+                    deleteAtPosition(base_decode, base, length, offset);
+                    length--;
+                    segment.addOperation(Operation.Delete, 1);
+                    segment.addOriginalBase(originalBase);
                 }
             }
 
             if(mappedLength != previousOffset) {
-                numberOperations = addOperationAutomatic(
-                        operations,
-                        operationLength,
-                        splice_i,
-                        Operation.Match,
-                        numberOperations,
-                        Math.toIntExact(mappedLength - previousOffset)
-                );
+                segment.addOperation(Operation.Match, Math.toIntExact(mappedLength - previousOffset));
             }
 
-            base_decode = Arrays.copyOf(base_decode, (int) mappedLength);
-
-
-            if (splice_i == 0){
-                if(softClip[0].length != 0) {
-                    base_decode = prependToArrays(
-                            base_decode,
-                            softClip[0]
-                    );
-                    numberOperations = prependOperation(
-                            operations,
-                            operationLength,
-                            splice_i,
-                            Operation.SoftClip,
-                            numberOperations,
-                            softClip[0].length
-                    );
-                }
+            if(leadingClip != 0) {
+                System.arraycopy(softClip[0], 0, base_decode, spliceStart, leadingClip);
+                segment.insertOperation(operationsStart, Operation.SoftClip, leadingClip);
             }
-            if (splice_i == numberOfSplices - 1){
-                if(softClip[1].length != 0) {
-                    base_decode = appendToArrays(
-                            base_decode,
-                            softClip[1]
-                    );
-                    numberOperations = addOperationAutomatic(
-                            operations,
-                            operationLength,
-                            splice_i,
-                            Operation.SoftClip,
-                            numberOperations,
-                            softClip[1].length
-                    );
-                }
+            if(trailingClip != 0) {
+                System.arraycopy(
+                        softClip[1], 0, base_decode, Math.toIntExact(base + mappedLength), trailingClip);
+                segment.addOperation(Operation.SoftClip, trailingClip);
             }
 
-            original_nucleotides[0][splice_i] = Arrays.copyOf(
-                    original_nucleotides[0][splice_i],
-                    length_original_nucleotides[0][splice_i]
-            );
-            decode_sequences[splice_i] = base_decode;
+            segment.sequenceLength = Math.toIntExact(base + mappedLength + trailingClip);
+            segment.endSplice(splice_i);
 
-            operations[0][splice_i] = Arrays.copyOf(operations[0][splice_i], numberOperations);
-            operationLength[0][splice_i] = Arrays.copyOf(operationLength[0][splice_i], numberOperations);
+            splicedSegmentStartOffset = splicedSegmentEndOffset;
         }
-        return decode_sequences;
-    }
-
-    private static void addOriginalBaseAutomatic(
-            byte[][][] original_nucleotides,
-            int[] length_original_nucleotides,
-            int splice_i,
-            byte originalBase
-    ) {
-        original_nucleotides[0][splice_i]
-                [length_original_nucleotides[splice_i]] = originalBase;
-        length_original_nucleotides[splice_i]++;
-        if(
-                original_nucleotides[0][splice_i].length
-                        == length_original_nucleotides[splice_i]
-        ){
-            original_nucleotides[0][splice_i] = Arrays.copyOf(
-                    original_nucleotides[0][splice_i],
-                    original_nucleotides[0][splice_i].length*2
-            );
+        if(mismatch_i < mmOffsets.length){
+            throw new IllegalArgumentException("mismatch offset out of the segment: " + mmOffsets[mismatch_i]);
         }
-
-    }
-
-    private static int prependOperation(
-            final byte[][][] operations,
-            final int[][][] operationLength,
-            final int splice_i,
-            final byte operation,
-            final int numberOperations,
-            final int length) {
-
-        System.arraycopy(
-                operations[0][splice_i],
-                0,
-                operations[0][splice_i],
-                1,
-                operations[0][splice_i].length-1
-        );
-        System.arraycopy(
-                operationLength[0][splice_i],
-                0,
-                operationLength[0][splice_i],
-                1,
-                operationLength[0][splice_i].length-1
-        );
-        operations[0][splice_i][0] = operation;
-        operationLength[0][splice_i][0] = length;
-        return resizeOperationsArrays(operations, operationLength, splice_i, numberOperations);
-    }
-
-    private static int resizeOperationsArrays(
-            byte[][][] operations,
-            int[][][] operationLength,
-            int splice_i,
-            int numberOperations
-    ) {
-        numberOperations++;
-        if(operations[0][splice_i].length == numberOperations){
-            operations[0][splice_i] = Arrays.copyOf(operations[0][splice_i], operations[0][splice_i].length*2);
-            operationLength[0][splice_i] = Arrays.copyOf(
-                    operationLength[0][splice_i], operationLength[0][splice_i].length*2
-            );
-        }
-        return numberOperations;
-    }
-
-    private static int addOperationAutomatic(
-            final byte[][][] operations,
-            final int[][][] operationLength,
-            final int splice_i,
-            final byte operation,
-            final int numberOperations,
-            final int length) {
-
-        operations[0][splice_i][numberOperations] = operation;
-        operationLength[0][splice_i][numberOperations] = length;
-        return resizeOperationsArrays(operations, operationLength, splice_i, numberOperations);
     }
 
     /**
      *
      * @param position 0-based initial position of the sequence to retrieve
-     * @param length length of the sequence to retrieve
-     * @param nucleotideSequence the base sequence from which to retrieve a subsequence
+     * @param result the array with the reference subsequence to be changed in place
+     * @param offset the position of the subsequence in the array
+     * @param length the length of the subsequence
      * @param changedNucleotides to which nucleotides are the reference sequences changed to
      * @param changedPositions positions at which the sequence is changed
-     * @return returns a subsequence of the original sequence passed as parameter, taking into account the parametrized
+     * @return returns the array passed as parameter, taking into account the parametrized
      * changes
      */
     static byte[] getNucleotidesSequence(
         long position,
-        long length,
-        Payload nucleotideSequence,
+        byte[] result,
+        int offset,
+        int length,
         byte[] changedNucleotides,
         long[] changedPositions
-    ) throws IOException {
-        int positionCasted = Math.toIntExact(position);
-        int lengthCasted = Math.toIntExact(length);
-        byte[] result = new byte[lengthCasted];
-
-
+    ) {
         int changedPos = Arrays.binarySearch(changedPositions, position);
         if(changedPos < 0){
             changedPos = ~changedPos;
@@ -614,16 +513,13 @@ public class MappedAccessUnitDecoder extends AbstractAccessUnitDecoder {
             changedPos = -1;
         }
 
-        for(int i=0; i<length; i++){
-            if(changedPos >= 0 && changedPositions[changedPos] == (i+position)){
-                result[i] = changedNucleotides[changedPos];
+        for(int i=0; i<length && changedPos >= 0; i++){
+            if(changedPositions[changedPos] == (i+position)){
+                result[offset + i] = changedNucleotides[changedPos];
                 changedPos++;
                 if(changedPos >= changedNucleotides.length){
                     changedPos = -1;
                 }
-                nucleotideSequence.readByte();
-            }else {
-                result[i] = nucleotideSequence.readByte();
             }
         }
         return result;
@@ -649,119 +545,30 @@ public class MappedAccessUnitDecoder extends AbstractAccessUnitDecoder {
         }
     }
 
-    static int[][][] correctMmOffsetsBySplices(
-            int[][] mmOffsets,
-            long[][] splicedReadsLength
-    ){
-        int numAlignedRecordSegments = mmOffsets.length;
-
-        int[][] splicedSegmentNumOffset = new int[numAlignedRecordSegments][];
-        int[][][] splicedSegmentMismatchOffset = new int[numAlignedRecordSegments][][];
-        for(int alignedRecordSegment_i = 0; alignedRecordSegment_i < numAlignedRecordSegments; alignedRecordSegment_i++){
-            int numSplices = splicedReadsLength[alignedRecordSegment_i].length;
-
-            splicedSegmentNumOffset[alignedRecordSegment_i] = new int[numSplices];
-            splicedSegmentMismatchOffset[alignedRecordSegment_i] =
-                    new int[splicedReadsLength[alignedRecordSegment_i].length][32];
-        }
-
-        for(int alignedRecordSegment_i = 0; alignedRecordSegment_i < numAlignedRecordSegments; alignedRecordSegment_i++){
-            int spliceSegmentIndex = 0;
-            int splicedSegmentStartOffset = 0;
-            int splicedSegmentEndOffset = Math.toIntExact(
-                    splicedSegmentStartOffset + splicedReadsLength[alignedRecordSegment_i][0]
-            );
-
-            for(int mismatch_i=0; mismatch_i < mmOffsets[alignedRecordSegment_i].length; mismatch_i++){
-                while(mmOffsets[alignedRecordSegment_i][mismatch_i] >= splicedSegmentEndOffset){
-                    spliceSegmentIndex++;
-                    splicedSegmentStartOffset = splicedSegmentEndOffset;
-                    splicedSegmentEndOffset = Math.toIntExact(
-                            splicedSegmentStartOffset + splicedReadsLength[alignedRecordSegment_i][spliceSegmentIndex]
-                    );
-                }
-
-
-                splicedSegmentMismatchOffset
-                        [alignedRecordSegment_i]
-                        [spliceSegmentIndex]
-                        [
-                            splicedSegmentNumOffset
-                                [alignedRecordSegment_i]
-                                [spliceSegmentIndex]
-                        ] = mmOffsets[alignedRecordSegment_i][mismatch_i] - splicedSegmentStartOffset;
-                splicedSegmentNumOffset
-                        [alignedRecordSegment_i]
-                        [spliceSegmentIndex]++;
-                if(
-                    splicedSegmentNumOffset
-                        [alignedRecordSegment_i]
-                        [spliceSegmentIndex]
-                    == splicedSegmentMismatchOffset
-                            [alignedRecordSegment_i]
-                            [spliceSegmentIndex].length
-                ){
-                    splicedSegmentMismatchOffset
-                            [alignedRecordSegment_i]
-                            [spliceSegmentIndex]
-                        = Arrays.copyOf(
-                            splicedSegmentMismatchOffset
-                                    [alignedRecordSegment_i]
-                                    [spliceSegmentIndex],
-                            splicedSegmentMismatchOffset
-                                    [alignedRecordSegment_i]
-                                    [spliceSegmentIndex].length * 2
-                        );
-                }
-            }
-        }
-        for(int alignedRecordSegment_i = 0; alignedRecordSegment_i < numAlignedRecordSegments; alignedRecordSegment_i++) {
-            int numSplices = splicedReadsLength[alignedRecordSegment_i].length;
-
-            for(int splice_i = 0; splice_i < numSplices; splice_i++){
-                splicedSegmentMismatchOffset[alignedRecordSegment_i][splice_i] = Arrays.copyOf(
-                        splicedSegmentMismatchOffset[alignedRecordSegment_i][splice_i],
-                        splicedSegmentNumOffset[alignedRecordSegment_i][splice_i]
-                );
-            }
-        }
-        return splicedSegmentMismatchOffset;
-    }
-
+    /**
+     * Inserts the value into the subsequence of the array shifting its tail
+     * (the last value of the subsequence is lost).
+     */
     static void insertAtPosition(
             byte[] array,
+            int offset,
+            int length,
             byte newValue,
             int position
     ){
-        System.arraycopy(array, position, array, position+1, array.length - position - 1);
-        array[position] = newValue;
+        System.arraycopy(array, offset+position, array, offset+position+1, length - position - 1);
+        array[offset+position] = newValue;
     }
 
-    static byte[] deleteAtPosition(
+    /**
+     * Removes the value from the subsequence of the array shifting its tail.
+     */
+    static void deleteAtPosition(
             byte[] array,
+            int offset,
+            int length,
             int position
     ){
-        System.arraycopy(array, position+1, array, position, array.length - position - 1);
-        return Arrays.copyOf(array, array.length-1);
-    }
-
-    static byte[] prependToArrays(
-            byte[] array,
-            byte[] arrayToPrepend
-    ){
-        byte[] newArray = new byte[array.length + arrayToPrepend.length];
-        System.arraycopy(arrayToPrepend, 0, newArray, 0, arrayToPrepend.length);
-        System.arraycopy(array, 0, newArray, arrayToPrepend.length, array.length);
-        return newArray;
-    }
-
-    static byte[] appendToArrays(
-            byte[] array,
-            byte[] arrayToAppend
-    ){
-        byte[] newArray = new byte[array.length + arrayToAppend.length];
-        System.arraycopy(array, 0, newArray, 0, array.length);
-        System.arraycopy(arrayToAppend, 0, newArray, array.length, arrayToAppend.length);
-        return newArray;
+        System.arraycopy(array, offset+position+1, array, offset+position, length - position - 1);
     }
 }
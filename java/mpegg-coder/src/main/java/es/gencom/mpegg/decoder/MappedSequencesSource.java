@@ -0,0 +1,286 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.mpegg.decoder;
+
+import es.gencom.mpegg.coder.dataunits.DataUnitRawReference;
+import es.gencom.mpegg.format.SequenceIdentifier;
+import es.gencom.mpegg.io.Payload;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * <p>
+ * Immutable reference sequences source which may be shared by many threads.
+ * </p>
+ * 
+ * Sequences are kept in read-only (usually memory mapped) buffers accessed 
+ * only by absolute positions, so there is no shared cursor to be synchronized.
+ * Subsequences are returned as read-only slices of the buffers, or copied into
+ * the caller provided arrays. Positions outside the sequence are padded 
+ * with 'N'.
+ * 
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class MappedSequencesSource extends AbstractSequencesSource {
+
+    private final static ByteBuffer PADDING;
+    static {
+        final byte[] padding = new byte[4096];
+        Arrays.fill(padding, (byte)'N');
+        PADDING = ByteBuffer.wrap(padding).asReadOnlyBuffer();
+    }
+
+    private final String[] sequencesNames;
+    private final HashMap<String, Integer> sequencesIndex;
+    private final ByteBuffer[] sequences;
+    private final long[] startPos;
+    private final long[] endPos;
+
+    private MappedSequencesSource(
+            final String[] sequencesNames,
+            final ByteBuffer[] sequences,
+            final long[] startPos,
+            final long[] endPos) {
+
+        this.sequencesNames = sequencesNames;
+        this.sequences = sequences;
+        this.startPos = startPos;
+        this.endPos = endPos;
+
+        sequencesIndex = new HashMap<>();
+        for (int i = 0; i < sequencesNames.length; i++) {
+            sequencesIndex.putIfAbsent(sequencesNames[i], i);
+        }
+    }
+
+    /**
+     * Creates the source over the sequences of the raw reference.
+     * The sequences payloads are not copied unless they are fragmented.
+     * 
+     * @param rawReference the raw reference
+     * @param sequencesNames the names of the reference sequences
+     */
+    public MappedSequencesSource(
+            final DataUnitRawReference rawReference,
+            final String[] sequencesNames) {
+
+        this(sequencesNames,
+             new ByteBuffer[rawReference.getSequencesCount()],
+             new long[rawReference.getSequencesCount()],
+             new long[rawReference.getSequencesCount()]);
+
+        for (int i = 0; i < sequences.length; i++) {
+            final ByteBuffer[] buf = rawReference.getSequence(i).getByteBuffers();
+            if (buf.length == 1) {
+                sequences[i] = buf[0].asReadOnlyBuffer();
+            } else {
+                final ByteBuffer sequence = ByteBuffer.allocate(
+                        Math.toIntExact(rawReference.getEndPos(i) - rawReference.getStartPos(i)));
+                for (ByteBuffer bb : buf) {
+                    sequence.put(bb.duplicate());
+                }
+                sequence.rewind();
+                sequences[i] = sequence.asReadOnlyBuffer();
+            }
+            startPos[i] = rawReference.getStartPos(i);
+            endPos[i] = rawReference.getEndPos(i);
+        }
+    }
+
+    /**
+     * Maps the raw reference file (RAW_REF data unit content).
+     * 
+     * @param rawReferencePath the path to the raw reference file
+     * @param sequencesNames the names of the reference sequences
+     * 
+     * @return the sequences source over the mapped file
+     * 
+     * @throws IOException 
+     */
+    public static MappedSequencesSource open(
+            final Path rawReferencePath,
+            final String[] sequencesNames) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(rawReferencePath)) {
+            final ByteBuffer header = ByteBuffer.allocate(12);
+
+            read(channel, header, 0, 10);
+            final int seq_count = header.getShort(8) & 0xFFFF;
+
+            final ByteBuffer[] sequences = new ByteBuffer[seq_count];
+            final long[] startPos = new long[seq_count];
+            final long[] endPos = new long[seq_count];
+
+            long position = 10;
+            for (int i = 0; i < seq_count; i++) {
+                read(channel, header, position, 12);
+                startPos[i] = ((header.get(2) & 0xFFL) << 32) | (header.getInt(3) & 0xFFFFFFFFL);
+                endPos[i] = ((header.get(7) & 0xFFL) << 32) | (header.getInt(8) & 0xFFFFFFFFL);
+                position += 12;
+
+                final long size = endPos[i] - startPos[i];
+                sequences[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+                position += size;
+            }
+            return new MappedSequencesSource(sequencesNames, sequences, startPos, endPos);
+        }
+    }
+
+    private static void read(
+            final FileChannel channel,
+            final ByteBuffer buf,
+            final long position,
+            final int size) throws IOException {
+
+        buf.clear().limit(size);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    @Override
+    public SequenceIdentifier getSequenceIdentifier(final String sequenceName) {
+        final Integer index = sequencesIndex.get(sequenceName);
+        if (index == null) {
+            throw new IndexOutOfBoundsException(sequenceName);
+        }
+        return new SequenceIdentifier(index);
+    }
+
+    @Override
+    public String getSequenceName(final SequenceIdentifier sequenceId) {
+        return sequencesNames[sequenceId.getSequenceIdentifier()];
+    }
+
+    @Override
+    protected Payload getSequence(final SequenceIdentifier sequenceIdentifier) {
+        return new Payload(sequences[sequenceIdentifier.getSequenceIdentifier()]);
+    }
+
+    /**
+     * @param sequenceIdentifier the sequence identifier
+     * 
+     * @return the read-only buffer with the whole sequence content
+     */
+    public ByteBuffer getSequenceBuffer(final SequenceIdentifier sequenceIdentifier) {
+        return sequences[sequenceIdentifier.getSequenceIdentifier()].duplicate();
+    }
+
+    /**
+     * Gets the nucleotide at the absolute position of the sequence.
+     * 
+     * @param sequenceIdentifier the sequence identifier
+     * @param position the position in the sequence
+     * 
+     * @return the nucleotide or 'N' if the position is out of the sequence
+     */
+    public byte getNucleotide(final SequenceIdentifier sequenceIdentifier, final long position) {
+        final int sequence_i = sequenceIdentifier.getSequenceIdentifier();
+        if (position < startPos[sequence_i] || position >= endPos[sequence_i]) {
+            return 'N';
+        }
+        return sequences[sequence_i].get((int)(position - startPos[sequence_i]));
+    }
+
+    @Override
+    public Payload getSubsequence(
+            final SequenceIdentifier sequenceIdentifier,
+            final int startPosSubsequence,
+            final int endPosSubsequence) throws IOException {
+
+        final int sequence_i = sequenceIdentifier.getSequenceIdentifier();
+        final long requestStart = Math.max(startPos[sequence_i], startPosSubsequence);
+        final long requestEnd = Math.min(endPos[sequence_i], endPosSubsequence);
+        if (requestStart >= requestEnd) {
+            return new Payload(padding(endPosSubsequence - startPosSubsequence));
+        }
+
+        final ByteBuffer sequence = slice(sequences[sequence_i], 
+                requestStart - startPos[sequence_i], requestEnd - requestStart);
+        if (requestStart == startPosSubsequence && requestEnd == endPosSubsequence) {
+            return new Payload(sequence);
+        }
+
+        final ByteBuffer startPadding = padding(requestStart - startPosSubsequence);
+        final ByteBuffer endPadding = padding(endPosSubsequence - requestEnd);
+        return new Payload(new ByteBuffer[] {startPadding, sequence, endPadding});
+    }
+
+    @Override
+    public int copySubsequence(
+            final SequenceIdentifier sequenceIdentifier,
+            final int startPosSubsequence,
+            final int endPosSubsequence,
+            final byte[] dst,
+            final int offset) throws IOException {
+
+        final int sequence_i = sequenceIdentifier.getSequenceIdentifier();
+        final long requestStart = Math.max(startPos[sequence_i], startPosSubsequence);
+        final long requestEnd = Math.min(endPos[sequence_i], endPosSubsequence);
+        if (requestStart >= requestEnd) {
+            Arrays.fill(dst, offset, offset + endPosSubsequence - startPosSubsequence, (byte)'N');
+            return endPosSubsequence - startPosSubsequence;
+        }
+
+        final int startPadding = (int)(requestStart - startPosSubsequence);
+        final int length = (int)(requestEnd - requestStart);
+
+        Arrays.fill(dst, offset, offset + startPadding, (byte)'N');
+
+        final ByteBuffer sequence = sequences[sequence_i].duplicate();
+        sequence.position((int)(requestStart - startPos[sequence_i]));
+        sequence.get(dst, offset + startPadding, length);
+
+        Arrays.fill(dst, offset + startPadding + length, 
+                offset + endPosSubsequence - startPosSubsequence, (byte)'N');
+
+        return endPosSubsequence - startPosSubsequence;
+    }
+
+    private static ByteBuffer slice(final ByteBuffer buf, final long position, final long length) {
+        final ByteBuffer slice = buf.duplicate();
+        slice.limit((int)(position + length)).position((int)position);
+        return slice;
+    }
+
+    private static ByteBuffer padding(final long length) {
+        if (length <= PADDING.capacity()) {
+            return slice(PADDING, 0, length);
+        }
+        final byte[] padding = new byte[Math.toIntExact(length)];
+        Arrays.fill(padding, (byte)'N');
+        return ByteBuffer.wrap(padding).asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,326 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.mpegg.decoder;
+
+import es.gencom.mpegg.format.SequenceIdentifier;
+import es.gencom.mpegg.io.Payload;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * <p>
+ * Reference sequences source over the 2-bit packed reference.
+ * </p>
+ * 
+ * The packed file stores four nucleotides per byte (A=0, C=1, G=2, T=3, 
+ * most significant bits first). Lowercase (soft-masked) nucleotides are
+ * packed as the uppercase ones and marked in the 1-bit case mask that 
+ * follows the sequence (only if the sequence has any). Other symbols 
+ * ('N', IUPAC codes) are stored as the runs of the same symbol in the runs 
+ * table at the end of the packed file. The sidecar index keeps the sequences
+ * names, lengths and offsets in the packed file.
+ * 
+ * The packed file (including the runs table) is memory mapped when opened
+ * and only the requested windows are unpacked, so opening the reference 
+ * does not depend on the number of runs. The source is immutable and may be
+ * shared by many threads.
+ * 
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class PackedSequencesSource extends AbstractSequencesSource {
+
+    public final static int MAGIC = 0x4D475232; // "MGR2"
+    public final static int VERSION = 3;
+
+    /**
+     * The size of the runs table entry: the run start (long), 
+     * length (int), symbol (byte) and padding.
+     */
+    public final static int RUN_SIZE = 16;
+
+    public final static byte[] NUCLEOTIDES = {'A', 'C', 'G', 'T'};
+
+    private final static byte[] UNPACKED = new byte[256 * 4];
+    static {
+        for (int b = 0; b < 256; b++) {
+            for (int i = 0; i < 4; i++) {
+                UNPACKED[b * 4 + i] = NUCLEOTIDES[(b >>> (6 - 2 * i)) & 3];
+            }
+        }
+    }
+
+    private final String[] sequencesNames;
+    private final HashMap<String, Integer> sequencesIndex;
+    private final long[] lengths;
+    private final ByteBuffer[] sequences;
+    private final ByteBuffer[] masks;
+
+    private final int[] firstRuns;
+    private final int[] runsCounts;
+    private final ByteBuffer runs;
+
+    private PackedSequencesSource(final int count, final ByteBuffer runs) {
+        this.runs = runs;
+        sequencesNames = new String[count];
+        sequencesIndex = new HashMap<>();
+        lengths = new long[count];
+        sequences = new ByteBuffer[count];
+        masks = new ByteBuffer[count];
+        firstRuns = new int[count];
+        runsCounts = new int[count];
+    }
+
+    /**
+     * Reads the version of the packed reference index.
+     * 
+     * @param index the path to the sidecar index file
+     * 
+     * @return the version or -1 if the file is not a packed reference index
+     * 
+     * @throws IOException 
+     */
+    public static int getVersion(final Path index) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(index))) {
+            return in.readInt() == MAGIC ? in.readInt() : -1;
+        }
+    }
+
+    /**
+     * Opens the packed reference.
+     * 
+     * @param index the path to the sidecar index file
+     * @param packed the path to the packed sequences file
+     * 
+     * @return the sequences source
+     * 
+     * @throws IOException 
+     */
+    public static PackedSequencesSource open(
+            final Path index,
+            final Path packed) throws IOException {
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(index)));
+             FileChannel channel = FileChannel.open(packed)) {
+
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a packed reference index: " + index);
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported packed reference version: " + version);
+            }
+            in.readUTF(); // checksum
+
+            final int count = in.readInt();
+            final long runsOffset = in.readLong();
+            final int runsCount = in.readInt();
+            final PackedSequencesSource source = new PackedSequencesSource(count, 
+                    channel.map(FileChannel.MapMode.READ_ONLY, runsOffset, (long)runsCount * RUN_SIZE));
+
+            for (int i = 0; i < source.sequences.length; i++) {
+                source.sequencesNames[i] = in.readUTF();
+                source.sequencesIndex.putIfAbsent(source.sequencesNames[i], i);
+                source.lengths[i] = in.readLong();
+
+                final long offset = in.readLong();
+                source.sequences[i] = channel.map(FileChannel.MapMode.READ_ONLY, 
+                        offset, (source.lengths[i] + 3) >>> 2);
+
+                final long maskOffset = in.readLong();
+                if (maskOffset >= 0) {
+                    source.masks[i] = channel.map(FileChannel.MapMode.READ_ONLY, 
+                        maskOffset, (source.lengths[i] + 7) >>> 3);
+                }
+
+                source.firstRuns[i] = in.readInt();
+                source.runsCounts[i] = in.readInt();
+            }
+            return source;
+        }
+    }
+
+    /**
+     * @return the names of the sequences in the order of their identifiers
+     */
+    public String[] getSequencesNames() {
+        return sequencesNames.clone();
+    }
+
+    /**
+     * @param sequenceIdentifier the sequence identifier
+     * 
+     * @return the length of the sequence
+     */
+    public long getSequenceLength(final SequenceIdentifier sequenceIdentifier) {
+        return lengths[sequenceIdentifier.getSequenceIdentifier()];
+    }
+
+    @Override
+    public SequenceIdentifier getSequenceIdentifier(final String sequenceName) {
+        final Integer index = sequencesIndex.get(sequenceName);
+        if (index == null) {
+            throw new IndexOutOfBoundsException(sequenceName);
+        }
+        return new SequenceIdentifier(index);
+    }
+
+    @Override
+    public String getSequenceName(final SequenceIdentifier sequenceId) {
+        return sequencesNames[sequenceId.getSequenceIdentifier()];
+    }
+
+    @Override
+    protected Payload getSequence(final SequenceIdentifier sequenceIdentifier) {
+        final int length = Math.toIntExact(lengths[sequenceIdentifier.getSequenceIdentifier()]);
+        final byte[] sequence = new byte[length];
+        unpack(sequenceIdentifier.getSequenceIdentifier(), 0, length, sequence, 0);
+        return new Payload(sequence);
+    }
+
+    @Override
+    public Payload getSubsequence(
+            final SequenceIdentifier sequenceIdentifier,
+            final int startPos,
+            final int endPos) throws IOException {
+
+        final byte[] subsequence = new byte[endPos - startPos];
+        copySubsequence(sequenceIdentifier, startPos, endPos, subsequence, 0);
+        return new Payload(subsequence);
+    }
+
+    @Override
+    public int copySubsequence(
+            final SequenceIdentifier sequenceIdentifier,
+            final int startPos,
+            final int endPos,
+            final byte[] dst,
+            final int offset) {
+
+        final int sequence_i = sequenceIdentifier.getSequenceIdentifier();
+        final int requestStart = (int)Math.min(endPos, Math.max(0, startPos));
+        final int requestEnd = (int)Math.max(requestStart, Math.min(lengths[sequence_i], endPos));
+
+        Arrays.fill(dst, offset, offset + requestStart - startPos, (byte)'N');
+        unpack(sequence_i, requestStart, requestEnd, dst, offset + requestStart - startPos);
+        Arrays.fill(dst, offset + requestEnd - startPos, offset + endPos - startPos, (byte)'N');
+
+        return endPos - startPos;
+    }
+
+    private void unpack(
+            final int sequence_i,
+            final int start,
+            final int end,
+            final byte[] dst,
+            final int offset) {
+
+        final ByteBuffer sequence = sequences[sequence_i];
+
+        int pos = start;
+        int off = offset;
+
+        // unaligned head
+        for (; pos < end && (pos & 3) != 0; pos++) {
+            dst[off++] = NUCLEOTIDES[(sequence.get(pos >>> 2) >>> (6 - 2 * (pos & 3))) & 3];
+        }
+
+        // whole bytes
+        for (; pos + 4 <= end; pos += 4, off += 4) {
+            System.arraycopy(UNPACKED, (sequence.get(pos >>> 2) & 0xFF) * 4, dst, off, 4);
+        }
+
+        // tail
+        for (; pos < end; pos++) {
+            dst[off++] = NUCLEOTIDES[(sequence.get(pos >>> 2) >>> (6 - 2 * (pos & 3))) & 3];
+        }
+
+        // soft-masked nucleotides
+        final ByteBuffer mask = masks[sequence_i];
+        if (mask != null && start < end) {
+            for (int b = start >>> 3, last = (end - 1) >>> 3; b <= last; b++) {
+                final int bits = mask.get(b) & 0xFF;
+                if (bits == 0) {
+                    continue;
+                }
+                for (int i = 0; i < 8; i++) {
+                    final int p = (b << 3) + i;
+                    if ((bits & (0x80 >>> i)) != 0 && p >= start && p < end) {
+                        dst[offset + p - start] |= 0x20;
+                    }
+                }
+            }
+        }
+
+        // non ACGT runs
+        final int first = firstRuns[sequence_i];
+        final int last = first + runsCounts[sequence_i];
+        for (int run = findRun(first, last, start); run < last; run++) {
+            final long runStart = runs.getLong(run * RUN_SIZE);
+            if (runStart >= end) {
+                break;
+            }
+            final long from = Math.max(start, runStart);
+            final long to = Math.min(end, runStart + runs.getInt(run * RUN_SIZE + 8));
+            if (from < to) {
+                Arrays.fill(dst, (int)(offset + from - start), (int)(offset + to - start), 
+                        runs.get(run * RUN_SIZE + 12));
+            }
+        }
+    }
+
+    /**
+     * Binary search of the last run which starts not after the position.
+     * 
+     * @param first the first run of the sequence
+     * @param last the run after the last one of the sequence
+     * @param position the position to search
+     * 
+     * @return the found run or the first one
+     */
+    private int findRun(int first, int last, final long position) {
+        int found = first;
+        while (first < last) {
+            final int middle = (first + last) >>> 1;
+            if (runs.getLong(middle * RUN_SIZE) <= position) {
+                found = middle;
+                first = middle + 1;
+            } else {
+                last = middle;
+            }
+        }
+        return found;
+    }
+}
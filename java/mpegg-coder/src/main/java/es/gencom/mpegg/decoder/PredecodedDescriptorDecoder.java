@@ -0,0 +1,144 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.mpegg.decoder;
+
+import es.gencom.mpegg.coder.compression.DescriptorDecoder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ * Descriptor decoder which entropy-decodes the whole descriptor subsequence 
+ * into a primitive array on an executor and then serves the symbols from it.
+ * </p>
+ * 
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class PredecodedDescriptorDecoder extends DescriptorDecoder {
+
+    private final Future<long[]> future;
+
+    private long[] symbols;
+    private int position;
+
+    public PredecodedDescriptorDecoder(
+            final DescriptorDecoder decoder,
+            final ExecutorService executor) {
+
+        this(decoder, executor, null);
+    }
+
+    /**
+     * @param decoder the decoder to get symbols from
+     * @param executor the executor to decode the symbols on
+     * @param previous the decoder which must finish before this one starts
+     *        (i.e. when both read from the same payload) or null
+     */
+    public PredecodedDescriptorDecoder(
+            final DescriptorDecoder decoder,
+            final ExecutorService executor,
+            final PredecodedDescriptorDecoder previous) {
+
+        super(decoder.descriptor_id);
+
+        future = executor.submit(new SubsequenceDecodingTask(
+                decoder, previous == null ? null : previous.future));
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        if (symbols == null) {
+            symbols = getSymbols();
+        }
+        return position < symbols.length;
+    }
+
+    @Override
+    public long read() throws IOException {
+        if (hasNext()) {
+            return symbols[position++];
+        }
+        throw new EOFException();
+    }
+
+    private long[] getSymbols() throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static class SubsequenceDecodingTask implements Callable<long[]> {
+
+        private final DescriptorDecoder decoder;
+        private final Future<long[]> previous;
+
+        SubsequenceDecodingTask(
+                final DescriptorDecoder decoder,
+                final Future<long[]> previous) {
+
+            this.decoder = decoder;
+            this.previous = previous;
+        }
+
+        @Override
+        public long[] call() throws Exception {
+            if (previous != null) {
+                previous.get();
+            }
+
+            long[] symbols = new long[1024];
+            int size = 0;
+            while (decoder.hasNext()) {
+                if (size == symbols.length) {
+                    symbols = Arrays.copyOf(symbols, size * 2);
+                }
+                symbols[size++] = decoder.read();
+            }
+            return Arrays.copyOf(symbols, size);
+        }
+    }
+}
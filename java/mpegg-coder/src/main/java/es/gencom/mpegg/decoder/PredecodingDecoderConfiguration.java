@@ -0,0 +1,123 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.mpegg.decoder;
+
+import es.gencom.mpegg.coder.compression.ALPHABET_ID;
+import es.gencom.mpegg.coder.compression.DESCRIPTOR_ID;
+import es.gencom.mpegg.coder.compression.DescriptorDecoder;
+import es.gencom.mpegg.coder.compression.DescriptorDecoderConfiguration;
+import es.gencom.mpegg.coder.compression.DescriptorEncoder;
+import es.gencom.mpegg.io.MPEGReader;
+import es.gencom.mpegg.io.MPEGWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * <p>
+ * Descriptor Decoder Configuration decorator which starts decoding every 
+ * descriptor subsequence as soon as its decoder is requested.
+ * </p>
+ * 
+ * Subsequences that depend on the external data (reference) are not predecoded,
+ * because the data only becomes available during records reconstruction.
+ * 
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class PredecodingDecoderConfiguration 
+        implements DescriptorDecoderConfiguration<DescriptorDecoder, DescriptorEncoder> {
+
+    private final DescriptorDecoderConfiguration configuration;
+    private final ExecutorService executor;
+    private final IdentityHashMap<MPEGReader, PredecodedDescriptorDecoder> readers;
+
+    /**
+     * @param configuration the decorated configuration
+     * @param executor the executor to decode subsequences on
+     * @param readers the last decoder created for every payload, shared by all
+     *        configurations used to decode one access unit
+     */
+    public PredecodingDecoderConfiguration(
+            final DescriptorDecoderConfiguration configuration,
+            final ExecutorService executor,
+            final IdentityHashMap<MPEGReader, PredecodedDescriptorDecoder> readers) {
+
+        this.configuration = configuration;
+        this.executor = executor;
+        this.readers = readers;
+    }
+
+    @Override
+    public DescriptorDecoder getDescriptorDecoder(
+            final MPEGReader reader,
+            final DESCRIPTOR_ID descriptor_id,
+            final int descriptor_subsequence_id,
+            final ALPHABET_ID alphabet_id,
+            final boolean primary_alignments_only,
+            final InputStream ref_source) {
+
+        final DescriptorDecoder decoder = configuration.getDescriptorDecoder(
+                reader, descriptor_id, descriptor_subsequence_id, alphabet_id, 
+                primary_alignments_only, ref_source);
+
+        if (ref_source != null) {
+            return decoder;
+        }
+
+        final PredecodedDescriptorDecoder predecoded = 
+                new PredecodedDescriptorDecoder(decoder, executor, readers.get(reader));
+        readers.put(reader, predecoded);
+
+        return predecoded;
+    }
+
+    @Override
+    public DescriptorEncoder getDescriptorEncoder(
+            final MPEGWriter writer,
+            final DESCRIPTOR_ID descriptor_id,
+            final int descriptor_subsequence_id,
+            final ALPHABET_ID alphabet_id,
+            final boolean primary_alignments_only,
+            final InputStream ref_source) {
+
+        return configuration.getDescriptorEncoder(
+                writer, descriptor_id, descriptor_subsequence_id, alphabet_id, 
+                primary_alignments_only, ref_source);
+    }
+
+    @Override
+    public void write(final MPEGWriter writer) throws IOException {
+        configuration.write(writer);
+    }
+
+    @Override
+    public long sizeInBits() {
+        return configuration.sizeInBits();
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.mpegg.decoder;
+
+import es.gencom.mpegg.RecordBatch;
+
+import java.util.Arrays;
+
+/**
+ * Working arrays of the aligned segment reused by the decoder for every read.
+ * The splices are decoded one after another into the segment sequence, while
+ * their operations and original bases are appended to the flat arrays
+ * delimited by the splices ends, so no temporary arrays are created per read.
+ * The decoded segment is then either written into the {@link RecordBatch}
+ * pools or copied out in the exact size.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+final class SegmentDecodingBuffers {
+    int splices;
+    int[] operationsEnd = new int[4];
+    int[] originalBasesEnd = new int[4];
+
+    byte[] sequence = new byte[512];
+    int sequenceLength;
+
+    byte[] operations = new byte[128];
+    int[] operationLength = new int[128];
+    int numberOperations;
+
+    byte[] originalBases = new byte[32];
+    int numberOriginalBases;
+
+    short[] qualities = new short[512];
+    int numberQualities;
+
+    void reset(final int splices) {
+        this.splices = splices;
+        if (operationsEnd.length < splices) {
+            operationsEnd = new int[splices];
+            originalBasesEnd = new int[splices];
+        }
+        sequenceLength = 0;
+        numberOperations = 0;
+        numberOriginalBases = 0;
+        numberQualities = 0;
+    }
+
+    /**
+     * @param capacity the required sequence length
+     *
+     * @return the sequence array which keeps the already decoded splices
+     */
+    byte[] ensureSequence(final int capacity) {
+        if (sequence.length < capacity) {
+            sequence = Arrays.copyOf(sequence, Math.max(capacity, sequence.length * 2));
+        }
+        return sequence;
+    }
+
+    /**
+     * @return the qualities array large enough for all the operations
+     */
+    short[] ensureQualities() {
+        int capacity = 0;
+        for (int i = 0; i < numberOperations; i++) {
+            capacity += operationLength[i];
+        }
+        if (qualities.length < capacity) {
+            qualities = new short[Math.max(capacity, qualities.length * 2)];
+        }
+        return qualities;
+    }
+
+    void addOperation(final byte operation, final int length) {
+        insertOperation(numberOperations, operation, length);
+    }
+
+    void insertOperation(final int index, final byte operation, final int length) {
+        if (numberOperations == operations.length) {
+            operations = Arrays.copyOf(operations, operations.length * 2);
+            operationLength = Arrays.copyOf(operationLength, operationLength.length * 2);
+        }
+        System.arraycopy(operations, index, operations, index + 1, numberOperations - index);
+        System.arraycopy(operationLength, index, operationLength, index + 1, numberOperations - index);
+        operations[index] = operation;
+        operationLength[index] = length;
+        numberOperations++;
+    }
+
+    void addOriginalBase(final byte base) {
+        if (numberOriginalBases == originalBases.length) {
+            originalBases = Arrays.copyOf(originalBases, originalBases.length * 2);
+        }
+        originalBases[numberOriginalBases++] = base;
+    }
+
+    void endSplice(final int splice) {
+        operationsEnd[splice] = numberOperations;
+        originalBasesEnd[splice] = numberOriginalBases;
+    }
+
+    byte[] getSequence() {
+        return Arrays.copyOf(sequence, sequenceLength);
+    }
+
+    short[] getQualities() {
+        return Arrays.copyOf(qualities, numberQualities);
+    }
+
+    byte[][] getOperations() {
+        final byte[][] result = new byte[splices][];
+        for (int splice_i = 0, start = 0; splice_i < splices; start = operationsEnd[splice_i++]) {
+            result[splice_i] = Arrays.copyOfRange(operations, start, operationsEnd[splice_i]);
+        }
+        return result;
+    }
+
+    int[][] getOperationLength() {
+        final int[][] result = new int[splices][];
+        for (int splice_i = 0, start = 0; splice_i < splices; start = operationsEnd[splice_i++]) {
+            result[splice_i] = Arrays.copyOfRange(operationLength, start, operationsEnd[splice_i]);
+        }
+        return result;
+    }
+
+    byte[][] getOriginalBases() {
+        final byte[][] result = new byte[splices][];
+        for (int splice_i = 0, start = 0; splice_i < splices; start = originalBasesEnd[splice_i++]) {
+            result[splice_i] = Arrays.copyOfRange(originalBases, start, originalBasesEnd[splice_i]);
+        }
+        return result;
+    }
+
+    void putOperations(final RecordBatch batch) {
+        batch.putArray(splices);
+        for (int splice_i = 0, start = 0; splice_i < splices; start = operationsEnd[splice_i++]) {
+            batch.putBytes(operations, start, operationsEnd[splice_i] - start);
+        }
+    }
+
+    void putOperationLength(final RecordBatch batch) {
+        batch.putArray(splices);
+        for (int splice_i = 0, start = 0; splice_i < splices; start = operationsEnd[splice_i++]) {
+            batch.putInts(operationLength, start, operationsEnd[splice_i] - start);
+        }
+    }
+
+    void putOriginalBases(final RecordBatch batch) {
+        batch.putArray(splices);
+        for (int splice_i = 0, start = 0; splice_i < splices; start = originalBasesEnd[splice_i++]) {
+            batch.putBytes(originalBases, start, originalBasesEnd[splice_i] - start);
+        }
+    }
+}
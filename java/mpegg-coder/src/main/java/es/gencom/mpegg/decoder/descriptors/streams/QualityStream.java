@@ -108,11 +108,28 @@ public class QualityStream {
         }
     }
 
-    public short[] getQualitiesAligned(
-            byte[][] operations,
-            int[][] operationLength,
+    /**
+     * Decodes the qualities of the aligned segment into the array, which
+     * must be large enough for all the segment operations.
+     *
+     * @param operations the operations of all the segment splices
+     * @param operationLength the lengths of the operations
+     * @param operationsEnd the end of every splice operations
+     * @param splices the number of the segment splices
+     * @param segmentStart the mapping positions of the splices
+     * @param auStart the access unit start position
+     * @param qualities the array to decode the qualities into
+     *
+     * @return the number of the decoded qualities, 0 if the segment has none
+     */
+    public int getQualitiesAligned(
+            byte[] operations,
+            int[] operationLength,
+            int[] operationsEnd,
+            int splices,
             long[] segmentStart,
-            long auStart
+            long auStart,
+            short[] qualities
     ) throws IOException {
         boolean hasValue;
         if(decoders[0].hasNext()){
@@ -122,9 +139,11 @@ public class QualityStream {
         }
 
         if(hasValue){
-            return decode_qvs(qualityValueParameterSet, dataClass, operations, operationLength, segmentStart, auStart);
+            return decode_qvs(
+                    qualityValueParameterSet, dataClass, operations, operationLength, operationsEnd, splices,
+                    segmentStart, auStart, qualities);
         } else {
-            return new short[0];
+            return 0;
         }
     }
 
@@ -152,41 +171,31 @@ public class QualityStream {
         }
     }
 
-    private short[] decode_qvs(
+    private int decode_qvs(
             AbstractQualityValueParameterSet qualityValueParameterSet,
             DATA_CLASS dataClass,
-            byte[][] operations,
-            int[][] operationLength,
+            byte[] operations,
+            int[] operationLength,
+            int[] operationsEnd,
+            int splices,
             long[] segmentStart,
-            long auStart) throws IOException {
-
-        int length = 0;
-        for(int splice_i = 0; splice_i < operations.length; splice_i++) {
-            for (int operation_i = 0; operation_i < operations[splice_i].length; operation_i++) {
-                if (operations[splice_i][operation_i] != Operation.Delete && 
-                    operations[splice_i][operation_i] != Operation.HardClip) {
-                    
-                    length += operationLength[splice_i][operation_i];
-                }
-            }
-        }
-
-        short[] quality_values = new short[length];
+            long auStart,
+            short[] quality_values) throws IOException {
 
         int baseIdx = 0;
-        for(int splice_i=0; splice_i < operations.length; splice_i++) {
+        for(int splice_i=0, operation_i = 0; splice_i < splices; splice_i++) {
             int positionInSplice = 0;
             int offset = Math.toIntExact(segmentStart[splice_i] - auStart);
-            for (int operation_i = 0; operation_i < operations[splice_i].length; operation_i++) {
-                final byte operation = operations[splice_i][operation_i];
+            for (; operation_i < operationsEnd[splice_i]; operation_i++) {
+                final byte operation = operations[operation_i];
+                if (operation == Operation.Delete || operation == Operation.HardClip) {
+                    continue;
+                }
                 for (
                         int inOperationPos = 0;
-                        inOperationPos < operationLength[splice_i][operation_i];
+                        inOperationPos < operationLength[operation_i];
                         inOperationPos++
                 ) {
-                    if (operation == Operation.Delete || operation == Operation.HardClip) {
-                        continue;
-                    }
                     int codebookId = getCodebookId(
                             qvCodeBookIds,
                             dataClass,
@@ -206,6 +215,6 @@ public class QualityStream {
                 }
             }
         }
-        return quality_values;
+        return baseIdx;
     }
 }
@@ -28,8 +28,11 @@ package es.gencom.mpegg.format;
 import es.gencom.mpegg.io.Payload;
 import es.gencom.mpegg.io.MPEGReader;
 import es.gencom.mpegg.io.MPEGWriter;
+import es.gencom.mpegg.io.ReadableMSBitFileChannel;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -46,6 +49,13 @@ public class AccessUnitContainer extends GenInfo<AccessUnitContainer>{
     //position prior to gen_info header of the accessUnitContainer
     private Long au_offset = null;
 
+    // the loader of the content when the container is read lazily
+    private volatile BlocksLoader content_loader;
+    private ReadableMSBitFileChannel content_reader;
+    private long content_position;
+    private long content_size;
+    private SoftReference<List<Block>> content_blocks;
+
     public AccessUnitContainer(
             final DatasetContainer datasetContainer,
             final AccessUnitHeader access_unit_header) {
@@ -64,10 +74,22 @@ public class AccessUnitContainer extends GenInfo<AccessUnitContainer>{
     }
 
     public AccessUnitInformation getAccessUnitInformation() {
+        if (content_loader != null) {
+            synchronized(this) {
+                load();
+                return au_information;
+            }
+        }
         return au_information;
     }
     
     public AccessUnitProtection getAccessUnitProtection() { 
+        if (content_loader != null) {
+            synchronized(this) {
+                load();
+                return au_protection;
+            }
+        }
         return au_protection; 
     }
 
@@ -81,14 +103,65 @@ public class AccessUnitContainer extends GenInfo<AccessUnitContainer>{
 
     public void setBlocks(final List<Block> blocks) {
         this.blocks = blocks;
+        content_loader = null;
         access_unit_header.setNumBlocks((byte) blocks.size());
     }
 
-    public void addBlock(final Block block) {
+    /**
+     * <p>
+     * Set the loader of the access unit blocks.
+     * </p>
+     *
+     * The blocks are loaded when accessed (i.e. when the container is written)
+     * and kept softly reachable, so the container does not hold the blocks
+     * content. The number of blocks must be set in the access unit header.
+     *
+     * @param loader the loader of the access unit blocks
+     * @param size the size of all the blocks (including the block headers)
+     */
+    public void setBlocks(final BlocksLoader loader, final long size) {
+        blocks = new ArrayList<>();
+        content_loader = loader;
+        content_reader = null;
+        content_size = size;
+        content_blocks = null;
+    }
+
+    /**
+     * <p>
+     * Adds the block to the access unit.
+     * </p>
+     * 
+     * The lazily loaded blocks are pinned by the container once modified,
+     * so the added block may not be lost with the softly reachable list.
+     * 
+     * @param block the block to add
+     */
+    public synchronized void addBlock(final Block block) {
+        if (content_loader != null) {
+            blocks = new ArrayList<>(load());
+            content_loader = null;
+            content_reader = null;
+            content_blocks = null;
+        }
         blocks.add(block);
     }
 
+    /**
+     * <p>
+     * Get the blocks of the access unit.
+     * </p>
+     * 
+     * When the container has been read lazily, the blocks are mapped from the
+     * file on the first access and kept softly reachable, so they may be
+     * mapped again after being collected.
+     * 
+     * @return the list of the access unit blocks
+     */
     public List<Block> getBlocks() {
+        if (content_loader != null) {
+            return load();
+        }
         return blocks;
     }
 
@@ -108,6 +181,9 @@ public class AccessUnitContainer extends GenInfo<AccessUnitContainer>{
     public long size(){
         long result = 0;
         result += access_unit_header.sizeWithHeader();
+        if(content_loader != null){
+            return result + content_size;
+        }
         if(datasetHeader.isBlockHeader()){
             for(Block block : blocks){
                 result += block.size();
@@ -127,6 +203,8 @@ public class AccessUnitContainer extends GenInfo<AccessUnitContainer>{
             throws IOException, InvalidMPEGStructure {
 
         access_unit_header.writeWithHeader(writer);
+
+        final List<Block> blocks = getBlocks();
         if(datasetHeader.isBlockHeader()){
             if(blocks.size() != access_unit_header.getNumberOfBlocks()){
                 //todo add check
@@ -148,6 +226,30 @@ public class AccessUnitContainer extends GenInfo<AccessUnitContainer>{
     @Override
     public AccessUnitContainer read(final MPEGReader reader, final long size) 
             throws IOException, InvalidMPEGStructure, ParsedSizeMismatchException {
+        return read(reader, size, false);
+    }
+
+    /**
+     * <p>
+     * Reads the access unit container.
+     * </p>
+     * 
+     * In the lazy mode only the access unit header is parsed, while the rest
+     * of the container is skipped to be mapped when the blocks are accessed.
+     * The lazy mode is only supported for the file channel based readers.
+     * 
+     * @param reader the reader to read the container from
+     * @param size the size of the container content
+     * @param lazy whether to postpone parsing of the container content
+     * 
+     * @return this access unit container
+     * 
+     * @throws IOException
+     * @throws InvalidMPEGStructure
+     * @throws ParsedSizeMismatchException 
+     */
+    public AccessUnitContainer read(final MPEGReader reader, final long size, final boolean lazy) 
+            throws IOException, InvalidMPEGStructure, ParsedSizeMismatchException {
 
         Header header = Header.read(reader);
         if(AccessUnitHeader.KEY.equals(header.key)) {
@@ -157,42 +259,17 @@ public class AccessUnitContainer extends GenInfo<AccessUnitContainer>{
         }
 
         final long remainingBytes = size - access_unit_header.sizeWithHeader();
-        if(remainingBytes != 0) {
-            Payload possibleInformationPossibleProtectionPossibleBlock = reader.readPayload(remainingBytes);
-            Payload copyPossibleInformationPossibleProtectionPossibleBlock =
-                    possibleInformationPossibleProtectionPossibleBlock.createCopy();
-
-            Payload possibleProtectionPossibleBlock;
-            header = Header.read(possibleInformationPossibleProtectionPossibleBlock);
-            if (AccessUnitInformation.KEY.equals(header.key)) {
-                au_information = new AccessUnitInformation();
-                au_information.read(
-                        possibleInformationPossibleProtectionPossibleBlock,
-                        header.getContentSize()
-                );
-                possibleProtectionPossibleBlock = possibleInformationPossibleProtectionPossibleBlock;
-            } else {
-                possibleProtectionPossibleBlock = copyPossibleInformationPossibleProtectionPossibleBlock;
-            }
-
-            Payload copyPossibleProtectionPossibleBlock = possibleProtectionPossibleBlock.createCopy();
-            Payload possibleBlock;
-            header = Header.read(possibleProtectionPossibleBlock);
-            if (AccessUnitProtection.KEY.equals(header.key)) {
-                au_protection = new AccessUnitProtection();
-                au_protection.read(possibleProtectionPossibleBlock, header.getContentSize());
-                possibleBlock = possibleProtectionPossibleBlock;
-            } else {
-                possibleBlock = copyPossibleProtectionPossibleBlock;
-            }
+        if(lazy && reader instanceof ReadableMSBitFileChannel) {
+            content_reader = (ReadableMSBitFileChannel)reader;
+            content_loader = this::mapContent;
+            content_position = reader.getPosition();
+            content_size = remainingBytes;
+            content_reader.setPosition(content_position + content_size);
+            return this;
+        }
 
-            if (datasetHeader.isBlockHeader()) {
-                for (byte block_i = 0; block_i < access_unit_header.getNumberOfBlocks(); block_i++) {
-                    Block block = new Block(datasetHeader);
-                    block.read(possibleBlock);
-                    blocks.add(block);
-                }
-            }
+        if(remainingBytes != 0) {
+            readContent(reader.readPayload(remainingBytes), blocks);
         }
         if (size != size()) {
             throw new ParsedSizeMismatchException();
@@ -200,4 +277,79 @@ public class AccessUnitContainer extends GenInfo<AccessUnitContainer>{
 
         return this;
     }
+
+    private synchronized List<Block> load() {
+        if (content_loader == null) {
+            return blocks; // pinned by addBlock()
+        }
+        List<Block> list = content_blocks != null ? content_blocks.get() : null;
+        if (list == null) {
+            try {
+                list = content_loader.load();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            content_blocks = new SoftReference<>(list);
+        }
+        return list;
+    }
+
+    private List<Block> mapContent() throws IOException {
+        final List<Block> list = new ArrayList<>(access_unit_header.getNumberOfBlocks());
+        if (content_size != 0) {
+            readContent(content_reader.readPayload(content_position, content_size), list);
+        }
+        return list;
+    }
+
+    private void readContent(
+            final Payload possibleInformationPossibleProtectionPossibleBlock,
+            final List<Block> blocks) throws IOException {
+
+        Header header;
+        Payload copyPossibleInformationPossibleProtectionPossibleBlock =
+                possibleInformationPossibleProtectionPossibleBlock.createCopy();
+
+        Payload possibleProtectionPossibleBlock;
+        header = Header.read(possibleInformationPossibleProtectionPossibleBlock);
+        if (AccessUnitInformation.KEY.equals(header.key)) {
+            // the previously loaded information may be in use
+            final AccessUnitInformation information = new AccessUnitInformation();
+            information.read(
+                    possibleInformationPossibleProtectionPossibleBlock,
+                    header.getContentSize()
+            );
+            au_information = information;
+            possibleProtectionPossibleBlock = possibleInformationPossibleProtectionPossibleBlock;
+        } else {
+            possibleProtectionPossibleBlock = copyPossibleInformationPossibleProtectionPossibleBlock;
+        }
+
+        Payload copyPossibleProtectionPossibleBlock = possibleProtectionPossibleBlock.createCopy();
+        Payload possibleBlock;
+        header = Header.read(possibleProtectionPossibleBlock);
+        if (AccessUnitProtection.KEY.equals(header.key)) {
+            final AccessUnitProtection protection = new AccessUnitProtection();
+            protection.read(possibleProtectionPossibleBlock, header.getContentSize());
+            au_protection = protection;
+            possibleBlock = possibleProtectionPossibleBlock;
+        } else {
+            possibleBlock = copyPossibleProtectionPossibleBlock;
+        }
+
+        if (datasetHeader.isBlockHeader()) {
+            for (byte block_i = 0; block_i < access_unit_header.getNumberOfBlocks(); block_i++) {
+                Block block = new Block(datasetHeader);
+                block.read(possibleBlock);
+                blocks.add(block);
+            }
+        }
+    }
+
+    /**
+     * Loader of the access unit blocks (i.e. mapped from another file).
+     */
+    public interface BlocksLoader {
+        List<Block> load() throws IOException;
+    }
 }
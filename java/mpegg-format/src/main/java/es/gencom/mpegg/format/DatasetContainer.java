@@ -159,20 +159,7 @@ public class DatasetContainer extends GenInfo<DatasetContainer> {
 
     @Override
     public void write(MPEGWriter writer) throws IOException, InvalidMPEGStructure {
-        if(dataset_header == null){
-            throw new InvalidMPEGStructure("Missing mandatory dataset header element.");
-        }
-        dataset_header.writeWithHeader(writer);
-        for(DatasetParameterSet datasetParameterSet : dataset_parameters){
-            datasetParameterSet.writeWithHeader(writer);
-        }
-        if(dataset_header.isMIT()) {
-            if (masterIndexTable == null) {
-                throw new InvalidMPEGStructure("Missing mandatory master index table.");
-            }
-            masterIndexTable.writeWithHeader(writer);
-        }
-
+        writeHeaders(writer);
 
         for(AccessUnitContainer accessUnitContainer: accessUnitContainers){
             accessUnitContainer.writeWithHeader(writer);
@@ -194,10 +181,65 @@ public class DatasetContainer extends GenInfo<DatasetContainer> {
         }
     }
 
+    /**
+     * <p>
+     * Writes the elements that precede the access units in the container:
+     * the dataset header, parameter sets and the master index table.
+     * </p>
+     *
+     * Used to write the container which access units are streamed afterwards.
+     *
+     * @param writer the writer to write the elements to
+     *
+     * @throws IOException
+     * @throws InvalidMPEGStructure
+     */
+    public void writeHeaders(final MPEGWriter writer) throws IOException, InvalidMPEGStructure {
+        if(dataset_header == null){
+            throw new InvalidMPEGStructure("Missing mandatory dataset header element.");
+        }
+        dataset_header.writeWithHeader(writer);
+        for(DatasetParameterSet datasetParameterSet : dataset_parameters){
+            datasetParameterSet.writeWithHeader(writer);
+        }
+        if(dataset_header.isMIT()) {
+            if (masterIndexTable == null) {
+                throw new InvalidMPEGStructure("Missing mandatory master index table.");
+            }
+            masterIndexTable.writeWithHeader(writer);
+        }
+    }
+
     @Override
     public DatasetContainer read(
             final MPEGReader reader, final long size) 
             throws IOException, InvalidMPEGStructure, ParsedSizeMismatchException, InvalidMPEGGFileException {
+        return read(reader, size, false);
+    }
+
+    /**
+     * <p>
+     * Reads the dataset container.
+     * </p>
+     * 
+     * In the lazy mode only the headers, parameter sets and the master index
+     * table are parsed, while the access units blocks and descriptor streams
+     * are mapped from the file when accessed.
+     * 
+     * @param reader the reader to read the container from
+     * @param size the size of the container content
+     * @param lazy whether to postpone parsing of the access units and streams
+     * 
+     * @return this dataset container
+     * 
+     * @throws IOException
+     * @throws InvalidMPEGStructure
+     * @throws ParsedSizeMismatchException
+     * @throws InvalidMPEGGFileException 
+     */
+    public DatasetContainer read(
+            final MPEGReader reader, final long size, final boolean lazy) 
+            throws IOException, InvalidMPEGStructure, ParsedSizeMismatchException, InvalidMPEGGFileException {
 
         long datasetInitialPosition = reader.getPosition();
 
@@ -248,7 +290,7 @@ public class DatasetContainer extends GenInfo<DatasetContainer> {
         while (header.key.equals(AccessUnitContainer.KEY)){
             AccessUnitContainer accessUnitContainer = new AccessUnitContainer(this);
 
-            accessUnitContainer.read(reader, header.getContentSize());
+            accessUnitContainer.read(reader, header.getContentSize(), lazy);
             accessUnitContainer.setAccessUnitOffset(auContainerOffset);
             accessUnitContainerOffsets.add(auContainerOffset);
 
@@ -306,7 +348,7 @@ public class DatasetContainer extends GenInfo<DatasetContainer> {
             while(header.key.equals(DescriptorStreamContainer.KEY)) {
                 try {
                     DescriptorStreamContainer descriptorStreamContainer = new DescriptorStreamContainer();
-                    descriptorStreamContainer.read(reader, header.getContentSize());
+                    descriptorStreamContainer.read(reader, header.getContentSize(), lazy);
                     descriptorStreamContainer.setStartDataset(datasetInitialPosition);
 
                     DATA_CLASS classId = descriptorStreamContainer.getDescriptorStreamHeader().getClassID();
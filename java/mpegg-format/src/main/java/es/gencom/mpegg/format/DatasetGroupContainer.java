@@ -170,6 +170,32 @@ public class DatasetGroupContainer extends GenInfo<DatasetGroupContainer> {
     
     @Override
     public void write(final MPEGWriter writer) throws IOException, InvalidMPEGStructure {
+        writeHeaders(writer);
+        for(DatasetContainer datasetContainer : datasetContainers) {
+            datasetContainer.writeWithHeader(writer);
+        }
+        if (datasetGroupMetadata != null) {
+            datasetGroupMetadata.writeWithHeader(writer);
+        }
+        if (datasetGroupProtection != null) {
+            datasetGroupProtection.writeWithHeader(writer);
+        }
+    }
+
+    /**
+     * <p>
+     * Writes the elements that precede the datasets in the container:
+     * the dataset group header, references, reference metadata and labels.
+     * </p>
+     *
+     * Used to write the container which datasets are streamed afterwards.
+     *
+     * @param writer the writer to write the elements to
+     *
+     * @throws IOException
+     * @throws InvalidMPEGStructure
+     */
+    public void writeHeaders(final MPEGWriter writer) throws IOException, InvalidMPEGStructure {
         dataset_group_header.writeWithHeader(writer);
         for(Reference reference : references) {
             reference.writeWithHeader(writer);
@@ -180,20 +206,34 @@ public class DatasetGroupContainer extends GenInfo<DatasetGroupContainer> {
         if (label_list != null) {
             label_list.writeWithHeader(writer);
         }
-        for(DatasetContainer datasetContainer : datasetContainers) {
-            datasetContainer.writeWithHeader(writer);
-        }
-        if (datasetGroupMetadata != null) {
-            datasetGroupMetadata.writeWithHeader(writer);
-        }
-        if (datasetGroupProtection != null) {
-            datasetGroupProtection.writeWithHeader(writer);
-        }
     }
 
     @Override
     public DatasetGroupContainer read(final MPEGReader reader, final long size) 
             throws IOException, InvalidMPEGStructure, ParsedSizeMismatchException, InvalidMPEGGFileException {
+        return read(reader, size, false);
+    }
+
+    /**
+     * <p>
+     * Reads the dataset group container.
+     * </p>
+     * 
+     * @param reader the reader to read the container from
+     * @param size the size of the container content
+     * @param lazy whether datasets postpone parsing of access units and streams
+     * 
+     * @return this dataset group container
+     * 
+     * @throws IOException
+     * @throws InvalidMPEGStructure
+     * @throws ParsedSizeMismatchException
+     * @throws InvalidMPEGGFileException 
+     * 
+     * @see DatasetContainer#read(MPEGReader, long, boolean)
+     */
+    public DatasetGroupContainer read(final MPEGReader reader, final long size, final boolean lazy) 
+            throws IOException, InvalidMPEGStructure, ParsedSizeMismatchException, InvalidMPEGGFileException {
 
         references = new ArrayList<>();
         
@@ -224,7 +264,7 @@ public class DatasetGroupContainer extends GenInfo<DatasetGroupContainer> {
             throw new InvalidDatasetGroupException("Dataset is mandatory in dataset group.");
         }
         while(DatasetContainer.KEY.equals(header.key)){
-            getDatasetContainers().add(new DatasetContainer().read(reader, header.getContentSize()));
+            getDatasetContainers().add(new DatasetContainer().read(reader, header.getContentSize(), lazy));
             if(size == size()){
                 return this;
             }
@@ -28,6 +28,7 @@ package es.gencom.mpegg.format;
 import es.gencom.mpegg.io.MPEGReader;
 import es.gencom.mpegg.io.MPEGWriter;
 import es.gencom.mpegg.io.Payload;
+import es.gencom.mpegg.io.ReadableMSBitFileChannel;
 
 import java.io.IOException;
 
@@ -40,6 +41,9 @@ public class DescriptorStreamContainer extends GenInfo<DescriptorStreamContainer
     private long streamSize;
     private long startDataset;
 
+    // the reader to map the stream from when the container is read lazily
+    private ReadableMSBitFileChannel payload_reader;
+
     public DescriptorStreamContainer() {
         super(KEY);
 
@@ -53,6 +57,7 @@ public class DescriptorStreamContainer extends GenInfo<DescriptorStreamContainer
 
     public void setPayload(final Payload payload){
         this.payload = payload;
+        payload_reader = null;
     }
 
     @Override
@@ -61,6 +66,8 @@ public class DescriptorStreamContainer extends GenInfo<DescriptorStreamContainer
             throw new InvalidMPEGStructure("Missing mandatory descriptor stream header.");
         }
         descriptor_stream_header.writeWithHeader(writer);
+        final Payload payload = payload_reader != null ?
+                payload_reader.readPayload(streamByteOffset, streamSize) : this.payload;
         payload.rewind();
         writer.writePayload(payload);
     }
@@ -68,6 +75,30 @@ public class DescriptorStreamContainer extends GenInfo<DescriptorStreamContainer
     @Override
     public DescriptorStreamContainer read(final MPEGReader reader, final long size) 
             throws IOException, InvalidMPEGStructure, ParsedSizeMismatchException {
+        return read(reader, size, false);
+    }
+
+    /**
+     * <p>
+     * Reads the descriptor stream container.
+     * </p>
+     * 
+     * In the lazy mode the stream is skipped and only the requested blocks are
+     * mapped from the file. The lazy mode is only supported for the file
+     * channel based readers.
+     * 
+     * @param reader the reader to read the container from
+     * @param size the size of the container content
+     * @param lazy whether to postpone mapping of the stream
+     * 
+     * @return this descriptor stream container
+     * 
+     * @throws IOException
+     * @throws InvalidMPEGStructure
+     * @throws ParsedSizeMismatchException 
+     */
+    public DescriptorStreamContainer read(final MPEGReader reader, final long size, final boolean lazy) 
+            throws IOException, InvalidMPEGStructure, ParsedSizeMismatchException {
 
         final Header header = Header.read(reader);
         if(!descriptor_stream_header.key.equals(header.key)) {
@@ -78,6 +109,12 @@ public class DescriptorStreamContainer extends GenInfo<DescriptorStreamContainer
 
         streamByteOffset = reader.getPosition();
         streamSize = size - descriptorStreamHeaderSize;
+
+        if(lazy && reader instanceof ReadableMSBitFileChannel) {
+            payload_reader = (ReadableMSBitFileChannel)reader;
+            payload_reader.setPosition(streamByteOffset + streamSize);
+            return this;
+        }
         payload = reader.readPayload(streamSize);
 
         if(size != size()) {
@@ -90,6 +127,9 @@ public class DescriptorStreamContainer extends GenInfo<DescriptorStreamContainer
     @Override
     public long size() {
         long result = descriptor_stream_header.sizeWithHeader();
+        if(payload_reader != null) {
+            return result + streamSize;
+        }
         payload.rewind();
         result += payload.remaining();
         return result;
@@ -100,6 +140,11 @@ public class DescriptorStreamContainer extends GenInfo<DescriptorStreamContainer
     }
 
     public Payload getPayloadFromTo(long blockStart, long blockEnd) throws IOException {
+        if(payload_reader != null) {
+            return payload_reader.readPayload(
+                    blockStart + startDataset, blockEnd - blockStart);
+        }
+
         long currentPosition = payload.getPosition();
 
         long correctedStartPosition = blockStart - (streamByteOffset - startDataset);
@@ -84,6 +84,30 @@ public class MPEGFile {
 
     public void read(final MPEGReader mpegReader) 
             throws IOException, InvalidMPEGStructure, ParsedSizeMismatchException, InvalidMPEGGFileException {
+        read(mpegReader, false);
+    }
+
+    /**
+     * <p>
+     * Reads MPEG-G file.
+     * </p>
+     * 
+     * The lazy mode is intended for large files: only the headers, parameter
+     * sets and master index tables are parsed upfront, while the access units 
+     * blocks and descriptor streams are mapped from the file on demand.
+     * The lazy mode requires ReadableMSBitFileChannel reader that must remain 
+     * open while the file content is used, otherwise the file is read as usual.
+     * 
+     * @param mpegReader the reader to read the file from
+     * @param lazy whether to postpone parsing of the access units and streams
+     * 
+     * @throws IOException
+     * @throws InvalidMPEGStructure
+     * @throws ParsedSizeMismatchException
+     * @throws InvalidMPEGGFileException 
+     */
+    public void read(final MPEGReader mpegReader, final boolean lazy) 
+            throws IOException, InvalidMPEGStructure, ParsedSizeMismatchException, InvalidMPEGGFileException {
 
         GenInfo.Header header = GenInfo.Header.read(mpegReader);
 
@@ -100,7 +124,7 @@ public class MPEGFile {
         }
         while(header.key.equals(DatasetGroupContainer.KEY)){
             DatasetGroupContainer datasetGroupContainer = new DatasetGroupContainer();
-            datasetGroupContainer.read(mpegReader, header.getContentSize());
+            datasetGroupContainer.read(mpegReader, header.getContentSize(), lazy);
             datasetGroupContainers.add(datasetGroupContainer);
             try{
                 header = GenInfo.Header.read(mpegReader);
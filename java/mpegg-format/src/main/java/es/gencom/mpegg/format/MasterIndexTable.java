@@ -285,7 +285,7 @@ public class MasterIndexTable extends GenInfo<MasterIndexTable> {
                         au_end_position[seq][ci][au_id] = reader.readBits(posSize);
 
                         if(au_end_position[seq][ci][au_id] <= au_start_position[seq][ci][au_id]){
-                            if(au_byte_offset[seq][ci][au_id] != (1L<<byte_offset_size)-1){
+                            if(au_byte_offset[seq][ci][au_id] != getOffsetNotPresent()){
                                 throw new IllegalArgumentException();
                             }
                         }
@@ -308,7 +308,9 @@ public class MasterIndexTable extends GenInfo<MasterIndexTable> {
                             for (int desc_id = 0; desc_id < num_descriptors; desc_id++) {
                                 long byte_offset = reader.readBits(byte_offset_size);
                                 block_byte_offset[seq][ci][au_id][desc_id] = byte_offset;
-                                blockStartsPerClassPerDescriptor.get(ci).get(desc_id).add(byte_offset);
+                                if(byte_offset != getOffsetNotPresent()) {
+                                    blockStartsPerClassPerDescriptor.get(ci).get(desc_id).add(byte_offset);
+                                }
                             }
                         }
                     }
@@ -371,9 +373,11 @@ public class MasterIndexTable extends GenInfo<MasterIndexTable> {
                                 descriptor_i++
                         ) {
                             u_block_byte_offset[uau_id][descriptor_i] = reader.readBits(byte_offset_size);
-                            blockStartsPerClassPerDescriptor.get(dataClassIndex.getIndex()).get(descriptor_i).add(
-                                    u_block_byte_offset[uau_id][descriptor_i]
-                            );
+                            if(u_block_byte_offset[uau_id][descriptor_i] != getOffsetNotPresent()) {
+                                blockStartsPerClassPerDescriptor.get(dataClassIndex.getIndex()).get(descriptor_i).add(
+                                        u_block_byte_offset[uau_id][descriptor_i]
+                                );
+                            }
                         }
                     }
                 }
@@ -596,7 +600,7 @@ public class MasterIndexTable extends GenInfo<MasterIndexTable> {
             throw new IllegalArgumentException();
         }
         final long posNotPresent =  (dataset_header.isByteOffsetSize() ? 0xffffffffffL : 0xffffffffL);
-        final long offsetNotPresent = (dataset_header.isByteOffsetSize() ? 0xffffffffffffffffL : 0xffffffffL);
+        final long offsetNotPresent = getOffsetNotPresent();
         for(int seq_i=0; seq_i<au_start_position.length; seq_i++){
             for(int class_i=0; class_i < au_start_position[seq_i].length; class_i++){
                 int num_aus = au_start_position[seq_i][class_i].length;
@@ -649,6 +653,13 @@ public class MasterIndexTable extends GenInfo<MasterIndexTable> {
         return true;
     }
 
+    /**
+     * @return the byte offset of the access unit or the block which is not present
+     */
+    public long getOffsetNotPresent() {
+        return dataset_header.isByteOffsetSize() ? 0xffffffffffffffffL : 0xffffffffL;
+    }
+
     public long getUnmappedBlockByteOffset(int unmappedBlock_i, DescriptorIndex descriptorIndex) {
         return u_block_byte_offset[unmappedBlock_i][descriptorIndex.getDescriptor_index()];
     }
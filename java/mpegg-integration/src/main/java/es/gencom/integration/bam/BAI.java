@@ -116,15 +116,7 @@ public class BAI {
      * @throws DataFormatException 
      */
     public BAI(final BAMFileInputStream in) throws IOException, DataFormatException {
-        final int nRef = in.getRefCount();
-        
-        final TreeMap<Integer,Bin> map[] = new TreeMap[nRef]; // bins;
-
-        final BAMRecord linear[] = new BAMRecord[nRef];
-        final List<Long> list[] = new ArrayList[nRef];
-
-        long last_mapped_chunk_end_pos = 0;
-        long unmapped_unplaced = 0;
+        final Builder builder = new Builder(in.getRefCount());
         
         while(in.available() >= 0) {
             
@@ -132,87 +124,26 @@ public class BAI {
             final BAMRecord record = BAMRecord.decode(in);
             final long chunk_end = in.index();
 
-            final int ref = record.getRefID();
-            if (ref < 0) {
-                unmapped_unplaced++;
-                continue;
-            }
-            if (ref >= nRef) {
-                continue;
-            }
+            builder.add(record, chunk_beg, chunk_end);
+        }
 
-            last_mapped_chunk_end_pos = Math.max(last_mapped_chunk_end_pos, chunk_end);
-            
-            final int nbin = record.getBin();
+        final BAI bai = builder.build();
 
-            if (map[ref] == null) {
-                map[ref] = new TreeMap();
-                final Bin bin = nbin == Bin.PSEUDO_BIN ? new Bin(nbin, new long[] {chunk_beg, 0}, new long[] {chunk_end, 1}) :
-                                                         new Bin(nbin, new long[] {chunk_beg}, new long[] {chunk_end});
-                map[ref].put(nbin, bin);
-            } else {
-                Bin bin = map[ref].get(nbin);
-                if (bin == null) {
-                    bin = nbin == Bin.PSEUDO_BIN ? new Bin(nbin, new long[] {chunk_beg, 0}, new long[] {chunk_end, 1}) :
-                                                         new Bin(nbin, new long[] {chunk_beg}, new long[] {chunk_end});
-                    map[ref].put(nbin, bin);
-                } else if (nbin == Bin.PSEUDO_BIN) {
-                    bin.chunk_beg[0] = Math.min(bin.chunk_beg[0], chunk_beg);
-                    bin.chunk_end[0] = Math.max(bin.chunk_end[0], chunk_end);
-                    bin.chunk_end[1]++; // n_unmapped++
-                } else {
-                    bin.merge(chunk_beg, chunk_end);
-                    bin = map[ref].get(Bin.PSEUDO_BIN);
-                    if (bin == null) {
-                        map[ref].put(nbin, new Bin(nbin, new long[] {0, 1}, new long[] {0, 0}));
-                    } else {
-                        bin.chunk_beg[0]++; // n_mapped++
-                    }
-                }
-            }
-
-            final int pos = record.getPositionStart();
-            final int end = record.getPositionEnd();
+        indexes = bai.indexes;
+        offsets = bai.offsets;
+        unplaced = bai.unplaced;
+        last_mapped_pos = bai.last_mapped_pos;
+    }
 
-            final int lsegment = pos >> 14; // 16384
-            final int rsegment = end >> 14;
+    private BAI(final Bin[][] indexes, 
+                final long[][] offsets, 
+                final long unplaced, 
+                final long last_mapped_pos) {
 
-            if (list[ref] == null) {
-                list[ref] = new ArrayList();
-                for (int i = 0; i < lsegment; i++) {
-                    list[ref].add(0L);
-                }
-                for (int i = lsegment; i <= rsegment; i++) {
-                    list[ref].add(chunk_beg);
-                }
-                linear[ref] = record;
-            } else if (list[ref].size() <= rsegment) {
-                for (int i = list[ref].size(); i <= lsegment; i++) {
-                    list[ref].add(chunk_beg);
-                }
-                for (int i = lsegment; i < rsegment; i++) {
-                    list[ref].add(chunk_beg);
-                }
-                linear[ref] = record;
-            } else if (end > linear[ref].getPositionEnd()) {
-                linear[ref] = record;
-            }
-        }
-        
-        offsets = new long[list.length][];
-        for (int i = 0, n = offsets.length; i < n; i++) {
-            if (list[i] != null) {
-                offsets[i] = new long[list[i].size()];
-                for (int j = 0, m = offsets[i].length; j < m; j++) {
-                    offsets[i][j] = list[i].get(j);
-                }
-            }
-        }
-
-        indexes = indexes(map);
-        
-        unplaced = unmapped_unplaced;
-        last_mapped_pos = last_mapped_chunk_end_pos;
+        this.indexes = indexes;
+        this.offsets = offsets;
+        this.unplaced = unplaced;
+        this.last_mapped_pos = last_mapped_pos;
     }
 
     public long getLastMappedChunkEndPosition() {
@@ -257,9 +188,12 @@ public class BAI {
                 }
             }
         }
+        
+        // n_no_coor
+        out.write(u64.putLong(0, unplaced).array());
     }
 
-    private Bin[][] indexes(final TreeMap<Integer,Bin> map[]) {
+    private static Bin[][] indexes(final TreeMap<Integer,Bin> map[]) {
         Bin[][] arr = new Bin[map.length][];
         for (int i = 0, n = arr.length; i < n; i++) {
             if (map[i] != null) {
@@ -322,4 +256,122 @@ public class BAI {
         bins[idx] = nbin;
         return bins;
     }
+    /**
+     * <p>
+     * Incremental BAM index builder.
+     * </p>
+     * 
+     * Records must be added in the file order together with their virtual
+     * file offsets (compressed block position &lt;&lt; 16 | offset in the block).
+     */
+    public static class Builder {
+        
+        private final TreeMap<Integer,Bin> map[]; // bins;
+        private final BAMRecord linear[];
+        private final List<Long> list[];
+        
+        private long last_mapped_pos;
+        private long unplaced;
+        
+        /**
+         * @param nRef the number of reference sequences in the BAM header
+         */
+        public Builder(final int nRef) {
+            map = new TreeMap[nRef];
+            linear = new BAMRecord[nRef];
+            list = new ArrayList[nRef];
+        }
+        
+        /**
+         * Adds the record to the index.
+         * 
+         * @param record the BAM record
+         * @param chunk_beg virtual file offset of the record start
+         * @param chunk_end virtual file offset of the record end
+         */
+        public void add(final BAMRecord record, 
+                        final long chunk_beg, 
+                        final long chunk_end) {
+
+            final int ref = record.getRefID();
+            if (ref < 0) {
+                unplaced++;
+                return;
+            }
+            if (ref >= map.length) {
+                return;
+            }
+
+            last_mapped_pos = Math.max(last_mapped_pos, chunk_end);
+        
+            final int nbin = record.getBin();
+
+            if (map[ref] == null) {
+                map[ref] = new TreeMap();
+            }
+
+            final Bin bin = map[ref].get(nbin);
+            if (bin == null) {
+                map[ref].put(nbin, new Bin(nbin, new long[] {chunk_beg}, new long[] {chunk_end}));
+            } else {
+                bin.merge(chunk_beg, chunk_end);
+            }
+
+            // pseudo-bin: {ref_beg, n_mapped}, {ref_end, n_unmapped} of all the placed reads
+            Bin pseudo = map[ref].get(Bin.PSEUDO_BIN);
+            if (pseudo == null) {
+                pseudo = new Bin(Bin.PSEUDO_BIN, new long[] {chunk_beg, 0}, new long[] {chunk_end, 0});
+                map[ref].put(Bin.PSEUDO_BIN, pseudo);
+            } else {
+                pseudo.chunk_beg[0] = Math.min(pseudo.chunk_beg[0], chunk_beg);
+                pseudo.chunk_end[0] = Math.max(pseudo.chunk_end[0], chunk_end);
+            }
+            if (record.isUnmappedSegment()) {
+                pseudo.chunk_end[1]++; // n_unmapped++
+            } else {
+                pseudo.chunk_beg[1]++; // n_mapped++
+            }
+
+            final int pos = record.getPositionStart();
+            final int end = record.isUnmappedSegment() ? pos : record.getPositionEnd();
+
+            final int lsegment = pos >> 14; // 16384
+            final int rsegment = end >> 14;
+
+            if (list[ref] == null) {
+                list[ref] = new ArrayList();
+                for (int i = 0; i < lsegment; i++) {
+                    list[ref].add(0L);
+                }
+                for (int i = lsegment; i <= rsegment; i++) {
+                    list[ref].add(chunk_beg);
+                }
+                linear[ref] = record;
+            } else if (list[ref].size() <= rsegment) {
+                for (int i = list[ref].size(); i <= lsegment; i++) {
+                    list[ref].add(chunk_beg);
+                }
+                for (int i = lsegment; i < rsegment; i++) {
+                    list[ref].add(chunk_beg);
+                }
+                linear[ref] = record;
+            } else if (end > linear[ref].getPositionEnd()) {
+                linear[ref] = record;
+            }
+        }
+        
+        public BAI build() {
+            final long[][] offsets = new long[list.length][];
+            for (int i = 0, n = offsets.length; i < n; i++) {
+                if (list[i] != null) {
+                    offsets[i] = new long[list[i].size()];
+                    for (int j = 0, m = offsets[i].length; j < m; j++) {
+                        offsets[i][j] = list[i].get(j);
+                    }
+                }
+            }
+
+            return new BAI(indexes(map), offsets, unplaced, last_mapped_pos);
+        }
+    }
 }
@@ -26,8 +26,10 @@
 package es.gencom.integration.bam;
 
 import es.gencom.integration.gzip.GZipFileInputStream;
+import es.gencom.integration.gzip.InflaterBackend;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.DataFormatException;
 
 /**
@@ -48,6 +50,24 @@ public class BAMFileInputStream extends GZipFileInputStream {
         header = new BAMHeader(this);
         first_mapped_pos = getBlockPosition();
     }
+
+    /**
+     * Creates BAM input stream which inflates BGZF blocks in parallel.
+     * 
+     * @param fbam BAM file
+     * @param executor the executor to inflate blocks on
+     * @param backend the inflater implementation to use
+     * 
+     * @throws IOException
+     * @throws DataFormatException 
+     */
+    public BAMFileInputStream(final Path fbam, 
+                              final ExecutorService executor,
+                              final InflaterBackend backend) throws IOException, DataFormatException {
+        super(fbam, executor, backend);
+        header = new BAMHeader(this);
+        first_mapped_pos = getBlockPosition();
+    }
     
     public int getRefCount() {
         return header.refs.length;
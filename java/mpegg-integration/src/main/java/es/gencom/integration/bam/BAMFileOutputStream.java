@@ -27,18 +27,35 @@ package es.gencom.integration.bam;
 
 import es.gencom.integration.gzip.GZipFileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
 
 /**
  * <p>
- * 
+ * BAM file writer.
  * </p>
  * 
+ * Optionally, BGZF blocks are compressed in parallel and the BAI index
+ * is built on the fly as records are written.
+ * 
  * @author Dmitry Repchevsky
  */
 
 public class BAMFileOutputStream extends GZipFileOutputStream {
     
+    private final Path fbai;
+    private final BAI.Builder builder;
+    
+    // records which blocks positions are not yet known
+    private final ArrayDeque<IndexEntry> pending;
+    private final HashMap<Long, Long> positions;
+    
     /**
      * <p>
      * Create a new BAM file and write the BAM header.
@@ -50,13 +67,129 @@ public class BAMFileOutputStream extends GZipFileOutputStream {
      * @throws IOException 
      */
     public BAMFileOutputStream(final Path file, final BAMHeader header) throws IOException {
-        super(file);
+        this(file, header, null, null, Deflater.BEST_COMPRESSION);
+    }
+
+    /**
+     * <p>
+     * Create a new BAM file and write the BAM header.
+     * </p>
+     * 
+     * @param file   file path for the new BAM file
+     * @param header BAM header for the BAM file
+     * @param fbai   file path for the BAI index to create or null
+     * @param executor the executor to compress BGZF blocks on or null
+     * @param level  deflate compression level (0-9)
+     * 
+     * @throws IOException 
+     */
+    public BAMFileOutputStream(final Path file, 
+                               final BAMHeader header,
+                               final Path fbai,
+                               final ExecutorService executor,
+                               final int level) throws IOException {
+        super(file, executor, level);
         
+        this.fbai = fbai;
+        if (fbai == null) {
+            builder = null;
+            pending = null;
+            positions = null;
+        } else {
+            builder = new BAI.Builder(header.refs.length);
+            pending = new ArrayDeque<>();
+            positions = new HashMap<>();
+        }
+
         header.write(this);
         flush(); // flush b
     }
 
     public void write(final BAMRecord record) throws IOException {
+        if (builder == null) {
+            record.write(this);
+            return;
+        }
+
+        // the full block is only closed by the next write
+        final long beg_block;
+        final int beg_offset;
+        if (count() == getMaxBlockSize()) {
+            beg_block = getBlockNumber() + 1;
+            beg_offset = 0;
+        } else {
+            beg_block = getBlockNumber();
+            beg_offset = count();
+        }
+
         record.write(this);
+
+        pending.add(new IndexEntry(record, beg_block, beg_offset, getBlockNumber(), count()));
+        index();
+
+        // forget positions of blocks no record can start in anymore
+        final long oldest = pending.isEmpty() ? getBlockNumber() : pending.peek().beg_block;
+        final Iterator<Long> iter = positions.keySet().iterator();
+        while (iter.hasNext()) {
+            if (iter.next() < oldest) {
+                iter.remove();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+
+        if (builder != null) {
+            index();
+            try (OutputStream out = Files.newOutputStream(fbai)) {
+                builder.build().save(out);
+            }
+        }
+    }
+
+    @Override
+    protected void written(final long block, final long position) throws IOException {
+        if (positions != null) {
+            positions.put(block, position);
+            index();
+        }
+    }
+
+    /**
+     * Adds to the index all pending records which blocks are already written.
+     */
+    private void index() {
+        while (!pending.isEmpty()) {
+            final IndexEntry entry = pending.peek();
+            final Long beg = positions.get(entry.beg_block);
+            final Long end = positions.get(entry.end_block);
+            if (beg == null || end == null) {
+                break;
+            }
+            builder.add(entry.record, 
+                        beg << 16 | entry.beg_offset, 
+                        end << 16 | entry.end_offset);
+            pending.poll();
+        }
+    }
+
+    private static class IndexEntry {
+        final BAMRecord record;
+        final long beg_block;
+        final int beg_offset;
+        final long end_block;
+        final int end_offset;
+
+        IndexEntry(final BAMRecord record,
+                   final long beg_block, final int beg_offset,
+                   final long end_block, final int end_offset) {
+            this.record = record;
+            this.beg_block = beg_block;
+            this.beg_offset = beg_offset;
+            this.end_block = end_block;
+            this.end_offset = end_offset;
+        }
     }
 }
@@ -25,6 +25,8 @@
 
 package es.gencom.integration.bam;
 
+import es.gencom.integration.gzip.InflaterBackend;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -33,6 +35,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.zip.DataFormatException;
 
 /**
@@ -41,16 +44,43 @@ import java.util.zip.DataFormatException;
  * @author Dmitry Repchevsky
  */
 
-public class BAMFileReader implements Iterable<BAMRecord> {
+public class BAMFileReader implements Iterable<BAMRecord>, Closeable {
     
     private BAI bai;
     private BAMFileInputStream stream;
     
+    private final ExecutorService executor;
+    private final InflaterBackend backend;
+    
     public BAMFileReader(final Path fbam) throws IOException, DataFormatException {
         this(fbam, null);
     }
 
     public BAMFileReader(final Path fbam, Path fbai) throws IOException, DataFormatException {
+        this(fbam, fbai, null, null);
+    }
+
+    /**
+     * <p>
+     * Creates BAM reader which inflates BGZF blocks in parallel.
+     * </p>
+     * 
+     * The index (when absent) is also built reading the file in parallel.
+     * 
+     * @param fbam BAM file
+     * @param fbai BAI index file or null to use the default one
+     * @param executor the executor to inflate blocks on or null to read sequentially
+     * @param backend the inflater implementation to use
+     * 
+     * @throws IOException
+     * @throws DataFormatException 
+     */
+    public BAMFileReader(final Path fbam, Path fbai,
+                         final ExecutorService executor,
+                         final InflaterBackend backend) throws IOException, DataFormatException {
+
+        this.executor = executor;
+        this.backend = backend;
         
         if (fbai != null) {
             if (Files.exists(fbai) && Files.isRegularFile(fbai)) {
@@ -76,7 +106,7 @@ public class BAMFileReader implements Iterable<BAMRecord> {
             }
         }
         
-        stream = new BAMFileInputStream(fbam);
+        stream = open(fbam);
     }
     
     /**
@@ -151,6 +181,20 @@ public class BAMFileReader implements Iterable<BAMRecord> {
         return alignments;
     }
 
+    /**
+     * <p>
+     * Closes the BAM file.
+     * </p>
+     * 
+     * Iterators obtained from the reader must not be used afterwards.
+     * 
+     * @throws IOException 
+     */
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+
     private BAI saveIndex(final Path fbam, final Path fbai) throws IOException, DataFormatException {
         bai = makeIndex(fbam);
         try (OutputStream out = Files.newOutputStream(fbai)) {
@@ -160,11 +204,16 @@ public class BAMFileReader implements Iterable<BAMRecord> {
     }
     
     private BAI makeIndex(final Path fbam) throws IOException, DataFormatException {
-        try (BAMFileInputStream bam = new BAMFileInputStream(fbam)) {
+        try (BAMFileInputStream bam = open(fbam)) {
             return new BAI(bam);
         }
     }
 
+    private BAMFileInputStream open(final Path fbam) throws IOException, DataFormatException {
+        return executor == null ? new BAMFileInputStream(fbam) :
+                                  new BAMFileInputStream(fbam, executor, backend);
+    }
+
     public int getRefCount() {
         return stream.getRefCount();
     }
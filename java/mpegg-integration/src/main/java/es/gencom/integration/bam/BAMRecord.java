@@ -64,7 +64,8 @@ public class BAMRecord extends SAMRecord implements SequenceRecord {
      */
     public int getBin() {
         if (isUnmappedSegment()) {
-            return refID == -1 ? 4680 : Bin.PSEUDO_BIN; // pseudo-bins : reg2bin(-1, 0)
+            // placed unmapped reads are binned as one base long: reg2bin(pos, pos + 1)
+            return refID == -1 ? 4680 : BAI.reg2bin(pos - 1, pos); // reg2bin(-1, 0)
         }
 
         return BAI.reg2bin(pos - 1, getPositionEnd());
@@ -26,7 +26,7 @@
 package es.gencom.integration.deflate;
 
 import static es.gencom.integration.deflate.Deflater.DEFLATE_WINDOW_SIZE;
-import es.gencom.integration.saca.SAIS;
+import es.gencom.integration.saca.SuffixArrayBuilder;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
@@ -46,9 +46,14 @@ public class LZ77 {
     public final static int MAX_PATTERN_LENGTH = 258;
 
     private final LZOutputStream out;
+    private final SuffixArrayBuilder suffixArrayBuilder;
+    private int[] est;
 
     public LZ77(final LZOutputStream out) {
         this.out = out;
+
+        suffixArrayBuilder = new SuffixArrayBuilder();
+        est = new int[0];
     }
 
     /**
@@ -61,8 +66,9 @@ public class LZ77 {
      */
     public void lz(final ByteBuffer buf) throws IOException {
         
-        final int[] sa = new int[buf.limit()];
-        final int[] c = SAIS.suffix(buf, sa);
+        // the arrays are reused between the calls and may be longer than the data
+        final int[] sa = suffixArrayBuilder.suffix(buf);
+        final int[] c = suffixArrayBuilder.getBuckets();
         
         final long[] count = new long[256];
         for (int i = 0, idx = -1; i < c.length; i++) {
@@ -72,26 +78,29 @@ public class LZ77 {
             }
         }
         
-        final int[] inv = new int[sa.length];
-        final int[] lcp = lcp(buf, sa, inv);
+        final int[] lcp = suffixArrayBuilder.lcp(buf);
+        final int[] inv = suffixArrayBuilder.getInverse();
+        final int n = buf.limit();
 
         final DeflateEncodeTable table = new DeflateEncodeTable(count);
 
-        final int est[] = new int[buf.limit() - buf.position() + 1];
-        for (int i = 0, j = buf.position(), m = est.length - 1; i < m; i++) {
+        if (est.length < n - buf.position() + 1) {
+            est = new int[n - buf.position() + 1];
+        }
+        for (int i = 0, j = buf.position(), m = n - buf.position(); i < m; i++) {
             est[i + 1] = est[i] + table.bit_lengths[buf.get(i + j) & 0xFF];
         }
 
         int pos = buf.position();
         do {
-            if (lcp[inv[pos]] < MIN_PATTERN_LENGTH && (inv[pos] < lcp.length - 1 && lcp[inv[pos] + 1] < MIN_PATTERN_LENGTH)) {
+            if (lcp[inv[pos]] < MIN_PATTERN_LENGTH && (inv[pos] < n - 1 && lcp[inv[pos] + 1] < MIN_PATTERN_LENGTH)) {
                 out.encode_lit(buf.get(pos) & 0xFF);
             } else {
                 int gain = 0;
                 int length = 1;
                 int distance = DEFLATE_WINDOW_SIZE; // limit max distance
                 
-                for (int p = inv[pos] + 1, l = Integer.MAX_VALUE; p < lcp.length && (l = Math.min(l, lcp[p])) >= MIN_PATTERN_LENGTH; p++) {
+                for (int p = inv[pos] + 1, l = Integer.MAX_VALUE; p < n && (l = Math.min(l, lcp[p])) >= MIN_PATTERN_LENGTH; p++) {
                     final int d = pos - sa[p];
                     if (d > 0 && d < distance) {
                         final int len_idx = pos - buf.position();
@@ -146,35 +155,6 @@ public class LZ77 {
                     pos += length;
                 }
             }
-        } while (++pos < sa.length);
-    }
-    
-    private static int[] lcp(final ByteBuffer buf, final int[] sa, final int[] inv) {
-        
-        for (int i = 0, n = inv.length; i < n; i++) {
-            inv[sa[i]] = i;
-        }
-
-        int[] lcp = new int[sa.length];
-        for (int i = 0, k = 0, n = inv.length; i < n; i++) {
-            if (inv[i] == n - 1) {
-                k = 0;
-                continue;
-            }
-
-            int j = sa[inv[i] + 1];
-            while (i + k < n && j + k < n &&
-                   buf.get(i + k) == buf.get(j + k)) {
-                k++;
-            }
-
-            lcp[inv[i] + 1] = k;
-
-            if (k > 0) {
-                k--;
-            }
-        }
-
-        return lcp;
+        } while (++pos < n);
     }
 }
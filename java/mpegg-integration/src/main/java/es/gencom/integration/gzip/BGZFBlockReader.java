@@ -0,0 +1,317 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.integration.gzip;
+
+import es.gencom.integration.deflate.Inflater;
+import es.gencom.integration.io.BitBuffer;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.ZipException;
+
+/**
+ * <p>
+ * Read-ahead BGZF blocks reader that inflates blocks concurrently.
+ * </p>
+ * 
+ * Block boundaries are found from the BSIZE field of the gzip header,
+ * so the reader scans the file ahead of the consumer submitting every block
+ * to be inflated (and its CRC32 verified) on the executor. Blocks are
+ * returned in the file order.
+ * 
+ * @author Dmitry Repchevsky
+ */
+
+public class BGZFBlockReader implements AutoCloseable {
+    
+    private final FileChannel channel;
+    private final ExecutorService executor;
+    private final InflaterBackend backend;
+    private final int window;
+    
+    private final ArrayDeque<Future<Block>> blocks;
+    private long scan_pos;
+    private boolean scan_eof;
+    
+    /**
+     * @param channel BGZF file channel
+     * @param executor the executor to inflate blocks on
+     * @param backend the inflater implementation to use
+     * @param window maximum number of blocks inflated ahead of the consumer
+     */
+    public BGZFBlockReader(final FileChannel channel,
+                           final ExecutorService executor,
+                           final InflaterBackend backend,
+                           final int window) {
+        
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+
+        this.channel = channel;
+        this.executor = executor;
+        this.backend = backend;
+        this.window = window;
+        
+        blocks = new ArrayDeque<>(window);
+    }
+    
+    /**
+     * Discards all read ahead blocks and restarts reading from the position.
+     * 
+     * @param pos the file position of the gzip member to start from
+     */
+    public void reset(final long pos) {
+        cancel();
+        scan_pos = pos;
+        scan_eof = false;
+    }
+    
+    /**
+     * Gets the next inflated block.
+     * 
+     * @return the block (empty for an empty gzip member, i.e. BGZF end of file
+     *         marker) or null if the end of file is reached
+     * 
+     * @throws IOException 
+     */
+    public Block next() throws IOException {
+        fill();
+
+        final Future<Block> future = blocks.poll();
+        if (future == null) {
+            return null;
+        }
+        
+        fill();
+        
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+    
+    @Override
+    public void close() {
+        cancel();
+    }
+
+    private void cancel() {
+        for (Future<Block> future : blocks) {
+            future.cancel(true);
+        }
+        blocks.clear();
+    }
+    
+    private void fill() throws IOException {
+        while (!scan_eof && blocks.size() < window) {
+            final long pos = scan_pos;
+            final int bsize = readBlockSize(pos);
+            if (bsize < 0) {
+                scan_eof = true;
+            } else {
+                scan_pos += bsize;
+                blocks.add(executor.submit(new InflateTask(pos, bsize)));
+            }
+        }
+    }
+
+    /**
+     * Reads the BSIZE from the header of the gzip member.
+     * 
+     * @param pos the file position of the gzip member
+     * 
+     * @return the total size of the member or -1 if the end of file is found
+     * 
+     * @throws IOException 
+     */
+    private int readBlockSize(final long pos) throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        if (!read(buf, pos)) {
+            return -1;
+        }
+
+        if ((buf.get(0) & 0xFF) != GZipHeader.ID1 ||
+            (buf.get(1) & 0xFF) != GZipHeader.ID2) {
+            throw new ZipException("invalid gzip header");
+        }
+        if ((buf.get(2) & 0xFF) != GZipHeader.CM) {
+            throw new ZipException("unknown compression");
+        }
+        
+        final int flg = buf.get(3) & 0xFF;
+        if ((flg & GZipHeader.FEXTRA) != 0) {
+            final int xlen = buf.getShort(10) & 0xFFFF;
+            final ByteBuffer extra = ByteBuffer.allocate(xlen).order(ByteOrder.LITTLE_ENDIAN);
+            if (!read(extra, pos + 12)) {
+                throw new EOFException();
+            }
+            for (int i = 0; i + 4 <= xlen;) {
+                final int slen = extra.getShort(i + 2) & 0xFFFF;
+                if (extra.get(i) == GZipHeader.SI1 &&
+                    extra.get(i + 1) == GZipHeader.SI2 &&
+                    slen == GZipHeader.SLEN && i + 6 <= xlen) {
+
+                    return (extra.getShort(i + 4) & 0xFFFF) + 1;
+                }
+                i += 4 + slen;
+            }
+        }
+        throw new ZipException("no BSIZE field found in the BGZF block");
+    }
+    
+    private boolean read(final ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            final int n = channel.read(buf, pos);
+            if (n < 0) {
+                if (buf.position() == 0) {
+                    return false;
+                }
+                throw new EOFException();
+            }
+            pos += n;
+        }
+        return true;
+    }
+    
+    /**
+     * <p>
+     * The inflated BGZF block.
+     * </p>
+     */
+    public static class Block {
+        
+        /**
+         * The file position of the gzip member.
+         */
+        public final long position;
+        
+        /**
+         * The inflated data.
+         */
+        public final byte[] data;
+
+        Block(final long position, final byte[] data) {
+            this.position = position;
+            this.data = data;
+        }
+    }
+    
+    private class InflateTask implements Callable<Block> {
+        
+        private final long pos;
+        private final int bsize;
+
+        InflateTask(final long pos, final int bsize) {
+            this.pos = pos;
+            this.bsize = bsize;
+        }
+
+        @Override
+        public Block call() throws IOException, DataFormatException {
+            final ByteBuffer buf = ByteBuffer.allocate(bsize).order(ByteOrder.LITTLE_ENDIAN);
+            if (!read(buf, pos)) {
+                throw new EOFException();
+            }
+
+            final byte[] member = buf.array();
+            final ByteArrayInputStream in = new ByteArrayInputStream(member, 0, bsize);
+            new GZipHeader(in);
+
+            final int off = bsize - in.available();
+            final int len = bsize - off - 8;
+            if (len < 0) {
+                throw new ZipException("invalid BGZF block size");
+            }
+            
+            final long crc = buf.getInt(bsize - 8) & 0xFFFFFFFFL;
+            final int isize = buf.getInt(bsize - 4);
+            if (isize < 0 || isize > 65536) {
+                throw new ZipException("invalid BGZF block data size: " + isize);
+            }
+            
+            final byte[] data = new byte[isize];
+            final CRC32 crc32 = new CRC32();
+
+            if (backend == InflaterBackend.JDK) {
+                final java.util.zip.Inflater inflater = new java.util.zip.Inflater(true);
+                try {
+                    inflater.setInput(member, off, len);
+                    for (int n = 0; n < isize; ) {
+                        final int l = inflater.inflate(data, n, isize - n);
+                        if (l == 0 && (inflater.finished() || inflater.needsInput())) {
+                            throw new EOFException();
+                        }
+                        n += l;
+                    }
+                } finally {
+                    inflater.end();
+                }
+                crc32.update(data, 0, isize);
+            } else {
+                // the footer stays in the buffer as a padding for the bit reader
+                final Inflater inflater = new Inflater(
+                        new BitBuffer(ByteBuffer.wrap(member, off, len + 8).slice()), crc32);
+                for (int n = 0; n < isize; ) {
+                    final int l = inflater.read(data, n, isize - n);
+                    if (l < 0) {
+                        throw new EOFException();
+                    }
+                    n += l;
+                }
+            }
+
+            if (crc != crc32.getValue()) {
+                throw new IOException("invalid block crc code");
+            }
+
+            return new Block(pos, data);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.integration.gzip;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ * BGZF blocks writer that compresses blocks concurrently.
+ * </p>
+ * 
+ * Every submitted block is deflated (with its CRC32 calculated) on the
+ * executor, while compressed blocks are written to the channel strictly
+ * in the submission order. At most <code>window</code> blocks are kept in
+ * flight; submitting more blocks the caller until the oldest one is written.
+ * 
+ * @author Dmitry Repchevsky
+ */
+
+public class BGZFBlockWriter implements AutoCloseable {
+
+    /**
+     * Maximum uncompressed block size which guarantees that even
+     * incompressible data fits into the 64KB BGZF block.
+     */
+    public final static int MAX_BLOCK_SIZE = 0xFF00;
+    
+    private final static int HEADER_SIZE = 18;
+    private final static int FOOTER_SIZE = 8;
+    
+    private final FileChannel channel;
+    private final ExecutorService executor;
+    private final int level;
+    private final int window;
+    private final Listener listener;
+    
+    private final ArrayDeque<Future<ByteBuffer>> blocks;
+    private long block;
+
+    /**
+     * @param channel the channel to write BGZF blocks to
+     * @param executor the executor to deflate blocks on
+     * @param level deflate compression level (0-9)
+     * @param window maximum number of blocks compressed ahead of the writer
+     * @param listener the callback notified about every written block or null
+     */
+    public BGZFBlockWriter(final FileChannel channel,
+                           final ExecutorService executor,
+                           final int level,
+                           final int window,
+                           final Listener listener) {
+
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+
+        this.channel = channel;
+        this.executor = executor;
+        this.level = level;
+        this.window = window;
+        this.listener = listener;
+        
+        blocks = new ArrayDeque<>(window);
+    }
+
+    /**
+     * Schedules the data to be compressed into the next BGZF block.
+     * The data array must not be modified after the submission.
+     * 
+     * @param data uncompressed block data
+     * @param len the data length (no more than {@link #MAX_BLOCK_SIZE})
+     * 
+     * @throws IOException 
+     */
+    public void submit(final byte[] data, final int len) throws IOException {
+        if (len > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("BGZF block is too large: " + len);
+        }
+        
+        while (blocks.size() >= window) {
+            write(blocks.poll());
+        }
+
+        blocks.add(executor.submit(new DeflateTask(data, len)));
+
+        // write whatever is already compressed without blocking
+        while (!blocks.isEmpty() && blocks.peek().isDone()) {
+            write(blocks.poll());
+        }
+    }
+    
+    /**
+     * Waits for all submitted blocks and writes them to the channel.
+     * 
+     * @throws IOException 
+     */
+    public void flush() throws IOException {
+        while (!blocks.isEmpty()) {
+            write(blocks.poll());
+        }
+    }
+
+    /**
+     * Writes all pending blocks. The channel is not closed.
+     * 
+     * @throws IOException 
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            for (Future<ByteBuffer> future : blocks) {
+                future.cancel(true);
+            }
+            blocks.clear();
+        }
+    }
+
+    private void write(final Future<ByteBuffer> future) throws IOException {
+        final ByteBuffer buf;
+        try {
+            buf = future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+        
+        final long position = channel.position();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+
+        if (listener != null) {
+            listener.written(block, position);
+        }
+        block++;
+    }
+
+    /**
+     * <p>
+     * Callback to be notified when compressed blocks are written.
+     * </p>
+     */
+    public interface Listener {
+        
+        /**
+         * @param block the sequential number of the block
+         * @param position the file position where the block starts
+         * 
+         * @throws IOException 
+         */
+        void written(long block, long position) throws IOException;
+    }
+
+    private class DeflateTask implements Callable<ByteBuffer> {
+        
+        private final byte[] data;
+        private final int len;
+        
+        DeflateTask(final byte[] data, final int len) {
+            this.data = data;
+            this.len = len;
+        }
+
+        @Override
+        public ByteBuffer call() throws IOException {
+            final byte[] member = new byte[HEADER_SIZE + len + (len >>> 10) + 64 + FOOTER_SIZE];
+
+            final Deflater deflater = new Deflater(level, true);
+            final int dsize;
+            try {
+                deflater.setInput(data, 0, len);
+                deflater.finish();
+                int n = 0;
+                final int max = member.length - HEADER_SIZE - FOOTER_SIZE;
+                while (!deflater.finished()) {
+                    if (n == max) {
+                        throw new IOException("BGZF block overflow");
+                    }
+                    n += deflater.deflate(member, HEADER_SIZE + n, max - n);
+                }
+                dsize = n;
+            } finally {
+                deflater.end();
+            }
+
+            final CRC32 crc = new CRC32();
+            crc.update(data, 0, len);
+
+            final int bsize = HEADER_SIZE + dsize + FOOTER_SIZE;
+            final ByteBuffer buf = ByteBuffer.wrap(member, 0, bsize).order(ByteOrder.LITTLE_ENDIAN);
+
+            buf.put((byte)GZipHeader.ID1);
+            buf.put((byte)GZipHeader.ID2);
+            buf.put((byte)GZipHeader.CM);
+            buf.put((byte)GZipHeader.FEXTRA);
+            buf.putInt(0);   // no timestamp
+            buf.put((byte)0);
+            buf.put((byte)255); // unknown OS
+            buf.putShort((short)6);
+            buf.put((byte)GZipHeader.SI1);
+            buf.put((byte)GZipHeader.SI2);
+            buf.putShort((short)GZipHeader.SLEN);
+            buf.putShort((short)(bsize - 1));
+
+            buf.putInt(HEADER_SIZE + dsize, (int)crc.getValue());
+            buf.putInt(HEADER_SIZE + dsize + 4, len);
+            
+            buf.position(0);
+            return buf;
+        }
+    }
+}
@@ -34,12 +34,17 @@ import java.io.InputStream;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
 
 /**
  * <p>
  * File based GZip InputStream with a BGZF support.
  * </p>
  * 
+ * When created with an executor, BGZF blocks are read ahead and inflated
+ * concurrently by the {@link BGZFBlockReader}, while the stream keeps
+ * the same block positions and counts as in the sequential mode.
+ * 
  * @author Dmitry Repchevsky
  */
 
@@ -55,16 +60,45 @@ public class GZipFileInputStream extends InputStream
 
     private long block_pos;
     
+    private final BGZFBlockReader reader;
+    private BGZFBlockReader.Block block;
+    private int offset;
+    
     public GZipFileInputStream(final Path file) throws IOException {
         channel = FileChannel.open(file, StandardOpenOption.READ);
         in = new FileChannelBitInputStream(channel);
         inflater = new Inflater(in, crc = new java.util.zip.CRC32());
+        reader = null;
         readHeader();
     }
 
+    /**
+     * Creates BGZF input stream that inflates blocks in parallel.
+     * 
+     * @param file BGZF file
+     * @param executor the executor to inflate blocks on
+     * @param backend the inflater implementation to use
+     * 
+     * @throws IOException 
+     */
+    public GZipFileInputStream(final Path file,
+                               final ExecutorService executor,
+                               final InflaterBackend backend) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        in = null;
+        inflater = null;
+        crc = null;
+        reader = new BGZFBlockReader(channel, executor, backend, 64);
+        move(0);
+    }
+
     @Override
     public void close() throws IOException {
-        in.align();
+        if (reader != null) {
+            reader.close();
+        } else {
+            in.align();
+        }
         channel.close();
     }
 
@@ -77,7 +111,7 @@ public class GZipFileInputStream extends InputStream
      * @throws java.io.IOException
      */
     protected int count() throws IOException {
-        return inflater.count();
+        return reader != null ? offset : inflater.count();
     }
 
     /**
@@ -89,6 +123,9 @@ public class GZipFileInputStream extends InputStream
      */
     @Override
     public int available() throws IOException {
+        if (reader != null) {
+            return block == null || skip(0) < 0 ? -1 : 0;
+        }
         if (inflater.finished()) {
             if (header == null || skip(0) < 0) {
                 return -1;
@@ -105,6 +142,13 @@ public class GZipFileInputStream extends InputStream
      * @throws IOException 
      */
     protected void move(final long pos) throws IOException {
+        if (reader != null) {
+            reader.reset(pos);
+            block_pos = pos;
+            block = null;
+            nextBlock();
+            return;
+        }
         block_pos = pos;
         in.setPosition(pos);
         inflater.reset();
@@ -119,6 +163,9 @@ public class GZipFileInputStream extends InputStream
      * @throws java.io.IOException
      */
     public boolean next() throws IOException {
+        if (reader != null) {
+            return block != null && nextBlock();
+        }
         while (inflater.skip(65536) >= 0) {}
         return readFooter() >= 0;
     }
@@ -134,6 +181,18 @@ public class GZipFileInputStream extends InputStream
      */
     @Override
     public long skip(final long n) throws IOException {
+        if (reader != null) {
+            long m = n;
+            do {
+                if (block == null || (offset == block.data.length && !nextBlock())) {
+                    return -1;
+                }
+                final int l = (int)Math.min(m, block.data.length - offset);
+                offset += l;
+                m -= l;
+            } while (m > 0);
+            return n;
+        }
         long m = n;
         long l;
         while ((l = inflater.skip(m)) < m) {
@@ -150,6 +209,15 @@ public class GZipFileInputStream extends InputStream
 
     @Override
     public int read() throws IOException {
+        if (reader != null) {
+            while (block != null) {
+                if (offset < block.data.length) {
+                    return block.data[offset++] & 0xFF;
+                }
+                nextBlock();
+            }
+            return -1;
+        }
         final int l = inflater.read();
         if (l < 0 && readFooter() == 0) {
             return read();
@@ -164,6 +232,18 @@ public class GZipFileInputStream extends InputStream
     
     @Override
     public int read(final byte[] buf, final int off, final int len) throws IOException {
+        if (reader != null) {
+            while (block != null) {
+                final int l = Math.min(len, block.data.length - offset);
+                if (l > 0 || len == 0) {
+                    System.arraycopy(block.data, offset, buf, off, l);
+                    offset += l;
+                    return l;
+                }
+                nextBlock();
+            }
+            return -1;
+        }
         final int l = inflater.read(buf, off, len);
         if (l < 0 && readFooter() == 0) {
             return read(buf, off, len);
@@ -171,6 +251,27 @@ public class GZipFileInputStream extends InputStream
         return l;
     }
     
+    /**
+     * Switches to the next read ahead block.
+     * 
+     * @return false if there are no more blocks.
+     * 
+     * @throws IOException 
+     */
+    private boolean nextBlock() throws IOException {
+        // empty members (BGZF end of file markers of concatenated files)
+        // are skipped, only the physical end of file ends the stream
+        do {
+            block = reader.next();
+        } while (block != null && block.data.length == 0);
+        offset = 0;
+        if (block == null) {
+            return false;
+        }
+        block_pos = block.position;
+        return true;
+    }
+
     private int readFooter() throws IOException {
         final long c = DataReaderHelper.readUnsignedInt(in);
         if (c != crc.getValue()) {
@@ -9,12 +9,17 @@ import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
 
 /**
  * <p>
  * File based GZip OutputStream with a BGZF support.
  * </p>
  * 
+ * When created with an executor, BGZF blocks are compressed concurrently
+ * by the {@link BGZFBlockWriter} and written in order.
+ * 
  * @author Dmitry Repchevsky
  */
 
@@ -32,31 +37,100 @@ public class GZipFileOutputStream extends OutputStream
     private final GZipOutputStream gzip;
     
     private final GZipHeader header;
+    
+    private long block;
+    private final BGZFBlockWriter writer;
+    private byte[] buf;
 
     public GZipFileOutputStream(final Path file) throws IOException {
-        
-        header = new GZipHeader(0, null, null, 0);
+        this(file, Deflater.BEST_COMPRESSION);
+    }
+
+    /**
+     * @param file the file to create
+     * @param level deflate compression level (0-9)
+     * 
+     * @throws IOException 
+     */
+    public GZipFileOutputStream(final Path file, final int level) throws IOException {
+        this(file, null, level);
+    }
+
+    /**
+     * Creates BGZF output stream that compresses blocks in parallel.
+     * 
+     * @param file the file to create
+     * @param executor the executor to compress blocks on or null to compress
+     *        them sequentially
+     * @param level deflate compression level (0-9)
+     * 
+     * @throws IOException 
+     */
+    public GZipFileOutputStream(final Path file,
+                                final ExecutorService executor,
+                                final int level) throws IOException {
         
         channel = FileChannel.open(file,
                 StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
 
-        out = new BufferedOutputStream(Channels.newOutputStream(channel));
-        gzip = new GZipOutputStream(header, out);
+        if (executor == null) {
+            header = new GZipHeader(0, null, null, 0);
+            out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            gzip = new GZipOutputStream(header, out, level);
+            writer = null;
+        } else {
+            header = null;
+            out = null;
+            gzip = null;
+            writer = new BGZFBlockWriter(channel, executor, level, 64, this::written);
+            buf = new byte[BGZFBlockWriter.MAX_BLOCK_SIZE];
+        }
+    }
+
+    /**
+     * @return the sequential number of the BGZF block being written.
+     */
+    protected long getBlockNumber() {
+        return block;
+    }
+
+    /**
+     * @return the number of uncompressed bytes written to the current block.
+     */
+    protected int count() {
+        return size;
+    }
+
+    /**
+     * @return the maximum number of uncompressed bytes in the block.
+     */
+    protected int getMaxBlockSize() {
+        return writer == null ? 65536 : BGZFBlockWriter.MAX_BLOCK_SIZE;
+    }
+
+    /**
+     * Called when the BGZF block has been written to the file.
+     * Blocks are always reported in order.
+     * 
+     * @param block the sequential number of the block
+     * @param position the file position where the block starts
+     * 
+     * @throws IOException 
+     */
+    protected void written(final long block, final long position) throws IOException {
     }
 
     @Override
     public void write(final int b) throws IOException {
+        if (writer != null) {
+            if (size == buf.length) {
+                submit();
+            }
+            buf[size++] = (byte)b;
+            return;
+        }
         if (size == 65536) {
-            gzip.close();
-            
-            fix_bsize();
-            
-            pos = channel.position();
-
-            // write next header;
-            header.write(out);
-            
-            size = 0;
+            next();
         }
         gzip.write(b);
         size++;
@@ -64,13 +138,22 @@ public class GZipFileOutputStream extends OutputStream
 
     @Override
     public void write(final byte b[], int off, int len) throws IOException {
+        if (writer != null) {
+            while (len > 0) {
+                if (size == buf.length) {
+                    submit();
+                }
+                final int l = Math.min(len, buf.length - size);
+                System.arraycopy(b, off, buf, size, l);
+                size += l;
+                off += l;
+                len -= l;
+            }
+            return;
+        }
         if (len > 0) {
             if (size == 65536) {
-                gzip.close();
-                fix_bsize();
-                pos = channel.position();
-                header.write(out);
-                size = 0;
+                next();
             }
             while(true) {
                 if (size + len <= 65536) {
@@ -79,13 +162,9 @@ public class GZipFileOutputStream extends OutputStream
                     break;
                 }
                 gzip.write(b, off, 65536 - size);
-                gzip.close();
-                fix_bsize();
-                pos = channel.position();
-                header.write(out);
                 len = len + size - 65536;
                 off = off - size + 65536;
-                size = 0;
+                next();
             }                
             
         }
@@ -100,12 +179,14 @@ public class GZipFileOutputStream extends OutputStream
      */
     @Override
     public void flush() throws IOException {
+        if (writer != null) {
+            if (size > 0) {
+                submit();
+            }
+            return;
+        }
         if (size > 0) {
-            gzip.close();
-            fix_bsize();
-            pos = channel.position();
-            header.write(out);
-            size = 0;
+            next();
         }
     }
 
@@ -118,17 +199,52 @@ public class GZipFileOutputStream extends OutputStream
      */
     @Override
     public void close() throws IOException {
+        if (writer != null) {
+            try {
+                flush();
+                writer.close();
+                final ByteBuffer eof = ByteBuffer.wrap(EOF);
+                while (eof.hasRemaining()) {
+                    channel.write(eof);
+                }
+            } finally {
+                channel.close();
+            }
+            return;
+        }
         if (size == 0) {
             channel.write(ByteBuffer.wrap(EOF), pos);
         } else {
             gzip.close();
             fix_bsize();
+            written(block, pos);
             out.write(EOF);
             out.flush();
         }
         channel.close();
     }
     
+    private void submit() throws IOException {
+        writer.submit(buf, size);
+        buf = new byte[BGZFBlockWriter.MAX_BLOCK_SIZE];
+        size = 0;
+        block++;
+    }
+
+    /**
+     * Ends the current BGZF block and starts the next one.
+     * 
+     * @throws IOException 
+     */
+    private void next() throws IOException {
+        gzip.close();
+        fix_bsize();
+        written(block++, pos);
+        pos = channel.position();
+        header.write(out);
+        size = 0;
+    }
+
     private void fix_bsize() throws IOException {
         final short bsize = (short)(channel.position() - pos - 1);
         final ByteBuffer buf = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
@@ -136,5 +252,6 @@ public class GZipFileOutputStream extends OutputStream
         while (buf.hasRemaining()) {
             channel.write(buf, buf.position() + pos + 16);
         }
+        written(block++, pos);
     }
 }
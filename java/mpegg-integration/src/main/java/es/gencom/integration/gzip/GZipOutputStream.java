@@ -23,7 +23,20 @@ public class GZipOutputStream extends DeflaterOutputStream {
     
     public GZipOutputStream(final GZipHeader header, 
                             final OutputStream out) throws IOException {
-        super(out, new Deflater(Deflater.BEST_COMPRESSION, true), true);
+        this(header, out, Deflater.BEST_COMPRESSION);
+    }
+
+    /**
+     * @param header gzip header to write
+     * @param out the underlying output stream
+     * @param level deflate compression level (0-9)
+     * 
+     * @throws IOException 
+     */
+    public GZipOutputStream(final GZipHeader header, 
+                            final OutputStream out,
+                            final int level) throws IOException {
+        super(out, new Deflater(level, true), true);
         
         crc = new java.util.zip.CRC32();
         header.write(out);
@@ -23,7 +23,7 @@
  *****************************************************************************
  */
 
-package es.gencom.mpegg.coder.compression.transform;
+package es.gencom.integration.saca;
 
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
@@ -39,11 +39,23 @@ public class DC3 {
     
     /**
      * Construct suffix array for long values.
+     * The suffix array may be longer than the data, so it can be reused.
      * 
      * @param s  original data
-     * @param sa resulted suffix array
+     * @param sa resulted suffix array (the first s.limit() elements)
      */
     public static void dc3(final LongBuffer s, final int[] sa) {
+        dc3(s, sa, Math.min(sa.length, s.limit()));
+    }
+
+    /**
+     * Construct suffix array for long values.
+     * 
+     * @param s    original data
+     * @param sa   resulted suffix array
+     * @param size the number of the (greatest) suffixes to put into the sa
+     */
+    private static void dc3(final LongBuffer s, final int[] sa, final int size) {
 
         final int n12 = (s.limit() + s.limit()) / 3;
         
@@ -89,16 +101,28 @@ public class DC3 {
         sa0 = radix(buf12, sa0, 1);
         sa0 = radix(buf12, sa0, 0);
 
-        merge(s, sa0, sa12, rank12, sa);
+        merge(s, sa0, sa12, rank12, sa, size);
     }
 
     /**
      * Construct suffix array for integer values.
+     * The suffix array may be longer than the data, so it can be reused.
      * 
      * @param s  original data
-     * @param sa resulted suffix array
+     * @param sa resulted suffix array (the first s.limit() elements)
      */
     public static void dc3(final IntBuffer s, final int[] sa) {
+        dc3(s, sa, Math.min(sa.length, s.limit()));
+    }
+
+    /**
+     * Construct suffix array for integer values.
+     * 
+     * @param s    original data
+     * @param sa   resulted suffix array
+     * @param size the number of the (greatest) suffixes to put into the sa
+     */
+    private static void dc3(final IntBuffer s, final int[] sa, final int size) {
 
         final int n12 = (s.limit() + s.limit()) / 3;
         
@@ -144,7 +168,7 @@ public class DC3 {
         sa0 = radix(buf12, sa0, 1);
         sa0 = radix(buf12, sa0, 0);
 
-        merge(s, sa0, sa12, rank12, sa);
+        merge(s, sa0, sa12, rank12, sa, size);
     }
 
     /**
@@ -323,17 +347,19 @@ public class DC3 {
      * @param sa12  sorted '12' suffixes
      * @param r12   '12' ranks
      * @param sa    resulted merged suffixes
+     * @param size  the number of the (greatest) suffixes to put into the sa
      */
     private static void merge(
             final LongBuffer s,
             final int[] sa0, 
             final int[] sa12,
             final long[] r12,
-            final int[] sa) {
+            final int[] sa,
+            final int size) {
 
         int i = 0;
         int j = 0;
-        int k = sa.length - r12.length - 1;
+        int k = size - r12.length - 1;
         
         while (i < sa12.length && j < sa0.length) {
             
@@ -370,17 +396,19 @@ public class DC3 {
      * @param sa12  sorted '12' suffixes
      * @param r12   '12' ranks
      * @param sa    resulted merged suffixes
+     * @param size  the number of the (greatest) suffixes to put into the sa
      */
     private static void merge(
             final IntBuffer s,
             final int[] sa0, 
             final int[] sa12,
             final int[] r12,
-            final int[] sa) {
+            final int[] sa,
+            final int size) {
 
         int i = 0;
         int j = 0;
-        int k = sa.length - r12.length - 1;
+        int k = size - r12.length - 1;
         
         while (i < sa12.length && j < sa0.length) {
             
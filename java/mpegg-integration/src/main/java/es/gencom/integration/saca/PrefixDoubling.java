@@ -0,0 +1,297 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.integration.saca;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>
+ * Parallel prefix doubling suffix array construction (doi:10.1016/j.tcs.2007.07.017).
+ * </p>
+ *
+ * Suffixes are sorted by their first symbol and then by the first 2, 4, 8 ...
+ * symbols using the ranks of the previous step. Every step only sorts the groups
+ * of suffixes which are still equal and the groups are sorted in parallel.
+ * Unlike SA-IS the algorithm takes O(n log n) time, so it only pays off for
+ * the large buffers.
+ *
+ * The working arrays are kept between the calls.
+ *
+ * @author Dmitry Repchevsky
+ */
+
+final class PrefixDoubling {
+
+    private final static int SEQUENTIAL_THRESHOLD = 1 << 13;
+    private final static int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+    private final ForkJoinPool pool;
+
+    private int[] rank;   // rank[i] = the first index of the i suffix group in the sa
+    private int[] groups; // [start, end) pairs of the groups to be sorted
+    private int[] next;
+    private long[] keys;  // rank of the i + h suffix (upper 32 bits) and i (lower 32 bits)
+
+    PrefixDoubling(final ForkJoinPool pool) {
+        this.pool = pool;
+
+        rank = groups = next = new int[0];
+        keys = new long[0];
+    }
+
+    /**
+     * Builds the suffix array of the s[0 .. s.limit() - 1].
+     *
+     * @param s the original array
+     * @param sa the suffix array (at least s.limit() long)
+     */
+    void suffix(final ByteBuffer s, final int[] sa) {
+        final int n = s.limit();
+        ensureCapacity(n);
+
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                new ForRange(0, n, (from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        keys[i] = (long)(s.get(i) & 0xFF) << 32 | i;
+                    }
+                }).invoke();
+                sort(sa, n);
+            }
+        });
+    }
+
+    /**
+     * Builds the suffix array of the s[0 .. s.limit() - 1].
+     *
+     * @param s the original array
+     * @param sa the suffix array (at least s.limit() long)
+     */
+    void suffix(final LongBuffer s, final int[] sa) {
+        final int n = s.limit();
+        ensureCapacity(n);
+
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                // replace the symbols with their ranks among the distinct symbols
+                new ForRange(0, n, (from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        keys[i] = s.get(i);
+                    }
+                }).invoke();
+                Arrays.parallelSort(keys, 0, n);
+
+                int m = n > 0 ? 1 : 0;
+                for (int i = 1; i < n; i++) {
+                    if (keys[i] != keys[m - 1]) {
+                        keys[m++] = keys[i];
+                    }
+                }
+                final int alphabet = m;
+
+                new ForRange(0, n, (from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        rank[i] = Arrays.binarySearch(keys, 0, alphabet, s.get(i));
+                    }
+                }).invoke();
+                new ForRange(0, n, (from, to) -> {
+                    for (int i = from; i < to; i++) {
+                        keys[i] = (long)rank[i] << 32 | i;
+                    }
+                }).invoke();
+                sort(sa, n);
+            }
+        });
+    }
+
+    private void ensureCapacity(final int n) {
+        if (rank.length < n) {
+            rank = new int[n];
+            groups = new int[Math.max(2, n)];
+            next = new int[Math.max(2, n)];
+            keys = new long[n];
+        }
+    }
+
+    /**
+     * Sorts the suffixes which first symbols are stored in the keys.
+     * Must be called from within the pool.
+     */
+    private void sort(final int[] sa, final int n) {
+        if (n == 0) {
+            return;
+        }
+
+        sort(0, n);
+        update(sa, 0, n);
+
+        groups[0] = 0;
+        groups[1] = n;
+        int count = split(1);
+
+        for (int h = 1; count > 0; h <<= 1) {
+            final int offset = h;
+            new ForGroups(groups, 0, count, (a, b) -> {
+                final RangeAction fill = (from, to) -> {
+                    for (int p = from; p < to; p++) {
+                        final int i = sa[p];
+                        final int j = i + offset;
+                        keys[p] = (long)(j < n ? rank[j] + 1 : 0) << 32 | i;
+                    }
+                };
+                if (b - a > PARALLEL_SORT_THRESHOLD) {
+                    new ForRange(a, b, fill).invoke();
+                } else {
+                    fill.apply(a, b);
+                }
+                sort(a, b);
+            }).invoke();
+
+            // ranks may only be updated when all groups are sorted
+            new ForGroups(groups, 0, count, (a, b) -> update(sa, a, b)).invoke();
+
+            count = split(count);
+        }
+    }
+
+    private void sort(final int from, final int to) {
+        if (to - from > PARALLEL_SORT_THRESHOLD) {
+            Arrays.parallelSort(keys, from, to);
+        } else {
+            Arrays.sort(keys, from, to);
+        }
+    }
+
+    /**
+     * Stores the sorted suffixes of the group and updates their ranks.
+     */
+    private void update(final int[] sa, final int from, final int to) {
+        for (int p = from, head = from; p < to; p++) {
+            final long key = keys[p];
+            if (p > from && (key >>> 32) != (keys[p - 1] >>> 32)) {
+                head = p;
+            }
+            sa[p] = (int)key;
+            rank[(int)key] = head;
+        }
+    }
+
+    /**
+     * Collects the groups which are still unsorted after the sorting step.
+     *
+     * @param count the number of the sorted groups
+     *
+     * @return the number of the unsorted groups
+     */
+    private int split(final int count) {
+        int m = 0;
+        for (int g = 0; g < count; g++) {
+            final int to = groups[2 * g + 1];
+            for (int p = groups[2 * g], head = p; p < to; p++) {
+                if (p + 1 == to || (keys[p + 1] >>> 32) != (keys[p] >>> 32)) {
+                    if (p > head) {
+                        next[m++] = head;
+                        next[m++] = p + 1;
+                    }
+                    head = p + 1;
+                }
+            }
+        }
+
+        final int[] tmp = groups;
+        groups = next;
+        next = tmp;
+
+        return m >> 1;
+    }
+
+    @FunctionalInterface
+    private interface RangeAction {
+        void apply(int from, int to);
+    }
+
+    /**
+     * Applies the action to the [from, to) range splitting it between the workers.
+     */
+    private static class ForRange extends RecursiveAction {
+
+        private final int from;
+        private final int to;
+        private final RangeAction action;
+
+        ForRange(final int from, final int to, final RangeAction action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SEQUENTIAL_THRESHOLD) {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new ForRange(from, mid, action), new ForRange(mid, to, action));
+            } else {
+                action.apply(from, to);
+            }
+        }
+    }
+
+    /**
+     * Applies the action to every [start, end) group splitting them between the workers.
+     */
+    private static class ForGroups extends RecursiveAction {
+
+        private final int[] groups;
+        private final int from;
+        private final int to;
+        private final RangeAction action;
+
+        ForGroups(final int[] groups, final int from, final int to, final RangeAction action) {
+            this.groups = groups;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1 && groups[2 * to - 1] - groups[2 * from] > SEQUENTIAL_THRESHOLD) {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new ForGroups(groups, from, mid, action), new ForGroups(groups, mid, to, action));
+            } else {
+                for (int g = from; g < to; g++) {
+                    action.apply(groups[2 * g], groups[2 * g + 1]);
+                }
+            }
+        }
+    }
+}
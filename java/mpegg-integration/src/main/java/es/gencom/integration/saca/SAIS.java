@@ -93,17 +93,22 @@ public class SAIS {
     }
 
     /**
+     * Builds the suffix array of the s[0 .. s.limit() - 1] into the
+     * sa[0 .. s.limit() - 1]. The array may be longer than the data
+     * (i.e. reused for the different buffers), the rest of it is not used.
      * 
      * @param s the original array
      * @param sa the suffix array
      * 
-     * @return alphabet buckets' indexes ( 0 .. 255 ) or null if s.length != sa.length
+     * @return alphabet buckets' indexes ( 0 .. 255 ) or null if sa.length &lt; s.limit()
      */
     public static int[] suffix(ByteBuffer s, int[] sa) {
-        if (s.limit() != sa.length) {
+        if (sa.length < s.limit()) {
             return null;
         }
 
+        Arrays.fill(sa, 0, s.limit(), 0); // the array may be reused
+
         int[] c = new int[256];
         count(s, c);
         
@@ -115,15 +120,15 @@ public class SAIS {
         final int n = fillSA(s, sa, Arrays.copyOf(bk2, bk2.length));
         if (n > 1) {
             sortLMS(s, sa, Arrays.copyOf(bk1, bk1.length), Arrays.copyOf(bk2, bk2.length));
-            compactLMS(sa, sa.length, n);
+            compactLMS(sa, s.limit(), n);
 
             int l = nameSubstrS(s, sa, n);
             if (l > 1) {
                 Arrays.fill(sa, 0, n, 0); // clear buckets
-                if (l == sa.length - n) {
-                    sortSA0_saka_k(sa, sa.length - n, sa.length);
+                if (l == s.limit() - n) {
+                    sortSA0_saka_k(sa, s.limit() - n, s.limit());
                 } else {
-                    sortSA0_sais(sa, sa.length - n, sa.length, l);
+                    sortSA0_sais(sa, s.limit() - n, s.limit(), l);
                 }
                 getBackLMS(s, sa, n);
             }
@@ -141,7 +146,7 @@ public class SAIS {
      * @param s the original array
      * @param c the counter array to be calculated
      */
-    private static void count(final ByteBuffer s, final int[] c) {
+    static void count(final ByteBuffer s, final int[] c) {
         for (int i = 0, n = s.limit(); i < n; i++) {
             c[s.get(i) & 0xFF]++;
         }
@@ -154,7 +159,7 @@ public class SAIS {
      * @param bk1 start pointers of buckets (calculated by the method)
      * @param bk2 end pointers of buckets (calculated by the method)
      */
-    private static void buckets(final int[] c, final int[] bk1, final int[] bk2) {
+    static void buckets(final int[] c, final int[] bk1, final int[] bk2) {
         for (int i = 0, idx = 0; i < c.length; i++) {
             final int p = c[i];
             if (p > 0) {
@@ -241,7 +246,7 @@ public class SAIS {
 
     private static void getBackLMS(final ByteBuffer s, final int[] sa, final int n) {
         
-        int ptr = sa.length;
+        int ptr = s.limit();
         boolean t = false;
         for (int i = s.limit() - 2, b0 = s.get(s.limit() - 1) & 0xFF; i >= 0; i--) {
             final int b1 = s.get(i) & 0xFF;
@@ -294,7 +299,7 @@ public class SAIS {
      */
     private static void putSuffix(final ByteBuffer s, final int[] sa, final int n, int[] bk2) {
 
-        Arrays.fill(sa, n, sa.length, 0);
+        Arrays.fill(sa, n, s.limit(), 0);
         int ch0 = s.get(sa[n - 1]) & 0xFF;
         int b = bk2[ch0];
         
@@ -542,7 +547,7 @@ public class SAIS {
           
         // sort LMS from left to right
 
-        final int l0 = sa.length - 1;
+        final int l0 = s.limit() - 1;
         int ch0 = s.get(l0) & 0xFF;
         int b = bk1[ch0];
         sa[b++] = l0 == 0 || ch0 > (s.get(l0 - 1) & 0xFF) ? ~l0 : l0;
@@ -588,7 +593,7 @@ public class SAIS {
      */
     private static void induceLMS(final ByteBuffer s, final int[] sa, final int[] bk1, final int[] bk2) {
         
-        final int l0 = sa.length - 1;
+        final int l0 = s.limit() - 1;
         int ch0 = s.get(l0) & 0xFF;
         int b = bk1[ch0];
         sa[b++] = l0 == 0 || ch0 > (s.get(l0 - 1) & 0xFF) ? ~l0 : l0;
@@ -945,18 +950,18 @@ public class SAIS {
      */
     private static int nameSubstrS(final ByteBuffer s, final int[] sa, final int n) {
         
-        if (n * 3 < sa.length) {
+        if (n * 3 < s.limit()) {
             return nameSubstrS_sais(s, sa, n);
         }
         
         final int l = nameSubstrS_saka_k(s, sa, n);
 
-        return l <= 1 ? l : compactNames_saka_k(sa, sa.length);
+        return l <= 1 ? l : compactNames_saka_k(sa, s.limit());
     }
 
     private static int nameSubstrS_sais(final ByteBuffer s, final int[] sa, final int n) {
         
-        final int h = sa.length >> 1;
+        final int h = s.limit() >> 1;
         int alph = -1;
 
         for (int i = 0, ptr1 = 0, len1 = 0; i < n; i++) {
@@ -980,14 +985,14 @@ public class SAIS {
         
         if (alph++ == 0 || alph == n) {
             // either all equals (alphabet = 0) or different
-            Arrays.fill(sa, h, sa.length, 0); // clean
+            Arrays.fill(sa, h, s.limit(), 0); // clean
             return 0;
         }
 
-        int idx = sa.length;
+        int idx = s.limit();
         if (n + n <= h) {
             // count and compact names at the same time
-            for (int i = sa.length - 1; i >= h; i--) {
+            for (int i = s.limit() - 1; i >= h; i--) {
                 int ptr = sa[i];
                 if (ptr < 0) {
                     sa[i] = 0;
@@ -998,7 +1003,7 @@ public class SAIS {
             }
         } else {
             // compact names
-            for (int i = sa.length - 1; i >= h; i--) {
+            for (int i = s.limit() - 1; i >= h; i--) {
                 final int ptr = sa[i];
                 if (ptr < 0) {
                     sa[i] = 0;
@@ -1006,7 +1011,7 @@ public class SAIS {
                 }
             }
             // count names
-            for (int i = idx; i < sa.length; i++) {
+            for (int i = idx; i < s.limit(); i++) {
                 sa[n + sa[i]]++;
             }
         }
@@ -1029,7 +1034,7 @@ public class SAIS {
      */
     private static int nameSubstrS_saka_k(final ByteBuffer s, final int[] sa, final int n) {
         
-        final int h = sa.length >> 1; // part by half
+        final int h = s.limit() >> 1; // part by half
         int alph = -1;
 
         for (int i = 0, ptr1 = 0, len1 = 0, bk = 0; i < n; i++) {
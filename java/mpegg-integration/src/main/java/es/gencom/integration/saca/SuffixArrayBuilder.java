@@ -0,0 +1,318 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.integration.saca;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <p>
+ * Suffix array construction which reuses its working arrays between the calls.
+ * </p>
+ *
+ * The suffix array, its inverse and the longest common prefix (lcp) arrays
+ * are only reallocated when the data grows, so the returned arrays may be
+ * longer than the data and are only valid until the next call.
+ * The builder is not thread safe.
+ *
+ * The byte data (and the long data which all symbols fit into a byte) is
+ * sorted by the {@link SAIS}, the large alphabet data is sorted by the
+ * {@link DC3} (on the symbols ranks, as DC3 does not allow zero symbols).
+ * When the fork-join pool is provided, the buffers which are not smaller
+ * than the parallel threshold are sorted by the parallel prefix doubling
+ * algorithm.
+ *
+ * @author Dmitry Repchevsky
+ */
+
+public class SuffixArrayBuilder {
+
+    /**
+     * The default minimal size of the data to be sorted in parallel.
+     */
+    public final static int DEFAULT_PARALLEL_THRESHOLD = 1 << 20;
+
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+    private PrefixDoubling doubling;
+
+    private int length;
+    private int[] sa;
+    private int[] inv;
+    private int[] lcp;
+    private int[] buckets;
+    private byte[] bytes;
+    private long[] symbols;
+    private long[] ranks;
+
+    /**
+     * Creates the sequential suffix array builder.
+     */
+    public SuffixArrayBuilder() {
+        this(null, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates the builder which sorts the large buffers in parallel.
+     *
+     * @param pool the pool to sort the large buffers on
+     */
+    public SuffixArrayBuilder(final ForkJoinPool pool) {
+        this(pool, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * @param pool the pool to sort the large buffers on or null
+     * @param parallelThreshold the minimal size of the data to be sorted in parallel
+     */
+    public SuffixArrayBuilder(final ForkJoinPool pool, final int parallelThreshold) {
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+
+        sa = inv = lcp = new int[0];
+        bytes = new byte[0];
+        symbols = ranks = new long[0];
+    }
+
+    /**
+     * Builds the suffix array of the s[0 .. s.limit() - 1].
+     *
+     * @param s the data to sort suffixes of
+     *
+     * @return the suffix array (valid for the first s.limit() elements)
+     */
+    public int[] suffix(final ByteBuffer s) {
+        final int n = s.limit();
+        if (sa.length < n) {
+            sa = new int[n];
+        }
+        length = n;
+
+        if (n < 2) {
+            if (n == 1) {
+                sa[0] = 0;
+            }
+            buckets = buckets(s);
+        } else if (pool != null && n >= parallelThreshold) {
+            if (doubling == null) {
+                doubling = new PrefixDoubling(pool);
+            }
+            doubling.suffix(s, sa);
+            buckets = buckets(s);
+        } else {
+            buckets = SAIS.suffix(s, sa);
+        }
+        return sa;
+    }
+
+    /**
+     * Builds the suffix array of the s[0 .. s.limit() - 1].
+     * The symbols are compared as the signed long values.
+     *
+     * @param s the data to sort suffixes of
+     *
+     * @return the suffix array (valid for the first s.limit() elements)
+     */
+    public int[] suffix(final LongBuffer s) {
+        final int n = s.limit();
+        if (sa.length < n) {
+            sa = new int[n];
+        }
+        length = n;
+        buckets = null;
+
+        if (n < 2) {
+            if (n == 1) {
+                sa[0] = 0;
+            }
+        } else if (pool != null && n >= parallelThreshold) {
+            if (doubling == null) {
+                doubling = new PrefixDoubling(pool);
+            }
+            doubling.suffix(s, sa);
+        } else if (isByteAlphabet(s)) {
+            if (bytes.length < n) {
+                bytes = new byte[n];
+            }
+            for (int i = 0; i < n; i++) {
+                bytes[i] = (byte)s.get(i);
+            }
+            SAIS.suffix(ByteBuffer.wrap(bytes, 0, n), sa);
+        } else {
+            // DC3 requires the symbols greater than the zero it pads the data with
+            DC3.dc3(ranks(s), sa);
+        }
+        return sa;
+    }
+
+    /**
+     * Gets the last indexes of the symbols buckets in the suffix array
+     * (zero for the absent symbols) of the last byte data sorted.
+     *
+     * @return the last indexes of the buckets or null if the last data was not bytes
+     */
+    public int[] getBuckets() {
+        return buckets;
+    }
+
+    /**
+     * Builds the longest common prefix array (lcp[i] is the lcp of the
+     * sa[i - 1] and sa[i] suffixes) of the last suffix array using Kasai's
+     * algorithm (doi:10.1007/3-540-48194-X_17). The inverse suffix array is
+     * calculated as well (see {@link #getInverse()}).
+     *
+     * @param s the data the suffix array was built for
+     *
+     * @return the lcp array (valid for the first s.limit() elements)
+     */
+    public int[] lcp(final ByteBuffer s) {
+        inverse();
+
+        final int n = length;
+        if (n > 0) {
+            lcp[0] = 0;
+        }
+        for (int i = 0, k = 0; i < n; i++) {
+            if (inv[i] == n - 1) {
+                k = 0;
+                continue;
+            }
+
+            final int j = sa[inv[i] + 1];
+            while (i + k < n && j + k < n && s.get(i + k) == s.get(j + k)) {
+                k++;
+            }
+
+            lcp[inv[i] + 1] = k;
+
+            if (k > 0) {
+                k--;
+            }
+        }
+        return lcp;
+    }
+
+    /**
+     * Builds the longest common prefix array (lcp[i] is the lcp of the
+     * sa[i - 1] and sa[i] suffixes) of the last suffix array using Kasai's
+     * algorithm (doi:10.1007/3-540-48194-X_17). The inverse suffix array is
+     * calculated as well (see {@link #getInverse()}).
+     *
+     * @param s the data the suffix array was built for
+     *
+     * @return the lcp array (valid for the first s.limit() elements)
+     */
+    public int[] lcp(final LongBuffer s) {
+        inverse();
+
+        final int n = length;
+        if (n > 0) {
+            lcp[0] = 0;
+        }
+        for (int i = 0, k = 0; i < n; i++) {
+            if (inv[i] == n - 1) {
+                k = 0;
+                continue;
+            }
+
+            final int j = sa[inv[i] + 1];
+            while (i + k < n && j + k < n && s.get(i + k) == s.get(j + k)) {
+                k++;
+            }
+
+            lcp[inv[i] + 1] = k;
+
+            if (k > 0) {
+                k--;
+            }
+        }
+        return lcp;
+    }
+
+    /**
+     * @return the inverse suffix array calculated by the last lcp() call
+     */
+    public int[] getInverse() {
+        return inv;
+    }
+
+    private void inverse() {
+        if (inv.length < length) {
+            inv = new int[sa.length];
+            lcp = new int[sa.length];
+        }
+        for (int i = 0; i < length; i++) {
+            inv[sa[i]] = i;
+        }
+    }
+
+    private static int[] buckets(final ByteBuffer s) {
+        final int[] c = new int[256];
+        SAIS.count(s, c);
+
+        final int[] bk2 = new int[256];
+        SAIS.buckets(c, new int[256], bk2);
+        return bk2;
+    }
+
+    /**
+     * Replaces the symbols with their ranks (starting from 1) among the distinct symbols.
+     */
+    private LongBuffer ranks(final LongBuffer s) {
+        final int n = s.limit();
+        if (ranks.length < n) {
+            symbols = new long[n];
+            ranks = new long[n];
+        }
+        for (int i = 0; i < n; i++) {
+            symbols[i] = s.get(i);
+        }
+        Arrays.sort(symbols, 0, n);
+
+        int m = 1;
+        for (int i = 1; i < n; i++) {
+            if (symbols[i] != symbols[m - 1]) {
+                symbols[m++] = symbols[i];
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            ranks[i] = Arrays.binarySearch(symbols, 0, m, s.get(i)) + 1;
+        }
+        return LongBuffer.wrap(ranks, 0, n);
+    }
+
+    private static boolean isByteAlphabet(final LongBuffer s) {
+        for (int i = 0, n = s.limit(); i < n; i++) {
+            if ((s.get(i) & ~0xFFL) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
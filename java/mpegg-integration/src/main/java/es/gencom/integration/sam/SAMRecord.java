@@ -111,6 +111,13 @@ public abstract class SAMRecord implements SequenceRecord {
         this.cigar = cigar;
     }
 
+    /**
+     * @return CIGAR in BAM binary format or null if unavailable
+     */
+    public long[] getBinaryCIGAR() {
+        return cigar;
+    }
+
     @Override
     public int getPositionStart() {
         return pos;
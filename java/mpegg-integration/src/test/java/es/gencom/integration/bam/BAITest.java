@@ -0,0 +1,291 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.integration.bam;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Dmitry Repchevsky
+ */
+
+public class BAITest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final static String[] NAMES = {"chr1", "chr2", "chr3"};
+    private final static int[] LENGTHS = {2000000, 300000, 100000};
+    private final static int READ_LENGTH = 100;
+
+    /**
+     * Number of the records with no coordinates written after the placed ones.
+     */
+    private final static int UNPLACED = 37;
+
+    @Test
+    public void testSequential() throws Exception {
+        test(null);
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            test(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * The index built while the BAM file is written, saved and read back
+     * matches the content of the file and the index built by reading it.
+     */
+    private void test(final ExecutorService executor) throws Exception {
+        final Path bam = folder.getRoot().toPath().resolve("sample.bam");
+        final Path bai = folder.getRoot().toPath().resolve("sample.bam.bai");
+        write(bam, bai, executor);
+
+        final Expected expected = new Expected(bam);
+        final BAI written;
+        try (InputStream in = Files.newInputStream(bai)) {
+            written = new BAI(in);
+        }
+        assertIndex(expected, written);
+
+        final BAI built;
+        try (BAMFileInputStream in = new BAMFileInputStream(bam)) {
+            built = new BAI(in);
+        }
+        assertIndex(expected, built);
+
+        // save writes everything including n_no_coor
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        built.save(out);
+        final BAI saved = new BAI(new ByteArrayInputStream(out.toByteArray()));
+        assertIndex(expected, saved);
+        Assert.assertEquals(built.unplaced, saved.unplaced);
+        for (int ref = 0; ref < NAMES.length; ref++) {
+            Assert.assertArrayEquals(built.offsets[ref], saved.offsets[ref]);
+            Assert.assertEquals(built.indexes[ref].length, saved.indexes[ref].length);
+            for (int nbin = 0; nbin < built.indexes[ref].length; nbin++) {
+                final Bin bin = built.indexes[ref][nbin];
+                if (bin == null) {
+                    Assert.assertNull(saved.indexes[ref][nbin]);
+                } else {
+                    Assert.assertArrayEquals(bin.chunk_beg, saved.indexes[ref][nbin].chunk_beg);
+                    Assert.assertArrayEquals(bin.chunk_end, saved.indexes[ref][nbin].chunk_end);
+                }
+            }
+        }
+    }
+
+    private static void assertIndex(final Expected expected, final BAI bai) {
+        Assert.assertEquals(UNPLACED, bai.unplaced);
+        Assert.assertEquals(NAMES.length, bai.offsets.length);
+
+        for (int ref = 0; ref < NAMES.length; ref++) {
+            final Bin pseudo = bai.indexes[ref][Bin.PSEUDO_BIN];
+            Assert.assertNotNull(pseudo);
+            Assert.assertEquals(2, pseudo.chunk_beg.length);
+            Assert.assertEquals(NAMES[ref], expected.mapped[ref], pseudo.chunk_beg[1]);
+            Assert.assertEquals(NAMES[ref], expected.unmapped[ref], pseudo.chunk_end[1]);
+            Assert.assertEquals(expected.normalize(expected.ref_beg[ref]), expected.normalize(pseudo.chunk_beg[0]));
+            Assert.assertEquals(expected.normalize(expected.ref_end[ref]), expected.normalize(pseudo.chunk_end[0]));
+        }
+
+        for (Entry entry : expected.entries) {
+            final int nbin = entry.record.getBin();
+            Assert.assertNotEquals(Bin.PSEUDO_BIN, nbin);
+
+            final Bin bin = bai.indexes[entry.record.getRefID()][nbin];
+            Assert.assertNotNull(bin);
+            final long beg = expected.normalize(entry.chunk_beg);
+            final long end = expected.normalize(entry.chunk_end);
+            boolean found = false;
+            for (int i = 0; i < bin.chunk_beg.length && !found; i++) {
+                found = expected.normalize(bin.chunk_beg[i]) <= beg &&
+                        end <= expected.normalize(bin.chunk_end[i]);
+            }
+            Assert.assertTrue(entry.record.getQName(), found);
+
+            final long[] offsets = bai.offsets[entry.record.getRefID()];
+            Assert.assertTrue(expected.normalize(offsets[entry.record.getPositionStart() >> 14]) <= beg);
+        }
+    }
+
+    /**
+     * Writes the mapped reads with some unmapped mates placed next to them,
+     * followed by the reads with no coordinates.
+     */
+    private static void write(
+            final Path bam,
+            final Path bai,
+            final ExecutorService executor) throws Exception {
+
+        final BAMHeader.Reference[] references = new BAMHeader.Reference[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            references[i] = new BAMHeader.Reference(NAMES[i], LENGTHS[i]);
+        }
+
+        final Random random = new Random(0);
+        try (BAMFileOutputStream out = new BAMFileOutputStream(
+                bam, new BAMHeader("", references), bai, executor, Deflater.DEFAULT_COMPRESSION)) {
+
+            int template = 0;
+            for (int ref = 0; ref < NAMES.length; ref++) {
+                for (int pos = 1 + random.nextInt(50); pos < LENGTHS[ref] - READ_LENGTH; pos += random.nextInt(200)) {
+                    final BAMRecord record = record(random, "read." + template++, ref, pos);
+                    if (random.nextInt(5) == 0) {
+                        record.setUnmappedSegment(true);
+                    } else {
+                        record.setCIGAR(READ_LENGTH + "M");
+                        record.setMappingQuality((byte)60);
+                    }
+                    out.write(record);
+                }
+            }
+            for (int i = 0; i < UNPLACED; i++) {
+                final BAMRecord record = record(random, "read." + template++, -1, 0);
+                record.setUnmappedSegment(true);
+                out.write(record);
+            }
+        }
+    }
+
+    private static BAMRecord record(final Random random, final String name, final int ref, final int pos) {
+        final StringBuilder sequence = new StringBuilder(READ_LENGTH);
+        final byte[] qualities = new byte[READ_LENGTH];
+        for (int i = 0; i < READ_LENGTH; i++) {
+            sequence.append("ACGT".charAt(random.nextInt(4)));
+            qualities[i] = (byte)random.nextInt(40);
+        }
+
+        final BAMRecord record = new BAMRecord();
+        record.setQName(name);
+        record.setRefID(ref);
+        record.setRName(ref < 0 ? "*" : NAMES[ref]);
+        record.setPositionStart(pos);
+        record.setSequence(sequence.toString());
+        record.setQualityBytes(qualities);
+        record.setNext_refID(-1);
+        record.setRNameNext("*");
+        return record;
+    }
+
+    private static class Entry {
+        final BAMRecord record;
+        final long chunk_beg;
+        final long chunk_end;
+
+        Entry(final BAMRecord record, final long chunk_beg, final long chunk_end) {
+            this.record = record;
+            this.chunk_beg = chunk_beg;
+            this.chunk_end = chunk_end;
+        }
+    }
+
+    /**
+     * The content of the BAM file which the index must describe.
+     */
+    private static class Expected {
+        final long[] mapped = new long[NAMES.length];
+        final long[] unmapped = new long[NAMES.length];
+        final long[] ref_beg = new long[NAMES.length];
+        final long[] ref_end = new long[NAMES.length];
+        final List<Entry> entries = new ArrayList<>();
+
+        // BGZF block position -> next block position when the block is full
+        private final TreeMap<Long, long[]> blocks = new TreeMap<>();
+
+        Expected(final Path bam) throws Exception {
+            long unplaced = 0;
+            try (BAMFileInputStream in = new BAMFileInputStream(bam)) {
+                while (in.available() >= 0) {
+                    final long chunk_beg = in.index();
+                    final BAMRecord record = BAMRecord.decode(in);
+                    final long chunk_end = in.index();
+
+                    final int ref = record.getRefID();
+                    if (ref < 0) {
+                        unplaced++;
+                        continue;
+                    }
+                    if (mapped[ref] + unmapped[ref] == 0) {
+                        ref_beg[ref] = chunk_beg;
+                    }
+                    ref_end[ref] = chunk_end;
+                    if (record.isUnmappedSegment()) {
+                        unmapped[ref]++;
+                    } else {
+                        mapped[ref]++;
+                    }
+                    entries.add(new Entry(record, chunk_beg, chunk_end));
+                }
+            }
+            Assert.assertEquals(UNPLACED, unplaced);
+            for (int ref = 0; ref < NAMES.length; ref++) {
+                Assert.assertTrue(mapped[ref] > 0);
+                Assert.assertTrue(unmapped[ref] > 0);
+            }
+            Assert.assertTrue(entries.size() > 10000);
+
+            final ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(bam)).order(ByteOrder.LITTLE_ENDIAN);
+            for (int position = 0; position < file.limit(); ) {
+                final int bsize = (file.getShort(position + 16) & 0xFFFF) + 1;
+                final int isize = file.getInt(position + bsize - 4);
+                blocks.put((long)position, new long[] {isize, position + bsize});
+                position += bsize;
+            }
+        }
+
+        /**
+         * The virtual offset at the end of the block is the start of the next one.
+         */
+        long normalize(final long offset) {
+            final long[] block = blocks.get(offset >>> 16);
+            Assert.assertNotNull(block);
+            return (offset & 0xFFFF) == block[0] ? block[1] << 16 : offset;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.integration.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Dmitry Repchevsky
+ */
+
+public class BGZFBlockWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testForkJoinPool() throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            test(pool, 3, Deflater.DEFAULT_COMPRESSION);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSingleThread() throws IOException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            test(executor, 1, Deflater.BEST_SPEED);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testStored() throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            test(executor, 64, Deflater.NO_COMPRESSION);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLarge() throws IOException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (FileChannel channel = FileChannel.open(folder.newFile().toPath(), StandardOpenOption.WRITE);
+             BGZFBlockWriter writer = new BGZFBlockWriter(channel, executor, Deflater.DEFAULT_COMPRESSION, 1, null)) {
+            writer.submit(new byte[BGZFBlockWriter.MAX_BLOCK_SIZE + 1], BGZFBlockWriter.MAX_BLOCK_SIZE + 1);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Submits the blocks of different sizes and compressibility, which must
+     * be written in order as valid BGZF blocks and reported to the listener
+     * with their file positions.
+     */
+    private void test(final ExecutorService executor, final int window, final int level) throws IOException {
+        final Random random = new Random(window);
+        final List<byte[]> blocks = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            final int len = i % 7 == 0 ? BGZFBlockWriter.MAX_BLOCK_SIZE : random.nextInt(BGZFBlockWriter.MAX_BLOCK_SIZE + 1);
+            final byte[] data = new byte[len];
+            if (i % 3 == 0) {
+                random.nextBytes(data); // incompressible
+            } else {
+                for (int j = 0; j < data.length; j++) {
+                    data[j] = (byte)"ACGT".charAt(random.nextInt(4));
+                }
+            }
+            blocks.add(i % 50 == 0 ? new byte[0] : data);
+        }
+
+        final Path file = folder.newFile().toPath();
+        final List<Long> positions = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.position(5); // the channel is not written from the start
+            try (BGZFBlockWriter writer = new BGZFBlockWriter(channel, executor, level, window,
+                    (block, position) -> {
+                        Assert.assertEquals(positions.size(), block);
+                        positions.add(position);
+                    })) {
+                for (byte[] block : blocks) {
+                    // the array tail after the length is never written
+                    writer.submit(Arrays.copyOf(block, block.length + 7), block.length);
+                }
+            }
+        }
+
+        final ByteBuffer bgzf = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        Assert.assertEquals(blocks.size(), positions.size());
+
+        int position = 5;
+        for (int i = 0; i < blocks.size(); i++) {
+            Assert.assertEquals(position, positions.get(i).longValue());
+            Assert.assertEquals(GZipHeader.ID1, bgzf.get(position) & 0xFF);
+            Assert.assertEquals(GZipHeader.ID2, bgzf.get(position + 1) & 0xFF);
+            Assert.assertEquals(GZipHeader.SI1, bgzf.get(position + 12) & 0xFF);
+            Assert.assertEquals(GZipHeader.SI2, bgzf.get(position + 13) & 0xFF);
+
+            final int bsize = (bgzf.getShort(position + 16) & 0xFFFF) + 1;
+            Assert.assertArrayEquals(blocks.get(i), inflate(bgzf.array(), position, bsize));
+            position += bsize;
+        }
+        Assert.assertEquals(bgzf.limit(), position);
+    }
+
+    /**
+     * Inflates the gzip member checking its CRC32 and the uncompressed size.
+     */
+    private static byte[] inflate(final byte[] data, final int offset, final int length) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data, offset, length))) {
+            final byte[] buf = new byte[8192];
+            for (int n; (n = in.read(buf)) >= 0;) {
+                out.write(buf, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.integration.gzip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Dmitry Repchevsky
+ */
+
+public class GZipFileInputStreamTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Concatenated BGZF files have the empty end of file marker in the middle
+     * of the file, which must not stop the reading.
+     */
+    @Test
+    public void testConcatenated() throws IOException {
+        final byte[] first = generate(200000, 0);
+        final byte[] second = generate(100000, 1);
+        
+        final Path file = folder.getRoot().toPath().resolve("concatenated.gz");
+        Files.write(file, compress(first));
+        Files.write(file, compress(second), StandardOpenOption.APPEND);
+        
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try (GZipFileInputStream in = new GZipFileInputStream(file, pool, InflaterBackend.JDK)) {
+            final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            final byte[] buf = new byte[8192];
+            for (int n; (n = in.read(buf)) >= 0;) {
+                actual.write(buf, 0, n);
+            }
+            Assert.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    private static byte[] generate(final int length, final long seed) {
+        final Random random = new Random(seed);
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte)"ACGT".charAt(random.nextInt(4));
+        }
+        return data;
+    }
+
+    private byte[] compress(final byte[] data) throws IOException {
+        final Path file = folder.newFile().toPath();
+        try (GZipFileOutputStream out = new GZipFileOutputStream(file, Deflater.DEFAULT_COMPRESSION)) {
+            out.write(data);
+        }
+        return Files.readAllBytes(file);
+    }
+}
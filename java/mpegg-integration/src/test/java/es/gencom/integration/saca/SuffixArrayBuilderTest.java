@@ -0,0 +1,118 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.integration.saca;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Dmitry Repchevsky
+ */
+
+public class SuffixArrayBuilderTest {
+
+    @Test
+    public void testSequential() {
+        test(new SuffixArrayBuilder());
+    }
+
+    @Test
+    public void testParallel() {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            test(new SuffixArrayBuilder(pool, 0));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void test(final SuffixArrayBuilder builder) {
+        final Random random = new Random(0);
+
+        // the sizes decrease to check the arrays reuse
+        for (int n = 5000; n > 0; n -= 1 + random.nextInt(n)) {
+            for (int type = 0; type < 4; type++) {
+                final long[] s = new long[n];
+                for (int i = 0; i < n; i++) {
+                    switch(type) {
+                        case 0: s[i] = 0; break;                                     // all zeros (FLAGS)
+                        case 1: s[i] = random.nextInt(32) == 0 ? random.nextInt(151) : 151; break; // RLEN
+                        case 2: s[i] = random.nextInt(4); break;                     // bases
+                        default: s[i] = random.nextInt(3) - 1L << 40;                // wide signed alphabet
+                    }
+                }
+
+                final int[] expected = naive(s);
+
+                if (type < 3) {
+                    final byte[] b = new byte[n];
+                    for (int i = 0; i < n; i++) {
+                        b[i] = (byte)s[i];
+                    }
+                    final ByteBuffer buf = ByteBuffer.wrap(b);
+                    Assert.assertArrayEquals(expected, Arrays.copyOf(builder.suffix(buf), n));
+                    assertLCP(s, expected, builder.lcp(buf));
+                }
+
+                final LongBuffer buf = LongBuffer.wrap(s);
+                Assert.assertArrayEquals(expected, Arrays.copyOf(builder.suffix(buf), n));
+                assertLCP(s, expected, builder.lcp(buf));
+            }
+        }
+    }
+
+    private static void assertLCP(final long[] s, final int[] sa, final int[] lcp) {
+        for (int i = 1; i < sa.length; i++) {
+            int k = 0;
+            while (sa[i - 1] + k < s.length && sa[i] + k < s.length &&
+                   s[sa[i - 1] + k] == s[sa[i] + k]) {
+                k++;
+            }
+            Assert.assertEquals(k, lcp[i]);
+        }
+    }
+
+    private static int[] naive(final long[] s) {
+        final Integer[] sa = new Integer[s.length];
+        for (int i = 0; i < sa.length; i++) {
+            sa[i] = i;
+        }
+        Arrays.sort(sa, (a, b) -> {
+            for (int i = a, j = b; i < s.length && j < s.length; i++, j++) {
+                if (s[i] != s[j]) {
+                    return Long.compare(s[i], s[j]);
+                }
+            }
+            return Integer.compare(b, a); // the shorter suffix is smaller
+        });
+        return Arrays.stream(sa).mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -86,7 +86,7 @@ public class MSBitOutputArray implements MPEGWriter, Closeable, AutoCloseable {
     public void writeByteBuffer(ByteBuffer buf) throws IOException {
         final int len = buf.remaining();
         if (array.length - size < len) {
-            array = Arrays.copyOf(array, size << 1);
+            array = Arrays.copyOf(array, Math.max(size << 1, size + len));
         }
 
         if (bits_left % 8 == 0){
@@ -0,0 +1,315 @@
+/**
+ * *****************************************************************************
+ * Copyright (C) 2019 Spanish National Bioinformatics Institute (INB) and
+ * Barcelona Supercomputing Center
+ *
+ * Modifications to the initial code base are copyright of their respective
+ * authors, or their employers as appropriate.
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ *****************************************************************************
+ */
+
+package es.gencom.mpegg.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>
+ * Bounded cache of memory mapped file chunks.
+ * </p>
+ * 
+ * Files are mapped in fixed size aligned chunks which are kept in the LRU
+ * order until the total size of mapped chunks exceeds the budget. The cache
+ * may be shared by several readers of the same file (or different files),
+ * the chunks are identified by the file key provided by the readers.
+ * 
+ * Pinned chunks are never evicted, so the chunks backing the payloads in use
+ * are not mapped once again. Note that the payload slices remain valid after
+ * unpinning (or eviction) as mapped buffers are released by the garbage 
+ * collector. The budget is therefore advisory: it limits the chunks kept by
+ * the cache, while the evicted chunks stay mapped as long as their slices 
+ * are referenced. Readers that need the chunks of a region to stay cached 
+ * (and counted in the budget) pin the region until it is no longer used.
+ * 
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class MappedChunkCache {
+
+    private final long budget;
+    private final byte logChunkSize;
+    private final LinkedHashMap<Key, Chunk> chunks;
+
+    private long mapped;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param budget the maximal size of the unpinned chunks kept in the cache
+     *        in bytes (the slices of the evicted chunks are not counted)
+     * @param logChunkSize the chunk size is equal to 2^logChunkSize (max 30)
+     */
+    public MappedChunkCache(final long budget, final byte logChunkSize) {
+        if (logChunkSize < 12 || logChunkSize > 30) {
+            throw new IllegalArgumentException("invalid chunk size: 2^" + logChunkSize);
+        }
+        this.budget = budget;
+        this.logChunkSize = logChunkSize;
+
+        chunks = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public byte getLogChunkSize() {
+        return logChunkSize;
+    }
+
+    public long getChunkSize() {
+        return 1L << logChunkSize;
+    }
+
+    /**
+     * Gets the chunk from the cache or maps it from the file.
+     * The chunk remains in the cache until unpinned.
+     * 
+     * @param fileKey the key which identifies the file
+     * @param channel the channel to map the chunk from
+     * @param index the index of the chunk in the file
+     * 
+     * @return the pinned chunk
+     * 
+     * @throws IOException 
+     */
+    public synchronized Chunk pin(
+            final Object fileKey,
+            final FileChannel channel,
+            final long index) throws IOException {
+
+        final Key key = new Key(fileKey, index);
+        Chunk chunk = chunks.get(key);
+        if (chunk != null) {
+            hits++;
+        } else {
+            misses++;
+            final long position = index << logChunkSize;
+            final long size = Math.min(getChunkSize(), channel.size() - position);
+            if (size <= 0) {
+                throw new IOException("chunk " + index + " is beyond the end of file");
+            }
+            chunk = new Chunk(key, position, channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+            chunks.put(key, chunk);
+            mapped += size;
+        }
+        chunk.pins++;
+        evict();
+        return chunk;
+    }
+
+    public synchronized void unpin(final Chunk chunk) {
+        if (chunk.pins <= 0) {
+            throw new IllegalStateException("chunk is not pinned");
+        }
+        chunk.pins--;
+        evict();
+    }
+
+    /**
+     * Pins all the chunks which cover the file region.
+     * 
+     * @param fileKey the key which identifies the file
+     * @param channel the channel to map the chunks from
+     * @param position the position of the region in the file
+     * @param size the size of the region
+     * 
+     * @return the pin to be closed when the region is no longer used
+     * 
+     * @throws IOException 
+     */
+    public Pin pin(
+            final Object fileKey,
+            final FileChannel channel,
+            final long position,
+            final long size) throws IOException {
+
+        final List<Chunk> pinned = new ArrayList<>();
+        try {
+            if (size > 0) {
+                final long last = (position + size - 1) >> logChunkSize;
+                for (long index = position >> logChunkSize; index <= last; index++) {
+                    pinned.add(pin(fileKey, channel, index));
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            new Pin(pinned).close();
+            throw ex;
+        }
+        return new Pin(pinned);
+    }
+
+    /**
+     * Drops all unpinned chunks.
+     */
+    public synchronized void clear() {
+        for (Iterator<Chunk> iter = chunks.values().iterator(); iter.hasNext();) {
+            final Chunk chunk = iter.next();
+            if (chunk.pins == 0) {
+                iter.remove();
+                mapped -= chunk.buffer.capacity();
+                evictions++;
+            }
+        }
+    }
+
+    private void evict() {
+        for (Iterator<Chunk> iter = chunks.values().iterator(); mapped > budget && iter.hasNext();) {
+            final Chunk chunk = iter.next();
+            if (chunk.pins == 0) {
+                iter.remove();
+                mapped -= chunk.buffer.capacity();
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of the chunks found in the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of the chunks mapped from the files
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the number of the chunks dropped from the cache
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the total size of the cached chunks in bytes
+     */
+    public synchronized long getMappedBytes() {
+        return mapped;
+    }
+
+    /**
+     * Memory mapped file chunk.
+     */
+    public static class Chunk {
+        private final Key key;
+        private final long position;
+        private final ByteBuffer buffer;
+        private int pins;
+
+        private Chunk(final Key key, final long position, final ByteBuffer buffer) {
+            this.key = key;
+            this.position = position;
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return the position of the chunk in the file
+         */
+        public long getPosition() {
+            return position;
+        }
+
+        /**
+         * @return the size of the chunk (the last chunk of the file may be shorter)
+         */
+        public int size() {
+            return buffer.capacity();
+        }
+
+        /**
+         * Creates the independent buffer over the part of the chunk.
+         * 
+         * @param offset the offset in the chunk
+         * @param length the length of the buffer
+         * 
+         * @return the buffer which shares the chunk content
+         */
+        public ByteBuffer slice(final int offset, final int length) {
+            final ByteBuffer slice = buffer.duplicate();
+            slice.limit(offset + length).position(offset);
+            return slice.slice();
+        }
+    }
+
+    /**
+     * Chunks pinned for a file region.
+     */
+    public class Pin implements Closeable {
+        private List<Chunk> pinned;
+
+        private Pin(final List<Chunk> pinned) {
+            this.pinned = pinned;
+        }
+
+        @Override
+        public void close() {
+            if (pinned != null) {
+                for (Chunk chunk : pinned) {
+                    unpin(chunk);
+                }
+                pinned = null;
+            }
+        }
+    }
+
+    private static class Key {
+        private final Object fileKey;
+        private final long index;
+
+        private Key(final Object fileKey, final long index) {
+            this.fileKey = fileKey;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key)obj;
+            return index == key.index && fileKey.equals(key.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fileKey, index);
+        }
+    }
+}
@@ -29,12 +29,18 @@ import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 
 /**
  * <p>
  * File Channel based MPEGReader implementation.
  * </p>
  * 
+ * Sequential reads move the position of the reader and must be done by one
+ * thread at a time. Payloads of the file regions (readPayload(position, size))
+ * are mapped without using the position, so they may be read concurrently 
+ * from any thread, while the reader is being read.
+ * 
  * @author @author Dmitry Repchevsky &amp; Daniel Naro
  */
 
@@ -44,7 +50,7 @@ public class ReadableMSBitFileChannel extends ReadableMSBitChannel<FileChannel>
 
     /**
      * Last chunk start position.
-     * Because chunks are of 2G size it's always x * 2G.
+     * Because chunks are of 1G size it's always x * 1G.
      */
     private long chunk_start;
 
@@ -54,21 +60,91 @@ public class ReadableMSBitFileChannel extends ReadableMSBitChannel<FileChannel>
     private final byte logChunckSize;
     private WeakReference<ByteBuffer> weak;
 
+    /**
+     * Shared cache of mapped chunks (if any) and the key of the file in it.
+     */
+    private final MappedChunkCache cache;
+    private final Object fileKey;
+
+    /**
+     * @param channel the file channel to read
+     * @param logChunckSize the chunk size is equal to 2^logChunckSize 
+     *        (larger values are limited to 30 as no buffer may be mapped
+     *        over 2G)
+     */
     public ReadableMSBitFileChannel(final FileChannel channel, byte logChunckSize) {
         super(channel);
-        this.logChunckSize = logChunckSize;
-        mask = 0x7fffffffffffffffL << logChunckSize;
-        chunkSize = (1L << logChunckSize)-1;
+        this.logChunckSize = (byte)Math.min(30, logChunckSize);
+        mask = 0x7fffffffffffffffL << this.logChunckSize;
+        chunkSize = 1L << this.logChunckSize;
+        cache = null;
+        fileKey = null;
     }
 
     public ReadableMSBitFileChannel(final FileChannel channel){
-        this(channel, (byte) 31);
+        this(channel, (byte) 30);
+    }
+
+    /**
+     * Creates the reader which maps the file through the chunks cache.
+     * 
+     * @param channel the file channel to read
+     * @param cache the cache of mapped chunks
+     * @param fileKey the key which identifies the file in the cache, 
+     *        readers of the same file must use equal keys
+     */
+    public ReadableMSBitFileChannel(
+            final FileChannel channel,
+            final MappedChunkCache cache,
+            final Object fileKey) {
+
+        super(channel);
+        this.logChunckSize = cache.getLogChunkSize();
+        mask = 0x7fffffffffffffffL << logChunckSize;
+        chunkSize = 1L << logChunckSize;
+        this.cache = cache;
+        this.fileKey = fileKey;
+    }
+
+    /**
+     * Opens the file to be read through the chunks cache.
+     * 
+     * @param path the path to the file
+     * @param cache the cache of mapped chunks
+     * 
+     * @return the reader of the file
+     * 
+     * @throws IOException 
+     */
+    public static ReadableMSBitFileChannel open(
+            final Path path,
+            final MappedChunkCache cache) throws IOException {
+
+        return new ReadableMSBitFileChannel(
+                FileChannel.open(path), cache, path.toAbsolutePath().normalize());
     }
 
     @Override
     public ByteBuffer readByteBuffer(final int size) throws IOException {
         align();
 
+        if (cache != null) {
+            final long position = channel.position();
+            final Payload payload = map(position, size);
+            channel.position(position + size);
+
+            final ByteBuffer[] buf = payload.getByteBuffers();
+            if (buf.length == 1) {
+                return buf[0];
+            }
+            final ByteBuffer byteBuffer = ByteBuffer.allocate(size);
+            for (ByteBuffer bb : buf) {
+                byteBuffer.put(bb);
+            }
+            byteBuffer.rewind();
+            return byteBuffer;
+        }
+
         final FileChannel ch = (FileChannel)channel;
         final ByteBuffer byteBuffer = ch.map(FileChannel.MapMode.READ_ONLY, ch.position(), size);
         ch.position(channel.position() + size);
@@ -86,10 +162,16 @@ public class ReadableMSBitFileChannel extends ReadableMSBitChannel<FileChannel>
      */
     @Override
     public Payload readPayload(final long size) throws IOException {
+        if (cache != null) {
+            final long position = channel.position();
+            final Payload payload = map(position, size);
+            channel.position(position + size);
+            return payload;
+        }
 
         /*
-         * Image drawn for the default case logChunkSize = 31
-         *              2G               2G               2G
+         * Image drawn for the default case logChunkSize = 30
+         *              1G               1G               1G
          *      +----------------+----------------+----------------+-----
          *      ^            | 0 |         1      | 2 | n = 2
          * chank_start       |<---------------------->|
@@ -100,9 +182,10 @@ public class ReadableMSBitFileChannel extends ReadableMSBitChannel<FileChannel>
          *             ch.position()       new_chunk_start
          */
 
-        long new_chunk_start = channel.position() & mask;
+        final long position = channel.position();
+        long new_chunk_start = position & mask;
 
-        final int pre = (int) (channel.position() - new_chunk_start);
+        final int pre = (int) (position - new_chunk_start);
         final int n = (int)((pre + size - 1) >> logChunckSize);
         final ByteBuffer[] buf = new ByteBuffer[n + 1];
 
@@ -118,7 +201,6 @@ public class ReadableMSBitFileChannel extends ReadableMSBitChannel<FileChannel>
 
         for (; i < n; i++, new_chunk_start += chunkSize) {
             buf[i] = channel.map(FileChannel.MapMode.READ_ONLY, new_chunk_start, chunkSize).slice();
-            channel.position(new_chunk_start + chunkSize);
         }
 
         if (buf[n] == null) {
@@ -129,7 +211,7 @@ public class ReadableMSBitFileChannel extends ReadableMSBitChannel<FileChannel>
             weak = new WeakReference(chunk);
         }
 
-        final long new_channel_pos = channel.position() + size;
+        final long new_channel_pos = position + size;
         channel.position(new_channel_pos);
 
         buf[0].position(pre);
@@ -138,6 +220,97 @@ public class ReadableMSBitFileChannel extends ReadableMSBitChannel<FileChannel>
         return new Payload(buf);
     }
 
+    /**
+     * Constructs a payload of the file region without changing the current
+     * position of the reader. Neither the position nor the last mapped chunk
+     * is used, so lazily parsed structures may map their content from 
+     * different threads.
+     * 
+     * @param position the file position of the payload
+     * @param size the size of payload to be obtained
+     * 
+     * @return payload backed by memory mapped buffers
+     * 
+     * @throws IOException 
+     */
+    public Payload readPayload(final long position, final long size) throws IOException {
+        if (cache != null) {
+            return map(position, size);
+        }
+        if (size <= 0) {
+            return new Payload(ByteBuffer.allocate(0));
+        }
+
+        // the region is mapped as is in the buffers of up to 2G
+        final long end = position + size;
+        final ByteBuffer[] buf = new ByteBuffer[(int)((size - 1) / Integer.MAX_VALUE + 1)];
+        long start = position;
+        for (int i = 0; i < buf.length; i++) {
+            final long length = Math.min(Integer.MAX_VALUE, end - start);
+            buf[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            start += length;
+        }
+        return new Payload(buf);
+    }
+
+    /**
+     * Pins the chunks of the file region in the cache, so they are not
+     * evicted while the payloads of the region are in use.
+     * 
+     * @param position the position of the region in the file
+     * @param size the size of the region
+     * 
+     * @return the pin to be closed once the region is no longer used
+     * 
+     * @throws IOException 
+     */
+    public MappedChunkCache.Pin pin(final long position, final long size) throws IOException {
+        if (cache == null) {
+            throw new IllegalStateException("the reader has no chunks cache");
+        }
+        return cache.pin(fileKey, channel, position, size);
+    }
+
+    /**
+     * Maps the region through the cache. The chunks are only pinned while
+     * sliced, so they may be evicted while the payload is still in use
+     * (see MappedChunkCache).
+     */
+    private Payload map(final long position, final long size) throws IOException {
+        if (size <= 0) {
+            return new Payload(ByteBuffer.allocate(0));
+        }
+
+        final long end = position + size;
+        final long first = position >> logChunckSize;
+        final ByteBuffer[] buf = new ByteBuffer[(int)(((end - 1) >> logChunckSize) - first + 1)];
+        for (int i = 0; i < buf.length; i++) {
+            final MappedChunkCache.Chunk chunk = cache.pin(fileKey, channel, first + i);
+            try {
+                final long chunk_start = chunk.getPosition();
+                final int from = (int)(Math.max(position, chunk_start) - chunk_start);
+                final int to = (int)(Math.min(end, chunk_start + chunk.size()) - chunk_start);
+                buf[i] = chunk.slice(from, to - from);
+            } finally {
+                cache.unpin(chunk);
+            }
+        }
+        return new Payload(buf);
+    }
+
+    /**
+     * Moves the reader to the file position (i.e. to skip the content that
+     * is going to be mapped later).
+     * 
+     * @param position new file position
+     * 
+     * @throws IOException 
+     */
+    public void setPosition(final long position) throws IOException {
+        align();
+        channel.position(position);
+    }
+
     @Override
     public long getPosition() throws IOException {
         return channel.position();
@@ -0,0 +1,128 @@
+package es.gencom.mpegg.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class MappedChunkCacheTest {
+
+    private final static int CHUNK = 1 << 12;
+
+    @Test
+    public void test() throws IOException {
+        final byte[] data = new byte[CHUNK * 5 + 123];
+        new Random(7).nextBytes(data);
+
+        final Path path = Files.createTempFile("mpegg", ".bin");
+        try {
+            Files.write(path, data);
+
+            final MappedChunkCache cache = new MappedChunkCache(2 * CHUNK, (byte)12);
+            try (FileChannel channel = FileChannel.open(path)) {
+                final ReadableMSBitFileChannel reader =
+                        new ReadableMSBitFileChannel(channel, cache, path);
+
+                // crosses the chunks 0, 1 and 2
+                reader.setPosition(100);
+                final Payload payload = reader.readPayload(2 * CHUNK);
+                Assert.assertEquals(100 + 2 * CHUNK, channel.position());
+                assertBytes(data, 100, payload.getAllBytes());
+                Assert.assertEquals(3, cache.getMisses());
+                Assert.assertEquals(1, cache.getEvictions());
+                Assert.assertTrue(cache.getMappedBytes() <= 2 * CHUNK);
+
+                // the chunk 2 is still cached
+                final ByteBuffer buf = reader.readByteBuffer(16);
+                final byte[] bytes = new byte[16];
+                buf.get(bytes);
+                assertBytes(data, 100 + 2 * CHUNK, bytes);
+                Assert.assertEquals(1, cache.getHits());
+
+                // the last (short) chunk and the chunk boundary
+                assertBytes(data, data.length - 200,
+                        reader.readPayload(data.length - 200, 200).getAllBytes());
+                assertBytes(data, CHUNK * 4 - 10,
+                        reader.readPayload(CHUNK * 4 - 10, 20).getAllBytes());
+                Assert.assertEquals(100 + 2 * CHUNK + 16, channel.position());
+
+                // pinned chunks survive the eviction
+                final long misses = cache.getMisses();
+                try (MappedChunkCache.Pin pin = reader.pin(0, 2 * CHUNK)) {
+                    assertBytes(data, CHUNK * 3,
+                            reader.readPayload(CHUNK * 3, CHUNK * 2).getAllBytes());
+                    assertBytes(data, 0,
+                            reader.readPayload(0, CHUNK * 2).getAllBytes());
+                    Assert.assertEquals(misses + 4, cache.getMisses());
+                }
+                reader.readPayload(CHUNK * 3, CHUNK);
+                Assert.assertEquals(misses + 5, cache.getMisses());
+                Assert.assertTrue(cache.getMappedBytes() <= 2 * CHUNK);
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * The chunks are evicted while the payloads sliced from them are in use.
+     * The payloads remain readable and the evicted chunks are mapped again.
+     */
+    @Test
+    public void testEvictionInUse() throws IOException {
+        final byte[] data = new byte[CHUNK * 6];
+        new Random(11).nextBytes(data);
+
+        final Path path = Files.createTempFile("mpegg", ".bin");
+        try {
+            Files.write(path, data);
+
+            final MappedChunkCache cache = new MappedChunkCache(CHUNK, (byte)12);
+            try (FileChannel channel = FileChannel.open(path)) {
+                final ReadableMSBitFileChannel reader =
+                        new ReadableMSBitFileChannel(channel, cache, path);
+
+                final Payload first = reader.readPayload(10, CHUNK);
+                final Payload second = reader.readPayload(CHUNK * 2 + 10, CHUNK);
+                Assert.assertTrue(cache.getEvictions() >= 2);
+                Assert.assertTrue(cache.getMappedBytes() <= CHUNK);
+
+                // read after the eviction and after other chunks are mapped
+                for (int i = 0; i < 6; i++) {
+                    reader.readPayload(CHUNK * i, CHUNK).getAllBytes();
+                }
+                assertBytes(data, 10, first.getAllBytes());
+                assertBytes(data, CHUNK * 2 + 10, second.getAllBytes());
+                Assert.assertTrue(cache.getMappedBytes() <= CHUNK);
+
+                // the evicted chunk is mapped again, while the pinned one stays
+                final long misses = cache.getMisses();
+                try (MappedChunkCache.Pin pin = reader.pin(0, CHUNK)) {
+                    final Payload pinned = reader.readPayload(0, CHUNK);
+                    for (int i = 1; i < 6; i++) {
+                        reader.readPayload(CHUNK * i, CHUNK);
+                    }
+                    assertBytes(data, 0, reader.readPayload(0, CHUNK).getAllBytes());
+                    assertBytes(data, 0, pinned.getAllBytes());
+                    Assert.assertEquals(misses + 6, cache.getMisses());
+                }
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static void assertBytes(final byte[] data, final int offset, final byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            Assert.assertEquals(data[offset + i], bytes[i]);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package es.gencom.mpegg.io;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class ReadableMSBitFileChannelTest {
+
+    private final static int CHUNK = 1 << 12;
+
+    @Test
+    public void testConcurrent() throws Exception {
+        test(false);
+    }
+
+    @Test
+    public void testConcurrentCached() throws Exception {
+        test(true);
+    }
+
+    /**
+     * The first payload read by the reader spans the chunks, so there is
+     * no previously mapped chunk to start with.
+     */
+    @Test
+    public void testSpanningChunks() throws Exception {
+        final byte[] data = new byte[CHUNK * 4];
+        new Random(5).nextBytes(data);
+
+        final Path path = Files.createTempFile("mpegg", ".bin");
+        try {
+            Files.write(path, data);
+
+            try (FileChannel channel = FileChannel.open(path)) {
+                final ReadableMSBitFileChannel reader = new ReadableMSBitFileChannel(channel, (byte)12);
+                reader.setPosition(CHUNK - 10);
+                assertBytes(data, CHUNK - 10, reader.readPayload(2 * CHUNK).getAllBytes());
+                Assert.assertEquals(3 * CHUNK - 10, reader.getPosition());
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * The file regions are read from many threads while the reader is read
+     * sequentially, so neither the regions nor the sequential reads are
+     * affected.
+     */
+    private static void test(final boolean cached) throws Exception {
+        final byte[] data = new byte[CHUNK * 16 + 77];
+        new Random(3).nextBytes(data);
+
+        final Path path = Files.createTempFile("mpegg", ".bin");
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Files.write(path, data);
+
+            try (FileChannel channel = FileChannel.open(path)) {
+                final ReadableMSBitFileChannel reader = cached ?
+                        new ReadableMSBitFileChannel(channel, new MappedChunkCache(3 * CHUNK, (byte)12), path) :
+                        new ReadableMSBitFileChannel(channel, (byte)12);
+
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    final long seed = t;
+                    futures.add(executor.submit(() -> {
+                        final Random random = new Random(seed);
+                        for (int i = 0; i < 2000; i++) {
+                            final int position = random.nextInt(data.length);
+                            final int size = random.nextInt(Math.min(3 * CHUNK, data.length - position) + 1);
+                            assertBytes(data, position, reader.readPayload(position, size).getAllBytes());
+                        }
+                        return null;
+                    }));
+                }
+
+                for (int run = 0; run < 20; run++) {
+                    reader.setPosition(0);
+                    for (int position = 0; position < data.length; ) {
+                        final int size = Math.min(CHUNK / 2 + run, data.length - position);
+                        assertBytes(data, position, reader.readPayload(size).getAllBytes());
+                        position += size;
+                        Assert.assertEquals(position, reader.getPosition());
+                    }
+                }
+
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+        } finally {
+            executor.shutdown();
+            Files.delete(path);
+        }
+    }
+
+    private static void assertBytes(final byte[] data, final int offset, final byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            Assert.assertEquals(data[offset + i], bytes[i]);
+        }
+    }
+}
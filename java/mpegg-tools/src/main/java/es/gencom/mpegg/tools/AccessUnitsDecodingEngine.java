@@ -0,0 +1,228 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.mpegg.RecordBatch;
+import es.gencom.mpegg.coder.dataunits.DataUnitAccessUnit;
+import es.gencom.mpegg.coder.dataunits.DataUnits;
+import es.gencom.mpegg.decoder.AbstractSequencesSource;
+import es.gencom.mpegg.decoder.DataUnitAccessUnitDecoder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Decodes access units of a DataUnits collection on a pool of workers.
+ * </p>
+ *
+ * Access units are independent, so they are submitted in bytestream order
+ * keeping at most <code>window</code> of them in flight ahead of the consumer.
+ * The consumer takes the decoded reads per access unit, in any order, and
+ * remains responsible for sorting them by coordinate. Reads are renumbered
+ * when taken, so reads with equal coordinates keep the sequential order.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class AccessUnitsDecodingEngine implements Closeable {
+
+    private final DataUnits dataUnits;
+    private final AbstractSequencesSource sequencesSource;
+    private final ExecutorService executor;
+    private final boolean shutdownExecutor;
+    private final int window;
+
+    private final HashMap<DataUnitAccessUnit, Future<SAMReadsCollection>> inFlight;
+    private final HashSet<DataUnitAccessUnit> submitted;
+    private final ConcurrentLinkedQueue<RecordBatch> batches;
+    private int nextToSubmit;
+
+    /**
+     * Creates the engine backed by its own fork-join pool.
+     *
+     * @param dataUnits data units which access units are to be decoded
+     * @param sequencesSource reference used to reconstruct the reads
+     * @param threads number of worker threads
+     * @param window maximum number of access units decoded ahead of the consumer
+     */
+    public AccessUnitsDecodingEngine(
+            final DataUnits dataUnits,
+            final AbstractSequencesSource sequencesSource,
+            final int threads,
+            final int window) {
+
+        this(dataUnits, sequencesSource, new ForkJoinPool(Math.max(1, threads)), true, window);
+    }
+
+    /**
+     * Creates the engine on top of the caller provided executor
+     * (i.e. a virtual threads executor on the recent JVMs).
+     * The executor is not shut down when the engine is closed.
+     *
+     * @param dataUnits data units which access units are to be decoded
+     * @param sequencesSource thread safe reference used to reconstruct the reads
+     * @param executor the executor to run decoding tasks
+     * @param window maximum number of access units decoded ahead of the consumer
+     */
+    public AccessUnitsDecodingEngine(
+            final DataUnits dataUnits,
+            final AbstractSequencesSource sequencesSource,
+            final ExecutorService executor,
+            final int window) {
+
+        this(dataUnits, sequencesSource, executor, false, window);
+    }
+
+    private AccessUnitsDecodingEngine(
+            final DataUnits dataUnits,
+            final AbstractSequencesSource sequencesSource,
+            final ExecutorService executor,
+            final boolean shutdownExecutor,
+            final int window) {
+
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+
+        this.dataUnits = dataUnits;
+        this.sequencesSource = sequencesSource;
+        this.executor = executor;
+        this.shutdownExecutor = shutdownExecutor;
+        this.window = window;
+
+        inFlight = new HashMap<>();
+        submitted = new HashSet<>();
+        batches = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Moves the submission cursor to the access unit at the position and
+     * fills up the window of in-flight access units starting from there.
+     * Access units that were already submitted are skipped.
+     *
+     * @param dataUnitIndex index of the access unit in the DataUnits collection
+     */
+    public void advance(final int dataUnitIndex) {
+        nextToSubmit = Math.max(nextToSubmit, dataUnitIndex);
+
+        final int numberDataUnits = dataUnits.getNumberDataUnits();
+        while (inFlight.size() < window && nextToSubmit < numberDataUnits) {
+            submit(dataUnits.getDataUnitAccessUnit(nextToSubmit++));
+        }
+    }
+
+    /**
+     * Waits for the access unit to be decoded and returns its reads.
+     * The access unit is submitted immediately if it was not yet scheduled.
+     *
+     * @param dataUnitAccessUnit the access unit to get decoded reads for
+     *
+     * @return decoded reads or an empty collection if the access unit has
+     *         been already taken
+     *
+     * @throws IOException
+     */
+    public SAMReadsCollection take(
+            final DataUnitAccessUnit dataUnitAccessUnit) throws IOException {
+
+        if (!submitted.contains(dataUnitAccessUnit)) {
+            submit(dataUnitAccessUnit);
+        }
+
+        final Future<SAMReadsCollection> future = inFlight.remove(dataUnitAccessUnit);
+        if (future == null) {
+            return new SAMReadsCollection();
+        }
+
+        // keep the workers busy while the consumer is blocked
+        advance(nextToSubmit);
+
+        try {
+            final SAMReadsCollection samReadsCollection = future.get();
+            samReadsCollection.renumber();
+            return samReadsCollection;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private void submit(final DataUnitAccessUnit dataUnitAccessUnit) {
+        if (submitted.add(dataUnitAccessUnit)) {
+            inFlight.put(dataUnitAccessUnit,
+                         executor.submit(new AccessUnitDecodingTask(dataUnitAccessUnit)));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<SAMReadsCollection> future : inFlight.values()) {
+            future.cancel(true);
+        }
+        inFlight.clear();
+
+        if (shutdownExecutor) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(ex.getMessage());
+            }
+        }
+    }
+
+    private class AccessUnitDecodingTask implements Callable<SAMReadsCollection> {
+
+        private final DataUnitAccessUnit dataUnitAccessUnit;
+
+        AccessUnitDecodingTask(final DataUnitAccessUnit dataUnitAccessUnit) {
+            this.dataUnitAccessUnit = dataUnitAccessUnit;
+        }
+
+        /**
+         * Decodes the access unit into a batch taken from the pool, so the
+         * decoding memory is reused by the tasks and the alignments are read
+         * straight from the batch.
+         */
+        @Override
+        public SAMReadsCollection call() throws IOException {
+            RecordBatch batch = batches.poll();
+            if (batch == null) {
+                batch = new RecordBatch();
+            }
+            try {
+                DataUnitAccessUnitDecoder.decode(dataUnitAccessUnit, sequencesSource, null, batch);
+
+                final SAMReadsCollection samReadsCollection = new SAMReadsCollection();
+                final RecordBatch.Cursor cursor = batch.cursor();
+                while (cursor.next()) {
+                    samReadsCollection.addRead(cursor);
+                }
+                return samReadsCollection;
+            } finally {
+                batch.clear();
+                batches.offer(batch);
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.AbstractAccessUnitEncoder;
+import es.gencom.mpegg.coder.dataunits.DataUnitParameters;
+import es.gencom.mpegg.io.MPEGWriter;
+import es.gencom.mpegg.io.MSBitOutputArray;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Entropy codes completed access units on a pool of workers.
+ * </p>
+ *
+ * Access units are encoded into memory independently and written to the
+ * bytestream strictly in the order they were submitted, so the output is
+ * identical to the one produced by writing them one after another.
+ * At most <code>window</code> access units are kept in flight; submitting
+ * more blocks the producer until the oldest one is written.
+ * When the pipeline runs on a fork-join pool, descriptor subsequences of
+ * each access unit are encoded as separate subtasks, so the last access
+ * units of the stream are encoded in parallel as well.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class AccessUnitsEncodingPipeline implements Closeable {
+
+    private final MPEGWriter writer;
+    private final DataUnitConsumer consumer;
+    private final ExecutorService executor;
+    private final boolean shutdownExecutor;
+    private final int window;
+    private final long memoryBudget;
+
+    private final ArrayDeque<Future<MSBitOutputArray>> reorderBuffer;
+    private final ArrayDeque<Long> sizes;
+    private long sizeInMemory;
+
+    /**
+     * Creates the pipeline that encodes access units on the caller thread
+     * writing them directly to the bytestream.
+     *
+     * @param writer the bytestream writer
+     */
+    public AccessUnitsEncodingPipeline(final MPEGWriter writer) {
+        this(writer, null, null, false, 1, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates the pipeline backed by its own fork-join pool.
+     *
+     * @param writer the bytestream writer
+     * @param threads number of worker threads
+     * @param window maximum number of access units encoded ahead of the writer
+     */
+    public AccessUnitsEncodingPipeline(
+            final MPEGWriter writer,
+            final int threads,
+            final int window) {
+
+        this(writer, null, new ForkJoinPool(Math.max(1, threads)), true, window, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates the pipeline on top of the caller provided executor.
+     * The executor is not shut down when the pipeline is closed.
+     *
+     * @param writer the bytestream writer
+     * @param executor the executor to run encoding tasks
+     * @param window maximum number of access units encoded ahead of the writer
+     */
+    public AccessUnitsEncodingPipeline(
+            final MPEGWriter writer,
+            final ExecutorService executor,
+            final int window) {
+
+        this(writer, null, executor, false, window, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates the pipeline on top of the caller provided executor which
+     * also limits the memory retained by the access units in flight.
+     * The executor is not shut down when the pipeline is closed.
+     *
+     * @param writer the bytestream writer
+     * @param executor the executor to run encoding tasks
+     * @param window maximum number of access units encoded ahead of the writer
+     * @param memoryBudget maximum size of the access units data in flight
+     *        (at least one access unit is always accepted)
+     */
+    public AccessUnitsEncodingPipeline(
+            final MPEGWriter writer,
+            final ExecutorService executor,
+            final int window,
+            final long memoryBudget) {
+
+        this(writer, null, executor, false, window, memoryBudget);
+    }
+
+    /**
+     * Creates the pipeline which passes the encoded access units to the
+     * consumer instead of writing them to the bytestream.
+     * The executor is not shut down when the pipeline is closed.
+     *
+     * @param consumer the consumer of the encoded access unit data units
+     * @param executor the executor to run encoding tasks or null to encode
+     *        access units on the caller thread
+     * @param window maximum number of access units encoded ahead of the consumer
+     * @param memoryBudget maximum size of the access units data in flight
+     *        (at least one access unit is always accepted)
+     */
+    public AccessUnitsEncodingPipeline(
+            final DataUnitConsumer consumer,
+            final ExecutorService executor,
+            final int window,
+            final long memoryBudget) {
+
+        this(null, consumer, executor, false, window, memoryBudget);
+    }
+
+    private AccessUnitsEncodingPipeline(
+            final MPEGWriter writer,
+            final DataUnitConsumer consumer,
+            final ExecutorService executor,
+            final boolean shutdownExecutor,
+            final int window,
+            final long memoryBudget) {
+
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be positive: " + window);
+        }
+
+        this.writer = writer;
+        this.consumer = consumer != null ? consumer : this::write;
+        this.executor = executor;
+        this.shutdownExecutor = shutdownExecutor;
+        this.window = window;
+        this.memoryBudget = memoryBudget;
+
+        reorderBuffer = new ArrayDeque<>();
+        sizes = new ArrayDeque<>();
+    }
+
+    /**
+     * Schedules the completed access unit for encoding.
+     * The encoder must not be modified after the submission.
+     *
+     * @param accessUnitEncoder the encoder holding access unit symbols
+     * @param parameters parameters the access unit refers to
+     *
+     * @throws IOException
+     */
+    public void submit(
+            final AbstractAccessUnitEncoder accessUnitEncoder,
+            final DataUnitParameters parameters) throws IOException {
+
+        if (accessUnitEncoder.getReadCount() == 0) {
+            return;
+        }
+
+        if (executor == null) {
+            if (writer != null) {
+                SAMtoMPEGG.writeAccessUnitToFile(writer, accessUnitEncoder, parameters);
+            } else {
+                final MSBitOutputArray output = new MSBitOutputArray();
+                SAMtoMPEGG.writeAccessUnitToFile(output, accessUnitEncoder, parameters);
+                consumer.accept(output);
+            }
+            return;
+        }
+
+        final long size = accessUnitEncoder.getTotalSizeInMemory();
+        while (reorderBuffer.size() >= window ||
+               (!reorderBuffer.isEmpty() && sizeInMemory + size > memoryBudget)) {
+            write();
+        }
+
+        // waiting for subtasks never blocks fork-join workers, while it could
+        // exhaust a fixed size pool
+        final ExecutorService descriptorsExecutor =
+                executor instanceof ForkJoinPool ? executor : null;
+
+        reorderBuffer.add(executor.submit(
+                new AccessUnitEncodingTask(accessUnitEncoder, parameters, descriptorsExecutor)));
+        sizes.add(size);
+        sizeInMemory += size;
+
+        // write whatever is already done without blocking
+        while (!reorderBuffer.isEmpty() && reorderBuffer.peek().isDone()) {
+            write();
+        }
+    }
+
+    /**
+     * Waits for all submitted access units and writes them to the bytestream.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        while (!reorderBuffer.isEmpty()) {
+            write();
+        }
+    }
+
+    /**
+     * @return the size of the access units data in flight in bytes
+     */
+    public long getSizeInMemory() {
+        return sizeInMemory;
+    }
+
+    private void write() throws IOException {
+        sizeInMemory -= sizes.poll();
+        write(reorderBuffer.poll());
+    }
+
+    private void write(final Future<MSBitOutputArray> future) throws IOException {
+        final MSBitOutputArray output;
+        try {
+            output = future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+
+        consumer.accept(output);
+    }
+
+    private void write(final MSBitOutputArray output) throws IOException {
+        final long nbits = output.getLength();
+        final int nbytes = (int)(nbits >>> 3);
+        final ByteBuffer buf = output.toByteBuffer();
+
+        buf.limit(nbytes);
+        writer.writeByteBuffer(buf);
+
+        // the access unit may end in the middle of a byte
+        final int remaining = (int)(nbits & 7);
+        if (remaining > 0) {
+            buf.limit(nbytes + 1);
+            writer.writeBits((buf.get(nbytes) & 0xFF) >>> (8 - remaining), remaining);
+        }
+    }
+
+    /**
+     * Writes all pending access units and releases the workers.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            for (Future<MSBitOutputArray> future : reorderBuffer) {
+                future.cancel(true);
+            }
+            reorderBuffer.clear();
+            sizes.clear();
+            sizeInMemory = 0;
+
+            if (executor != null && shutdownExecutor) {
+                executor.shutdown();
+                try {
+                    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Consumer of the encoded access units (i.e. the file format writer).
+     */
+    public interface DataUnitConsumer {
+
+        /**
+         * Accepts the encoded access unit in the order of submission.
+         *
+         * @param dataUnit the access unit data unit (including data_unit_type)
+         *
+         * @throws IOException
+         */
+        void accept(MSBitOutputArray dataUnit) throws IOException;
+    }
+
+    private static class AccessUnitEncodingTask implements Callable<MSBitOutputArray> {
+
+        private final AbstractAccessUnitEncoder accessUnitEncoder;
+        private final DataUnitParameters parameters;
+        private final ExecutorService descriptorsExecutor;
+
+        AccessUnitEncodingTask(
+                final AbstractAccessUnitEncoder accessUnitEncoder,
+                final DataUnitParameters parameters,
+                final ExecutorService descriptorsExecutor) {
+
+            this.accessUnitEncoder = accessUnitEncoder;
+            this.parameters = parameters;
+            this.descriptorsExecutor = descriptorsExecutor;
+        }
+
+        @Override
+        public MSBitOutputArray call() throws IOException {
+            final MSBitOutputArray output = new MSBitOutputArray();
+            SAMtoMPEGG.writeAccessUnitToFile(output, accessUnitEncoder, parameters, descriptorsExecutor);
+            return output;
+        }
+    }
+}
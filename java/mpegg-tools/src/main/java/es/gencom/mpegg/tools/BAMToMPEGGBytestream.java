@@ -6,6 +6,8 @@ import es.gencom.integration.bam.BAMRecord;
 import es.gencom.integration.fasta.FastaFileReader;
 import es.gencom.integration.fasta.FastaIterator;
 import es.gencom.integration.fasta.FastaSequence;
+import es.gencom.integration.gzip.InflaterBackend;
+import es.gencom.mpegg.AlignmentBatch;
 import es.gencom.mpegg.Record;
 import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.AbstractAccessUnitEncoder;
 import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.HalfMappedAccessUnitEncoder;
@@ -16,30 +18,31 @@ import es.gencom.mpegg.coder.compression.ENCODING_MODE_ID;
 import es.gencom.mpegg.coder.compression.QV_CODING_MODE;
 import es.gencom.mpegg.coder.configuration.DescriptorDecoderConfigurationFactory;
 import es.gencom.mpegg.coder.configuration.EncodingParameters;
+import es.gencom.mpegg.coder.configuration.EncodingParametersTrainer;
 import es.gencom.mpegg.coder.tokens.AbstractReadIdentifierEncoder;
 import es.gencom.mpegg.coder.tokens.GeneralReadIdentifierEncoder;
 import es.gencom.mpegg.coder.tokens.IlluminaReadIdentifierEncoder;
 import es.gencom.mpegg.coder.tokens.TokentypeDecoderConfigurationFactory;
 import es.gencom.mpegg.decoder.AbstractSequencesSource;
-import es.gencom.mpegg.decoder.SequencesFromDataUnitsRawReference;
+import es.gencom.mpegg.decoder.MappedSequencesSource;
+import es.gencom.mpegg.decoder.PackedSequencesSource;
 import es.gencom.mpegg.format.DATA_CLASS;
 import es.gencom.mpegg.format.DatasetType;
 import es.gencom.mpegg.format.SequenceIdentifier;
 import es.gencom.mpegg.io.MPEGWriter;
-import es.gencom.mpegg.io.ReadableMSBitFileChannel;
 import es.gencom.mpegg.io.WritableMSBitChannel;
 import es.gencom.mpegg.coder.dataunits.DataUnitParameters;
-import es.gencom.mpegg.coder.dataunits.DataUnitRawReference;
 import es.gencom.mpegg.coder.dataunits.DataUnits;
 
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.zip.DataFormatException;
 
 import static es.gencom.mpegg.coder.compression.DESCRIPTOR_ID.*;
@@ -47,6 +50,12 @@ import static es.gencom.mpegg.coder.compression.DESCRIPTOR_ID.*;
 public class BAMToMPEGGBytestream {
     private static long numDiscardedRecords = 0;
 
+    /**
+     * Default memory budget for the access units being accumulated
+     * (and separately for the ones being entropy coded).
+     */
+    public final static long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
     private static AbstractAccessUnitEncoder[] createAccessUnitEncoders(
             int current_sequence_i,
             int auId,
@@ -158,7 +167,7 @@ public class BAMToMPEGGBytestream {
     private static AbstractAccessUnitEncoder[] writeCompletedRecords(
             AbstractAccessUnitEncoder[] accessUnitEncoders,
             LinkedHashMap<String, RecordConstructor> alignments,
-            MPEGWriter writer,
+            AccessUnitsEncodingPipeline pipeline,
             DataUnits dataUnits,
             short threshold,
             AbstractSequencesSource sequencesSource,
@@ -167,7 +176,9 @@ public class BAMToMPEGGBytestream {
             boolean useIlluminaReadIdentifierEncoder,
             BAMHeader bamHeader,
             SequenceIdentifier currentSequenceIdentifier,
-            long currentSequencePosition
+            long currentSequencePosition,
+            long memoryBudget,
+            AlignmentBatch batch
     ) throws IOException {
         long endPosition;
         int currentSequence;
@@ -208,20 +219,33 @@ public class BAMToMPEGGBytestream {
 
 
         Set<String> writtenRecords = new HashSet<>();
+        batch.clear();
         for (Map.Entry<String, RecordConstructor> entry : alignments.entrySet()) {
             if (
                     entry.getValue().couldBeCompleted()
             ) {
-                Record record = entry.getValue().construct(sequencesSource, bamHeader);
+                Record record = null;
+                int batchIndex = -1;
+                int recordSequence;
+                long recordPosition;
+                if(entry.getValue().append(batch, sequencesSource, bamHeader)){
+                    batchIndex = batch.size() - 1;
+                    recordSequence = batch.getSequenceId(batchIndex).getSequenceIdentifier();
+                    recordPosition = batch.getPosition(batchIndex, 0);
+                }else{
+                    record = entry.getValue().construct(sequencesSource, bamHeader);
+                    recordSequence = record.getSequenceId().getSequenceIdentifier();
+                    recordPosition = record.getMappingPositionsSegment0()[0][0];
+                }
                 DATA_CLASS dataClass = entry.getValue().getDataClass();
 
                 if(accessUnitEncoders == null){
-                    currentSequence = record.getSequenceId().getSequenceIdentifier();
+                    currentSequence = recordSequence;
                     accessUnitEncoders = createAccessUnitEncoders(
                             currentSequence,
                             0,
-                            record.getMappingPositionsSegment0()[0][0],
-                            record.getMappingPositionsSegment0()[0][0] + auWidth,
+                            recordPosition,
+                            recordPosition + auWidth,
                             threshold,
                             sequencesSource,
                             dataUnitParametersPerClass,
@@ -238,21 +262,21 @@ public class BAMToMPEGGBytestream {
                 boolean hasToCloseAccessUnits = false;
                 boolean hasToStartNewSequence = false;
                 boolean keepPositions = false;
-                if(record.getSequenceId().getSequenceIdentifier() != currentSequence) {
-                    System.out.println("Starting sequence " + record.getSequenceId().getSequenceIdentifier());
-                    currentSequence =record.getSequenceId().getSequenceIdentifier();
+                if(recordSequence != currentSequence) {
+                    System.out.println("Starting sequence " + recordSequence);
+                    currentSequence = recordSequence;
                     hasToStartNewSequence = true;
                     hasToCloseAccessUnits = true;
-                }else if(record.getMappingPositionsSegment0()[0][0] >= endPosition) {
+                }else if(recordPosition >= endPosition) {
                     hasToCloseAccessUnits = true;
                 }
 
                 if(!hasToCloseAccessUnits){
-                    long maxMemory = 0;
+                    long totalMemory = 0;
                     for(AbstractAccessUnitEncoder abstractAccessUnitEncoder : accessUnitEncoders){
-                        maxMemory = Long.max(maxMemory, abstractAccessUnitEncoder.getTotalSizeInMemory());
+                        totalMemory += abstractAccessUnitEncoder.getTotalSizeInMemory();
                     }
-                    if(maxMemory > 500000){
+                    if(totalMemory > memoryBudget){
                         hasToCloseAccessUnits = true;
                         keepPositions = true;
                     }
@@ -263,8 +287,7 @@ public class BAMToMPEGGBytestream {
                     System.out.println("Finished with aus with id = "+accessUnitEncoders[0].getAuId());
                     for (AbstractAccessUnitEncoder abstractAccessUnitEncoder : accessUnitEncoders) {
                         if(abstractAccessUnitEncoder.getReadCount() != 0) {
-                            SAMtoMPEGG.writeAccessUnitToFile(
-                                    writer,
+                            pipeline.submit(
                                     abstractAccessUnitEncoder,
                                     dataUnits.getParameter(abstractAccessUnitEncoder.getEncodingParametersId())
                             );
@@ -281,7 +304,7 @@ public class BAMToMPEGGBytestream {
                             auId = 0;
                         }
 
-                        while (record.getMappingPositionsSegment0()[0][0] >= endPosition) {
+                        while (recordPosition >= endPosition) {
                             startPosition += auWidth;
                             endPosition += auWidth;
                         }
@@ -298,7 +321,11 @@ public class BAMToMPEGGBytestream {
                     );
                 }
 
-                accessUnitEncoders[dataClass.ID - 1].write(record);
+                if(record == null){
+                    accessUnitEncoders[dataClass.ID - 1].write(batch, batchIndex);
+                }else{
+                    accessUnitEncoders[dataClass.ID - 1].write(record);
+                }
                 writtenRecords.add(entry.getKey());
             } else {
                 break;
@@ -318,14 +345,15 @@ public class BAMToMPEGGBytestream {
     private static AbstractAccessUnitEncoder[] writeAndFinish(
             AbstractAccessUnitEncoder[] accessUnitEncoders,
             LinkedHashMap<String, RecordConstructor> alignments,
-            MPEGWriter writer,
+            AccessUnitsEncodingPipeline pipeline,
             DataUnits dataUnits,
             short threshold,
             AbstractSequencesSource rawReference,
             long auWidth,
             DataUnitParameters[] dataUnitParametersPerClass,
             boolean useIlluminaReadIdentifierEncoder,
-            BAMHeader bamHeader
+            BAMHeader bamHeader,
+            AlignmentBatch batch
     ) throws IOException {
         long endPosition;
         int currentSequence;
@@ -333,14 +361,19 @@ public class BAMToMPEGGBytestream {
 
         Set<String> writtenRecords = new HashSet<>();
 
+        batch.clear();
         for (Map.Entry<String, RecordConstructor> entry : alignments.entrySet()) {
             if (
                     entry.getValue().couldBeCompleted()
             ) {
-                Record record = entry.getValue().construct(rawReference, bamHeader);
-                DATA_CLASS dataClass = entry.getValue().getDataClass();
-
-                accessUnitEncoders[dataClass.ID - 1].write(record);
+                if(entry.getValue().append(batch, rawReference, bamHeader)){
+                    DATA_CLASS dataClass = entry.getValue().getDataClass();
+                    accessUnitEncoders[dataClass.ID - 1].write(batch, batch.size() - 1);
+                }else{
+                    Record record = entry.getValue().construct(rawReference, bamHeader);
+                    DATA_CLASS dataClass = entry.getValue().getDataClass();
+                    accessUnitEncoders[dataClass.ID - 1].write(record);
+                }
                 writtenRecords.add(entry.getKey());
             } else {
                 break;
@@ -359,8 +392,7 @@ public class BAMToMPEGGBytestream {
 
             for (AbstractAccessUnitEncoder abstractAccessUnitEncoder : accessUnitEncoders) {
                 if(abstractAccessUnitEncoder.getReadCount() != 0) {
-                    SAMtoMPEGG.writeAccessUnitToFile(
-                            writer,
+                    pipeline.submit(
                             abstractAccessUnitEncoder,
                             dataUnits.getParameter(abstractAccessUnitEncoder.getEncodingParametersId())
                     );
@@ -381,43 +413,244 @@ public class BAMToMPEGGBytestream {
             String outputBsPath,
             boolean useIlluminaReadIdentifierEncoder
     ) throws IOException, DataFormatException {
-        String rawReferencePath = fastaReferencePath.replace("fa", "rawReference");
-        String sequenceNamesPath = fastaReferencePath.replace("fa", "sequenceNames");
-        String[] sequenceNames;
-        File rawReferenceFile = new File(rawReferencePath);
-        File sequenceNamesFile = new File(sequenceNamesPath);
-        if(rawReferenceFile.exists() && sequenceNamesFile.exists()) {
-            System.out.println("Raw reference already exists.");
-            sequenceNames = SequenceNamesParser.getSequenceNames(Paths.get(sequenceNamesPath));
-        } else {
-            System.out.println("Starting conversion to raw reference");
-            FastaFileToRawReferenceFile fastaFileToRawReferenceFile = new FastaFileToRawReferenceFile(fastaReferencePath);
-            rawReferencePath = fastaFileToRawReferenceFile.getRawReferencePath().toString();
-            sequenceNames = fastaFileToRawReferenceFile.getSequenceNames();
-            System.out.println("Finished conversion to raw reference");
+        encode(inputBamPath, fastaReferencePath, outputBsPath, useIlluminaReadIdentifierEncoder, 1);
+    }
+
+    /**
+     * <p>
+     * Encodes the BAM file into the MPEG-G bytestream.
+     * </p>
+     *
+     * BGZF blocks of the BAM file are inflated and completed access units
+     * are entropy coded on <code>threads</code> workers, BAM records are
+     * decoded ahead on a separate thread, while records pairing and access
+     * units accumulation remain on the caller thread.
+     * Access units are written in the same order as by the single threaded
+     * encoder, so the output does not depend on the number of threads.
+     *
+     * @param inputBamPath BAM file to encode
+     * @param fastaReferencePath reference the BAM file is aligned to
+     * @param outputBsPath the bytestream file to create
+     * @param useIlluminaReadIdentifierEncoder whether to use Illumina read names tokenizer
+     * @param threads number of threads to encode access units
+     *
+     * @throws IOException
+     * @throws DataFormatException
+     */
+    static void encode(
+            String inputBamPath,
+            String fastaReferencePath,
+            String outputBsPath,
+            boolean useIlluminaReadIdentifierEncoder,
+            int threads
+    ) throws IOException, DataFormatException {
+        encode(inputBamPath, fastaReferencePath, outputBsPath, useIlluminaReadIdentifierEncoder,
+                threads, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * <p>
+     * Encodes the BAM file into the MPEG-G bytestream within the memory budget.
+     * </p>
+     *
+     * Access units are closed before reaching their width once the data
+     * buffered by the encoders of all the classes exceeds the budget.
+     * Closed access units waiting to be entropy coded are bounded by the
+     * same budget, so the encoder buffers at most twice the budget.
+     * Smaller budget produces more (and smaller) access units trading
+     * the compression ratio for the memory.
+     *
+     * @param inputBamPath BAM file to encode
+     * @param fastaReferencePath reference the BAM file is aligned to
+     * @param outputBsPath the bytestream file to create
+     * @param useIlluminaReadIdentifierEncoder whether to use Illumina read names tokenizer
+     * @param threads number of threads to encode access units
+     * @param memoryBudget the memory budget in bytes
+     *
+     * @throws IOException
+     * @throws DataFormatException
+     */
+    static void encode(
+            String inputBamPath,
+            String fastaReferencePath,
+            String outputBsPath,
+            boolean useIlluminaReadIdentifierEncoder,
+            int threads,
+            long memoryBudget
+    ) throws IOException, DataFormatException {
+        try (FileChannel output = FileChannel.open(
+                Paths.get(outputBsPath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            WritableMSBitChannel writer = new WritableMSBitChannel(output);
+
+            DataUnits dataUnits = new DataUnits();
+            DataUnitParameters[] dataUnitParametersPerClass = createDataUnitParameters(dataUnits);
+            for(DataUnitParameters dataUnitParameters : dataUnitParametersPerClass){
+                dataUnitParameters.write(writer);
+            }
+
+            encode(inputBamPath, fastaReferencePath, dataUnits, dataUnitParametersPerClass,
+                    writer, null, useIlluminaReadIdentifierEncoder, threads, memoryBudget, null);
         }
+    }
 
-        System.out.println("Reading raw reference");
-        DataUnitRawReference dataUnitRawReference = DataUnitRawReference.read(
+    /**
+     * <p>
+     * Encodes the BAM file passing the encoded access units to the consumer.
+     * </p>
+     *
+     * The consumer (i.e. the MPEG-G file writer) receives access units in
+     * the bytestream order, so no intermediate bytestream file is needed.
+     *
+     * @param inputBamPath BAM file to encode
+     * @param fastaReferencePath reference the BAM file is aligned to
+     * @param dataUnits data units with the parameters created by
+     *        {@link #createDataUnitParameters(DataUnits)}
+     * @param consumer the consumer of the encoded access units
+     * @param useIlluminaReadIdentifierEncoder whether to use Illumina read names tokenizer
+     * @param threads number of threads to encode access units
+     * @param memoryBudget the memory budget in bytes
+     *
+     * @throws IOException
+     * @throws DataFormatException
+     */
+    static void encode(
+            String inputBamPath,
+            String fastaReferencePath,
+            DataUnits dataUnits,
+            AccessUnitsEncodingPipeline.DataUnitConsumer consumer,
+            boolean useIlluminaReadIdentifierEncoder,
+            int threads,
+            long memoryBudget
+    ) throws IOException, DataFormatException {
+        DataUnitParameters[] dataUnitParametersPerClass = new DataUnitParameters[5];
+        for(byte data_class_i=0; data_class_i<5; data_class_i++){
+            dataUnitParametersPerClass[data_class_i] = dataUnits.getParameter(data_class_i);
+        }
 
-                new ReadableMSBitFileChannel(new FileInputStream(Paths.get(rawReferencePath).toFile()).getChannel()),
-                null
-        );
+        encode(inputBamPath, fastaReferencePath, dataUnits, dataUnitParametersPerClass,
+                null, consumer, useIlluminaReadIdentifierEncoder, threads, memoryBudget, null);
+    }
 
-        SequencesFromDataUnitsRawReference rawReference = new SequencesFromDataUnitsRawReference(
-                dataUnitRawReference,
-                sequenceNames
-        );
+    /**
+     * <p>
+     * Adapts the CABAC descriptors configurations of the data units parameters
+     * to the BAM file.
+     * </p>
+     *
+     * The first access units of the file are built and sampled (nothing is
+     * written) and the descriptors subsequences configurations that code the
+     * samples better than the current ones replace them in the parameters of
+     * every data class (see {@link EncodingParametersTrainer}).
+     * The parameters must be trained before they are written.
+     *
+     * @param inputBamPath BAM file to sample
+     * @param fastaReferencePath reference the BAM file is aligned to
+     * @param dataUnits data units with the parameters created by
+     *        {@link #createDataUnitParameters(DataUnits)}
+     * @param useIlluminaReadIdentifierEncoder whether to use Illumina read names tokenizer
+     * @param accessUnits number of access units to sample
+     * @param sizeTolerance the size increase (i.e. 0.05 for 5%) accepted for
+     *        the faster decoding or 0 to select the smallest configurations
+     * @param threads number of threads to run trial encodings
+     *
+     * @return the number of the trained descriptors configurations
+     *
+     * @throws IOException
+     * @throws DataFormatException
+     */
+    static int train(
+            String inputBamPath,
+            String fastaReferencePath,
+            DataUnits dataUnits,
+            boolean useIlluminaReadIdentifierEncoder,
+            int accessUnits,
+            double sizeTolerance,
+            int threads
+    ) throws IOException, DataFormatException {
+        return train(inputBamPath, fastaReferencePath, dataUnits, useIlluminaReadIdentifierEncoder,
+                accessUnits, sizeTolerance, threads, DEFAULT_MEMORY_BUDGET);
+    }
 
-        FileChannel testOutput = FileChannel.open(
-                Paths.get(outputBsPath), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
-                StandardOpenOption.TRUNCATE_EXISTING
-        );
-        WritableMSBitChannel writer = new WritableMSBitChannel(testOutput);
+    /**
+     * <p>
+     * Adapts the CABAC descriptors configurations of the data units parameters
+     * to the BAM file sampling the access units built within the memory budget.
+     * </p>
+     *
+     * @param inputBamPath BAM file to sample
+     * @param fastaReferencePath reference the BAM file is aligned to
+     * @param dataUnits data units with the parameters created by
+     *        {@link #createDataUnitParameters(DataUnits)}
+     * @param useIlluminaReadIdentifierEncoder whether to use Illumina read names tokenizer
+     * @param accessUnits number of access units to sample
+     * @param sizeTolerance the size increase (i.e. 0.05 for 5%) accepted for
+     *        the faster decoding or 0 to select the smallest configurations
+     * @param threads number of threads to run trial encodings
+     * @param memoryBudget the memory budget in bytes
+     *
+     * @return the number of the trained descriptors configurations
+     *
+     * @throws IOException
+     * @throws DataFormatException
+     */
+    static int train(
+            String inputBamPath,
+            String fastaReferencePath,
+            DataUnits dataUnits,
+            boolean useIlluminaReadIdentifierEncoder,
+            int accessUnits,
+            double sizeTolerance,
+            int threads,
+            long memoryBudget
+    ) throws IOException, DataFormatException {
+        DataUnitParameters[] dataUnitParametersPerClass = new DataUnitParameters[5];
+        for(byte data_class_i=0; data_class_i<5; data_class_i++){
+            dataUnitParametersPerClass[data_class_i] = dataUnits.getParameter(data_class_i);
+        }
 
+        EncodingParametersTrainer trainer = new EncodingParametersTrainer(accessUnits);
+
+        final long discardedRecords = numDiscardedRecords;
+        try {
+            encode(inputBamPath, fastaReferencePath, dataUnits, dataUnitParametersPerClass,
+                    null, null, useIlluminaReadIdentifierEncoder, threads, memoryBudget, trainer);
+        } finally {
+            numDiscardedRecords = discardedRecords;
+        }
+
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            int trained = 0;
+            for(byte data_class_i=0; data_class_i<5; data_class_i++){
+                trained += trainer.train(
+                        dataUnitParametersPerClass[data_class_i].getEncodingParameters(),
+                        DATA_CLASS.getDataClass((byte) (data_class_i+1)),
+                        sizeTolerance,
+                        pool);
+            }
+            return trained;
+        } finally {
+            if(pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Creates the parameters of the mapped data classes (P, N, M, I and HM)
+     * used by the encoder and adds them to the data units.
+     *
+     * @param dataUnits data units to add the parameters to
+     *
+     * @return the parameters indexed by the data class ID - 1
+     *
+     * @throws IOException
+     */
+    static DataUnitParameters[] createDataUnitParameters(DataUnits dataUnits) throws IOException {
         byte number_template_segments = 2;
 
-        DataUnits dataUnits = new DataUnits();
         DataUnitParameters[] dataUnitParametersPerClass = new DataUnitParameters[5];
         for(byte data_class_i=0; data_class_i<5; data_class_i++){
             EncodingParameters encodingParameters = createEncodingParameters(
@@ -431,98 +664,194 @@ public class BAMToMPEGGBytestream {
                     dataUnits
             );
             dataUnits.addDataUnitParameters(dataUnitParametersPerClass[data_class_i]);
+        }
+        return dataUnitParametersPerClass;
+    }
 
-            dataUnitParametersPerClass[data_class_i].write(writer);
+    private static void encode(
+            String inputBamPath,
+            String fastaReferencePath,
+            DataUnits dataUnits,
+            DataUnitParameters[] dataUnitParametersPerClass,
+            MPEGWriter writer,
+            AccessUnitsEncodingPipeline.DataUnitConsumer consumer,
+            boolean useIlluminaReadIdentifierEncoder,
+            int threads,
+            long memoryBudget,
+            EncodingParametersTrainer trainer
+    ) throws IOException, DataFormatException {
+        String rawReferencePath = fastaReferencePath.replace("fa", "rawReference");
+        String sequenceNamesPath = fastaReferencePath.replace("fa", "sequenceNames");
+        String[] sequenceNames;
+        AbstractSequencesSource rawReference;
+        File rawReferenceFile = new File(rawReferencePath);
+        File sequenceNamesFile = new File(sequenceNamesPath);
+        if(rawReferenceFile.exists() && sequenceNamesFile.exists()) {
+            System.out.println("Raw reference already exists.");
+            sequenceNames = SequenceNamesParser.getSequenceNames(Paths.get(sequenceNamesPath));
+            rawReference = MappedSequencesSource.open(
+                    Paths.get(rawReferencePath),
+                    sequenceNames
+            );
+        } else {
+            PackedSequencesSource packedReference = PackedReferenceCache.getDefault().open(
+                    Paths.get(fastaReferencePath)
+            );
+            sequenceNames = packedReference.getSequencesNames();
+            rawReference = packedReference;
         }
-        System.out.println("Encoding parameters read");
 
 
-        BAMFileReader bamFileReader = new BAMFileReader(Paths.get(inputBamPath));
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            BAMFileReader bamFileReader = pool != null ?
+                    new BAMFileReader(Paths.get(inputBamPath), null, pool, InflaterBackend.JDK) :
+                    new BAMFileReader(Paths.get(inputBamPath));
+
+            long auWidth = 6000000;
+
+            AccessUnitsEncodingPipeline pipeline;
+            Iterator<BAMRecord> bamIterator;
+            if(trainer != null) {
+                pipeline = new SamplingPipeline(trainer);
+                bamIterator = threads > 1 ?
+                        new ReadAheadIterator<>(bamFileReader.iterator()) :
+                        bamFileReader.iterator();
+            } else if(threads > 1) {
+                pipeline = consumer != null ?
+                        new AccessUnitsEncodingPipeline(consumer, pool, 4 * threads, memoryBudget) :
+                        new AccessUnitsEncodingPipeline(writer, pool, 4 * threads, memoryBudget);
+                bamIterator = new ReadAheadIterator<>(bamFileReader.iterator());
+            } else {
+                pipeline = consumer != null ?
+                        new AccessUnitsEncodingPipeline(consumer, null, 1, Long.MAX_VALUE) :
+                        new AccessUnitsEncodingPipeline(writer);
+                bamIterator = bamFileReader.iterator();
+            }
 
-        long auWidth = 6000000;
+            // closed in the reverse order: the read-ahead thread is stopped
+            // before the reader, the pending access units are written at last
+            try (BAMFileReader reader = bamFileReader;
+                 AccessUnitsEncodingPipeline encodingPipeline = pipeline;
+                 Closeable readAhead = bamIterator instanceof ReadAheadIterator ?
+                         (ReadAheadIterator<BAMRecord>)bamIterator : null) {
+                int current_sequence_i = -1;
+                long currentPosition = -1;
+                short threshold = 5000;
+                long numberReads = 0;
+
+                AbstractAccessUnitEncoder[] accessUnitEncoders = null;
+                AlignmentBatch batch = new AlignmentBatch();
+                LinkedHashMap<String, RecordConstructor> alignments = new LinkedHashMap<>();
+                List<BAMRecord> previouslyReadUnmappedFromHalfMapped = new ArrayList<>();
+                while (bamIterator.hasNext() && (trainer == null || !trainer.isComplete())){
+                    ListIterator<BAMRecord> unmappedRecords_iter = previouslyReadUnmappedFromHalfMapped.listIterator();
+                    while(unmappedRecords_iter.hasNext()){
+                        BAMRecord unmappedRecord = unmappedRecords_iter.next();
+                        if(alignments.get(unmappedRecord.getQName()) != null){
+                            alignments.get(unmappedRecord.getQName()).addSegment(unmappedRecord);
+                            unmappedRecords_iter.remove();
+                        }
+                    }
 
-        Iterator<BAMRecord> bamIterator = bamFileReader.iterator();
-        int current_sequence_i = -1;
-        long currentPosition = -1;
-        short threshold = 5000;
-        long numberReads = 0;
+                    BAMRecord bamRecord = bamIterator.next();
+                    if(bamRecord.isUnmappedSegment()) {
+                        if (bamRecord.isNextSegmentUnmapped()) {
+                            continue;
+                        } else {
+                            if (bamRecord.isUnmappedSegment()) {
+                                previouslyReadUnmappedFromHalfMapped.add(bamRecord);
+                                continue;
+                            }
+                        }
+                    }
+                    String readName = bamRecord.getQName();
+
+                    if (alignments.containsKey(readName)) {
+                        alignments.get(readName).addSegment(bamRecord);
+                    } else {
+                        RecordConstructor constructor = new RecordConstructor(
+                                numberReads,
+                                bamRecord.getQName(),
+                                "", //todo add getter for group name
+                                bamRecord,
+                                threshold
+                        );
+                        numberReads++;
+
+                        alignments.put(readName, constructor);
+                    }
 
-        AbstractAccessUnitEncoder[] accessUnitEncoders = null;
-        LinkedHashMap<String, RecordConstructor> alignments = new LinkedHashMap<>();
-        List<BAMRecord> previouslyReadUnmappedFromHalfMapped = new ArrayList<>();
-        while (bamIterator.hasNext()){
-            ListIterator<BAMRecord> unmappedRecords_iter = previouslyReadUnmappedFromHalfMapped.listIterator();
-            while(unmappedRecords_iter.hasNext()){
-                BAMRecord unmappedRecord = unmappedRecords_iter.next();
-                if(alignments.get(unmappedRecord.getQName()) != null){
-                    alignments.get(unmappedRecord.getQName()).addSegment(unmappedRecord);
-                    unmappedRecords_iter.remove();
-                }
-            }
+                    SequenceIdentifier sequenceId = rawReference.getSequenceIdentifier(
+                            bamFileReader.getBAMHeader().getReference(bamRecord.getRefID()).name
+                    );
 
-            BAMRecord bamRecord = bamIterator.next();
-            if(bamRecord.isUnmappedSegment()) {
-                if (bamRecord.isNextSegmentUnmapped()) {
-                    continue;
-                } else {
-                    if (bamRecord.isUnmappedSegment()) {
-                        previouslyReadUnmappedFromHalfMapped.add(bamRecord);
-                        continue;
-                    }
+                    accessUnitEncoders =  writeCompletedRecords(
+                        accessUnitEncoders,
+                        alignments,
+                        pipeline,
+                        dataUnits,
+                        threshold,
+                        rawReference,
+                        auWidth,
+                        dataUnitParametersPerClass,
+                        useIlluminaReadIdentifierEncoder,
+                        bamFileReader.getBAMHeader(),
+                        sequenceId,
+                        bamRecord.getPositionStart() - 1,
+                        memoryBudget,
+                        batch
+                    );
+                }
+                if(trainer != null && trainer.isComplete()){
+                    // the sampling stopped in the middle of the file: the access units
+                    // being built are incomplete and the pending templates may never be
+                    // completed, so both are dropped
+                    alignments.clear();
+                }else{
+                    writeAndFinish(
+                            accessUnitEncoders,
+                            alignments,
+                            pipeline,
+                            dataUnits,
+                            threshold,
+                            rawReference,
+                            auWidth,
+                            dataUnitParametersPerClass,
+                            useIlluminaReadIdentifierEncoder,
+                            bamFileReader.getBAMHeader(),
+                            batch
+                    );
                 }
             }
-            String readName = bamRecord.getQName();
-
-            if (alignments.containsKey(readName)) {
-                alignments.get(readName).addSegment(bamRecord);
-            } else {
-                RecordConstructor constructor = new RecordConstructor(
-                        numberReads,
-                        bamRecord.getQName(),
-                        "", //todo add getter for group name
-                        bamRecord,
-                        threshold
-                );
-                numberReads++;
-
-                alignments.put(readName, constructor);
+        } finally {
+            if(pool != null) {
+                pool.shutdown();
             }
-
-            SequenceIdentifier sequenceId = rawReference.getSequenceIdentifier(
-                    bamFileReader.getBAMHeader().getReference(bamRecord.getRefID()).name
-            );
-
-            accessUnitEncoders =  writeCompletedRecords(
-                accessUnitEncoders,
-                alignments,
-                writer,
-                dataUnits,
-                threshold,
-                rawReference,
-                auWidth,
-                dataUnitParametersPerClass,
-                useIlluminaReadIdentifierEncoder,
-                bamFileReader.getBAMHeader(),
-                sequenceId,
-                bamRecord.getPositionStart() - 1
-            );
         }
-        writeAndFinish(
-                accessUnitEncoders,
-                alignments,
-                writer,
-                dataUnits,
-                threshold,
-                rawReference,
-                auWidth,
-                dataUnitParametersPerClass,
-                useIlluminaReadIdentifierEncoder,
-                bamFileReader.getBAMHeader()
-        );
-        testOutput.close();
     }
 
     public static long getNumDiscardedRecords() {
         return numDiscardedRecords;
     }
+
+    /**
+     * The pipeline that samples completed access units instead of encoding them.
+     */
+    private static class SamplingPipeline extends AccessUnitsEncodingPipeline {
+
+        private final EncodingParametersTrainer trainer;
+
+        SamplingPipeline(final EncodingParametersTrainer trainer) {
+            super(dataUnit -> {}, null, 1, Long.MAX_VALUE);
+            this.trainer = trainer;
+        }
+
+        @Override
+        public void submit(
+                final AbstractAccessUnitEncoder accessUnitEncoder,
+                final DataUnitParameters parameters) {
+            trainer.sample(accessUnitEncoder);
+        }
+    }
 }
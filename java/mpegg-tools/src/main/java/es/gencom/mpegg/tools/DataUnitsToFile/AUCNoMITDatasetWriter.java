@@ -0,0 +1,298 @@
+package es.gencom.mpegg.tools.DataUnitsToFile;
+
+import es.gencom.mpegg.coder.dataunits.DATAUNIT_TYPE_ID;
+import es.gencom.mpegg.coder.dataunits.DataUnitAccessUnit;
+import es.gencom.mpegg.coder.dataunits.DataUnitParameters;
+import es.gencom.mpegg.coder.dataunits.DataUnits;
+import es.gencom.mpegg.format.*;
+import es.gencom.mpegg.io.MSBitOutputArray;
+import es.gencom.mpegg.io.Payload;
+import es.gencom.mpegg.io.WritableMSBitChannel;
+import es.gencom.mpegg.tools.AccessUnitsEncodingPipeline;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Writes the MPEG-G file with a single dataset (access unit containers,
+ * no master index table) as the access units are produced by the encoder.
+ * </p>
+ *
+ * Access unit containers are written to the file straight away, so neither
+ * the intermediate bytestream nor the access units are kept. The dataset
+ * header and the sizes of the dataset and dataset group containers depend
+ * on all the access units and are written over the placeholders once the
+ * writer is closed. The dataset header lists all the reference sequences,
+ * so its size does not depend on the access units.
+ * Unmapped (class U) access units are not supported.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class AUCNoMITDatasetWriter implements AccessUnitsEncodingPipeline.DataUnitConsumer, Closeable {
+
+    private final FileChannel channel;
+    private final WritableMSBitChannel writer;
+    private final DataUnits dataUnits;
+    private final DatasetContainer datasetContainer;
+    private final DatasetHeader datasetHeader;
+
+    private final long datasetGroupContainerPosition;
+    private final long datasetContainerPosition;
+    private final long datasetHeaderPosition;
+    private final long datasetHeaderSize;
+    private final int default_threshold;
+
+    private final int[][] allocatedMappedAuIds;
+    private final long[] maxAuIds;
+
+    private final AccessUnitsSummary summary;
+
+    /**
+     * Creates the file and writes everything that precedes the access units.
+     *
+     * @param path the MPEG-G file to create
+     * @param fileHeader the file header
+     * @param datasetGroupContainer the dataset group with the reference the
+     *        access units refer to, the dataset container is added to it
+     * @param datasetId the identifier of the dataset to create
+     * @param dataUnits data units with the parameters of the access units
+     * @param referenceId the identifier of the reference in the dataset group
+     * @param default_threshold the threshold for all the sequences
+     * @param alphabet the alphabet of the dataset
+     *
+     * @throws IOException
+     */
+    public AUCNoMITDatasetWriter(
+            final Path path,
+            final MPEGFileHeader fileHeader,
+            final DatasetGroupContainer datasetGroupContainer,
+            final int datasetId,
+            final DataUnits dataUnits,
+            final short referenceId,
+            final int default_threshold,
+            final Alphabet alphabet) throws IOException {
+
+        this.dataUnits = dataUnits;
+        this.default_threshold = default_threshold;
+
+        final int numberSequences = datasetGroupContainer.getReference(referenceId).getNumberSequences();
+        final SequenceIdentifier[] seqId = new SequenceIdentifier[numberSequences];
+        for(int sequence_i = 0; sequence_i < numberSequences; sequence_i++){
+            seqId[sequence_i] = new SequenceIdentifier(sequence_i);
+        }
+        final int[] thresholds = new int[numberSequences];
+        Arrays.fill(thresholds, default_threshold);
+
+        final DataUnitParameters parameters = dataUnits.getParameters().iterator().next();
+        final DatasetType dataset_type = parameters.getDatasetType();
+        final boolean pos_40_bits = parameters.isPosSize40();
+
+        datasetHeader = new DatasetHeader(
+                datasetGroupContainer.getDatasetGroupHeader().getDatasetGroupId(),
+                datasetId,
+                new byte[]{'1','9','0','0'},
+                parameters.isMultiple_alignments_flag(),
+                dataset_type == DatasetType.REFERENCE || pos_40_bits,
+                true,
+                pos_40_bits,
+                true,
+                false,
+                true,
+                true,
+                referenceId,
+                seqId,
+                new long[numberSequences],
+                dataset_type,
+                new DATA_CLASS[0],
+                new byte[0][],
+                alphabet,
+                0,
+                0,
+                0,
+                (byte)0,
+                true,
+                (short)32,
+                thresholds
+        );
+
+        datasetContainer = new DatasetContainer();
+        datasetContainer.setDatasetHeader(datasetHeader);
+        for(DataUnitParameters dataUnitParameters : dataUnits.getParameters()){
+            final MSBitOutputArray bufferParameter = new MSBitOutputArray();
+            dataUnitParameters.getEncodingParameters().write(bufferParameter);
+            datasetContainer.addDatasetParameters(new DatasetParameterSet(
+                    datasetGroupContainer.getDatasetGroupHeader().getDatasetGroupId(),
+                    (short)datasetId,
+                    dataUnitParameters.getParent_parameter_set_ID(),
+                    dataUnitParameters.getParameter_set_ID(),
+                    ByteBuffer.wrap(bufferParameter.getArray())
+            ));
+        }
+        datasetGroupContainer.addDatasetContainer(datasetContainer);
+
+        allocatedMappedAuIds = new int[numberSequences][5];
+        maxAuIds = new long[numberSequences];
+        Arrays.fill(maxAuIds, -1);
+
+        summary = new AccessUnitsSummary(numberSequences);
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writer = new WritableMSBitChannel(channel);
+        try {
+            fileHeader.writeWithHeader(writer);
+
+            datasetGroupContainerPosition = position();
+            new GenInfo.Header(DatasetGroupContainer.KEY, 0).write(writer);
+            datasetGroupContainer.writeHeaders(writer);
+
+            datasetContainerPosition = position();
+            new GenInfo.Header(DatasetContainer.KEY, 0).write(writer);
+
+            datasetHeaderPosition = position();
+            datasetContainer.writeHeaders(writer);
+            datasetHeaderSize = datasetHeader.sizeWithHeader();
+        } catch (InvalidMPEGStructure ex) {
+            channel.close();
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public void accept(final MSBitOutputArray dataUnit) throws IOException {
+        final ByteBuffer buf = dataUnit.toByteBuffer();
+        buf.limit((int)((dataUnit.getLength() + 7) >>> 3));
+
+        final Payload payload = new Payload(buf);
+        if(DATAUNIT_TYPE_ID.read(payload) != DATAUNIT_TYPE_ID.AU){
+            throw new IOException("access unit data unit expected");
+        }
+        write(DataUnitAccessUnit.read(payload, dataUnits));
+    }
+
+    /**
+     * Writes the access unit container of the access unit.
+     *
+     * @param accessUnit the access unit to write
+     *
+     * @throws IOException
+     */
+    public void write(final DataUnitAccessUnit accessUnit) throws IOException {
+        final DATA_CLASS dataClass = accessUnit.getAUType();
+        if(dataClass == DATA_CLASS.CLASS_U){
+            throw new IllegalArgumentException("unmapped access units are not supported");
+        }
+
+        final int sequence = accessUnit.getSequenceId().getSequenceIdentifier();
+        final int auId = allocatedMappedAuIds[sequence][dataClass.ID - 1]++;
+        maxAuIds[sequence] = Long.max(maxAuIds[sequence], accessUnit.getHeader().getAccess_unit_ID());
+
+        summary.add(sequence, accessUnit);
+
+        try {
+            DataUnitsToAUCNoMITDataset.createAccessUnitContainer(
+                    datasetContainer, datasetHeader, auId, accessUnit).writeWithHeader(writer);
+        } catch (InvalidMPEGStructure ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Writes the final dataset header and the containers sizes and closes the file.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            final long end = position();
+
+            final DatasetHeader header = createDatasetHeader();
+            if(header.sizeWithHeader() != datasetHeaderSize){
+                throw new IOException("dataset header size changed");
+            }
+            datasetContainer.setDatasetHeader(header);
+
+            final MSBitOutputArray output = new MSBitOutputArray();
+            header.writeWithHeader(output);
+            output.flush();
+            write(output.toByteBuffer(), datasetHeaderPosition, datasetHeaderSize);
+
+            write(new GenInfo.Header(DatasetContainer.KEY, end - datasetContainerPosition),
+                  datasetContainerPosition);
+            write(new GenInfo.Header(DatasetGroupContainer.KEY, end - datasetGroupContainerPosition),
+                  datasetGroupContainerPosition);
+        } catch (InvalidMPEGStructure ex) {
+            throw new IOException(ex);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private DatasetHeader createDatasetHeader() {
+        final long[] seq_blocks = new long[maxAuIds.length];
+        for(int sequence_i = 0; sequence_i < seq_blocks.length; sequence_i++){
+            seq_blocks[sequence_i] = maxAuIds[sequence_i] + 1;
+        }
+
+        final DATA_CLASS[] dataClasses = summary.getDataClasses();
+        final byte[][] descriptorIdentifiers = summary.getDescriptorIdentifiers(dataClasses);
+
+        final int[] thresholds = new int[seq_blocks.length];
+        Arrays.fill(thresholds, default_threshold);
+
+        return new DatasetHeader(
+                datasetHeader.getDatasetGroupId(),
+                datasetHeader.getDatasetId(),
+                datasetHeader.getVersion(),
+                datasetHeader.isMultipleAlignment(),
+                datasetHeader.isByteOffsetSize(),
+                summary.inferNonOverlapping(),
+                datasetHeader.isPos_40_bits(),
+                true,
+                false,
+                summary.inferClassContiguousFlag(),
+                true,
+                datasetHeader.getReferenceId(),
+                datasetHeader.getSeqIds(),
+                seq_blocks,
+                datasetHeader.getDatasetType(),
+                dataClasses,
+                descriptorIdentifiers,
+                datasetHeader.getAlphabetId(),
+                0,
+                0,
+                0,
+                (byte)0,
+                true,
+                (short)32,
+                thresholds
+        );
+    }
+
+    private long position() throws IOException {
+        writer.flush();
+        return channel.position();
+    }
+
+    private void write(final GenInfo.Header header, final long position) throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate(GenInfo.Header.SIZE).order(GenInfo.BYTE_ORDER);
+        header.write(buf);
+        buf.rewind();
+        write(buf, position, GenInfo.Header.SIZE);
+    }
+
+    private void write(final ByteBuffer buf, long position, final long size) throws IOException {
+        buf.limit((int)size);
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+}
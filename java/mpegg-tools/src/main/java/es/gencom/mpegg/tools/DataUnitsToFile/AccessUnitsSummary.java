@@ -0,0 +1,119 @@
+package es.gencom.mpegg.tools.DataUnitsToFile;
+
+import es.gencom.mpegg.coder.dataunits.DataUnitAccessUnit;
+import es.gencom.mpegg.format.DATA_CLASS;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Collects the dataset header flags from the access units as they are written.
+ * </p>
+ *
+ * The flags are the same {@link AbstractDataUnitsToDataset} infers
+ * from all the data units at once.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+class AccessUnitsSummary {
+
+    private final boolean[][] hasData;
+    private final List<long[]>[] ranges;
+    private boolean overlapping;
+    private boolean classContiguous;
+    private int priorSequence;
+    private DATA_CLASS priorClass;
+    private final boolean[] hasClass;
+    private final boolean[][] hasDescriptor;
+
+    AccessUnitsSummary(final int numberSequences) {
+        hasData = new boolean[numberSequences][5];
+        ranges = new List[numberSequences];
+        classContiguous = true;
+        priorSequence = -1;
+        hasClass = new boolean[6];
+        hasDescriptor = new boolean[6][18];
+    }
+
+    /**
+     * @param sequence the index of the reference sequence of the access unit
+     * @param accessUnit the aligned access unit
+     */
+    void add(final int sequence, final DataUnitAccessUnit accessUnit) {
+        final DATA_CLASS dataClass = accessUnit.getAUType();
+
+        if(hasData[sequence][dataClass.ID - 1]){
+            if(priorSequence == sequence && priorClass != dataClass){
+                classContiguous = false;
+            }
+        } else {
+            hasData[sequence][dataClass.ID - 1] = true;
+        }
+        priorClass = dataClass;
+        priorSequence = sequence;
+
+        if(!overlapping){
+            final long start = accessUnit.getStart();
+            final long end = accessUnit.getEnd();
+            if(ranges[sequence] == null){
+                ranges[sequence] = new ArrayList<>();
+            }
+            for(long[] range : ranges[sequence]){
+                if(start < range[1] && range[0] < end){
+                    overlapping = true;
+                    break;
+                }
+            }
+            ranges[sequence].add(new long[]{start, end});
+        }
+
+        hasClass[dataClass.ID - 1] = true;
+        for(DataUnitAccessUnit.Block block : accessUnit.getBlocks()){
+            hasDescriptor[dataClass.ID - 1][block.getDescriptorId()] = true;
+        }
+    }
+
+    /**
+     * @return the value of the non_overlapping_au_range flag as it is
+     *         inferred by {@link AbstractDataUnitsToDataset}
+     */
+    boolean inferNonOverlapping() {
+        return overlapping || getDataClasses().length == 0;
+    }
+
+    boolean inferClassContiguousFlag() {
+        return classContiguous;
+    }
+
+    DATA_CLASS[] getDataClasses() {
+        int numberClasses = 0;
+        for(boolean has : hasClass){
+            if(has) numberClasses++;
+        }
+        final DATA_CLASS[] dataClasses = new DATA_CLASS[numberClasses];
+        for(int class_i = 0, n = 0; class_i < hasClass.length; class_i++){
+            if(hasClass[class_i]){
+                dataClasses[n++] = DATA_CLASS.getDataClass((byte) (class_i + 1));
+            }
+        }
+        return dataClasses;
+    }
+
+    byte[][] getDescriptorIdentifiers(final DATA_CLASS[] dataClasses) {
+        final byte[][] descriptorIdentifiers = new byte[dataClasses.length][];
+        for(int class_i = 0; class_i < dataClasses.length; class_i++){
+            final byte[] descriptors = new byte[18];
+            int numberDescriptors = 0;
+            for(byte descriptor_i = 0; descriptor_i < 18; descriptor_i++){
+                if(hasDescriptor[dataClasses[class_i].ID - 1][descriptor_i]){
+                    descriptors[numberDescriptors++] = descriptor_i;
+                }
+            }
+            descriptorIdentifiers[class_i] = Arrays.copyOf(descriptors, numberDescriptors);
+        }
+        return descriptorIdentifiers;
+    }
+}
@@ -0,0 +1,563 @@
+package es.gencom.mpegg.tools.DataUnitsToFile;
+
+import es.gencom.mpegg.coder.dataunits.DATAUNIT_TYPE_ID;
+import es.gencom.mpegg.coder.dataunits.DataUnitAccessUnit;
+import es.gencom.mpegg.coder.dataunits.DataUnitParameters;
+import es.gencom.mpegg.coder.dataunits.DataUnits;
+import es.gencom.mpegg.format.*;
+import es.gencom.mpegg.format.signatures.Signature;
+import es.gencom.mpegg.io.MSBitOutputArray;
+import es.gencom.mpegg.io.Payload;
+import es.gencom.mpegg.io.WritableMSBitChannel;
+import es.gencom.mpegg.tools.AccessUnitsEncodingPipeline;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ * Writes the MPEG-G file with a single descriptor stream contiguous dataset
+ * (no block headers, master index table) as the access units are produced
+ * by the encoder.
+ * </p>
+ *
+ * Blocks of every descriptor are appended to the descriptor's own spill file
+ * next to the MPEG-G file as the access units come. The region of the block
+ * is reserved in order, so the blocks may be written in parallel.
+ * Once the writer is closed, the master index table and access units headers
+ * are written and the spill files are transferred into the descriptor streams,
+ * so no blocks are kept in memory.
+ * Unmapped (class U) access units are not supported.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class DSCDatasetWriter implements AccessUnitsEncodingPipeline.DataUnitConsumer, Closeable {
+
+    // maximum number of blocks waiting to be written to the spill files
+    private final static int WINDOW = 256;
+
+    private final Path path;
+    private final MPEGFileHeader fileHeader;
+    private final DatasetGroupContainer datasetGroupContainer;
+    private final int datasetId;
+    private final DataUnits dataUnits;
+    private final short referenceId;
+    private final int default_threshold;
+    private final Alphabet alphabet;
+    private final ExecutorService executor;
+
+    private final Path spillDirectory;
+    private final DescriptorSpill[][] spills;
+    private final ArrayDeque<Future<Void>> pendingWrites;
+
+    private final List<AccessUnitEntry> accessUnits;
+    private final int[][] allocatedMappedAuIds;
+    private final AccessUnitsSummary summary;
+
+    /**
+     * Creates the writer.
+     * The MPEG-G file is only written when the writer is closed.
+     *
+     * @param path the MPEG-G file to create
+     * @param fileHeader the file header
+     * @param datasetGroupContainer the dataset group with the reference the
+     *        access units refer to, the dataset container is added to it
+     * @param datasetId the identifier of the dataset to create
+     * @param dataUnits data units with the parameters of the access units
+     * @param referenceId the identifier of the reference in the dataset group
+     * @param default_threshold the threshold for all the sequences
+     * @param alphabet the alphabet of the dataset
+     * @param executor the executor to write the blocks on or null to write
+     *        them on the caller thread. The executor is not shut down.
+     *
+     * @throws IOException
+     */
+    public DSCDatasetWriter(
+            final Path path,
+            final MPEGFileHeader fileHeader,
+            final DatasetGroupContainer datasetGroupContainer,
+            final int datasetId,
+            final DataUnits dataUnits,
+            final short referenceId,
+            final int default_threshold,
+            final Alphabet alphabet,
+            final ExecutorService executor) throws IOException {
+
+        this.path = path;
+        this.fileHeader = fileHeader;
+        this.datasetGroupContainer = datasetGroupContainer;
+        this.datasetId = datasetId;
+        this.dataUnits = dataUnits;
+        this.referenceId = referenceId;
+        this.default_threshold = default_threshold;
+        this.alphabet = alphabet;
+        this.executor = executor;
+
+        final int numberSequences = datasetGroupContainer.getReference(referenceId).getNumberSequences();
+
+        // the same file system allows transferring the spill files without copying
+        spillDirectory = Files.createTempDirectory(path.toAbsolutePath().getParent(), "dscn");
+        spills = new DescriptorSpill[5][18];
+        pendingWrites = new ArrayDeque<>();
+
+        accessUnits = new ArrayList<>();
+        allocatedMappedAuIds = new int[numberSequences][5];
+        summary = new AccessUnitsSummary(numberSequences);
+    }
+
+    @Override
+    public void accept(final MSBitOutputArray dataUnit) throws IOException {
+        final ByteBuffer buf = dataUnit.toByteBuffer();
+        buf.limit((int)((dataUnit.getLength() + 7) >>> 3));
+
+        final Payload payload = new Payload(buf);
+        if(DATAUNIT_TYPE_ID.read(payload) != DATAUNIT_TYPE_ID.AU){
+            throw new IOException("access unit data unit expected");
+        }
+        write(DataUnitAccessUnit.read(payload, dataUnits));
+    }
+
+    /**
+     * Appends the blocks of the access unit to the descriptor streams.
+     *
+     * @param accessUnit the access unit to write
+     *
+     * @throws IOException
+     */
+    public void write(final DataUnitAccessUnit accessUnit) throws IOException {
+        final DATA_CLASS dataClass = accessUnit.getAUType();
+        if(dataClass == DATA_CLASS.CLASS_U){
+            throw new IllegalArgumentException("unmapped access units are not supported");
+        }
+
+        final int sequence = accessUnit.getSequenceId().getSequenceIdentifier();
+        final AccessUnitEntry entry = new AccessUnitEntry(
+                sequence,
+                allocatedMappedAuIds[sequence][dataClass.ID - 1]++,
+                accessUnit.getHeader());
+
+        summary.add(sequence, accessUnit);
+
+        for(DataUnitAccessUnit.Block block : accessUnit.getBlocks()){
+            final byte descriptorId = block.getDescriptorId();
+            DescriptorSpill spill = spills[dataClass.ID - 1][descriptorId];
+            if(spill == null){
+                spill = spills[dataClass.ID - 1][descriptorId] = new DescriptorSpill(
+                        Files.createTempFile(spillDirectory, dataClass.name(), "_" + descriptorId));
+            }
+
+            final Payload payload = block.getDescriptorSpecificData();
+            payload.rewind();
+            final long position = spill.size;
+            spill.size += payload.size();
+            spill.numberBlocks++;
+            entry.block_offsets[descriptorId] = position;
+
+            write(spill.channel, payload.getByteBuffers(), position);
+        }
+
+        accessUnits.add(entry);
+    }
+
+    private void write(final FileChannel channel, final ByteBuffer[] buffers, final long position)
+            throws IOException {
+        if(executor == null) {
+            write(channel, position, buffers);
+            return;
+        }
+
+        pendingWrites.add(executor.submit(() -> write(channel, position, buffers)));
+        while(pendingWrites.size() > WINDOW) {
+            join(pendingWrites.poll());
+        }
+    }
+
+    private static Void write(final FileChannel channel, long position, final ByteBuffer[] buffers)
+            throws IOException {
+        for(ByteBuffer buffer : buffers) {
+            final ByteBuffer buf = buffer.duplicate();
+            while (buf.hasRemaining()) {
+                position += channel.write(buf, position);
+            }
+        }
+        return null;
+    }
+
+    private static void join(final Future<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Writes the MPEG-G file and removes the spill files.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            while(!pendingWrites.isEmpty()) {
+                join(pendingWrites.poll());
+            }
+
+            DatasetContainer datasetContainer = createDatasetContainer(false);
+            if(datasetContainer == null) {
+                // offsets do not fit into 32 bits
+                datasetContainer = createDatasetContainer(true);
+            }
+            datasetGroupContainer.addDatasetContainer(datasetContainer);
+
+            write(datasetContainer);
+        } catch (InvalidMPEGStructure ex) {
+            throw new IOException(ex);
+        } finally {
+            for(Future<Void> future : pendingWrites) {
+                future.cancel(true);
+            }
+            pendingWrites.clear();
+            for(DescriptorSpill[] spillsInClass : spills) {
+                for(DescriptorSpill spill : spillsInClass) {
+                    if(spill != null) {
+                        spill.close();
+                    }
+                }
+            }
+            Files.deleteIfExists(spillDirectory);
+        }
+    }
+
+    /**
+     * Creates the dataset container with the master index table and the
+     * headers of the access units. Descriptor streams are not added.
+     *
+     * @param byteOffsetSize whether to use 64 bits byte offsets
+     *
+     * @return the dataset container or null if the 32 bits offsets overflow
+     */
+    private DatasetContainer createDatasetContainer(final boolean byteOffsetSize) throws IOException {
+        final DataUnitParameters parameters = dataUnits.getParameters().iterator().next();
+
+        final int numberSequences = allocatedMappedAuIds.length;
+        final int[] sequenceIndices = new int[numberSequences];
+        final List<SequenceIdentifier> seqIds = new ArrayList<>();
+        final List<Long> seq_blocks = new ArrayList<>();
+        for(int sequence_i = 0; sequence_i < numberSequences; sequence_i++){
+            final int blocks = Arrays.stream(allocatedMappedAuIds[sequence_i]).max().getAsInt();
+            if(blocks > 0) {
+                sequenceIndices[sequence_i] = seqIds.size();
+                seqIds.add(new SequenceIdentifier(sequence_i));
+                seq_blocks.add((long)blocks);
+            }
+        }
+
+        final int seq_count = seqIds.size();
+
+        final DATA_CLASS[] dataClasses = summary.getDataClasses();
+        final byte[][] descriptorIdentifiers = summary.getDescriptorIdentifiers(dataClasses);
+
+        final int[] thresholds = new int[seq_count];
+        Arrays.fill(thresholds, default_threshold);
+
+        final DatasetType dataset_type = parameters.getDatasetType();
+        final boolean pos_40_bits = parameters.isPosSize40();
+
+        final DatasetHeader datasetHeader = new DatasetHeader(
+                datasetGroupContainer.getDatasetGroupHeader().getDatasetGroupId(),
+                datasetId,
+                new byte[]{'1','9','0','0'},
+                parameters.isMultiple_alignments_flag(),
+                dataset_type == DatasetType.REFERENCE || pos_40_bits || byteOffsetSize,
+                summary.inferNonOverlapping(),
+                pos_40_bits,
+                false,
+                true,
+                summary.inferClassContiguousFlag(),
+                false,
+                referenceId,
+                seqIds.toArray(new SequenceIdentifier[seq_count]),
+                seq_blocks.stream().mapToLong(Long::longValue).toArray(),
+                dataset_type,
+                dataClasses,
+                descriptorIdentifiers,
+                alphabet,
+                0,
+                0,
+                0,
+                (byte)0,
+                true,
+                (short)0,
+                thresholds
+        );
+
+        final DatasetContainer datasetContainer = new DatasetContainer();
+        datasetContainer.setDatasetHeader(datasetHeader);
+        for(DataUnitParameters dataUnitParameters : dataUnits.getParameters()){
+            final MSBitOutputArray bufferParameter = new MSBitOutputArray();
+            dataUnitParameters.getEncodingParameters().write(bufferParameter);
+            datasetContainer.addDatasetParameters(new DatasetParameterSet(
+                    datasetGroupContainer.getDatasetGroupHeader().getDatasetGroupId(),
+                    (short)datasetId,
+                    dataUnitParameters.getParent_parameter_set_ID(),
+                    dataUnitParameters.getParameter_set_ID(),
+                    ByteBuffer.wrap(bufferParameter.getArray())
+            ));
+        }
+
+        final long[][][] au_start_position = new long[seq_count][dataClasses.length][];
+        final long[][][] au_end_position = new long[seq_count][dataClasses.length][];
+        final long[][][] extended_au_start_position = new long[seq_count][dataClasses.length][];
+        final long[][][] extended_au_end_position = new long[seq_count][dataClasses.length][];
+        final long[][][] au_byte_offset = new long[seq_count][dataClasses.length][];
+        final long[][][][] block_byte_offset = new long[seq_count][dataClasses.length][][];
+        for(int seq = 0; seq < seq_count; seq++) {
+            final int blocks = seq_blocks.get(seq).intValue();
+            for(int ci = 0; ci < dataClasses.length; ci++) {
+                au_start_position[seq][ci] = new long[blocks];
+                au_end_position[seq][ci] = new long[blocks];
+                extended_au_start_position[seq][ci] = new long[blocks];
+                extended_au_end_position[seq][ci] = new long[blocks];
+                au_byte_offset[seq][ci] = new long[blocks];
+                block_byte_offset[seq][ci] = new long[blocks][descriptorIdentifiers[ci].length];
+            }
+        }
+
+        final MasterIndexTable masterIndexTable = new MasterIndexTable(
+                datasetHeader,
+                au_start_position,
+                au_end_position,
+                extended_au_start_position,
+                extended_au_end_position,
+                au_byte_offset,
+                block_byte_offset,
+                new Signature[0][],
+                new long[0],
+                new long[0][]
+        );
+        datasetContainer.setMasterIndexTable(masterIndexTable);
+
+        // classes that have less than seq_blocks access units have the empty entries
+        final long offsetNotPresent = masterIndexTable.getOffsetNotPresent();
+        final long positionNotPresent = datasetHeader.isByteOffsetSize() ? 0xffffffffffL : 0xffffffffL;
+        for(int seq = 0; seq < seq_count; seq++) {
+            for(int ci = 0; ci < dataClasses.length; ci++) {
+                Arrays.fill(au_start_position[seq][ci], positionNotPresent);
+                Arrays.fill(au_end_position[seq][ci], positionNotPresent);
+                Arrays.fill(au_byte_offset[seq][ci], offsetNotPresent);
+                for(long[] offsets : block_byte_offset[seq][ci]) {
+                    Arrays.fill(offsets, offsetNotPresent);
+                }
+            }
+        }
+
+        // the access units are ordered by sequence, class and access unit id
+        final AccessUnitContainer[][][] accessUnitContainers =
+                new AccessUnitContainer[seq_count][dataClasses.length][];
+        final AccessUnitEntry[][][] entries = new AccessUnitEntry[seq_count][dataClasses.length][];
+        for(int seq = 0; seq < seq_count; seq++) {
+            for(int ci = 0; ci < dataClasses.length; ci++) {
+                final int numberAccessUnits = allocatedMappedAuIds[seqIds.get(seq).getSequenceIdentifier()]
+                        [dataClasses[ci].ID - 1];
+                accessUnitContainers[seq][ci] = new AccessUnitContainer[numberAccessUnits];
+                entries[seq][ci] = new AccessUnitEntry[numberAccessUnits];
+            }
+        }
+        for(AccessUnitEntry entry : accessUnits) {
+            final int seq = sequenceIndices[entry.sequence];
+            final int ci = Arrays.asList(dataClasses).indexOf(entry.header.getAU_type());
+            entries[seq][ci][entry.au_id] = entry;
+            accessUnitContainers[seq][ci][entry.au_id] = new AccessUnitContainer(
+                    datasetContainer,
+                    DataUnitsToAUCNoMITDataset.createAccessUnitHeader(datasetHeader, entry.au_id, entry.header));
+        }
+
+        long offset = datasetHeader.sizeWithHeader() + masterIndexTable.sizeWithHeader();
+        for(DatasetParameterSet datasetParameterSet : datasetContainer.getDatasetParameters()) {
+            offset += datasetParameterSet.sizeWithHeader();
+        }
+        for(int seq = 0; seq < seq_count; seq++) {
+            for(int ci = 0; ci < dataClasses.length; ci++) {
+                for(int au_id = 0; au_id < accessUnitContainers[seq][ci].length; au_id++) {
+                    final AccessUnitEntry entry = entries[seq][ci][au_id];
+                    au_byte_offset[seq][ci][au_id] = offset;
+                    au_start_position[seq][ci][au_id] = entry.header.getAu_start_position();
+                    au_end_position[seq][ci][au_id] = entry.header.getAu_end_position();
+                    extended_au_start_position[seq][ci][au_id] = entry.header.getExtended_au_start_position();
+                    extended_au_end_position[seq][ci][au_id] = entry.header.getExtended_au_end_position();
+                    offset += accessUnitContainers[seq][ci][au_id].sizeWithHeader();
+                    datasetContainer.addAccessUnit(accessUnitContainers[seq][ci][au_id]);
+                }
+            }
+        }
+
+        // the offsets of the blocks in the descriptor streams that follow the access units
+        final long[][] stream_byte_offset = new long[dataClasses.length][];
+        for(int ci = 0; ci < dataClasses.length; ci++) {
+            stream_byte_offset[ci] = new long[descriptorIdentifiers[ci].length];
+            for(int desc_i = 0; desc_i < descriptorIdentifiers[ci].length; desc_i++) {
+                final DescriptorSpill spill = spills[dataClasses[ci].ID - 1][descriptorIdentifiers[ci][desc_i]];
+                offset += GenInfo.Header.SIZE;
+                offset += new DescriptorStreamHeader(
+                        descriptorIdentifiers[ci][desc_i], dataClasses[ci], spill.numberBlocks).sizeWithHeader();
+                stream_byte_offset[ci][desc_i] = offset;
+                offset += spill.size;
+            }
+        }
+        if(offset >= offsetNotPresent) {
+            return null;
+        }
+
+        for(int seq = 0; seq < seq_count; seq++) {
+            for(int ci = 0; ci < dataClasses.length; ci++) {
+                for(int au_id = 0; au_id < entries[seq][ci].length; au_id++) {
+                    final AccessUnitEntry entry = entries[seq][ci][au_id];
+                    for(int desc_i = 0; desc_i < descriptorIdentifiers[ci].length; desc_i++) {
+                        final long block_offset = entry.block_offsets[descriptorIdentifiers[ci][desc_i]];
+                        block_byte_offset[seq][ci][au_id][desc_i] = block_offset < 0 ?
+                                offsetNotPresent : stream_byte_offset[ci][desc_i] + block_offset;
+                    }
+                }
+            }
+        }
+        datasetHeader.setOrderedBlocks(masterIndexTable.areBlocksOrdered());
+
+        return datasetContainer;
+    }
+
+    private void write(final DatasetContainer datasetContainer) throws IOException, InvalidMPEGStructure {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            final WritableMSBitChannel writer = new WritableMSBitChannel(channel);
+            fileHeader.writeWithHeader(writer);
+
+            writer.flush();
+            final long datasetGroupContainerPosition = channel.position();
+            new GenInfo.Header(DatasetGroupContainer.KEY, 0).write(writer);
+            datasetGroupContainer.writeHeaders(writer);
+
+            writer.flush();
+            final long datasetContainerPosition = channel.position();
+            new GenInfo.Header(DatasetContainer.KEY, 0).write(writer);
+            datasetContainer.writeHeaders(writer);
+            for(AccessUnitContainer accessUnitContainer : datasetContainer.getAccessUnitContainers()) {
+                accessUnitContainer.writeWithHeader(writer);
+            }
+
+            final DatasetHeader datasetHeader = datasetContainer.getDatasetHeader();
+            for(DATA_CLASS dataClass : datasetHeader.getClass_ids()) {
+                final byte[] descriptors;
+                try {
+                    descriptors = datasetHeader.getDescriptors(dataClass);
+                } catch (DataClassNotFoundException ex) {
+                    throw new InternalError(ex);
+                }
+                for(byte descriptorId : descriptors) {
+                    final DescriptorSpill spill = spills[dataClass.ID - 1][descriptorId];
+                    final DescriptorStreamHeader descriptorStreamHeader =
+                            new DescriptorStreamHeader(descriptorId, dataClass, spill.numberBlocks);
+
+                    new GenInfo.Header(DescriptorStreamContainer.KEY,
+                            GenInfo.Header.SIZE + descriptorStreamHeader.sizeWithHeader() + spill.size).write(writer);
+                    descriptorStreamHeader.writeWithHeader(writer);
+                    writer.flush();
+
+                    for(long position = 0; position < spill.size;) {
+                        position += spill.channel.transferTo(position, spill.size - position, channel);
+                    }
+                }
+            }
+
+            writer.flush();
+            final long end = channel.position();
+            write(channel, new GenInfo.Header(DatasetContainer.KEY, end - datasetContainerPosition),
+                  datasetContainerPosition);
+            write(channel, new GenInfo.Header(DatasetGroupContainer.KEY, end - datasetGroupContainerPosition),
+                  datasetGroupContainerPosition);
+        }
+    }
+
+    private static void write(final FileChannel channel, final GenInfo.Header header, final long position)
+            throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate(GenInfo.Header.SIZE).order(GenInfo.BYTE_ORDER);
+        header.write(buf);
+        buf.rewind();
+        for(long pos = position; buf.hasRemaining();) {
+            pos += channel.write(buf, pos);
+        }
+    }
+
+    /**
+     * The header of the access unit and the offsets of its blocks in the spill files.
+     */
+    private static class AccessUnitEntry {
+        final int sequence;
+        final int au_id;
+        final DataUnitAccessUnit.DataUnitAccessUnitHeader header;
+        final long[] block_offsets;
+
+        AccessUnitEntry(
+                final int sequence,
+                final int au_id,
+                final DataUnitAccessUnit.DataUnitAccessUnitHeader header) {
+
+            this.sequence = sequence;
+            this.au_id = au_id;
+            this.header = header;
+
+            block_offsets = new long[18];
+            Arrays.fill(block_offsets, -1);
+        }
+    }
+
+    /**
+     * The file the blocks of one descriptor stream are spilled to.
+     */
+    private static class DescriptorSpill implements Closeable {
+        final Path file;
+        final FileChannel channel;
+        long size;
+        int numberBlocks;
+
+        DescriptorSpill(final Path file) throws IOException {
+            this.file = file;
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
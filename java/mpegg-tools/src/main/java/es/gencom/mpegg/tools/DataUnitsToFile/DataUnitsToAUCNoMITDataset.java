@@ -142,45 +142,78 @@ public class DataUnitsToAUCNoMITDataset extends AbstractDataUnitsToDataset{
                         [accessUnit.getAUType().ID - 1]++;
             }
 
-            AccessUnitContainer accessUnitContainer = new AccessUnitContainer(datasetContainer);
-            AccessUnitHeader accessUnitHeader = new AccessUnitHeader(
-                    datasetHeader,
-                    auId,
-                    (byte)accessUnit.getBlocks().length,
-                    accessUnit.getHeader().getParameter_set_ID(),
-                    accessUnit.getHeader().getAU_type(),
-                    (int)accessUnit.getHeader().getRead_count(),
-                    (short)accessUnit.getHeader().getMm_threshold(),
-                    (int)accessUnit.getHeader().getMm_count(),
-                    accessUnit.getHeader().getRef_sequence_id(),
-                    accessUnit.getHeader().getRef_start_position(),
-                    accessUnit.getHeader().getRef_end_position(),
-                    accessUnit.getHeader().getSequence_ID(),
-                    accessUnit.getHeader().getAu_start_position(),
-                    accessUnit.getHeader().getAu_end_position(),
-                    accessUnit.getHeader().getExtended_au_start_position(),
-                    accessUnit.getHeader().getExtended_au_end_position()
+            datasetContainer.addAccessUnit(
+                    createAccessUnitContainer(datasetContainer, datasetHeader, auId, accessUnit));
+        }
+    }
+
+    static AccessUnitContainer createAccessUnitContainer(
+            DatasetContainer datasetContainer,
+            DatasetHeader datasetHeader,
+            int auId,
+            DataUnitAccessUnit accessUnit
+    ){
+        AccessUnitContainer accessUnitContainer = new AccessUnitContainer(datasetContainer);
+        accessUnitContainer.setAccessUnitHeader(
+                createAccessUnitHeader(datasetHeader, auId, accessUnit.getHeader()));
+        if(accessUnit.isLazy()){
+            // blocks are mapped from the bytestream when the dataset is written
+            accessUnitContainer.setBlocks(
+                    () -> createBlocks(datasetHeader, accessUnit),
+                    accessUnit.getBlocksSize()
             );
+        } else {
+            accessUnitContainer.setBlocks(createBlocks(datasetHeader, accessUnit));
+        }
+        return accessUnitContainer;
+    }
 
-            accessUnitContainer.setAccessUnitHeader(accessUnitHeader);
-            List<Block> blocks = new ArrayList<>(accessUnit.getBlocks().length);
-            for(DataUnitAccessUnit.Block dataUnitBlock : accessUnit.getBlocks()){
-                Block newBlock = new Block(datasetHeader);
+    static AccessUnitHeader createAccessUnitHeader(
+            DatasetHeader datasetHeader,
+            int auId,
+            DataUnitAccessUnit.DataUnitAccessUnitHeader header
+    ){
+        return new AccessUnitHeader(
+                datasetHeader,
+                auId,
+                (byte)header.getNum_blocks(),
+                header.getParameter_set_ID(),
+                header.getAU_type(),
+                (int)header.getRead_count(),
+                (short)header.getMm_threshold(),
+                (int)header.getMm_count(),
+                header.getRef_sequence_id(),
+                header.getRef_start_position(),
+                header.getRef_end_position(),
+                header.getSequence_ID(),
+                header.getAu_start_position(),
+                header.getAu_end_position(),
+                header.getExtended_au_start_position(),
+                header.getExtended_au_end_position()
+        );
+    }
 
+    private static List<Block> createBlocks(
+            DatasetHeader datasetHeader,
+            DataUnitAccessUnit accessUnit
+    ){
+        DataUnitAccessUnit.Block[] dataUnitBlocks = accessUnit.getBlocks();
+        List<Block> blocks = new ArrayList<>(dataUnitBlocks.length);
+        for(DataUnitAccessUnit.Block dataUnitBlock : dataUnitBlocks){
+            Block newBlock = new Block(datasetHeader);
 
-                Payload blockData = dataUnitBlock.getDescriptorSpecificData();
-                blockData.rewind();
 
-                newBlock.setBlockHeader(new BlockHeader(
-                        dataUnitBlock.getDescriptorIdentifier().ID,
-                        blockData.remaining()
-                ));
-                newBlock.setPayload(blockData);
+            Payload blockData = dataUnitBlock.getDescriptorSpecificData();
+            blockData.rewind();
 
-                blocks.add(newBlock);
-            }
-            accessUnitContainer.setBlocks(blocks);
-            datasetContainer.addAccessUnit(accessUnitContainer);
+            newBlock.setBlockHeader(new BlockHeader(
+                    dataUnitBlock.getDescriptorIdentifier().ID,
+                    blockData.remaining()
+            ));
+            newBlock.setPayload(blockData);
+
+            blocks.add(newBlock);
         }
+        return blocks;
     }
 }
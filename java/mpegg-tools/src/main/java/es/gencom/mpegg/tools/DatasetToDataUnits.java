@@ -12,6 +12,8 @@ import es.gencom.mpegg.coder.dataunits.DataUnits;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DatasetToDataUnits {
 
@@ -45,7 +47,23 @@ public class DatasetToDataUnits {
         } catch (IndexOutOfBoundsException e){
             reference = null;
         }
+        return getDataUnits(datasetContainer, reference);
+    }
 
+    /**
+     * Extracts the data units of the dataset.
+     *
+     * @param datasetContainer the dataset
+     * @param reference the reference to be converted into the raw reference
+     *        data unit or null when the reads are decoded with the separately
+     *        opened reference (i.e. the packed one)
+     *
+     * @return the data units of the dataset
+     */
+    public static DataUnits getDataUnits(
+            DatasetContainer datasetContainer,
+            Reference reference
+    ) throws IOException, DataClassNotFoundException, SequenceNotAvailableException, NoSuchFieldException {
         DataUnitsExtractor dataUnitsExtractor = new DataUnitsExtractor(reference);
         addParameters(dataUnitsExtractor, datasetContainer);
         for(SequenceIdentifier sequenceIdentifier : datasetContainer.getDatasetHeader().getSeqIds()){
@@ -113,6 +131,9 @@ public class DatasetToDataUnits {
         DatasetContainer datasetContainer
     ) throws IOException {
         long unmappedBlocksNumber = datasetContainer.getDatasetHeader().getNumberUAccessUnits();
+        if(unmappedBlocksNumber == 0){
+            return;
+        }
 
         DataClassIndex dataClassIndex;
         try {
@@ -142,84 +163,11 @@ public class DatasetToDataUnits {
                     accessUnitContainer.getAccessUnitHeader().getExtendedAUEndPosition()
             );
 
-            byte[] descriptor_ids;
-
-            try {
-                descriptor_ids = datasetContainer.getDatasetHeader().getDescriptors(
-                        accessUnitContainer.getAccessUnitHeader().getAUType()
-                );
-            } catch (DataClassNotFoundException e) {
-                throw new IllegalArgumentException(e);
-            }
-
-            int numDescriptors = descriptor_ids.length;
-            DataUnitAccessUnit.Block[] blocks = new DataUnitAccessUnit.Block[numDescriptors];
-
-            DatasetParameterSet parameterSet = datasetContainer.getDatasetParameterSetById(
-                    accessUnitContainer.getAccessUnitHeader().getParameterSetID()
-            );
-            EncodingParameters encodingParameters = new EncodingParameters();
-            ByteBuffer byteBuffer = parameterSet.getParameters();
-            byteBuffer.rewind();
-            encodingParameters.read(new MSBitBuffer(byteBuffer));
-
-            for(int descriptor_i=0; descriptor_i<numDescriptors; descriptor_i++){
-                byte descriptor_id = descriptor_ids[descriptor_i];
-                try {
-                    DescriptorIndex descriptorIndex = datasetContainer.getDatasetHeader().getDescriptorIndex(
-                            accessUnitContainer.getAccessUnitHeader().getAUType(),
-                            descriptor_id
-                    );
-
-                    long startDescriptor = datasetContainer.getMasterIndexTable().getUnmappedBlockByteOffset(
-                            block_i,
-                            descriptorIndex
-                    );
-
-
-                    Payload allSubsequences;
-
-                    try {
-                        long endDescriptor = datasetContainer.getMasterIndexTable().getUnmappedNextBlockStart(
-                                block_i,
-                                descriptorIndex
-                        );
-
-                        allSubsequences = datasetContainer
-                                .getDescriptorStreamContainers()
-                                .get(dataClassIndex.getIndex())
-                                .get(descriptorIndex.getDescriptor_index())
-                                .getPayloadFromTo(startDescriptor, endDescriptor);
-                    } catch (NullPointerException e) {
-                        allSubsequences = datasetContainer
-                                .getDescriptorStreamContainers()
-                                .get(dataClassIndex.getIndex())
-                                .get(descriptorIndex.getDescriptor_index())
-                                .getPayloadFromToEnd(startDescriptor);
-                    }
-                    allSubsequences.rewind();
-                    long blockSize = allSubsequences.remaining();
-
-                    Payload[] subsequences = DataUnitAccessUnit.Block.readSubsequences(
-                            DESCRIPTOR_ID.getDescriptorId(descriptor_id),
-                            encodingParameters,
-                            header.getAU_type(),
-                            allSubsequences,
-                            blockSize
-                    );
-
-                    blocks[descriptor_i] = new DataUnitAccessUnit.Block(
-                            DESCRIPTOR_ID.getDescriptorId(descriptor_id),
-                            subsequences
-                    );
-                } catch (NoSuchFieldException | DataClassNotFoundException e){
-                    throw new IllegalArgumentException(e);
-                }
-            }
+            final int unmappedBlock_i = block_i;
             DataUnitAccessUnit dataUnitAccessUnit = new DataUnitAccessUnit(
                     header,
                     dataUnitsExtractor.getDataUnits(),
-                    blocks
+                    () -> readBlocks(datasetContainer, accessUnitContainer, dataClassIndex, null, unmappedBlock_i)
             );
             dataUnitsExtractor.addDataUnitAccessUnit(
                     dataUnitAccessUnit
@@ -303,77 +251,11 @@ public class DatasetToDataUnits {
                 );
 
 
-                byte[] descriptor_ids = datasetContainer.getDatasetHeader().getDescriptors(
-                        accessUnitContainer.getAccessUnitHeader().getAUType()
-                );
-                int numDescriptors = descriptor_ids.length;
-                DataUnitAccessUnit.Block[] blocks = new DataUnitAccessUnit.Block[numDescriptors];
-
-                DatasetParameterSet parameterSet = datasetContainer.getDatasetParameterSetById(
-                        accessUnitContainer.getAccessUnitHeader().getParameterSetID()
-                );
-                EncodingParameters encodingParameters = new EncodingParameters();
-                ByteBuffer byteBuffer = parameterSet.getParameters();
-                byteBuffer.rewind();
-                encodingParameters.read(new MSBitBuffer(byteBuffer));
-
-                for(int descriptor_i=0; descriptor_i<numDescriptors; descriptor_i++){
-                    byte descriptor_id = descriptor_ids[descriptor_i];
-                    DescriptorIndex descriptorIndex = datasetContainer.getDatasetHeader().getDescriptorIndex(
-                            accessUnitContainer.getAccessUnitHeader().getAUType(),
-                            descriptor_id
-                    );
-                    long startDescriptor = datasetContainer.getMasterIndexTable().getBlockByteOffset(
-                            sequenceIndex,
-                            dataClassIndex,
-                            block_i,
-                            descriptorIndex
-                    );
-
-                    Payload allSubsequences;
-
-                    try {
-                        long endDescriptor = datasetContainer.getMasterIndexTable().getNextBlockStart(
-                                sequenceIndex,
-                                dataClassIndex,
-                                block_i,
-                                descriptorIndex
-                        );
-
-                        allSubsequences = datasetContainer
-                                .getDescriptorStreamContainers()
-                                .get(dataClassIndex.getIndex())
-                                .get(descriptorIndex.getDescriptor_index())
-                                .getPayloadFromTo(startDescriptor, endDescriptor);
-                    }catch (NullPointerException e){
-                        allSubsequences = datasetContainer
-                                .getDescriptorStreamContainers()
-                                .get(dataClassIndex.getIndex())
-                                .get(descriptorIndex.getDescriptor_index())
-                                .getPayloadFromToEnd(startDescriptor);
-                    }
-                    allSubsequences.rewind();
-                    long blockSize = allSubsequences.remaining();
-
-                    Payload[] subsequences = DataUnitAccessUnit.Block.readSubsequences(
-                            DESCRIPTOR_ID.getDescriptorId(descriptor_id),
-                            encodingParameters,
-                            header.getAU_type(),
-                            allSubsequences,
-                            blockSize
-                    );
-
-
-
-                    blocks[descriptor_i] = new DataUnitAccessUnit.Block(
-                            DESCRIPTOR_ID.getDescriptorId(descriptor_id),
-                            subsequences
-                    );
-                }
+                final int auId = block_i;
                 DataUnitAccessUnit dataUnitAccessUnit = new DataUnitAccessUnit(
                         header,
                         dataUnitsExtractor.getDataUnits(),
-                        blocks
+                        () -> readBlocks(datasetContainer, accessUnitContainer, dataClassIndex, sequenceIndex, auId)
                 );
                 dataUnitsExtractor.addDataUnitAccessUnit(
                         dataUnitAccessUnit
@@ -382,7 +264,7 @@ public class DatasetToDataUnits {
         }
     }
 
-    private static void addParameters(
+    static void addParameters(
             DataUnitsExtractor dataUnitsExtractor,
             DatasetContainer datasetContainer
     ) throws IOException {
@@ -440,38 +322,10 @@ public class DatasetToDataUnits {
             );
 
 
-            DataUnitAccessUnit.Block[] blocks = new DataUnitAccessUnit.Block[accessUnitContainer.getBlocks().size()];
-
-            DatasetParameterSet parameterSet = datasetContainer.getDatasetParameterSetById(
-                    accessUnitContainer.getAccessUnitHeader().getParameterSetID()
-            );
-            EncodingParameters encodingParameters = new EncodingParameters();
-            ByteBuffer byteBuffer = parameterSet.getParameters();
-            byteBuffer.rewind();
-            encodingParameters.read(new MSBitBuffer(byteBuffer));
-
-            for(int i=0; i<blocks.length; i++){
-                Block accessUnitBlock = accessUnitContainer.getBlocks().get(i);
-
-                Payload allSubsequences = accessUnitBlock.getPayload();
-                allSubsequences.rewind();
-                long blockSize = allSubsequences.remaining();
-
-                Payload[] subsequences = DataUnitAccessUnit.Block.readSubsequences(
-                        DESCRIPTOR_ID.getDescriptorId(accessUnitBlock.getBlockHeader().getDescriptorId()),
-                        encodingParameters,
-                        header.getAU_type(),
-                        allSubsequences,
-                        blockSize);
-
-                blocks[i] = new DataUnitAccessUnit.Block(
-                        DESCRIPTOR_ID.getDescriptorId(accessUnitBlock.getBlockHeader().getDescriptorId()),
-                        subsequences);
-            }
             DataUnitAccessUnit dataUnitAccessUnit = new DataUnitAccessUnit(
                     header,
                     dataUnitsExtractor.getDataUnits(),
-                    blocks
+                    () -> readBlocks(datasetContainer, accessUnitContainer)
             );
             dataUnitsExtractor.addDataUnitAccessUnit(
                     dataUnitAccessUnit
@@ -494,38 +348,10 @@ public class DatasetToDataUnits {
             );
 
 
-            DataUnitAccessUnit.Block[] blocks = new DataUnitAccessUnit.Block[accessUnitContainer.getBlocks().size()];
-
-            DatasetParameterSet parameterSet = datasetContainer.getDatasetParameterSetById(
-                    accessUnitContainer.getAccessUnitHeader().getParameterSetID()
-            );
-            EncodingParameters encodingParameters = new EncodingParameters();
-            ByteBuffer byteBuffer = parameterSet.getParameters();
-            byteBuffer.rewind();
-            encodingParameters.read(new MSBitBuffer(byteBuffer));
-
-            for(int i=0; i<blocks.length; i++){
-                Block accessUnitBlock = accessUnitContainer.getBlocks().get(i);
-
-                Payload allSubsequences = accessUnitBlock.getPayload();
-                allSubsequences.rewind();
-                long blockSize = allSubsequences.remaining();
-
-                Payload[] subsequences = DataUnitAccessUnit.Block.readSubsequences(
-                        DESCRIPTOR_ID.getDescriptorId(accessUnitBlock.getBlockHeader().getDescriptorId()),
-                        encodingParameters,
-                        header.getAU_type(),
-                        allSubsequences,
-                        blockSize);
-
-                blocks[i] = new DataUnitAccessUnit.Block(
-                        DESCRIPTOR_ID.getDescriptorId(accessUnitBlock.getBlockHeader().getDescriptorId()),
-                        subsequences);
-            }
             DataUnitAccessUnit dataUnitAccessUnit = new DataUnitAccessUnit(
                     header,
                     dataUnitsExtractor.getDataUnits(),
-                    blocks
+                    () -> readBlocks(datasetContainer, accessUnitContainer)
             );
             dataUnitsExtractor.addDataUnitAccessUnit(
                     dataUnitAccessUnit
@@ -561,39 +387,10 @@ public class DatasetToDataUnits {
             );
 
 
-            DataUnitAccessUnit.Block[] blocks = new DataUnitAccessUnit.Block[accessUnitContainer.getBlocks().size()];
-
-            DatasetParameterSet parameterSet = datasetContainer.getDatasetParameterSetById(
-                    accessUnitContainer.getAccessUnitHeader().getParameterSetID()
-            );
-            EncodingParameters encodingParameters = new EncodingParameters();
-            ByteBuffer byteBuffer = parameterSet.getParameters();
-            byteBuffer.rewind();
-            encodingParameters.read(new MSBitBuffer(byteBuffer));
-
-            for(int i=0; i<blocks.length; i++){
-                Block accessUnitBlock = accessUnitContainer.getBlocks().get(i);
-
-                Payload allSubsequences = accessUnitBlock.getPayload();
-                allSubsequences.rewind();
-                long blockSize = allSubsequences.remaining();
-
-                Payload[] subsequences = DataUnitAccessUnit.Block.readSubsequences(
-                        DESCRIPTOR_ID.getDescriptorId(accessUnitBlock.getBlockHeader().getDescriptorId()),
-                        encodingParameters,
-                        header.getAU_type(),
-                        allSubsequences,
-                        blockSize);
-
-                blocks[i] = new DataUnitAccessUnit.Block(
-                        DESCRIPTOR_ID.getDescriptorId(accessUnitBlock.getBlockHeader().getDescriptorId()),
-                        subsequences
-                );
-            }
             DataUnitAccessUnit dataUnitAccessUnit = new DataUnitAccessUnit(
                     header,
                     dataUnitsExtractor.getDataUnits(),
-                    blocks
+                    () -> readBlocks(datasetContainer, accessUnitContainer)
             );
             dataUnitsExtractor.addDataUnitAccessUnit(
                     dataUnitAccessUnit
@@ -672,39 +469,10 @@ public class DatasetToDataUnits {
                 );
 
 
-                DataUnitAccessUnit.Block[] blocks = new DataUnitAccessUnit.Block[accessUnitContainer.getBlocks().size()];
-
-                DatasetParameterSet parameterSet = datasetContainer.getDatasetParameterSetById(
-                        accessUnitContainer.getAccessUnitHeader().getParameterSetID()
-                );
-                EncodingParameters encodingParameters = new EncodingParameters();
-                ByteBuffer byteBuffer = parameterSet.getParameters();
-                byteBuffer.rewind();
-                encodingParameters.read(new MSBitBuffer(byteBuffer));
-
-                for(int i=0; i<blocks.length; i++){
-                    Block accessUnitBlock = accessUnitContainer.getBlocks().get(i);
-
-                    Payload allSubsequences = accessUnitBlock.getPayload();
-                    allSubsequences.rewind();
-                    long blockSize = allSubsequences.remaining();
-
-                    Payload[] subsequences = DataUnitAccessUnit.Block.readSubsequences(
-                            DESCRIPTOR_ID.getDescriptorId(accessUnitBlock.getBlockHeader().getDescriptorId()),
-                            encodingParameters,
-                            header.getAU_type(),
-                            allSubsequences,
-                            blockSize);
-
-                    blocks[i] = new DataUnitAccessUnit.Block(
-                            DESCRIPTOR_ID.getDescriptorId(accessUnitBlock.getBlockHeader().getDescriptorId()),
-                            subsequences
-                    );
-                }
                 DataUnitAccessUnit dataUnitAccessUnit = new DataUnitAccessUnit(
                         header,
                         dataUnitsExtractor.getDataUnits(),
-                        blocks
+                        () -> readBlocks(datasetContainer, accessUnitContainer)
                 );
                 dataUnitsExtractor.addDataUnitAccessUnit(
                         dataUnitAccessUnit
@@ -714,6 +482,184 @@ public class DatasetToDataUnits {
     }
 
 
+    /**
+     * Creates the data unit for the access unit container of the dataset.
+     *
+     * @param dataUnits the data units which provide the parameters
+     * @param au_id_triplet the access unit identifier from the master index
+     *        table or null for the datasets without one
+     */
+    static DataUnitAccessUnit getDataUnitAccessUnit(
+            DataUnits dataUnits,
+            DatasetContainer datasetContainer,
+            AccessUnitContainer accessUnitContainer,
+            AU_Id_triplet au_id_triplet
+    ) {
+        AccessUnitHeader accessUnitHeader = accessUnitContainer.getAccessUnitHeader();
+        if(au_id_triplet == null){
+            return new DataUnitAccessUnit(
+                    new DataUnitAccessUnit.DataUnitAccessUnitHeader(accessUnitHeader),
+                    dataUnits,
+                    () -> readBlocks(datasetContainer, accessUnitContainer)
+            );
+        }
+
+        DatasetSequenceIndex sequenceIndex = au_id_triplet.getSeq();
+        DataClassIndex dataClassIndex = au_id_triplet.getClass_i();
+        int auId = (int)au_id_triplet.getAuId();
+
+        DataUnitAccessUnit.DataUnitAccessUnitHeader header = new DataUnitAccessUnit.DataUnitAccessUnitHeader(
+                au_id_triplet.getAuId(),
+                accessUnitHeader.getNumberOfBlocks(),
+                accessUnitHeader.getParameterSetID(),
+                accessUnitHeader.getAUType(),
+                accessUnitHeader.getReadsCount(),
+                accessUnitHeader.getMmThreshold(),
+                accessUnitHeader.getMmCount(),
+                accessUnitHeader.getReferenceSequenceID(),
+                accessUnitHeader.getRefStartPosition(),
+                accessUnitHeader.getRefEndPosition(),
+                datasetContainer.getDatasetHeader().getReferenceSequenceId(sequenceIndex),
+                datasetContainer.getMasterIndexTable().getAuStart(sequenceIndex, dataClassIndex, auId),
+                datasetContainer.getMasterIndexTable().getAuEnd(sequenceIndex, dataClassIndex, auId),
+                accessUnitHeader.getExtendedAUStartPosition(),
+                accessUnitHeader.getExtendedAUEndPosition()
+        );
+
+        if(datasetContainer.getDatasetHeader().isBlockHeader()){
+            return new DataUnitAccessUnit(
+                    header,
+                    dataUnits,
+                    () -> readBlocks(datasetContainer, accessUnitContainer)
+            );
+        }
+        return new DataUnitAccessUnit(
+                header,
+                dataUnits,
+                () -> readBlocks(datasetContainer, accessUnitContainer, dataClassIndex, sequenceIndex, auId)
+        );
+    }
+
+    /**
+     * Reads access unit blocks of the dataset with block headers.
+     * The blocks are only mapped when the decoder touches the access unit.
+     */
+    private static DataUnitAccessUnit.Block[] readBlocks(
+            DatasetContainer datasetContainer,
+            AccessUnitContainer accessUnitContainer
+    ) throws IOException {
+        List<Block> accessUnitBlocks = accessUnitContainer.getBlocks();
+        EncodingParameters encodingParameters = getEncodingParameters(datasetContainer, accessUnitContainer);
+
+        DataUnitAccessUnit.Block[] blocks = new DataUnitAccessUnit.Block[accessUnitBlocks.size()];
+        for(int i=0; i<blocks.length; i++){
+            Block accessUnitBlock = accessUnitBlocks.get(i);
+
+            Payload allSubsequences = accessUnitBlock.getPayload();
+            allSubsequences.rewind();
+            long blockSize = allSubsequences.remaining();
+
+            Payload[] subsequences = DataUnitAccessUnit.Block.readSubsequences(
+                    DESCRIPTOR_ID.getDescriptorId(accessUnitBlock.getBlockHeader().getDescriptorId()),
+                    encodingParameters,
+                    accessUnitContainer.getAccessUnitHeader().getAUType(),
+                    allSubsequences,
+                    blockSize);
+
+            blocks[i] = new DataUnitAccessUnit.Block(
+                    DESCRIPTOR_ID.getDescriptorId(accessUnitBlock.getBlockHeader().getDescriptorId()),
+                    subsequences);
+        }
+        return blocks;
+    }
+
+    /**
+     * Reads access unit blocks from the descriptor streams of the dataset.
+     * The blocks are only mapped when the decoder touches the access unit.
+     *
+     * @param sequenceIndex the sequence of the aligned access unit or null
+     *        for the unmapped one
+     */
+    private static DataUnitAccessUnit.Block[] readBlocks(
+            DatasetContainer datasetContainer,
+            AccessUnitContainer accessUnitContainer,
+            DataClassIndex dataClassIndex,
+            DatasetSequenceIndex sequenceIndex,
+            int block_i
+    ) throws IOException {
+        DATA_CLASS auType = accessUnitContainer.getAccessUnitHeader().getAUType();
+        MasterIndexTable masterIndexTable = datasetContainer.getMasterIndexTable();
+
+        byte[] descriptor_ids;
+        try {
+            descriptor_ids = datasetContainer.getDatasetHeader().getDescriptors(auType);
+        } catch (DataClassNotFoundException e) {
+            throw new IllegalArgumentException(e);
+        }
+        EncodingParameters encodingParameters = getEncodingParameters(datasetContainer, accessUnitContainer);
+
+        List<DataUnitAccessUnit.Block> blocks = new ArrayList<>(descriptor_ids.length);
+        for(int descriptor_i=0; descriptor_i<descriptor_ids.length; descriptor_i++){
+            byte descriptor_id = descriptor_ids[descriptor_i];
+            DescriptorIndex descriptorIndex;
+            try {
+                descriptorIndex = datasetContainer.getDatasetHeader().getDescriptorIndex(auType, descriptor_id);
+            } catch (NoSuchFieldException | DataClassNotFoundException e){
+                throw new IllegalArgumentException(e);
+            }
+
+            final long startDescriptor = sequenceIndex != null ?
+                    masterIndexTable.getBlockByteOffset(sequenceIndex, dataClassIndex, block_i, descriptorIndex) :
+                    masterIndexTable.getUnmappedBlockByteOffset(block_i, descriptorIndex);
+            if(startDescriptor == masterIndexTable.getOffsetNotPresent()){
+                // the access unit has no block for the descriptor
+                continue;
+            }
+            final Long endDescriptor = sequenceIndex != null ?
+                    masterIndexTable.getNextBlockStart(sequenceIndex, dataClassIndex, block_i, descriptorIndex) :
+                    masterIndexTable.getUnmappedNextBlockStart(block_i, descriptorIndex);
+
+            DescriptorStreamContainer descriptorStreamContainer = datasetContainer
+                    .getDescriptorStreamContainers()
+                    .get(dataClassIndex.getIndex())
+                    .get(descriptorIndex.getDescriptor_index());
+
+            Payload allSubsequences = endDescriptor != null ?
+                    descriptorStreamContainer.getPayloadFromTo(startDescriptor, endDescriptor) :
+                    descriptorStreamContainer.getPayloadFromToEnd(startDescriptor);
+            allSubsequences.rewind();
+            long blockSize = allSubsequences.remaining();
+
+            Payload[] subsequences = DataUnitAccessUnit.Block.readSubsequences(
+                    DESCRIPTOR_ID.getDescriptorId(descriptor_id),
+                    encodingParameters,
+                    auType,
+                    allSubsequences,
+                    blockSize
+            );
+
+            blocks.add(new DataUnitAccessUnit.Block(
+                    DESCRIPTOR_ID.getDescriptorId(descriptor_id),
+                    subsequences
+            ));
+        }
+        return blocks.toArray(new DataUnitAccessUnit.Block[blocks.size()]);
+    }
+
+    private static EncodingParameters getEncodingParameters(
+            DatasetContainer datasetContainer,
+            AccessUnitContainer accessUnitContainer
+    ) throws IOException {
+        DatasetParameterSet parameterSet = datasetContainer.getDatasetParameterSetById(
+                accessUnitContainer.getAccessUnitHeader().getParameterSetID()
+        );
+        EncodingParameters encodingParameters = new EncodingParameters();
+        ByteBuffer byteBuffer = parameterSet.getParameters().duplicate();
+        byteBuffer.rewind();
+        encodingParameters.read(new MSBitBuffer(byteBuffer));
+        return encodingParameters;
+    }
+
     public boolean offsetIsValid(DatasetContainer datasetContainer, long offset) {
         return datasetContainer.getAccessUnitContainers().contains(offset);
     }
@@ -3,6 +3,8 @@ package es.gencom.mpegg.tools;
 import es.gencom.integration.fasta.FastaFileReader;
 import es.gencom.integration.fasta.FastaSequence;
 import es.gencom.mpegg.coder.dataunits.DataUnitRawReference;
+import es.gencom.mpegg.decoder.AbstractSequencesSource;
+import es.gencom.mpegg.decoder.MappedSequencesSource;
 import es.gencom.mpegg.format.SequenceIdentifier;
 import es.gencom.mpegg.format.ref.ExternalLocation;
 import es.gencom.mpegg.format.ref.InternalLocation;
@@ -52,6 +54,35 @@ public class FormatReferenceToRawReference {
         return rawReference;
     }
 
+    /**
+     * Opens the sequences of the reference without reading them into memory.
+     * FASTA references are opened from the packed references cache (packed 
+     * on the first use) and raw references are memory mapped, so only the
+     * windows the decoder asks for are ever read.
+     *
+     * @param reference the external reference
+     *
+     * @return the sequences source over the reference
+     *
+     * @throws IOException
+     */
+    public static AbstractSequencesSource open(Reference reference) throws IOException {
+        if (!(reference.getLocation() instanceof ExternalLocation)) {
+            throw new IllegalArgumentException();
+        }
+        ExternalLocation externalLocation = (ExternalLocation) reference.getLocation();
+        switch (externalLocation.getReferenceType()) {
+            case RAW_REF:
+                return MappedSequencesSource.open(
+                        Paths.get(externalLocation.getRef_uri()),
+                        reference.getSequenceNames());
+            case FASTA_REF:
+                return PackedReferenceCache.getDefault().open(
+                        Paths.get(externalLocation.getRef_uri()));
+        }
+        throw new IllegalArgumentException();
+    }
+
     public static DataUnitRawReference FASTAToRawReference(
             Reference reference
     ) throws IOException {
@@ -0,0 +1,501 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.mpegg.Record;
+import es.gencom.mpegg.RecordBatch;
+import es.gencom.mpegg.SplitType;
+import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.Operation;
+import es.gencom.mpegg.coder.dataunits.DataUnitAccessUnit;
+import es.gencom.mpegg.coder.dataunits.DataUnits;
+import es.gencom.mpegg.decoder.AbstractSequencesSource;
+import es.gencom.mpegg.decoder.DataUnitAccessUnitDecoder;
+import es.gencom.mpegg.format.AU_Id_triplet;
+import es.gencom.mpegg.format.AccessUnitContainer;
+import es.gencom.mpegg.format.AccessUnitHeader;
+import es.gencom.mpegg.format.DATA_CLASS;
+import es.gencom.mpegg.format.DataClassIndex;
+import es.gencom.mpegg.format.DataClassNotFoundException;
+import es.gencom.mpegg.format.DatasetContainer;
+import es.gencom.mpegg.format.DatasetGroupContainer;
+import es.gencom.mpegg.format.DatasetHeader;
+import es.gencom.mpegg.format.DatasetSequenceIndex;
+import es.gencom.mpegg.format.MPEGFile;
+import es.gencom.mpegg.format.SequenceIdentifier;
+import es.gencom.mpegg.format.ref.Reference;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * <p>
+ * Region queries over a dataset of an opened MPEG-G file.
+ * </p>
+ *
+ * Access units of every sequence and class are indexed by their positions
+ * taken from the master index table (or the access unit headers when the
+ * dataset has no one), so the access units overlapping a region are found
+ * by a binary search. Only these access units are decoded and only records
+ * overlapping the region are returned. Used together with the lazily read
+ * file the query touches nothing but the blocks of the found access units.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class MPEGFileQuery {
+
+    private final DatasetGroupContainer datasetGroupContainer;
+    private final DatasetContainer datasetContainer;
+    private final DataUnits dataUnits;
+    private final HashMap<Long, AccessUnitsIndex> indexes;
+    private final ExecutorService executor;
+
+    private AbstractSequencesSource sequencesSource;
+
+    /**
+     * Creates the query over the first dataset of the file.
+     * The reference is loaded on the first query.
+     *
+     * @param mpegFile the MPEG-G file (i.e. read in the lazy mode)
+     *
+     * @throws IOException
+     */
+    public MPEGFileQuery(final MPEGFile mpegFile) throws IOException {
+        this(mpegFile, null);
+    }
+
+    /**
+     * Creates the query over the first dataset of the file which decodes
+     * the descriptors of every found access unit concurrently.
+     * The reference is loaded on the first query.
+     *
+     * @param mpegFile the MPEG-G file (i.e. read in the lazy mode)
+     * @param executor the executor to decode descriptors on or null
+     *        to decode them on the caller thread
+     *
+     * @throws IOException
+     */
+    public MPEGFileQuery(final MPEGFile mpegFile, final ExecutorService executor) throws IOException {
+        this(mpegFile.getDatasetGroupContainer(0),
+             mpegFile.getDatasetGroupContainer(0).getDatasetContainerByIndex(0),
+             null,
+             executor);
+    }
+
+    /**
+     * Creates the query over the dataset.
+     *
+     * @param datasetGroupContainer the dataset group the dataset belongs to
+     * @param datasetContainer the dataset to query
+     * @param sequencesSource the reference to reconstruct the reads or null
+     *        to load the dataset reference on the first query
+     *
+     * @throws IOException
+     */
+    public MPEGFileQuery(
+            final DatasetGroupContainer datasetGroupContainer,
+            final DatasetContainer datasetContainer,
+            final AbstractSequencesSource sequencesSource) throws IOException {
+        this(datasetGroupContainer, datasetContainer, sequencesSource, null);
+    }
+
+    /**
+     * Creates the query over the dataset.
+     *
+     * Region queries usually hit one or two access units, so rather than
+     * decoding access units in parallel, the descriptors of the access unit
+     * are entropy-decoded concurrently on the executor.
+     *
+     * @param datasetGroupContainer the dataset group the dataset belongs to
+     * @param datasetContainer the dataset to query
+     * @param sequencesSource the reference to reconstruct the reads or null
+     *        to load the dataset reference on the first query
+     * @param executor the executor to decode descriptors on or null
+     *        to decode them on the caller thread
+     *
+     * @throws IOException
+     */
+    public MPEGFileQuery(
+            final DatasetGroupContainer datasetGroupContainer,
+            final DatasetContainer datasetContainer,
+            final AbstractSequencesSource sequencesSource,
+            final ExecutorService executor) throws IOException {
+
+        this.datasetGroupContainer = datasetGroupContainer;
+        this.datasetContainer = datasetContainer;
+        this.sequencesSource = sequencesSource;
+        this.executor = executor;
+
+        final DataUnitsExtractor dataUnitsExtractor = new DataUnitsExtractor(null);
+        DatasetToDataUnits.addParameters(dataUnitsExtractor, datasetContainer);
+        dataUnits = dataUnitsExtractor.constructDataUnits();
+
+        indexes = new HashMap<>();
+    }
+
+    /**
+     * Finds the records overlapping the region of the sequence.
+     * Access units are decoded one by one while the iterator advances,
+     * so the records are ordered by access units, and within every access
+     * unit as they were encoded.
+     *
+     * @param sequenceName the name of the reference sequence
+     * @param start the first position of the region (0-based)
+     * @param end the last position of the region (inclusive)
+     * @param classes the data classes to look in, all aligned classes of the
+     *        dataset if none provided (unmapped reads are never returned)
+     *
+     * @return the iterator over the overlapping records
+     *
+     * @throws IOException
+     */
+    public Iterator<Record> query(
+            final String sequenceName,
+            final long start,
+            final long end,
+            final DATA_CLASS... classes) throws IOException {
+
+        final short sequence_index = datasetContainer.getSequenceIndex(sequenceName, datasetGroupContainer);
+        if (sequence_index < 0 || start > end) {
+            return Collections.emptyIterator();
+        }
+        final DatasetSequenceIndex sequenceIndex = new DatasetSequenceIndex(sequence_index);
+        final SequenceIdentifier sequenceId = datasetContainer.getDatasetHeader().getReferenceSequenceId(sequenceIndex);
+
+        // datasets without master index table do not list their classes
+        DATA_CLASS[] dataClasses = classes.length > 0 ? classes : datasetContainer.getDatasetHeader().getClass_ids();
+        if (dataClasses == null) {
+            dataClasses = DATA_CLASS.values();
+        }
+
+        final List<AccessUnitsIndex.Entry> found = new ArrayList<>();
+        for (DATA_CLASS dataClass : dataClasses) {
+            if (dataClass == DATA_CLASS.CLASS_U) {
+                continue;
+            }
+            final AccessUnitsIndex index = getIndex(sequenceIndex, dataClass);
+            if (index != null) {
+                index.getOverlapping(start, end, found);
+            }
+        }
+        if (found.isEmpty()) {
+            return Collections.emptyIterator();
+        }
+        found.sort((e1, e2) -> Long.compare(e1.start, e2.start));
+
+        return new RecordsIterator(found, getSequencesSource(), sequenceId, start, end);
+    }
+
+    private synchronized AbstractSequencesSource getSequencesSource() throws IOException {
+        if (sequencesSource == null) {
+            final Reference reference = datasetGroupContainer.getReference(
+                    datasetContainer.getDatasetHeader().getReferenceId());
+            // only the windows of the found access units are unpacked
+            sequencesSource = FormatReferenceToRawReference.open(reference);
+        }
+        return sequencesSource;
+    }
+
+    private synchronized AccessUnitsIndex getIndex(
+            final DatasetSequenceIndex sequenceIndex,
+            final DATA_CLASS dataClass) {
+
+        final DatasetHeader datasetHeader = datasetContainer.getDatasetHeader();
+
+        final long key = ((long)sequenceIndex.getIndex() << 8) | dataClass.ordinal();
+        AccessUnitsIndex index = indexes.get(key);
+        if (index == null && !indexes.containsKey(key)) {
+            if (!datasetHeader.isMIT()) {
+                index = indexAccessUnitHeaders(sequenceIndex, dataClass);
+            } else {
+                try {
+                    index = indexMasterIndexTable(sequenceIndex, datasetHeader.getClassIndex(dataClass));
+                } catch (DataClassNotFoundException ex) {
+                    // no such class in the dataset
+                }
+            }
+            indexes.put(key, index);
+        }
+        return index;
+    }
+
+    private AccessUnitsIndex indexMasterIndexTable(
+            final DatasetSequenceIndex sequenceIndex,
+            final DataClassIndex dataClassIndex) {
+
+        final DatasetHeader datasetHeader = datasetContainer.getDatasetHeader();
+        final long referenceBlocksNum = datasetHeader.getReferenceSequenceBlocks(sequenceIndex);
+
+        final List<AccessUnitsIndex.Entry> entries = new ArrayList<>();
+        for (int block_i = 0; block_i < referenceBlocksNum; block_i++) {
+            final AU_Id_triplet au_id_triplet = new AU_Id_triplet(sequenceIndex, dataClassIndex, block_i);
+            final AccessUnitContainer accessUnitContainer = datasetContainer
+                    .getAccessUnitContainerToAuIdTriplet()
+                    .getReverse(au_id_triplet);
+            if (accessUnitContainer == null) {
+                continue;
+            }
+            entries.add(new AccessUnitsIndex.Entry(
+                    datasetContainer.getAuStart(au_id_triplet),
+                    getMaximumEnd(accessUnitContainer.getAccessUnitHeader(), sequenceIndex),
+                    accessUnitContainer,
+                    au_id_triplet));
+        }
+        return new AccessUnitsIndex(entries);
+    }
+
+    private AccessUnitsIndex indexAccessUnitHeaders(
+            final DatasetSequenceIndex sequenceIndex,
+            final DATA_CLASS dataClass) {
+
+        final SequenceIdentifier sequenceId = datasetContainer.getDatasetHeader().getReferenceSequenceId(sequenceIndex);
+
+        final List<AccessUnitsIndex.Entry> entries = new ArrayList<>();
+        for (AccessUnitContainer accessUnitContainer : datasetContainer.getAccessUnitContainers()) {
+            final AccessUnitHeader accessUnitHeader = accessUnitContainer.getAccessUnitHeader();
+            if (accessUnitHeader.getAUType() != dataClass ||
+                !sequenceId.equals(accessUnitHeader.getSequenceID())) {
+                continue;
+            }
+            entries.add(new AccessUnitsIndex.Entry(
+                    accessUnitHeader.getAUStartPosition(),
+                    getMaximumEnd(accessUnitHeader, sequenceIndex),
+                    accessUnitContainer,
+                    null));
+        }
+        return new AccessUnitsIndex(entries);
+    }
+
+    /**
+     * The last position a read of the access unit may cover
+     * (the same margin DatasetToDataUnits uses to select access units).
+     */
+    private long getMaximumEnd(
+            final AccessUnitHeader accessUnitHeader,
+            final DatasetSequenceIndex sequenceIndex) {
+
+        return accessUnitHeader.getAUEndPosition()
+                + datasetContainer.getDatasetHeader().getThreshold(sequenceIndex)
+                + 2 * 100;
+    }
+
+    /**
+     * Access units of one sequence and class sorted by their start positions.
+     * The running maximum of the end positions stops the backward scan as soon
+     * as no earlier access unit may reach the region.
+     */
+    private static class AccessUnitsIndex {
+
+        private final Entry[] entries;
+        private final long[] starts;
+        private final long[] maxEnds;
+
+        AccessUnitsIndex(final List<Entry> list) {
+            entries = list.toArray(new Entry[list.size()]);
+            Arrays.sort(entries, (e1, e2) -> Long.compare(e1.start, e2.start));
+
+            starts = new long[entries.length];
+            maxEnds = new long[entries.length];
+            long maxEnd = Long.MIN_VALUE;
+            for (int i = 0; i < entries.length; i++) {
+                starts[i] = entries[i].start;
+                maxEnds[i] = maxEnd = Math.max(maxEnd, entries[i].end);
+            }
+        }
+
+        void getOverlapping(final long start, final long end, final List<Entry> found) {
+            // the last access unit which starts not after the region end
+            int idx = Arrays.binarySearch(starts, end);
+            if (idx < 0) {
+                idx = -idx - 2;
+            } else {
+                while (idx + 1 < starts.length && starts[idx + 1] == end) {
+                    idx++;
+                }
+            }
+
+            final int last = idx;
+            while (idx >= 0 && maxEnds[idx] >= start) {
+                idx--;
+            }
+            for (int i = idx + 1; i <= last; i++) {
+                if (entries[i].end >= start) {
+                    found.add(entries[i]);
+                }
+            }
+        }
+
+        static class Entry {
+            final long start;
+            final long end;
+            final AccessUnitContainer accessUnitContainer;
+            final AU_Id_triplet au_id_triplet;
+
+            Entry(final long start,
+                  final long end,
+                  final AccessUnitContainer accessUnitContainer,
+                  final AU_Id_triplet au_id_triplet) {
+
+                this.start = start;
+                this.end = end;
+                this.accessUnitContainer = accessUnitContainer;
+                this.au_id_triplet = au_id_triplet;
+            }
+        }
+    }
+
+    private class RecordsIterator implements Iterator<Record> {
+
+        private final Iterator<AccessUnitsIndex.Entry> accessUnits;
+        private final AbstractSequencesSource sequencesSource;
+        private final SequenceIdentifier sequenceId;
+        private final long start;
+        private final long end;
+
+        private final RecordBatch batch;
+        private RecordBatch.Cursor cursor;
+        private Record next;
+
+        // working arrays of the alignment operations
+        private byte[] operations;
+        private int[] operationLengths;
+
+        RecordsIterator(
+                final List<AccessUnitsIndex.Entry> accessUnits,
+                final AbstractSequencesSource sequencesSource,
+                final SequenceIdentifier sequenceId,
+                final long start,
+                final long end) {
+
+            this.accessUnits = accessUnits.iterator();
+            this.sequencesSource = sequencesSource;
+            this.sequenceId = sequenceId;
+            this.start = start;
+            this.end = end;
+
+            batch = new RecordBatch();
+            cursor = batch.cursor();
+
+            operations = new byte[64];
+            operationLengths = new int[64];
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (cursor.next()) {
+                    if (overlaps(cursor)) {
+                        next = cursor.toRecord();
+                    }
+                } else if (accessUnits.hasNext()) {
+                    cursor = decode(accessUnits.next());
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Record record = next;
+            next = null;
+            return record;
+        }
+
+        /**
+         * Decodes the access unit into the reused batch, so only the records
+         * overlapping the region are materialized.
+         */
+        private RecordBatch.Cursor decode(final AccessUnitsIndex.Entry entry) {
+            final DataUnitAccessUnit dataUnitAccessUnit = DatasetToDataUnits.getDataUnitAccessUnit(
+                    dataUnits,
+                    datasetContainer,
+                    entry.accessUnitContainer,
+                    entry.au_id_triplet);
+            try {
+                batch.clear();
+                return DataUnitAccessUnitDecoder.decode(dataUnitAccessUnit, sequencesSource, executor, batch).cursor();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        /**
+         * Checks the overlap with the positions and the operations read
+         * straight from the batch.
+         */
+        private boolean overlaps(final RecordBatch.Cursor cursor) {
+            if (sequenceId.equals(cursor.getSequenceId())) {
+                for (int alignment_i = 0; alignment_i < cursor.getNumberAlignments(); alignment_i++) {
+                    if (overlaps(cursor, 0, alignment_i)) {
+                        return true;
+                    }
+                }
+            }
+
+            if (cursor.getNumberAlignedSegments() < 2 || cursor.getSplitMate(0) != SplitType.SameRecord) {
+                return false;
+            }
+            for (int alignment_i = 0; alignment_i < cursor.getNumberAlignmentsSegment1(); alignment_i++) {
+                if (sequenceId.equals(cursor.getSequenceIdSegment1(alignment_i)) &&
+                    overlaps(cursor, 1, alignment_i)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Checks whether any splice of the alignment covers the region.
+         */
+        private boolean overlaps(
+                final RecordBatch.Cursor cursor,
+                final int segment,
+                final int alignment_i) {
+
+            final int splices = segment == 0 ?
+                    cursor.getNumberSplices(alignment_i) : cursor.getNumberSplicesSegment1(alignment_i);
+            for (int splice_i = 0; splice_i < splices; splice_i++) {
+                final long position = segment == 0 ?
+                        cursor.getMappingPosition(alignment_i, splice_i) :
+                        cursor.getMappingPositionSegment1(alignment_i, splice_i);
+                if (position > end) {
+                    continue;
+                }
+                long length = 0;
+                final int numberOperations = cursor.getNumberOperations(segment, alignment_i, splice_i);
+                if (numberOperations > 0) {
+                    if (operations.length < numberOperations) {
+                        operations = new byte[numberOperations];
+                        operationLengths = new int[numberOperations];
+                    }
+                    cursor.copyOperations(segment, alignment_i, splice_i, operations);
+                    cursor.copyOperationLengths(segment, alignment_i, splice_i, operationLengths);
+                    for (int operation_i = 0; operation_i < numberOperations; operation_i++) {
+                        switch (operations[operation_i]) {
+                            case Operation.Match:
+                            case Operation.SubstitutionToN:
+                            case Operation.Substitution:
+                            case Operation.Delete:
+                                length += operationLengths[operation_i];
+                        }
+                    }
+                }
+                if (position + Math.max(length, 1) - 1 >= start) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
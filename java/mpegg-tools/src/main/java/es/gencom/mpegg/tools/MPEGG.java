@@ -3,21 +3,20 @@ package es.gencom.mpegg.tools;
 import es.gencom.mpegg.coder.dataunits.DataUnits;
 import es.gencom.mpegg.format.*;
 import es.gencom.mpegg.format.ref.Reference;
-import es.gencom.mpegg.io.MPEGWriter;
+import es.gencom.mpegg.io.MappedChunkCache;
 import es.gencom.mpegg.io.ReadableMSBitFileChannel;
-import es.gencom.mpegg.io.WritableMSBitChannel;
-import es.gencom.mpegg.tools.DataUnitsToFile.AbstractDataUnitsToDataset;
-import es.gencom.mpegg.tools.DataUnitsToFile.DataUnitsToAUCNoMITDataset;
+import es.gencom.mpegg.tools.DataUnitsToFile.AUCNoMITDatasetWriter;
+import es.gencom.mpegg.tools.DataUnitsToFile.DSCDatasetWriter;
 import es.gencom.mpegg.tools.DataUnitsToFile.FASTAToFASTAReference;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
 
 /**
  * @author Dmitry Repchevsky &amp; Daniel Naro
@@ -31,6 +30,16 @@ public class MPEGG {
             "-h (--help)                - this help message\n" +
             "-i (--input)               - input file \n" +
             "-r (--reference)           - reference file \n" +
+            "-t (--threads)             - number of encoding/decoding threads \n" +
+            "-v (--verify)              - verify the reference checksums before decoding \n" +
+            "-m (--memory)              - encoder memory budget in megabytes \n" +
+            "-d (--dsc)                 - write descriptor streams contiguously \n" +
+            "-a (--adapt) [n] [%]       - adapt descriptors coding to the first n access units \n" +
+            "                             (default 8) accepting % larger size for faster decoding \n" +
+            "-q (--query) name:beg-end  - decode only the records overlapping the region \n" +
+            "                             (1-based, inclusive) \n" +
+            "-l (--level) n             - BAM output compression level 0-9 (default 9) \n" +
+            "-x (--index)               - write the BAI index of the decoded BAM file \n" +
             "example: >java -jar mpegg-tools.jar -i myfile.bam\n";
     
     public static void main(String[] args){
@@ -49,6 +58,47 @@ public class MPEGG {
         
         final String file = input.get(0);
 
+        List<String> threads = params.get("-t");
+        if (threads == null) {
+            threads = params.get("--threads");
+        }
+        final int nthreads = threads == null || threads.isEmpty() ?
+                Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads.get(0));
+
+        final boolean verify = params.containsKey("-v") || params.containsKey("--verify");
+        final boolean dsc = params.containsKey("-d") || params.containsKey("--dsc");
+
+        List<String> memory = params.get("-m");
+        if (memory == null) {
+            memory = params.get("--memory");
+        }
+        final long memoryBudget = memory == null || memory.isEmpty() ?
+                BAMToMPEGGBytestream.DEFAULT_MEMORY_BUDGET : Long.parseLong(memory.get(0)) << 20;
+
+        List<String> adapt = params.get("-a");
+        if (adapt == null) {
+            adapt = params.get("--adapt");
+        }
+        final int adaptAccessUnits = adapt == null ? 0 :
+                adapt.isEmpty() ? 8 : Integer.parseInt(adapt.get(0));
+        final double adaptTolerance = adapt == null || adapt.size() < 2 ?
+                0 : Double.parseDouble(adapt.get(1)) / 100;
+
+        List<String> query = params.get("-q");
+        if (query == null) {
+            query = params.get("--query");
+        }
+        final String region = query == null || query.isEmpty() ? null : query.get(0);
+
+        List<String> level = params.get("-l");
+        if (level == null) {
+            level = params.get("--level");
+        }
+        final int bamLevel = level == null || level.isEmpty() ?
+                Deflater.BEST_COMPRESSION : Integer.parseInt(level.get(0));
+
+        final boolean bamIndex = params.containsKey("-x") || params.containsKey("--index");
+
 
 
         Path path = Paths.get(file);
@@ -76,27 +126,27 @@ public class MPEGG {
                 final String fastaReferencePath = reference.get(0);
                 final String mpeggPath = file.replace("bam", "mpegg");
 
-                final String bitStreamPath = file.replace("bam","mgb");
-
-                BAMToMPEGGBytestream.encode(
-                        file,
-                        fastaReferencePath,
-                        bitStreamPath,
-                        false
-                );
-                DataUnits dataUnits = DataUnits.read(new ReadableMSBitFileChannel(
-                        new FileInputStream(bitStreamPath).getChannel())
-                );
+                DataUnits dataUnits = new DataUnits();
+                BAMToMPEGGBytestream.createDataUnitParameters(dataUnits);
 
-                System.out.println("num discarded records: "+BAMToMPEGGBytestream.getNumDiscardedRecords());
+                if (adaptAccessUnits > 0) {
+                    // must be done before the parameters are written
+                    final int trained = BAMToMPEGGBytestream.train(
+                            file,
+                            fastaReferencePath,
+                            dataUnits,
+                            false,
+                            adaptAccessUnits,
+                            adaptTolerance,
+                            nthreads
+                    );
+                    System.out.println("adapted descriptors configurations: " + trained);
+                }
 
-                MPEGFile mpegFile = new MPEGFile();
                 MPEGFileHeader fileHeader = new MPEGFileHeader();
                 fileHeader.addCompatibleBrand(new String(new byte[4]));
-                mpegFile.setFileHeader(fileHeader);
 
                 DatasetGroupContainer datasetGroupContainer = new DatasetGroupContainer();
-                mpegFile.addDatasetGroupContainer(datasetGroupContainer);
 
                 datasetGroupContainer.setDatasetGroupHeader(
                         new DatasetGroupHeader()
@@ -112,37 +162,125 @@ public class MPEGG {
                         "hs37d5.fa",
                         ChecksumAlgorithm.SHA256
                 );
-                AbstractDataUnitsToDataset dataUnitsToDataset = new DataUnitsToAUCNoMITDataset();
-                dataUnitsToDataset.addAsDataset(
-                        datasetGroupContainer,
-                        (byte)0,
-                        dataUnits,
-                        false,
-                        formatReference.getReferenceId(),
-                        100000,
-                        Alphabet.DNA_IUPAC
-                );
 
-                MPEGWriter writer = new WritableMSBitChannel(new FileOutputStream(mpeggPath).getChannel());
-                mpegFile.write(writer);
-                writer.flush();
+                if (dsc) {
+                    // blocks are spilled per descriptor and written to the file at the end
+                    final ForkJoinPool pool = nthreads > 1 ? new ForkJoinPool(nthreads) : null;
+                    try (DSCDatasetWriter writer = new DSCDatasetWriter(
+                            Paths.get(mpeggPath),
+                            fileHeader,
+                            datasetGroupContainer,
+                            0,
+                            dataUnits,
+                            formatReference.getReferenceId(),
+                            100000,
+                            Alphabet.DNA_IUPAC,
+                            pool)) {
+
+                        BAMToMPEGGBytestream.encode(
+                                file,
+                                fastaReferencePath,
+                                dataUnits,
+                                writer,
+                                false,
+                                nthreads,
+                                memoryBudget
+                        );
+                    } finally {
+                        if (pool != null) {
+                            pool.shutdown();
+                        }
+                    }
+                } else {
+                    // access units are written to the file as soon as they are encoded
+                    try (AUCNoMITDatasetWriter writer = new AUCNoMITDatasetWriter(
+                            Paths.get(mpeggPath),
+                            fileHeader,
+                            datasetGroupContainer,
+                            0,
+                            dataUnits,
+                            formatReference.getReferenceId(),
+                            100000,
+                            Alphabet.DNA_IUPAC)) {
+
+                        BAMToMPEGGBytestream.encode(
+                                file,
+                                fastaReferencePath,
+                                dataUnits,
+                                writer,
+                                false,
+                                nthreads,
+                                memoryBudget
+                        );
+                    }
+                }
+
+                System.out.println("num discarded records: "+BAMToMPEGGBytestream.getNumDiscardedRecords());
             } else {
                 MPEGFile mpegFile = new MPEGFile();
-                mpegFile.read(new ReadableMSBitFileChannel(new FileInputStream(file).getChannel()));
+                mpegFile.read(ReadableMSBitFileChannel.open(
+                        Paths.get(file), new MappedChunkCache(1L << 30, (byte)26)), true);
 
                 DatasetGroupContainer datasetGroupContainer = mpegFile.getDatasetGroupContainer(0);
                 DatasetContainer datasetContainer = datasetGroupContainer.getDatasetContainerById(0);
 
-                DataUnits dataUnits = DatasetToDataUnits.getDataUnits(datasetGroupContainer, datasetContainer);
                 Reference reference = datasetGroupContainer.getReference(
                         datasetContainer.getDatasetHeader().getReferenceId()
                 );
 
-                MPEGGBytestreamToBAM.decode(
-                        dataUnits,
-                        file.replace("mpegg", "mpegg_bam"),
-                        reference.getSequenceNames()
-                );
+                if (verify) {
+                    try (ReferenceChecksumChecker checker = new ReferenceChecksumChecker(
+                            nthreads, PackedReferenceCache.getDefault().getDirectory())) {
+                        List<ReferenceChecksumChecker.SequenceReport> reports = checker.verify(reference);
+                        for (ReferenceChecksumChecker.SequenceReport report : reports) {
+                            System.out.println(report);
+                        }
+                        if (!ReferenceChecksumChecker.isValid(reports)) {
+                            System.out.println("reference checksums mismatch");
+                            System.exit(1);
+                        }
+                    }
+                }
+
+                if (region != null) {
+                    // the sequence name may contain ':'
+                    final int colon = region.lastIndexOf(':');
+                    final int dash = region.indexOf('-', colon + 1);
+                    final String sequenceName = colon < 0 ? region : region.substring(0, colon);
+                    final long start = colon < 0 ? 0 :
+                            Long.parseLong(region.substring(colon + 1, dash < 0 ? region.length() : dash)) - 1;
+                    final long end = dash < 0 ? Long.MAX_VALUE - 1 : Long.parseLong(region.substring(dash + 1)) - 1;
+
+                    final ForkJoinPool pool = nthreads > 1 ? new ForkJoinPool(nthreads) : null;
+                    try {
+                        final MPEGFileQuery mpegFileQuery = new MPEGFileQuery(
+                                datasetGroupContainer, datasetContainer, null, pool);
+                        final long alignments = MPEGGBytestreamToBAM.write(
+                                mpegFileQuery.query(sequenceName, start, end),
+                                file.replace("mpegg", "mpegg_bam"),
+                                reference.getSequenceNames(),
+                                pool,
+                                bamLevel
+                        );
+                        System.out.println("alignments found: " + alignments);
+                    } finally {
+                        if (pool != null) {
+                            pool.shutdown();
+                        }
+                    }
+                } else {
+                    // the reference is mapped rather than read into the data units
+                    DataUnits dataUnits = DatasetToDataUnits.getDataUnits(datasetContainer, null);
+                    MPEGGBytestreamToBAM.decode(
+                            dataUnits,
+                            file.replace("mpegg", "mpegg_bam"),
+                            reference.getSequenceNames(),
+                            FormatReferenceToRawReference.open(reference),
+                            nthreads,
+                            bamIndex,
+                            bamLevel
+                    );
+                }
             }
         }catch (Exception e){
             e.printStackTrace();
@@ -158,6 +296,22 @@ public class MPEGG {
                 case "--input":
                 case "-r":
                 case "--reference":
+                case "-t":
+                case "--threads":
+                case "-v":
+                case "--verify":
+                case "-m":
+                case "--memory":
+                case "-d":
+                case "--dsc":
+                case "-a":
+                case "--adapt":
+                case "-q":
+                case "--query":
+                case "-l":
+                case "--level":
+                case "-x":
+                case "--index":
                 case "-h":
                 case "--help": values = parameters.get(arg);
                                if (values == null) {
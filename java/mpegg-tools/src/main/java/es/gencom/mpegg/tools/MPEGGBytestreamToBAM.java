@@ -3,9 +3,11 @@ package es.gencom.mpegg.tools;
 import es.gencom.integration.bam.BAMFileOutputStream;
 import es.gencom.integration.bam.BAMHeader;
 import es.gencom.integration.bam.BAMRecord;
+import es.gencom.mpegg.Record;
+import es.gencom.mpegg.decoder.AbstractSequencesSource;
 import es.gencom.mpegg.decoder.Exceptions.InvalidSymbolException;
 import es.gencom.mpegg.decoder.Exceptions.MissingRequiredDescriptorException;
-import es.gencom.mpegg.decoder.SequencesFromDataUnitsRawReference;
+import es.gencom.mpegg.decoder.MappedSequencesSource;
 import es.gencom.mpegg.io.MPEGReader;
 import es.gencom.mpegg.io.ReadableMSBitFileChannel;
 import es.gencom.mpegg.coder.dataunits.DataUnitRawReference;
@@ -15,24 +17,156 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 
 public class MPEGGBytestreamToBAM {
+
+    /**
+     * The header line of the coordinate sorted BAM files the decoder writes.
+     */
+    private final static String HEADER_TEXT = "@HD\tVN:1.6\tSO:coordinate\n";
+
     public static void decode(
             DataUnits dataUnits,
             String outputPathBAM,
             String[] sequencesNames
     ) throws IOException, DataFormatException, InvalidSymbolException, MissingRequiredDescriptorException {
-        MPEGGdecodingTask mpegGdecodingTask = new MPEGGdecodingTask(
-                sequencesNames,
+        decode(dataUnits, outputPathBAM, sequencesNames, 1);
+    }
+
+    /**
+     * Decodes the data units into the BAM file.
+     *
+     * @param dataUnits data units to be decoded
+     * @param outputPathBAM path to the BAM file to be written
+     * @param sequencesNames names of the reference sequences
+     * @param threads number of threads to decode access units,
+     *        1 decodes on the caller thread
+     */
+    public static void decode(
+            DataUnits dataUnits,
+            String outputPathBAM,
+            String[] sequencesNames,
+            int threads
+    ) throws IOException, DataFormatException, InvalidSymbolException, MissingRequiredDescriptorException {
+        decode(dataUnits, outputPathBAM, sequencesNames, threads, false);
+    }
+
+    /**
+     * Decodes the data units into the BAM file.
+     *
+     * With more than one thread, access units are decoded and BGZF blocks
+     * of the BAM file are compressed on the shared pool of workers.
+     *
+     * @param dataUnits data units to be decoded
+     * @param outputPathBAM path to the BAM file to be written
+     * @param sequencesNames names of the reference sequences
+     * @param threads number of worker threads,
+     *        1 decodes and compresses on the caller thread
+     * @param createIndex whether to write the BAI index next to the BAM file
+     */
+    public static void decode(
+            DataUnits dataUnits,
+            String outputPathBAM,
+            String[] sequencesNames,
+            int threads,
+            boolean createIndex
+    ) throws IOException, DataFormatException, InvalidSymbolException, MissingRequiredDescriptorException {
+        decode(dataUnits, outputPathBAM, sequencesNames, threads, createIndex, Deflater.BEST_COMPRESSION);
+    }
+
+    /**
+     * Decodes the data units into the BAM file.
+     *
+     * @param dataUnits data units to be decoded
+     * @param outputPathBAM path to the BAM file to be written
+     * @param sequencesNames names of the reference sequences
+     * @param threads number of worker threads,
+     *        1 decodes and compresses on the caller thread
+     * @param createIndex whether to write the BAI index next to the BAM file
+     * @param level deflate compression level (0-9) of the BAM file
+     */
+    public static void decode(
+            DataUnits dataUnits,
+            String outputPathBAM,
+            String[] sequencesNames,
+            int threads,
+            boolean createIndex,
+            int level
+    ) throws IOException, DataFormatException, InvalidSymbolException, MissingRequiredDescriptorException {
+        decode(
                 dataUnits,
-                new SequencesFromDataUnitsRawReference(
-                        dataUnits.getDataUnitRawReference(),
-                        sequencesNames
-                )
+                outputPathBAM,
+                sequencesNames,
+                new MappedSequencesSource(dataUnits.getDataUnitRawReference(), sequencesNames),
+                threads,
+                createIndex,
+                level
         );
+    }
+
+    /**
+     * Decodes the data units into the BAM file.
+     *
+     * @param dataUnits data units to be decoded
+     * @param outputPathBAM path to the BAM file to be written
+     * @param sequencesNames names of the reference sequences
+     * @param sequencesSource the reference to reconstruct the reads
+     *        (i.e. the packed reference)
+     * @param threads number of worker threads,
+     *        1 decodes and compresses on the caller thread
+     * @param createIndex whether to write the BAI index next to the BAM file
+     * @param level deflate compression level (0-9) of the BAM file
+     */
+    public static void decode(
+            DataUnits dataUnits,
+            String outputPathBAM,
+            String[] sequencesNames,
+            AbstractSequencesSource sequencesSource,
+            int threads,
+            boolean createIndex,
+            int level
+    ) throws IOException, DataFormatException, InvalidSymbolException, MissingRequiredDescriptorException {
+        final Path fbam = Paths.get(outputPathBAM);
+        final Path fbai = createIndex ? fbam.resolveSibling(fbam.getFileName() + ".bai") : null;
+
+        final ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try(AccessUnitsDecodingEngine decodingEngine = pool != null ?
+                new AccessUnitsDecodingEngine(dataUnits, sequencesSource, pool, 4 * threads) : null) {
+            decode(
+                new MPEGGdecodingTask(
+                        sequencesNames,
+                        dataUnits,
+                        sequencesSource,
+                        decodingEngine
+                ),
+                fbam,
+                fbai,
+                pool,
+                level,
+                sequencesNames
+            );
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static void decode(
+            MPEGGdecodingTask mpegGdecodingTask,
+            Path fbam,
+            Path fbai,
+            ExecutorService executor,
+            int level,
+            String[] sequencesNames
+    ) throws IOException, DataFormatException, InvalidSymbolException, MissingRequiredDescriptorException {
         System.out.println("finished creating decoding taks");
 
 
@@ -41,18 +175,10 @@ public class MPEGGBytestreamToBAM {
         long readCount = 0;
         Iterator<BAMRecord> bamRecordIterator = new MPEGGDecodingIterator(mpegGdecodingTask);
 
-        BAMHeader.Reference[] references = new BAMHeader.Reference[sequencesNames.length];
-        for(int reference_i=0; reference_i < sequencesNames.length; reference_i++){
-            references[reference_i] = new BAMHeader.Reference(
-                    sequencesNames[reference_i],
-                    0
-            );
-        }
-
-        BAMHeader bamHeader = new BAMHeader("", references);
+        BAMHeader bamHeader = createBAMHeader(sequencesNames);
         
         try(BAMFileOutputStream bamFileOutputStream = 
-                new BAMFileOutputStream(Paths.get(outputPathBAM),bamHeader)) {
+                new BAMFileOutputStream(fbam, bamHeader, fbai, executor, level)) {
 
             while (bamRecordIterator.hasNext()) {
                 BAMRecord bamRecord = bamRecordIterator.next();
@@ -77,4 +203,53 @@ public class MPEGGBytestreamToBAM {
             }
         }
     }
+
+    /**
+     * Writes the records (i.e. found by the region query) into the BAM file.
+     * The query returns the records access unit by access unit, so the
+     * records of the different classes overlap. The alignments of all the
+     * records are merged in memory and written in the coordinate order.
+     *
+     * @param records the records to write
+     * @param outputPathBAM path to the BAM file to be written
+     * @param sequencesNames names of the reference sequences
+     * @param executor the executor to compress BGZF blocks on or null
+     * @param level deflate compression level (0-9) of the BAM file
+     *
+     * @return the number of written alignments
+     */
+    public static long write(
+            Iterator<Record> records,
+            String outputPathBAM,
+            String[] sequencesNames,
+            ExecutorService executor,
+            int level
+    ) throws IOException {
+        SAMReadsCollection samReadsCollection = new SAMReadsCollection();
+        while (records.hasNext()) {
+            samReadsCollection.addRead(records.next());
+        }
+
+        long alignmentsCount = 0;
+        try(BAMFileOutputStream bamFileOutputStream = new BAMFileOutputStream(
+                Paths.get(outputPathBAM), createBAMHeader(sequencesNames), null, executor, level)) {
+
+            for (SAMLikeAlignment samLikeAlignment : samReadsCollection) {
+                bamFileOutputStream.write(BAMRecordBuilder.build(sequencesNames, samLikeAlignment));
+                alignmentsCount++;
+            }
+        }
+        return alignmentsCount;
+    }
+
+    private static BAMHeader createBAMHeader(String[] sequencesNames) {
+        BAMHeader.Reference[] references = new BAMHeader.Reference[sequencesNames.length];
+        for(int reference_i=0; reference_i < sequencesNames.length; reference_i++){
+            references[reference_i] = new BAMHeader.Reference(
+                    sequencesNames[reference_i],
+                    0
+            );
+        }
+        return new BAMHeader(HEADER_TEXT, references);
+    }
 }
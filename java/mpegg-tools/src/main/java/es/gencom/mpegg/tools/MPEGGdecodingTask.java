@@ -1,7 +1,7 @@
 package es.gencom.mpegg.tools;
 
 import es.gencom.integration.bam.BAMRecord;
-import es.gencom.mpegg.Record;
+import es.gencom.mpegg.RecordBatch;
 import es.gencom.mpegg.format.DATA_CLASS;
 import es.gencom.mpegg.format.SequenceIdentifier;
 import es.gencom.mpegg.decoder.AbstractSequencesSource;
@@ -23,6 +23,8 @@ public class MPEGGdecodingTask {
     private final DataUnitsIndexation dataUnitsIndexation;
     private final String[] sequenceNames;
     private final AbstractSequencesSource sequencesSource;
+    private final AccessUnitsDecodingEngine decodingEngine;
+    private final RecordBatch batch = new RecordBatch();
 
     private int currentAU = -1;
     private SequenceIdentifier currentSequence;
@@ -34,6 +36,22 @@ public class MPEGGdecodingTask {
             DataUnits dataUnits,
             AbstractSequencesSource sequencesSource
     ){
+        this(sequenceNames, dataUnits, sequencesSource, null);
+    }
+
+    /**
+     * @param sequenceNames names of the reference sequences
+     * @param dataUnits data units to be decoded
+     * @param sequencesSource reference used to reconstruct the reads
+     * @param decodingEngine engine to decode access units ahead of the output
+     *        cursor or null to decode them on the caller thread
+     */
+    public MPEGGdecodingTask(
+            String[] sequenceNames,
+            DataUnits dataUnits,
+            AbstractSequencesSource sequencesSource,
+            AccessUnitsDecodingEngine decodingEngine
+    ){
 
         dataUnitsToDecode = dataUnits;
         dataUnitsMap = new TreeMap<>();
@@ -41,6 +59,7 @@ public class MPEGGdecodingTask {
         decodedAUs = new HashSet<>();
         dataUnitsIndexation = new DataUnitsIndexation(dataUnits);
         this.sequencesSource = sequencesSource;
+        this.decodingEngine = decodingEngine;
         long auId = 0;
         for(DataUnitAccessUnit dataUnitAccessUnit : dataUnits.getDataUnitAccessUnits()){
             HashMap<DATA_CLASS, HashMap<Long, DataUnitAccessUnit>> ausInSequence =
@@ -69,15 +88,21 @@ public class MPEGGdecodingTask {
                 "\tdecoding au of type :"+dataUnitToDecode.getHeader().getAU_type()
                 +" id "+dataUnitToDecode.getHeader().getAccess_unit_ID());
 
-        SAMReadsCollection samReadsCollection = new SAMReadsCollection();
-
-        List<Record> records = DataUnitAccessUnitDecoder.decode(
-                dataUnitToDecode,
-                sequencesSource
-        );
-
-        for (Record record : records) {
-            samReadsCollection.addRead(record);
+        SAMReadsCollection samReadsCollection;
+        if(decodingEngine != null){
+            samReadsCollection = decodingEngine.take(dataUnitToDecode);
+        } else {
+            samReadsCollection = new SAMReadsCollection();
+
+            try {
+                DataUnitAccessUnitDecoder.decode(dataUnitToDecode, sequencesSource, null, batch);
+                final RecordBatch.Cursor cursor = batch.cursor();
+                while (cursor.next()) {
+                    samReadsCollection.addRead(cursor);
+                }
+            } finally {
+                batch.clear();
+            }
         }
 
         decodedAUs.add(dataUnitToDecode);
@@ -128,6 +153,10 @@ public class MPEGGdecodingTask {
                 return false;
             }
 
+            if(decodingEngine != null){
+                decodingEngine.advance(currentAU);
+            }
+
             DataUnitAccessUnit dataUnitToDecode = dataUnitsToDecode.getDataUnitAccessUnit(currentAU);
             System.out.println("loading au " + currentAU + " sequence is " + dataUnitToDecode.getHeader().getSequence_ID());
 
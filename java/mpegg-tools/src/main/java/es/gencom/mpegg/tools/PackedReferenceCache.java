@@ -0,0 +1,317 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.integration.fasta.FastaFileReader;
+import es.gencom.integration.fasta.FastaSequence;
+import es.gencom.mpegg.decoder.PackedSequencesSource;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Persistent cache of 2-bit packed FASTA references.
+ * </p>
+ * 
+ * References are stored in the cache directory under their SHA-256 checksum
+ * as the packed sequences file (<code>checksum.2bit</code>) and its sidecar
+ * index (<code>checksum.idx</code>). The checksum of the FASTA file is 
+ * remembered together with its size and modification time, so once cached 
+ * the reference is opened without reading the FASTA file.
+ * 
+ * The default cache directory is taken from the "mpegg.reference.cache"
+ * system property and falls back to <code>~/.mpegg/references</code>.
+ * 
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class PackedReferenceCache {
+
+    public final static String CACHE_DIRECTORY_PROPERTY = "mpegg.reference.cache";
+
+    private final Path directory;
+
+    public PackedReferenceCache(final Path directory) {
+        this.directory = directory;
+    }
+
+    public static PackedReferenceCache getDefault() {
+        final String directory = System.getProperty(CACHE_DIRECTORY_PROPERTY);
+        return new PackedReferenceCache(directory != null ? Paths.get(directory) :
+                Paths.get(System.getProperty("user.home"), ".mpegg", "references"));
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Opens the packed FASTA reference converting it if not yet cached.
+     * 
+     * @param fasta the path to the FASTA file
+     * 
+     * @return the sequences source over the packed reference
+     * 
+     * @throws IOException 
+     */
+    public PackedSequencesSource open(final Path fasta) throws IOException {
+        Files.createDirectories(directory);
+
+        final String checksum = getChecksum(fasta);
+        final Path index = directory.resolve(checksum + ".idx");
+        final Path packed = directory.resolve(checksum + ".2bit");
+        if (!Files.exists(index) || !Files.exists(packed) ||
+            PackedSequencesSource.getVersion(index) != PackedSequencesSource.VERSION) {
+            pack(fasta, checksum, index, packed);
+        }
+        return PackedSequencesSource.open(index, packed);
+    }
+
+    /**
+     * Gets the SHA-256 checksum of the FASTA file. The checksum is only
+     * calculated when the file has been changed since the last call.
+     * 
+     * @param fasta the path to the FASTA file
+     * 
+     * @return hexadecimal checksum
+     * 
+     * @throws IOException 
+     */
+    public String getChecksum(final Path fasta) throws IOException {
+        final Path path = fasta.toAbsolutePath().normalize();
+        final String fingerprint = Files.size(path) + " " + 
+                Files.getLastModifiedTime(path).toMillis();
+
+        final Path key = directory.resolve(
+                toHex(digest(path.toString().getBytes(StandardCharsets.UTF_8))) + ".key");
+        if (Files.exists(key)) {
+            final List<String> lines = Files.readAllLines(key, StandardCharsets.UTF_8);
+            if (lines.size() == 2 && fingerprint.equals(lines.get(0))) {
+                return lines.get(1);
+            }
+        }
+
+        final MessageDigest md = getMessageDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(path), md)) {
+            final byte[] buf = new byte[65536];
+            while (in.read(buf) >= 0) {}
+        }
+        final String checksum = toHex(md.digest());
+
+        final List<String> lines = new ArrayList<>();
+        lines.add(fingerprint);
+        lines.add(checksum);
+        write(key, lines);
+
+        return checksum;
+    }
+
+    private static void pack(
+            final Path fasta,
+            final String checksum,
+            final Path index,
+            final Path packed) throws IOException {
+
+        final Path packedTmp = Files.createTempFile(packed.getParent(), checksum, ".2bit.tmp");
+        final Path indexTmp = Files.createTempFile(index.getParent(), checksum, ".idx.tmp");
+        try {
+            final List<String> names = new ArrayList<>();
+            
+            // {length, offset, mask offset, first run, runs count}
+            final List<long[]> offsets = new ArrayList<>();
+            final Runs runs = new Runs();
+            final long runsOffset;
+
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(packedTmp), 65536))) {
+                long offset = 0;
+                for (FastaSequence fastaSequence : new FastaFileReader(fasta)) {
+                    final byte[] sequence = fastaSequence.sequence;
+                    final int firstRun = runs.start();
+                    boolean masked = false;
+
+                    int packed_byte = 0;
+                    for (int i = 0; i < sequence.length; i++) {
+                        int code = code(sequence[i]);
+                        if (code < 0) {
+                            code = code((byte)(sequence[i] & ~0x20));
+                            if (code < 0) {
+                                runs.add(i, sequence[i]);
+                            } else {
+                                masked = true;
+                            }
+                        }
+                        packed_byte = (packed_byte << 2) | (code & 3);
+                        if ((i & 3) == 3) {
+                            out.write(packed_byte);
+                            packed_byte = 0;
+                        }
+                    }
+                    if ((sequence.length & 3) != 0) {
+                        out.write(packed_byte << (2 * (4 - (sequence.length & 3))));
+                    }
+                    final long packedOffset = offset;
+                    offset += (sequence.length + 3) >>> 2;
+
+                    // the case mask of soft-masked sequences
+                    long maskOffset = -1;
+                    if (masked) {
+                        int mask_byte = 0;
+                        for (int i = 0; i < sequence.length; i++) {
+                            mask_byte <<= 1;
+                            if (code(sequence[i]) < 0 && code((byte)(sequence[i] & ~0x20)) >= 0) {
+                                mask_byte |= 1;
+                            }
+                            if ((i & 7) == 7) {
+                                out.write(mask_byte);
+                                mask_byte = 0;
+                            }
+                        }
+                        if ((sequence.length & 7) != 0) {
+                            out.write(mask_byte << (8 - (sequence.length & 7)));
+                        }
+                        maskOffset = offset;
+                        offset += (sequence.length + 7) >>> 3;
+                    }
+
+                    names.add(fastaSequence.getSequenceName());
+                    offsets.add(new long[] {sequence.length, packedOffset, maskOffset, 
+                                            firstRun, runs.count - firstRun});
+                }
+                runsOffset = offset;
+                runs.write(out);
+            }
+
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(indexTmp), 65536))) {
+                out.writeInt(PackedSequencesSource.MAGIC);
+                out.writeInt(PackedSequencesSource.VERSION);
+                out.writeUTF(checksum);
+                out.writeInt(names.size());
+                out.writeLong(runsOffset);
+                out.writeInt(runs.count);
+                for (int i = 0, n = names.size(); i < n; i++) {
+                    final long[] sequenceOffsets = offsets.get(i);
+                    out.writeUTF(names.get(i));
+                    out.writeLong(sequenceOffsets[0]);
+                    out.writeLong(sequenceOffsets[1]);
+                    out.writeLong(sequenceOffsets[2]);
+                    out.writeInt((int)sequenceOffsets[3]);
+                    out.writeInt((int)sequenceOffsets[4]);
+                }
+            }
+
+            // the index is the last to appear, so the cache is never seen incomplete
+            Files.move(packedTmp, packed, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(indexTmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(packedTmp);
+            Files.deleteIfExists(indexTmp);
+        }
+    }
+
+    private static int code(final byte nucleotide) {
+        switch (nucleotide) {
+            case 'A': return 0;
+            case 'C': return 1;
+            case 'G': return 2;
+            case 'T': return 3;
+        }
+        return -1;
+    }
+
+    static void write(final Path path, final List<String> lines) throws IOException {
+        final Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    static byte[] digest(final byte[] data) {
+        return getMessageDigest().digest(data);
+    }
+
+    private static MessageDigest getMessageDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static String toHex(final byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >>> 4) & 0x0F, 16));
+            sb.append(Character.forDigit(b & 0x0F, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs of the same non ACGT symbol of all the sequences.
+     */
+    private static class Runs {
+        private final static byte[] PADDING = new byte[PackedSequencesSource.RUN_SIZE - 13];
+
+        private long[] starts = new long[16];
+        private int[] lengths = new int[16];
+        private byte[] symbols = new byte[16];
+        private int count;
+        private int first;
+
+        /**
+         * Starts the runs of the next sequence, so the runs of different
+         * sequences are never merged.
+         *
+         * @return the index of the first run of the sequence
+         */
+        private int start() {
+            return first = count;
+        }
+
+        private void add(final long position, final byte symbol) {
+            if (count > first && symbols[count - 1] == symbol &&
+                starts[count - 1] + lengths[count - 1] == position) {
+                lengths[count - 1]++;
+                return;
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+                symbols = Arrays.copyOf(symbols, count * 2);
+            }
+            starts[count] = position;
+            lengths[count] = 1;
+            symbols[count] = symbol;
+            count++;
+        }
+
+        /**
+         * Writes the runs table of PackedSequencesSource.RUN_SIZE entries.
+         */
+        private void write(final DataOutputStream out) throws IOException {
+            for (int i = 0; i < count; i++) {
+                out.writeLong(starts[i]);
+                out.writeInt(lengths[i]);
+                out.writeByte(symbols[i]);
+                out.write(PADDING);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package es.gencom.mpegg.tools;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>
+ * Iterator that consumes the underlying iterator on a background thread.
+ * </p>
+ *
+ * Elements are passed to the consumer in batches through a bounded queue,
+ * so the producer never gets too far ahead. Errors thrown by the underlying
+ * iterator are rethrown to the consumer once all preceding elements are read.
+ * The consumer that stops before the end must close the iterator, so the
+ * producer stops reading and the underlying source may be closed.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ *
+ * @param <T> the type of elements
+ */
+
+class ReadAheadIterator<T> implements Iterator<T>, Closeable {
+
+    private final static int BATCH_SIZE = 1024;
+    private final static int QUEUE_SIZE = 16;
+
+    private final BlockingQueue<List<T>> queue;
+    private final Thread thread;
+    private volatile RuntimeException error;
+    private volatile boolean closed;
+
+    private List<T> batch;
+    private int index;
+
+    ReadAheadIterator(final Iterator<T> iterator) {
+        queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        batch = new ArrayList<>();
+
+        thread = new Thread(() -> produce(iterator), "read-ahead");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void produce(final Iterator<T> iterator) {
+        try {
+            try {
+                List<T> list = new ArrayList<>(BATCH_SIZE);
+                while (!closed && iterator.hasNext()) {
+                    list.add(iterator.next());
+                    if (list.size() == BATCH_SIZE) {
+                        queue.put(list);
+                        list = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                if (!list.isEmpty()) {
+                    queue.put(list);
+                }
+            } catch (RuntimeException ex) {
+                error = ex;
+            } catch (Error ex) {
+                error = new RuntimeException(ex);
+            }
+            // the empty list marks the end of the stream
+            queue.put(Collections.<T>emptyList());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (index < batch.size()) {
+            return true;
+        }
+        if (batch.isEmpty() && index > 0) {
+            return false;
+        }
+
+        try {
+            batch = queue.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+        index = 0;
+
+        if (batch.isEmpty()) {
+            index = 1; // stay at the end
+            if (error != null) {
+                throw error;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.get(index++);
+    }
+
+    /**
+     * Stops the producer and waits for it to finish reading the current element.
+     *
+     * @throws InterruptedIOException if interrupted while waiting for the producer
+     */
+    @Override
+    public void close() throws InterruptedIOException {
+        closed = true;
+        batch = Collections.emptyList();
+        index = 1;
+
+        try {
+            while (thread.isAlive()) {
+                thread.interrupt();
+                // unblocks the producer should the interrupt be swallowed
+                queue.clear();
+                thread.join(100);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        }
+        queue.clear();
+    }
+}
@@ -2,8 +2,8 @@ package es.gencom.mpegg.tools;
 
 import es.gencom.integration.bam.BAMHeader;
 import es.gencom.integration.bam.BAMRecord;
-import es.gencom.integration.sam.CIGARDecoder;
 import es.gencom.integration.sam.SAMRecord;
+import es.gencom.mpegg.AlignmentBatch;
 import es.gencom.mpegg.Record;
 import es.gencom.mpegg.SplitType;
 import es.gencom.mpegg.format.DATA_CLASS;
@@ -20,6 +20,14 @@ import java.util.Map;
 import java.util.TreeMap;
 
 public class RecordConstructor {
+    // BAM CIGAR operations codes
+    private final static int CIGAR_M = 0;
+    private final static int CIGAR_I = 1;
+    private final static int CIGAR_D = 2;
+    private final static int CIGAR_S = 4;
+    private final static int CIGAR_EQ = 7;
+    private final static int CIGAR_X = 8;
+
     private final long readId;
     private final String readName;
     private final String groupName;
@@ -465,6 +473,161 @@ public class RecordConstructor {
         );
     }
 
+    /**
+     * <p>
+     * Appends the template to the batch without constructing the record.
+     * </p>
+     *
+     * Only the templates with one alignment per segment are batched:
+     * unpaired reads, pairs with both segments mapped which records point
+     * to each other and pairs which mate is to be stored in another record.
+     * The batched template is encoded to the same symbols as the record
+     * built by the {@link #construct(AbstractSequencesSource, BAMHeader) construct},
+     * which remains to be used when the template is not appended.
+     *
+     * @param batch the batch to append the template to
+     * @param sequencesSource the reference the records are aligned to
+     * @param bamHeader the header of the BAM file
+     *
+     * @return whether the template was appended to the batch
+     *
+     * @throws IOException
+     */
+    public boolean append(
+            AlignmentBatch batch,
+            AbstractSequencesSource sequencesSource,
+            BAMHeader bamHeader
+    ) throws IOException {
+        for(int record_i = 0; record_i < numberRecords; record_i++){
+            if(!isBatchable(records[record_i], bamHeader)){
+                return false;
+            }
+        }
+
+        final BAMRecord first = records[0];
+        final SequenceIdentifier sequenceIdFirst = sequencesSource.getSequenceIdentifier(
+                bamHeader.getReference(first.getRefID()).name
+        );
+        if(sequenceIdFirst == null){
+            return false;
+        }
+
+        if(!requiresTwoSegments){
+            if(numberRecords != 1){
+                return false;
+            }
+            batch.add(readId, readName, groupName, sequenceIdFirst, true, true);
+            addSegment(batch, first, sequenceIdFirst, first.isReverseComplemented(), sequencesSource, bamHeader);
+        } else if(numberRecords == 1){
+            final SequenceIdentifier sequenceIdMate = sequencesSource.getSequenceIdentifier(
+                    bamHeader.getReference(first.getNextRefID()).name
+            );
+            if(sequenceIdMate == null){
+                return false;
+            }
+            batch.add(readId, readName, groupName, sequenceIdFirst, !first.isLastSegment(), false);
+            addSegment(batch, first, sequenceIdFirst, first.isReverseComplemented(), sequencesSource, bamHeader);
+            batch.setMate(
+                    sequenceIdMate,
+                    first.getNextPositionStart() - 1,
+                    first.isNextSegmentReverseComplemented()
+            );
+        } else if(numberRecords == 2){
+            final BAMRecord second = records[1];
+            if(
+                    first.isLastSegment() == second.isLastSegment()
+                            || first.getRefID() != second.getRefID()
+                            || first.getNextRefID() != second.getRefID()
+                            || second.getNextRefID() != first.getRefID()
+                            || first.getNextPositionStart() != second.getPositionStart()
+                            || second.getNextPositionStart() != first.getPositionStart()
+            ){
+                return false;
+            }
+
+            // the second record has been registered by the mate information of the first one
+            final boolean reverseComplimentFirst = first.isReverseComplemented();
+            final boolean reverseComplimentSecond = first.isNextSegmentReverseComplemented();
+
+            final boolean isFirstRead0 = !first.isLastSegment();
+            final boolean isEncodingRead0 = isFirstRead0 ?
+                    first.getPositionStart() <= second.getPositionStart() :
+                    second.getPositionStart() <= first.getPositionStart();
+
+            batch.add(readId, readName, groupName, sequenceIdFirst, isEncodingRead0, false);
+            if(isEncodingRead0 == isFirstRead0){
+                addSegment(batch, first, sequenceIdFirst, reverseComplimentFirst, sequencesSource, bamHeader);
+                addSegment(batch, second, sequenceIdFirst, reverseComplimentSecond, sequencesSource, bamHeader);
+            }else{
+                addSegment(batch, second, sequenceIdFirst, reverseComplimentSecond, sequencesSource, bamHeader);
+                addSegment(batch, first, sequenceIdFirst, reverseComplimentFirst, sequencesSource, bamHeader);
+            }
+        } else {
+            return false;
+        }
+        batch.setDataClass(dataClass);
+        return true;
+    }
+
+    private void addSegment(
+            AlignmentBatch batch,
+            BAMRecord bamRecord,
+            SequenceIdentifier sequenceId,
+            boolean reverseCompliment,
+            AbstractSequencesSource sequencesSource,
+            BAMHeader bamHeader
+    ) throws IOException {
+        batch.addSegment(
+                sequenceId,
+                bamRecord.getPositionStart() - 1,
+                reverseCompliment,
+                bamRecord.getSequenceBytes(),
+                bamRecord.getQualityBytes()
+        );
+        DATA_CLASS classAlignment = populateCigar(bamRecord, sequencesSource, bamHeader, batch::addOperation);
+        if (classAlignment.ID > dataClass.ID) {
+            dataClass = classAlignment;
+        }
+    }
+
+    /**
+     * Checks that the record is mapped, its mate (if any) is mapped as well
+     * and the CIGAR is made of matches, insertions, deletions and soft clips only.
+     */
+    private boolean isBatchable(BAMRecord bamRecord, BAMHeader bamHeader) {
+        if(bamRecord.isUnmappedSegment() || bamRecord.hasMultipleSegments() != requiresTwoSegments){
+            return false;
+        }
+        if(requiresTwoSegments){
+            if(
+                    bamRecord.isNextSegmentUnmapped()
+                            || bamRecord.isFirstSegment() == bamRecord.isLastSegment()
+                            || bamRecord.getNextRefID() < 0
+                            || bamRecord.getNextRefID() >= bamHeader.refs.length
+            ){
+                return false;
+            }
+        }
+
+        final long[] cigar = bamRecord.getBinaryCIGAR();
+        if(cigar == null || bamRecord.getQualityBytes() == null){
+            return false;
+        }
+        boolean hasMatches = false;
+        for(int i=0; i<cigar.length; i++){
+            switch((int)(cigar[i] & 0x0F)){
+                case CIGAR_M:
+                case CIGAR_EQ:
+                case CIGAR_X: hasMatches = true;
+                case CIGAR_I:
+                case CIGAR_D:
+                case CIGAR_S: break;
+                default: return false;
+            }
+        }
+        return hasMatches;
+    }
+
     private void removeDataNotInRecordForEncodingSegment(
             SequenceIdentifier[][] sequenceInformation,
             long[][][] positionInformation,
@@ -592,19 +755,40 @@ public class RecordConstructor {
             int alignment_i,
             BAMHeader bamHeader
     ) throws IOException {
-        CIGARDecoder cigar = new CIGARDecoder(bamRecord.getCIGAR());
-        int toCopy = 0;
+        OperationsBuffer buffer = new OperationsBuffer();
+        DATA_CLASS dataClass = populateCigar(bamRecord, sequencesSource, bamHeader, buffer);
+
+        operations[alignment_i] = new byte[][]{Arrays.copyOf(buffer.operations, buffer.numberOperations)};
+        operationLength[alignment_i] = new int[][]{Arrays.copyOf(buffer.operationLength, buffer.numberOperations)};
+        originalBases[alignment_i] = new byte[][]{Arrays.copyOf(buffer.originalBases, buffer.numberOriginalBases)};
+        return dataClass;
+    }
 
-        int sizeFirstClipping = 0;
-        if(cigar.getOperation()[0]=='S' || cigar.getOperation()[0]=='H'){
-            sizeFirstClipping = cigar.getOperationLength()[0];
+    /**
+     * Converts the CIGAR of the record into the alignment operations
+     * comparing the read bases against the reference.
+     *
+     * @return the class of the alignment
+     */
+    private static DATA_CLASS populateCigar(
+            BAMRecord bamRecord,
+            AbstractSequencesSource sequencesSource,
+            BAMHeader bamHeader,
+            OperationsSink sink
+    ) throws IOException {
+        long[] cigar = bamRecord.getBinaryCIGAR();
+        if(cigar == null){
+            cigar = new long[0];
         }
+        byte[] sequence = bamRecord.getSequenceBytes();
 
-        for(int i=0; i<cigar.getOperation().length; i++){
-            if(cigar.getOperation()[i]=='M' || cigar.getOperation()[i]=='X' || cigar.getOperation()[i]=='='){
-                toCopy += cigar.getOperationLength()[i];
-            } else if (cigar.getOperation()[i]=='D'){
-                toCopy += cigar.getOperationLength()[i];
+        int toCopy = 0;
+        for(int i=0; i<cigar.length; i++){
+            switch((int)(cigar[i] & 0x0F)){
+                case CIGAR_M:
+                case CIGAR_EQ:
+                case CIGAR_X:
+                case CIGAR_D: toCopy += cigar[i] >>> 4;
             }
         }
 
@@ -614,46 +798,22 @@ public class RecordConstructor {
                 bamRecord.getPositionStart() + toCopy
         );
 
-        operations[alignment_i] = new byte[1][128];
-        operationLength[alignment_i] = new int[1][128];
-        originalBases[alignment_i] = new byte[1][128];
-
-        int numberOperations = 0;
-        int numberOriginalBases = 0;
-
         int currentPositionInReadString = 0;
-        int currentPositionInCopy = 0;
-        int currentIndex = 0;
 
         DATA_CLASS dataClass = DATA_CLASS.CLASS_P;
 
-        for(int operation_i=0; operation_i<cigar.getOperation().length; operation_i++){
-            if(
-                    cigar.getOperation()[operation_i]=='M'
-                            || cigar.getOperation()[operation_i]=='X'
-                            || cigar.getOperation()[operation_i]=='='
-            ){
+        for(int operation_i=0; operation_i<cigar.length; operation_i++){
+            final int operation = (int)(cigar[operation_i] & 0x0F);
+            final int length = (int)(cigar[operation_i] >>> 4);
+            if(operation == CIGAR_M || operation == CIGAR_X || operation == CIGAR_EQ){
                 //M
-                for(int i=0; i<cigar.getOperationLength()[operation_i]; i++){
+                for(int i=0; i<length; i++){
                     byte originalBase = (byte) Character.toUpperCase(referenceSubSequence.readByte());
-                    if (
-                            bamRecord.getSequenceBytes()[currentPositionInReadString] == originalBase
-                    ){
-                        operations[alignment_i][0][numberOperations] = Operation.Match;
-                        operationLength[alignment_i][0][numberOperations] = 1;
-                        numberOperations++;
-
-                        if(operations[alignment_i][0].length == numberOperations){
-                            operations[alignment_i][0] = Arrays.copyOf(
-                                    operations[alignment_i][0], numberOperations*2
-                            );
-                            operationLength[alignment_i][0] = Arrays.copyOf(
-                                    operationLength[alignment_i][0], numberOperations*2
-                            );
-                        }
+                    if (sequence[currentPositionInReadString] == originalBase){
+                        sink.addOperation(Operation.Match, 1);
                     }else{
                         byte operationType;
-                        if(bamRecord.getSequenceBytes()[currentPositionInReadString] == 'N'){
+                        if(sequence[currentPositionInReadString] == 'N'){
                             operationType = Operation.SubstitutionToN;
 
                             if (dataClass == DATA_CLASS.CLASS_P){
@@ -666,107 +826,67 @@ public class RecordConstructor {
                                 dataClass = DATA_CLASS.CLASS_M;
                             }
                         }
-                        operations[alignment_i][0][numberOperations] = operationType;
-                        operationLength[alignment_i][0][numberOperations] = 1;
-                        numberOperations++;
-
-                        if(operations[alignment_i][0].length == numberOperations){
-                            operations[alignment_i][0] = Arrays.copyOf(
-                                    operations[alignment_i][0], numberOperations*2
-                            );
-                            operationLength[alignment_i][0] = Arrays.copyOf(
-                                    operationLength[alignment_i][0], numberOperations*2
-                            );
-                        }
-
-                        originalBases[alignment_i][0][numberOriginalBases] = originalBase;
-                        numberOriginalBases++;
-
-                        if(originalBases[alignment_i][0].length == numberOriginalBases){
-                            originalBases[alignment_i][0] = Arrays.copyOf(
-                                    originalBases[alignment_i][0], numberOriginalBases*2
-                            );
-                        }
+                        sink.addOperation(operationType, 1);
+                        sink.addOriginalBase(originalBase);
                     }
                     currentPositionInReadString++;
-                    currentPositionInCopy++;
                 }
-                currentIndex++;
-            } else if (cigar.getOperation()[operation_i]=='I' || cigar.getOperation()[operation_i]=='D'){
-                //I or D
+            } else if (operation == CIGAR_I){
                 dataClass = DATA_CLASS.CLASS_I;
-                if(cigar.getOperation()[operation_i]=='I'){
-                    //I
-                    for(int i=0; i<cigar.getOperationLength()[operation_i]; i++){
-                        operations[alignment_i][0][numberOperations] = Operation.Insert;
-                        operationLength[alignment_i][0][numberOperations] = 1;
-                        numberOperations++;
-
-                        if(operations[alignment_i][0].length == numberOperations){
-                            operations[alignment_i][0] = Arrays.copyOf(
-                                    operations[alignment_i][0], numberOperations*2
-                            );
-                            operationLength[alignment_i][0] = Arrays.copyOf(
-                                    operationLength[alignment_i][0], numberOperations*2
-                            );
-                        }
-
-                        currentPositionInReadString++;
-                    }
-                }else{
-                    //D
-                    for(int i=0; i<cigar.getOperationLength()[operation_i]; i++){
-                        operations[alignment_i][0][numberOperations] = Operation.Delete;
-                        operationLength[alignment_i][0][numberOperations] = 1;
-                        numberOperations++;
-
-                        if(operations[alignment_i][0].length == numberOperations){
-                            operations[alignment_i][0] = Arrays.copyOf(
-                                    operations[alignment_i][0], numberOperations*2
-                            );
-                            operationLength[alignment_i][0] = Arrays.copyOf(
-                                    operationLength[alignment_i][0], numberOperations*2
-                            );
-                        }
-
-                        originalBases[alignment_i][0][numberOriginalBases] =
-                                referenceSubSequence.readByte();
-                        numberOriginalBases++;
-
-                        if(originalBases[alignment_i][0].length == numberOriginalBases){
-                            originalBases[alignment_i][0] = Arrays.copyOf(
-                                    originalBases[alignment_i][0], numberOriginalBases*2
-                            );
-                        }
-
-                        currentPositionInCopy++;
-                    }
+                for(int i=0; i<length; i++){
+                    sink.addOperation(Operation.Insert, 1);
+                    currentPositionInReadString++;
                 }
-                currentIndex++;
-            } else if (cigar.getOperation()[operation_i]=='S'){
+            } else if (operation == CIGAR_D){
                 dataClass = DATA_CLASS.CLASS_I;
+                for(int i=0; i<length; i++){
+                    sink.addOperation(Operation.Delete, 1);
+                    sink.addOriginalBase(referenceSubSequence.readByte());
+                }
+            } else if (operation == CIGAR_S){
+                dataClass = DATA_CLASS.CLASS_I;
+                sink.addOperation(Operation.SoftClip, length);
+                currentPositionInReadString += length;
+            }
+        }
+        return dataClass;
+    }
 
-                operations[alignment_i][0][numberOperations] = Operation.SoftClip;
-                operationLength[alignment_i][0][numberOperations] = cigar.getOperationLength()[operation_i];
-                numberOperations++;
+    /**
+     * Receives the alignment operations of the segment.
+     * The original bases are only kept by the records.
+     */
+    private interface OperationsSink {
+        void addOperation(byte operation, int length);
+        default void addOriginalBase(byte base) {}
+    }
 
-                if(operations[alignment_i][0].length == numberOperations){
-                    operations[alignment_i][0] = Arrays.copyOf(
-                            operations[alignment_i][0], numberOperations*2
-                    );
-                    operationLength[alignment_i][0] = Arrays.copyOf(
-                            operationLength[alignment_i][0], numberOperations*2
-                    );
-                }
+    private static class OperationsBuffer implements OperationsSink {
+        private byte[] operations = new byte[128];
+        private int[] operationLength = new int[128];
+        private int numberOperations;
+        private byte[] originalBases = new byte[128];
+        private int numberOriginalBases;
+
+        @Override
+        public void addOperation(byte operation, int length) {
+            if(operations.length == numberOperations){
+                operations = Arrays.copyOf(operations, numberOperations*2);
+                operationLength = Arrays.copyOf(operationLength, numberOperations*2);
+            }
+            operations[numberOperations] = operation;
+            operationLength[numberOperations] = length;
+            numberOperations++;
+        }
 
-                currentPositionInReadString += cigar.getOperationLength()[operation_i];
-                currentIndex += cigar.getOperationLength()[operation_i];
+        @Override
+        public void addOriginalBase(byte base) {
+            if(originalBases.length == numberOriginalBases){
+                originalBases = Arrays.copyOf(originalBases, numberOriginalBases*2);
             }
+            originalBases[numberOriginalBases] = base;
+            numberOriginalBases++;
         }
-        operations[alignment_i][0] = Arrays.copyOf(operations[alignment_i][0], numberOperations);
-        operationLength[alignment_i][0] = Arrays.copyOf(operationLength[alignment_i][0], numberOperations);
-        originalBases[alignment_i][0] = Arrays.copyOf(originalBases[alignment_i][0], numberOriginalBases);
-        return dataClass;
     }
 
     static private void sortRecords(
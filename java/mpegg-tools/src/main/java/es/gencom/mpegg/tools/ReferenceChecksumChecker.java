@@ -1,25 +1,120 @@
 package es.gencom.mpegg.tools;
 
-import java.util.Base64;
-import es.gencom.mpegg.coder.dataunits.DataUnitRawReference;
+import es.gencom.integration.fasta.FastaFileReader;
+import es.gencom.integration.fasta.FastaSequence;
+import es.gencom.mpegg.decoder.MappedSequencesSource;
 import es.gencom.mpegg.format.ChecksumAlgorithm;
+import es.gencom.mpegg.format.SequenceIdentifier;
 import es.gencom.mpegg.format.ref.*;
-import es.gencom.mpegg.io.Payload;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Verifies the checksums of the external reference sequences.
+ * </p>
+ * 
+ * The sequences are hashed concurrently directly from the memory mapped 
+ * FASTA (or raw reference) file, large sequences are hashed in chunks.
+ * Verified checksums are remembered in the cache directory together with 
+ * the size and the modification time of the reference file, so the 
+ * sequences are not hashed again while the file is unchanged.
+ * 
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class ReferenceChecksumChecker implements Closeable {
+
+    private final static int CHUNK_SIZE = 1 << 25;
+
+    private final ExecutorService executor;
+    private final boolean shutdownExecutor;
+    private final Path cacheDirectory;
+
+    /**
+     * Creates the checker backed by its own fork-join pool.
+     * 
+     * @param threads number of worker threads
+     * @param cacheDirectory the directory to remember verified checksums in
+     *        (may be null)
+     */
+    public ReferenceChecksumChecker(final int threads, final Path cacheDirectory) {
+        this(new ForkJoinPool(Math.max(1, threads)), true, cacheDirectory);
+    }
+
+    /**
+     * Creates the checker on top of the caller provided executor.
+     * The executor is not shut down when the checker is closed.
+     * 
+     * @param executor the executor to run hashing tasks
+     * @param cacheDirectory the directory to remember verified checksums in
+     *        (may be null)
+     */
+    public ReferenceChecksumChecker(final ExecutorService executor, final Path cacheDirectory) {
+        this(executor, false, cacheDirectory);
+    }
+
+    private ReferenceChecksumChecker(
+            final ExecutorService executor,
+            final boolean shutdownExecutor,
+            final Path cacheDirectory) {
+
+        this.executor = executor;
+        this.shutdownExecutor = shutdownExecutor;
+        this.cacheDirectory = cacheDirectory;
+    }
 
-public class ReferenceChecksumChecker {
     public static boolean check(Reference reference) throws IOException {
+        try (ReferenceChecksumChecker checker = new ReferenceChecksumChecker(
+                Runtime.getRuntime().availableProcessors(),
+                PackedReferenceCache.getDefault().getDirectory())) {
+            return isValid(checker.verify(reference));
+        }
+    }
+
+    public static boolean isValid(final List<SequenceReport> reports) {
+        for (SequenceReport report : reports) {
+            if (!report.isValid()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Verifies the checksums of all the reference sequences.
+     * 
+     * @param reference the reference to verify
+     * 
+     * @return the verification reports in the order of the sequences
+     * 
+     * @throws IOException 
+     */
+    public List<SequenceReport> verify(final Reference reference) throws IOException {
         if(reference.getLocation() instanceof InternalLocation){
             throw new IllegalArgumentException();
         }
-        ExternalLocation externalLocation = (ExternalLocation) reference.getLocation();
-
-        ChecksumAlgorithm checksumAlgorithm = externalLocation.getChecksum_alg();
+        final ExternalLocation externalLocation = (ExternalLocation) reference.getLocation();
 
         if(externalLocation.getReferenceType() == REFERENCE_TYPE.MPEGG_REF){
             throw new UnsupportedOperationException();
@@ -28,34 +123,347 @@ public class ReferenceChecksumChecker {
             throw new IllegalArgumentException();
         }
 
-        RawOrFasta_ExtRef_info extRef_info = (RawOrFasta_ExtRef_info) externalLocation.getExtRef_info();
-        DataUnitRawReference rawReference = FormatReferenceToRawReference.convert(reference);
-        int num_sequences = reference.getNumberSequences();
-        for(int sequence_i=0; sequence_i < num_sequences; sequence_i++){
-            MessageDigest md;
+        final RawOrFasta_ExtRef_info extRef_info = (RawOrFasta_ExtRef_info) externalLocation.getExtRef_info();
+        final ChecksumAlgorithm checksumAlgorithm = externalLocation.getChecksum_alg();
+        final String[] sequenceNames = reference.getSequenceNames();
+        final int num_sequences = reference.getNumberSequences();
+
+        final Path path = Paths.get(externalLocation.getRef_uri()).toAbsolutePath().normalize();
+        final Path cache = getCachePath(path);
+
+        // taken before hashing, so the changes made while hashing are noticed
+        final String fingerprint = cache != null ? getFingerprint(path) : null;
+        final HashSet<String> verified = readCache(fingerprint, cache);
+
+        final List<Future<SequenceReport>> futures = new ArrayList<>();
+        try {
+            if (externalLocation.getReferenceType() == REFERENCE_TYPE.RAW_REF) {
+                final MappedSequencesSource source = MappedSequencesSource.open(path, sequenceNames);
+                for (int sequence_i = 0; sequence_i < num_sequences; sequence_i++) {
+                    final ByteBuffer sequence = source.getSequenceBuffer(new SequenceIdentifier(sequence_i));
+                    futures.add(submit(sequence_i, sequenceNames[sequence_i], sequence.remaining(), 
+                            checksumAlgorithm, extRef_info.getChecksum(sequence_i), verified,
+                            md -> md.update(sequence)));
+                }
+            } else {
+                final FastaFileReader reader = new FastaFileReader(path, true);
+                int sequence_i = 0;
+                for (FastaSequence fastaSequence : reader) {
+                    if (sequence_i == num_sequences) {
+                        break;
+                    }
+                    futures.add(submit(sequence_i, sequenceNames[sequence_i], fastaSequence.length,
+                            checksumAlgorithm, extRef_info.getChecksum(sequence_i), verified,
+                            md -> update(md, path, fastaSequence)));
+                    sequence_i++;
+                }
+                for (; sequence_i < num_sequences; sequence_i++) {
+                    futures.add(executor.submit(new MissingSequence(sequence_i, sequenceNames[sequence_i])));
+                }
+            }
+
+            final List<SequenceReport> reports = new ArrayList<>();
+            for (Future<SequenceReport> future : futures) {
+                reports.add(get(future));
+            }
+
+            writeCache(path, fingerprint, cache, verified, reports);
+            return reports;
+        } finally {
+            for (Future<SequenceReport> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (shutdownExecutor) {
+            executor.shutdown();
             try {
-                if (checksumAlgorithm == ChecksumAlgorithm.MD5) {
-                    md = MessageDigest.getInstance("MD5");
-                } else {
-                    md = MessageDigest.getInstance("SHA-256");
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(ex.getMessage());
+            }
+        }
+    }
+
+    private Future<SequenceReport> submit(
+            final int sequence_i,
+            final String name,
+            final long length,
+            final ChecksumAlgorithm checksumAlgorithm,
+            final byte[] providedValue,
+            final HashSet<String> verified,
+            final Hashing hashing) {
+
+        final String key = getCacheKey(sequence_i, name, length, checksumAlgorithm, providedValue);
+        if (verified.contains(key)) {
+            return executor.submit(() -> new SequenceReport(sequence_i, name, length, key, true, true, 0));
+        }
+
+        return executor.submit(() -> {
+            final long start = System.nanoTime();
+            final MessageDigest md = getMessageDigest(checksumAlgorithm);
+            hashing.update(md);
+            final boolean valid = Arrays.equals(providedValue, md.digest());
+            return new SequenceReport(sequence_i, name, length, key, valid, false, System.nanoTime() - start);
+        });
+    }
+
+    /**
+     * Hashes the sequence bases directly from the mapped FASTA file skipping
+     * the line breaks.
+     */
+    private static void update(
+            final MessageDigest md,
+            final Path path,
+            final FastaSequence fastaSequence) throws IOException {
+
+        if (fastaSequence.sequence != null) {
+            md.update(fastaSequence.sequence);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(path)) {
+            final long size = channel.size();
+            long position = fastaSequence.position;
+            long remaining = fastaSequence.length;
+            while (remaining > 0 && position < size) {
+                final ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, 
+                        position, Math.min(CHUNK_SIZE, size - position));
+
+                int start = 0;
+                final int limit = chunk.limit();
+                for (int i = 0; i < limit && remaining > 0; i++) {
+                    final byte ch = chunk.get(i);
+                    if (ch == '\r' || ch == '\n') {
+                        if (start < i) {
+                            update(md, chunk, start, i);
+                        }
+                        start = i + 1;
+                    } else if (--remaining == 0) {
+                        update(md, chunk, start, i + 1);
+                    }
+                }
+                if (remaining > 0 && start < limit) {
+                    update(md, chunk, start, limit);
                 }
-            }catch (NoSuchAlgorithmException e){
-                throw new UnsupportedOperationException(e);
+                position += limit;
             }
-            Payload dataPayload = rawReference.getSequence(sequence_i);
-            for(int byteBuffer_i=0; byteBuffer_i < dataPayload.getByteBuffers().length; byteBuffer_i++) {
-                ByteBuffer byteBuffer = dataPayload.getByteBuffers()[byteBuffer_i];
-                byteBuffer.position(0);
-                md.update(byteBuffer);
+            if (remaining > 0) {
+                throw new IOException("unexpected end of file: " + path);
             }
+        }
+    }
 
-            byte[] providedValue = extRef_info.getChecksum(sequence_i);
-            byte[] calculatedValue = md.digest();
-            System.out.println(Base64.getEncoder().encodeToString(providedValue));
-            if(!Arrays.equals(providedValue, calculatedValue)){
-                return false;
+    private static void update(
+            final MessageDigest md,
+            final ByteBuffer chunk,
+            final int start,
+            final int end) {
+
+        chunk.limit(end).position(start);
+        md.update(chunk);
+        chunk.limit(chunk.capacity());
+    }
+
+    private static MessageDigest getMessageDigest(final ChecksumAlgorithm checksumAlgorithm) {
+        try {
+            if (checksumAlgorithm == ChecksumAlgorithm.MD5) {
+                return MessageDigest.getInstance("MD5");
             }
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e){
+            throw new UnsupportedOperationException(e);
+        }
+    }
+
+    private static SequenceReport get(final Future<SequenceReport> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(ex.getMessage());
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private Path getCachePath(final Path path) {
+        if (cacheDirectory == null) {
+            return null;
+        }
+        return cacheDirectory.resolve(PackedReferenceCache.toHex(
+                PackedReferenceCache.digest(path.toString().getBytes(StandardCharsets.UTF_8))) + ".verified");
+    }
+
+    private static String getFingerprint(final Path path) throws IOException {
+        return Files.size(path) + " " + Files.getLastModifiedTime(path).toMillis();
+    }
+
+    /**
+     * The checksum is only remembered for the sequence it has been verified
+     * for, so the same checksum of another sequence (or of the same sequence 
+     * of a different length) is never taken as verified.
+     */
+    private static String getCacheKey(
+            final int sequence_i,
+            final String name,
+            final long length,
+            final ChecksumAlgorithm checksumAlgorithm,
+            final byte[] checksum) {
+
+        return sequence_i + " " + length + " " + checksumAlgorithm.name() + " " + 
+                PackedReferenceCache.toHex(checksum) + " " + name;
+    }
+
+    private static HashSet<String> readCache(final String fingerprint, final Path cache) throws IOException {
+        final HashSet<String> verified = new HashSet<>();
+        if (cache != null && Files.exists(cache)) {
+            final List<String> lines = Files.readAllLines(cache, StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && fingerprint.equals(lines.get(0))) {
+                verified.addAll(lines.subList(1, lines.size()));
+            }
+        }
+        return verified;
+    }
+
+    private static void writeCache(
+            final Path path,
+            final String fingerprint,
+            final Path cache,
+            final HashSet<String> verified,
+            final List<SequenceReport> reports) throws IOException {
+
+        if (cache == null) {
+            return;
+        }
+
+        boolean changed = false;
+        for (SequenceReport report : reports) {
+            if (report.valid && !report.cached) {
+                changed = true;
+            }
+        }
+        if (!changed) {
+            return;
+        }
+
+        // the file might have been changed while hashing
+        if (!fingerprint.equals(getFingerprint(path))) {
+            return;
+        }
+
+        final List<String> lines = new ArrayList<>();
+        lines.add(fingerprint);
+        lines.addAll(verified);
+        for (SequenceReport report : reports) {
+            if (report.valid && !report.cached) {
+                lines.add(report.key);
+            }
+        }
+        Files.createDirectories(cache.getParent());
+        PackedReferenceCache.write(cache, lines);
+    }
+
+    @FunctionalInterface
+    private interface Hashing {
+        void update(MessageDigest md) throws IOException;
+    }
+
+    private static class MissingSequence implements Callable<SequenceReport> {
+        private final int sequence_i;
+        private final String name;
+
+        MissingSequence(final int sequence_i, final String name) {
+            this.sequence_i = sequence_i;
+            this.name = name;
+        }
+
+        @Override
+        public SequenceReport call() {
+            return new SequenceReport(sequence_i, name, 0, null, false, false, 0);
+        }
+    }
+
+    /**
+     * The result of the sequence checksum verification.
+     */
+    public static class SequenceReport {
+        private final int index;
+        private final String name;
+        private final long length;
+        private final boolean valid;
+        private final boolean cached;
+        private final long time;
+        private final String key;
+
+        SequenceReport(
+                final int index,
+                final String name,
+                final long length,
+                final String key,
+                final boolean valid,
+                final boolean cached,
+                final long time) {
+
+            this.index = index;
+            this.name = name;
+            this.length = length;
+            this.key = key;
+            this.valid = valid;
+            this.cached = cached;
+            this.time = time;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return whether the calculated checksum matches the provided one
+         */
+        public boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * @return whether the checksum was found already verified
+         */
+        public boolean isCached() {
+            return cached;
+        }
+
+        /**
+         * @return the hashing time in nanoseconds
+         */
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s\t%d bp\t%s\t%s", name, length,
+                    valid ? "OK" : "FAILED",
+                    cached ? "cached" : TimeUnit.NANOSECONDS.toMillis(time) + " ms");
         }
-        return true;
     }
 }
@@ -3,13 +3,13 @@ package es.gencom.mpegg.tools;
 import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.Operation;
 import es.gencom.mpegg.format.SequenceIdentifier;
 
-import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SAMLikeAlignment implements Comparable<SAMLikeAlignment>{
-    static long instancesCount = 0;
+    static final AtomicLong instancesCount = new AtomicLong();
 
     final private String readName;
-    final private long instanceId;
+    private long instanceId;
     final private SequenceIdentifier sequenceId;
     final private long position;
     final private byte[] sequence;
@@ -44,8 +44,7 @@ public class SAMLikeAlignment implements Comparable<SAMLikeAlignment>{
             boolean mateUnmapped,
             boolean mateOnReverse
     ) {
-        this.instanceId = instancesCount;
-        instancesCount++;
+        this.instanceId = instancesCount.getAndIncrement();
 
         this.readName = readName;
         this.sequenceId = sequenceId;
@@ -65,88 +64,69 @@ public class SAMLikeAlignment implements Comparable<SAMLikeAlignment>{
         this.mateOnReverse = mateOnReverse;
     }
 
-    static void mergeOperations(
-            byte[][] operations,
-            int[][] operationLengths,
-            byte[][] operationsMerged,
-            int[][] operationLengthsMerged,
-            int splice_i
-
+    /**
+     * Merges the adjacent operations of the same type in place.
+     *
+     * @return the number of the merged operations
+     */
+    static int mergeOperations(
+            byte[] operations,
+            int[] operationLengths,
+            int numberOperations
     ){
-        byte[] operationsInSplice = operations[splice_i];
-        int[] operationLengthInSplice = operationLengths[splice_i];
-
-        byte[] operationsInSpliceMerged = new byte[operations[splice_i].length];
-        int[] operationLengthInSpliceMerged = new int[operationLengths[splice_i].length];
-
-        byte currentOperation = operationsInSplice[0];
-        int currentLength = operationLengthInSplice[0];
+        if(numberOperations == 0){
+            return 0;
+        }
         int numberMergedOperations = 0;
-        for(int operation_i=1; operation_i < operationLengthInSplice.length; operation_i++){
-            final byte newOperation  = operationsInSplice[operation_i];
-            if(newOperation == currentOperation){
-                currentLength += operationLengthInSplice[operation_i];
+        for(int operation_i=1; operation_i < numberOperations; operation_i++){
+            if(operations[operation_i] == operations[numberMergedOperations]){
+                operationLengths[numberMergedOperations] += operationLengths[operation_i];
             }else{
-                operationsInSpliceMerged[numberMergedOperations] = currentOperation;
-                operationLengthInSpliceMerged[numberMergedOperations] = currentLength;
                 numberMergedOperations++;
-                currentOperation = newOperation;
-                currentLength = operationLengthInSplice[operation_i];
+                operations[numberMergedOperations] = operations[operation_i];
+                operationLengths[numberMergedOperations] = operationLengths[operation_i];
             }
         }
-        operationsInSpliceMerged[numberMergedOperations] = currentOperation;
-        operationLengthInSpliceMerged[numberMergedOperations] = currentLength;
-        numberMergedOperations++;
-        operationsInSpliceMerged = Arrays.copyOf(operationsInSpliceMerged, numberMergedOperations);
-        operationLengthInSpliceMerged = Arrays.copyOf(operationLengthInSpliceMerged, numberMergedOperations);
-
-        operationsMerged[splice_i] = operationsInSpliceMerged;
-        operationLengthsMerged[splice_i] = operationLengthInSpliceMerged;
+        return numberMergedOperations + 1;
     }
 
-    static String getCigarString(byte[][] operationsMerged, int[][] operationLengthsMerged) {
-        if(operationLengthsMerged.length == 0){
-            throw new InternalError();
-        } else if(operationLengthsMerged.length > 1){
-            throw new UnsupportedOperationException();
-        }
-
+    static String getCigarString(byte[] operationsMerged, int[] operationLengthsMerged, int numberOperations) {
         StringBuilder stringBuilder = new StringBuilder();
         int currentLength = 0;
-        for(int operation_i = 0; operation_i < operationsMerged[0].length; operation_i++){
-            switch (operationsMerged[0][operation_i]) {
+        for(int operation_i = 0; operation_i < numberOperations; operation_i++){
+            switch (operationsMerged[operation_i]) {
                 case Operation.SubstitutionToN:
                 case Operation.Substitution:
                 case Operation.Match:
-                    currentLength += operationLengthsMerged[0][operation_i];
+                    currentLength += operationLengthsMerged[operation_i];
                     break;
                 case Operation.Delete:
                     if(currentLength != 0){
                         stringBuilder.append(currentLength).append('M');
                     }
                     currentLength = 0;
-                    stringBuilder.append(operationLengthsMerged[0][operation_i]).append('D');
+                    stringBuilder.append(operationLengthsMerged[operation_i]).append('D');
                     break;
                 case Operation.Insert:
                     if(currentLength != 0){
                         stringBuilder.append(currentLength).append('M');
                     }
                     currentLength = 0;
-                    stringBuilder.append(operationLengthsMerged[0][operation_i]).append('I');
+                    stringBuilder.append(operationLengthsMerged[operation_i]).append('I');
                     break;
                 case Operation.SoftClip:
                     if(currentLength != 0){
                         stringBuilder.append(currentLength).append('M');
                     }
                     currentLength = 0;
-                    stringBuilder.append(operationLengthsMerged[0][operation_i]).append('S');
+                    stringBuilder.append(operationLengthsMerged[operation_i]).append('S');
                     break;
                 case Operation.HardClip:
                     if(currentLength != 0){
                         stringBuilder.append(currentLength).append('M');
                     }
                     currentLength = 0;
-                    stringBuilder.append(operationLengthsMerged[0][operation_i]).append('H');
+                    stringBuilder.append(operationLengthsMerged[operation_i]).append('H');
                     break;
             }
         }
@@ -156,18 +136,18 @@ public class SAMLikeAlignment implements Comparable<SAMLikeAlignment>{
         return stringBuilder.toString();
     }
 
-    public static String getMDTag(byte[][] operations, int[][] operationsLength, byte[][] originalNucleotides) {
-        if(operations.length == 0){
-            throw new InternalError();
-        } else if(operations.length > 1){
-            throw new UnsupportedOperationException();
-        }
+    public static String getMDTag(
+            byte[] operations,
+            int[] operationsLength,
+            int numberOperations,
+            byte[] originalNucleotides) {
+
         StringBuilder stringBuilder = new StringBuilder();
         int originalNucleotide_i = 0;
 
         int currentLength = 0;
-        for(int operation_i = 0; operation_i < operations[0].length; operation_i++){
-            switch (operations[0][operation_i]){
+        for(int operation_i = 0; operation_i < numberOperations; operation_i++){
+            switch (operations[operation_i]){
                 case Operation.SoftClip:
                 case Operation.HardClip:
                 case Operation.Insert:
@@ -175,22 +155,22 @@ public class SAMLikeAlignment implements Comparable<SAMLikeAlignment>{
                 case Operation.Delete:
                     stringBuilder.append(currentLength);
                     stringBuilder.append('^');
-                    for(int deleted_base_i=0; deleted_base_i < operationsLength[0][operation_i]; deleted_base_i++){
-                        stringBuilder.append((char)originalNucleotides[0][originalNucleotide_i]);
+                    for(int deleted_base_i=0; deleted_base_i < operationsLength[operation_i]; deleted_base_i++){
+                        stringBuilder.append((char)originalNucleotides[originalNucleotide_i]);
                         originalNucleotide_i++;
                     }
                     currentLength = 0;
                     break;
                 case Operation.Match:
-                    currentLength += operationsLength[0][operation_i];
+                    currentLength += operationsLength[operation_i];
                     break;
                 case Operation.Substitution:
                 case Operation.SubstitutionToN:
                     for(int subsituted_base_i = 0;
-                            subsituted_base_i < operationsLength[0][operation_i];
+                            subsituted_base_i < operationsLength[operation_i];
                             subsituted_base_i++) {
                         stringBuilder.append(currentLength);
-                        stringBuilder.append((char) originalNucleotides[0][originalNucleotide_i]);
+                        stringBuilder.append((char) originalNucleotides[originalNucleotide_i]);
                         currentLength = 0;
                         originalNucleotide_i++;
                     }
@@ -224,6 +204,10 @@ public class SAMLikeAlignment implements Comparable<SAMLikeAlignment>{
         return Long.compare(instanceId, samLikeAlignment.instanceId);
     }
 
+    void renumber() {
+        instanceId = instancesCount.getAndIncrement();
+    }
+
     public String getReadName() {
         return readName;
     }
@@ -1,8 +1,8 @@
 package es.gencom.mpegg.tools;
 
 import es.gencom.mpegg.Record;
+import es.gencom.mpegg.RecordBatch;
 import es.gencom.mpegg.SplitType;
-import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.Operation;
 import es.gencom.mpegg.format.SequenceIdentifier;
 
 import java.util.Collection;
@@ -12,42 +12,58 @@ import java.util.TreeSet;
 public class SAMReadsCollection implements Iterable<SAMLikeAlignment> {
     final private TreeSet<SAMLikeAlignment> samReads;
 
+    // working arrays of the alignment operations
+    private byte[] operations;
+    private int[] operationLengths;
+    private byte[] originalBases;
+    private int numberOperations;
+
+    private RecordBatch batch;
+
     public SAMReadsCollection() {
         this.samReads = new TreeSet<>();
+        operations = new byte[64];
+        operationLengths = new int[64];
+        originalBases = new byte[64];
     }
 
     public void addRead(Record record){
-        if(record.getRecordSegments() > 2){
+        if(batch == null){
+            batch = new RecordBatch(1);
+        }
+        batch.clear();
+        batch.add(record);
+        addRead(batch.cursor().moveTo(0));
+    }
+
+    /**
+     * Adds the alignments of the record the cursor is positioned at.
+     * Only the sequences and qualities of the alignments are copied
+     * from the batch.
+     *
+     * @param cursor the cursor positioned at the record
+     */
+    public void addRead(RecordBatch.Cursor cursor){
+        if(cursor.getNumberSegments() > 2){
             throw new UnsupportedOperationException();
         }
 
 
-        for(int alignment_i=0; alignment_i < record.getMappingPositionsSegment0().length; alignment_i++){
-            long[][] mappingPositions = record.getMappingPositionsSegment0();
-            if(mappingPositions[alignment_i].length == 0){
-                throw new InternalError();
-            } else if (mappingPositions[alignment_i].length > 1){
-                throw new UnsupportedOperationException();
-            }
+        for(int alignment_i=0; alignment_i < cursor.getNumberAlignments(); alignment_i++){
+            checkSplices(cursor.getNumberSplices(alignment_i));
 
             boolean noMate;
             boolean mateUnmapped;
             boolean mateOnReverse;
             SequenceIdentifier mateSequenceIdentifier;
             long matePosition;
-            if(record.getSplitMate()[0] != SplitType.Unpaired){
+            if(cursor.getSplitMate(0) != SplitType.Unpaired){
                 noMate = false;
 
-                int[] alignmentsSegment1 = record.getAlignmentIndexesSegment1(alignment_i);
-                if(alignmentsSegment1.length == 0) {
-                    throw new InternalError();
-                }else if(alignmentsSegment1.length > 1){
-                    throw new UnsupportedOperationException();
-                }
-
+                int alignmentSegment1 = getAlignmentSegment1(cursor, alignment_i);
                 if(
-                        record.getSplitMate()[alignmentsSegment1[0]] == SplitType.UnmappedOtherRecord
-                                || record.getSplitMate()[alignmentsSegment1[0]] == SplitType.UnmappedSameRecord
+                        cursor.getSplitMate(alignmentSegment1) == SplitType.UnmappedOtherRecord
+                                || cursor.getSplitMate(alignmentSegment1) == SplitType.UnmappedSameRecord
                 ){
                     mateUnmapped = true;
                     mateOnReverse = false;
@@ -55,15 +71,9 @@ public class SAMReadsCollection implements Iterable<SAMLikeAlignment> {
                     matePosition = 0;
                 }else {
                     mateUnmapped = false;
-                    mateOnReverse = record.getReverseCompliment()[1][
-                            record.getAlignmentIndexesSegment1(alignment_i)[0]
-                            ][0];
-                    mateSequenceIdentifier = record.getSequenceIdSegment1()[
-                            record.getAlignmentIndexesSegment1(alignment_i)[0]
-                            ];
-                    matePosition = record.getMappingPositionsSegment1()[
-                            record.getAlignmentIndexesSegment1(alignment_i)[0]
-                            ][0];
+                    mateOnReverse = cursor.isReverseCompliment(1, alignmentSegment1, 0);
+                    mateSequenceIdentifier = cursor.getSequenceIdSegment1(alignmentSegment1);
+                    matePosition = cursor.getMappingPositionSegment1(alignmentSegment1, 0);
                 }
             }else{
                 noMate = true;
@@ -73,40 +83,32 @@ public class SAMReadsCollection implements Iterable<SAMLikeAlignment> {
                 matePosition = 0;
             }
 
-            byte[][] operationsMerged = new byte[record.getOperationType()[0][alignment_i].length][];
-            int[][] operationLengthsMerged = new int[record.getOperationLength()[0][alignment_i].length][];
-            for(int splice_i=0; splice_i < operationsMerged.length; splice_i++){
-                SAMLikeAlignment.mergeOperations(
-                        record.getOperationType()[0][alignment_i],
-                        record.getOperationLength()[0][alignment_i],
-                        operationsMerged,
-                        operationLengthsMerged,
-                        splice_i
-                );
-            }
+            readOperations(cursor, 0, alignment_i);
 
             SAMLikeAlignment samLikeSegment0 = new SAMLikeAlignment(
-                    record.getReadName(),
-                    record.getSequenceId(),
-                    mappingPositions[alignment_i][0],
-                    record.getSequenceBytes()[0],
-                    record.getQualityValues()[0][0],
+                    cursor.getReadName(),
+                    cursor.getSequenceId(),
+                    cursor.getMappingPosition(alignment_i, 0),
+                    getSequence(cursor, 0),
+                    getQualities(cursor, 0),
                     SAMLikeAlignment.getCigarString(
-                            operationsMerged,
-                            operationLengthsMerged
+                            operations,
+                            operationLengths,
+                            numberOperations
                     ),
                     SAMLikeAlignment.getMDTag(
-                            operationsMerged,
-                            operationLengthsMerged,
-                            record.getOriginalBase()[0][alignment_i]
+                            operations,
+                            operationLengths,
+                            numberOperations,
+                            originalBases
                     ),
-                    record.getReverseCompliment()[0][alignment_i][0],
+                    cursor.isReverseCompliment(0, alignment_i, 0),
                     noMate,
                     mateSequenceIdentifier,
                     matePosition,
-                    record.isRead1First(),
-                    record.isUnpaired() || !record.isUnpaired() && !record.isRead1First(),
-                    record.isUnpaired(),
+                    cursor.isRead1First(),
+                    cursor.isUnpaired() || !cursor.isUnpaired() && !cursor.isRead1First(),
+                    cursor.isUnpaired(),
                     mateUnmapped,
                     mateOnReverse
             );
@@ -114,93 +116,75 @@ public class SAMReadsCollection implements Iterable<SAMLikeAlignment> {
         }
 
         if(!(
-                record.getSplitMate()[0] == SplitType.SameRecord ||
-                        record.getSplitMate()[0] == SplitType.UnmappedSameRecord)
+                cursor.getSplitMate(0) == SplitType.SameRecord ||
+                        cursor.getSplitMate(0) == SplitType.UnmappedSameRecord)
         ) {
             return;
         }
 
-        for(int alignment_i=0; alignment_i < record.getMappingPositionsSegment1().length; alignment_i++){
-            if(record.getSplitMate()[alignment_i] != SplitType.UnmappedSameRecord) {
-                long[][] mappingPositions = record.getMappingPositionsSegment1();
-                if (mappingPositions[alignment_i].length == 0) {
-                    throw new InternalError();
-                } else if (mappingPositions[alignment_i].length > 1) {
-                    throw new UnsupportedOperationException();
-                }
+        for(int alignment_i=0; alignment_i < cursor.getNumberAlignmentsSegment1(); alignment_i++){
+            if(cursor.getSplitMate(alignment_i) != SplitType.UnmappedSameRecord) {
+                checkSplices(cursor.getNumberSplicesSegment1(alignment_i));
 
                 boolean noMate = false;
                 boolean mateUnmapped = false;
-                boolean mateOnReverse = record.getReverseCompliment()[0][0][0];
-                SequenceIdentifier mateSequenceIdentifier = record.getSequenceId();
-                long matePosition = record.getMappingPositionsSegment0()[0][0];
-
-                byte[][] operationsMerged = new byte[record.getOperationType()[1][alignment_i].length][];
-                int[][] operationLengthsMerged = new int[record.getOperationLength()[1][alignment_i].length][];
-                for (int splice_i = 0; splice_i < operationsMerged.length; splice_i++) {
-                    SAMLikeAlignment.mergeOperations(
-                            record.getOperationType()[1][alignment_i],
-                            record.getOperationLength()[1][alignment_i],
-                            operationsMerged,
-                            operationLengthsMerged,
-                            splice_i
-                    );
-                }
+                boolean mateOnReverse = cursor.isReverseCompliment(0, 0, 0);
+                SequenceIdentifier mateSequenceIdentifier = cursor.getSequenceId();
+                long matePosition = cursor.getMappingPosition(0, 0);
+
+                readOperations(cursor, 1, alignment_i);
 
                 SAMLikeAlignment samLikeSegment1 = new SAMLikeAlignment(
-                        record.getReadName(),
-                        record.getSequenceIdSegment1()[0],
-                        mappingPositions[alignment_i][0],
-                        record.getSequenceBytes()[1],
-                        record.getQualityValues()[1][0],
+                        cursor.getReadName(),
+                        cursor.getSequenceIdSegment1(0),
+                        cursor.getMappingPositionSegment1(alignment_i, 0),
+                        getSequence(cursor, 1),
+                        getQualities(cursor, 1),
                         SAMLikeAlignment.getCigarString(
-                                operationsMerged,
-                                operationLengthsMerged),
+                                operations,
+                                operationLengths,
+                                numberOperations),
                         SAMLikeAlignment.getMDTag(
-                                operationsMerged,
-                                operationLengthsMerged,
-                                record.getOriginalBase()[1][alignment_i]),
-                        record.getReverseCompliment()[1][alignment_i][0],
+                                operations,
+                                operationLengths,
+                                numberOperations,
+                                originalBases),
+                        cursor.isReverseCompliment(1, alignment_i, 0),
                         noMate,
                         mateSequenceIdentifier,
                         matePosition,
-                        !record.isRead1First(),
-                        record.isUnpaired() || !record.isUnpaired() && record.isRead1First(),
-                        record.isUnpaired(),
+                        !cursor.isRead1First(),
+                        cursor.isUnpaired() || !cursor.isUnpaired() && cursor.isRead1First(),
+                        cursor.isUnpaired(),
                         mateUnmapped,
                         mateOnReverse
                 );
                 samReads.add(samLikeSegment1);
             }else{
-                long[][] mappingPositions = record.getMappingPositionsSegment0();
-                if (mappingPositions[alignment_i].length == 0) {
-                    throw new InternalError();
-                } else if (mappingPositions[alignment_i].length > 1) {
-                    throw new UnsupportedOperationException();
-                }
+                checkSplices(cursor.getNumberSplices(alignment_i));
 
                 boolean noMate = false;
                 boolean mateUnmapped = false;
-                boolean mateOnReverse = record.getReverseCompliment()[0][0][0];
-                SequenceIdentifier mateSequenceIdentifier = record.getSequenceId();
-                long matePosition = record.getMappingPositionsSegment0()[0][0];
+                boolean mateOnReverse = cursor.isReverseCompliment(0, 0, 0);
+                SequenceIdentifier mateSequenceIdentifier = cursor.getSequenceId();
+                long matePosition = cursor.getMappingPosition(0, 0);
 
 
                 SAMLikeAlignment samLikeSegment1 = new SAMLikeAlignment(
-                        record.getReadName(),
-                        record.getSequenceId(),
-                        mappingPositions[alignment_i][0],
-                        record.getSequenceBytes()[1],
-                        record.getQualityValues()[1][0],
+                        cursor.getReadName(),
+                        cursor.getSequenceId(),
+                        cursor.getMappingPosition(alignment_i, 0),
+                        getSequence(cursor, 1),
+                        getQualities(cursor, 1),
                         "*",
                         null,
-                        record.getReverseCompliment()[0][0][0],
+                        cursor.isReverseCompliment(0, 0, 0),
                         noMate,
                         mateSequenceIdentifier,
                         matePosition,
-                        !record.isRead1First(),
-                        record.isUnpaired() || !record.isUnpaired() && record.isRead1First(),
-                        record.isUnpaired(),
+                        !cursor.isRead1First(),
+                        cursor.isUnpaired() || !cursor.isUnpaired() && cursor.isRead1First(),
+                        cursor.isUnpaired(),
                         mateUnmapped,
                         mateOnReverse
                 );
@@ -209,6 +193,75 @@ public class SAMReadsCollection implements Iterable<SAMLikeAlignment> {
         }
     }
 
+    private static void checkSplices(int numberSplices) {
+        if(numberSplices <= 0){
+            throw new InternalError();
+        } else if (numberSplices > 1){
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * @return the only alignment of the second segment paired with the
+     *         alignment of the first one
+     */
+    private static int getAlignmentSegment1(RecordBatch.Cursor cursor, int alignmentSegment0) {
+        int alignmentSegment1 = -1;
+        for(int pair_i = 0; pair_i < cursor.getNumberAlignPairs(); pair_i++){
+            if(cursor.getAlignPtr(pair_i, 0) == alignmentSegment0){
+                if(alignmentSegment1 >= 0){
+                    throw new UnsupportedOperationException();
+                }
+                alignmentSegment1 = cursor.getAlignPtr(pair_i, 1);
+            }
+        }
+        if(alignmentSegment1 < 0){
+            throw new InternalError();
+        }
+        return alignmentSegment1;
+    }
+
+    /**
+     * Reads the merged operations and the original bases of the first
+     * splice of the alignment into the working arrays.
+     */
+    private void readOperations(RecordBatch.Cursor cursor, int segment, int alignment) {
+        int length = Math.max(0, cursor.getNumberOperations(segment, alignment, 0));
+        if(operations.length < length){
+            operations = new byte[length];
+            operationLengths = new int[length];
+        }
+        cursor.copyOperations(segment, alignment, 0, operations);
+        cursor.copyOperationLengths(segment, alignment, 0, operationLengths);
+        numberOperations = SAMLikeAlignment.mergeOperations(operations, operationLengths, length);
+
+        int bases = cursor.getNumberOriginalBases(segment, alignment, 0);
+        if(originalBases.length < bases){
+            originalBases = new byte[bases];
+        }
+        cursor.copyOriginalBases(segment, alignment, 0, originalBases);
+    }
+
+    private static byte[] getSequence(RecordBatch.Cursor cursor, int segment) {
+        int length = cursor.getSequenceLength(segment);
+        if(length < 0){
+            return null;
+        }
+        byte[] sequence = new byte[length];
+        cursor.copySequence(segment, sequence, 0);
+        return sequence;
+    }
+
+    private static short[] getQualities(RecordBatch.Cursor cursor, int segment) {
+        int length = cursor.getQualitiesLength(segment);
+        if(length < 0){
+            return null;
+        }
+        short[] qualities = new short[length];
+        cursor.copyQualities(segment, qualities, 0);
+        return qualities;
+    }
+
     @Override
     public Iterator<SAMLikeAlignment> iterator() {
         return samReads.iterator();
@@ -217,4 +270,16 @@ public class SAMReadsCollection implements Iterable<SAMLikeAlignment> {
     public void remove(Collection<SAMLikeAlignment> toRemove) {
         samReads.removeAll(toRemove);
     }
+
+    /**
+     * Assigns fresh instance ids to the alignments in their current order.
+     * Collections decoded on worker threads are renumbered when taken by the
+     * consumer, so equal positions are ordered the same way as when decoding
+     * sequentially.
+     */
+    void renumber() {
+        for (SAMLikeAlignment samLikeAlignment : samReads) {
+            samLikeAlignment.renumber();
+        }
+    }
 }
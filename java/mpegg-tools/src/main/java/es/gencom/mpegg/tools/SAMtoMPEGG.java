@@ -9,6 +9,7 @@ import es.gencom.mpegg.coder.dataunits.DataUnitParameters;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.concurrent.ExecutorService;
 
 public class SAMtoMPEGG {
 
@@ -16,6 +17,25 @@ public class SAMtoMPEGG {
             MPEGWriter writer,
             AbstractAccessUnitEncoder accessUnitEncoder,
             DataUnitParameters parameters) throws IOException {
+        writeAccessUnitToFile(writer, accessUnitEncoder, parameters, null);
+    }
+
+    /**
+     * Writes the access unit encoding its descriptor subsequences
+     * in parallel on the executor (if provided).
+     *
+     * @param writer the bytestream writer
+     * @param accessUnitEncoder the encoder holding access unit symbols
+     * @param parameters parameters the access unit refers to
+     * @param executor the executor to encode descriptor subsequences on or null
+     *
+     * @throws IOException
+     */
+    public static void writeAccessUnitToFile(
+            MPEGWriter writer,
+            AbstractAccessUnitEncoder accessUnitEncoder,
+            DataUnitParameters parameters,
+            ExecutorService executor) throws IOException {
 
         if(accessUnitEncoder.getReadCount() == 0){
             return;
@@ -52,7 +72,7 @@ public class SAMtoMPEGG {
 
         dataUnitAccessUnitHeader.write(writer, parameters);
 
-        accessUnitEncoder.writeDescriptors(writer);
+        accessUnitEncoder.writeDescriptors(writer, executor);
     }
 
 }
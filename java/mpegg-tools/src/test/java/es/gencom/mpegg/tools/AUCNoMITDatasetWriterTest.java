@@ -0,0 +1,47 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.mpegg.Record;
+import es.gencom.mpegg.coder.dataunits.DataUnits;
+import es.gencom.mpegg.decoder.AbstractSequencesSource;
+import es.gencom.mpegg.format.DatasetContainer;
+import es.gencom.mpegg.format.DatasetGroupContainer;
+import es.gencom.mpegg.format.DatasetHeader;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class AUCNoMITDatasetWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The access units written to the file as they are encoded are read back
+     * through the block headers (there is no master index table) and decoded
+     * into the records of the bytestream encoded from the same BAM file.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        final TestDataset dataset = TestDataset.create(folder.getRoot().toPath(), 2000, 2);
+        final AbstractSequencesSource sequencesSource = dataset.getSequencesSource();
+        final List<Record> expected = TestDataset.decode(TestDataset.read(dataset.encode(1)), sequencesSource);
+        Assert.assertFalse(expected.isEmpty());
+
+        final DatasetGroupContainer datasetGroupContainer = TestDataset.readFile(dataset.encodeFile());
+        final DatasetContainer datasetContainer = datasetGroupContainer.getDatasetContainerByIndex(0);
+        final DatasetHeader datasetHeader = datasetContainer.getDatasetHeader();
+        Assert.assertTrue(datasetHeader.isBlockHeader());
+        Assert.assertFalse(datasetHeader.isMIT());
+
+        final DataUnits dataUnits = DatasetToDataUnits.getDataUnits(datasetGroupContainer, datasetContainer);
+        final List<Record> actual = TestDataset.decode(dataUnits, sequencesSource);
+        TestDataset.assertEquals(TestDataset.sort(expected), TestDataset.sort(actual));
+    }
+}
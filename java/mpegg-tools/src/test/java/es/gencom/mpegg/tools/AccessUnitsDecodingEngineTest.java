@@ -0,0 +1,100 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.mpegg.coder.dataunits.DataUnits;
+import es.gencom.mpegg.decoder.AbstractSequencesSource;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class AccessUnitsDecodingEngineTest {
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private final static int[] THREADS = {1, 2, 4};
+
+    private static Path bytestream;
+    private static AbstractSequencesSource sequencesSource;
+
+    @BeforeClass
+    public static void encode() throws Exception {
+        final TestDataset dataset = TestDataset.create(folder.getRoot().toPath(), 4000, 0);
+        bytestream = dataset.encode(1);
+        sequencesSource = dataset.getSequencesSource();
+    }
+
+    /**
+     * The engine returns the alignments of every access unit in the same
+     * order whatever the number of threads the access units are decoded on.
+     */
+    @Test
+    public void testTakeOrder() throws Exception {
+        final List<String> expected = take(1);
+        Assert.assertFalse(expected.isEmpty());
+        for (int threads : THREADS) {
+            Assert.assertEquals(expected, take(threads));
+        }
+    }
+
+    /**
+     * Alignments at the same position are written in the same order
+     * whatever the number of decoding threads. BGZF blocks may be split
+     * differently by the parallel compression, so the inflated BAM data
+     * is compared.
+     */
+    @Test
+    public void testOutputOrder() throws Exception {
+        final byte[] expected = decode(1);
+        Assert.assertTrue(expected.length > 0);
+        for (int threads : THREADS) {
+            Assert.assertArrayEquals(expected, decode(threads));
+        }
+    }
+
+    private static List<String> take(final int threads) throws Exception {
+        final DataUnits dataUnits = TestDataset.read(bytestream);
+        final List<String> alignments = new ArrayList<>();
+        try (AccessUnitsDecodingEngine engine = new AccessUnitsDecodingEngine(
+                dataUnits, sequencesSource, threads, 2 * threads)) {
+
+            engine.advance(0);
+            for (int i = 0; i < dataUnits.getNumberDataUnits(); i++) {
+                for (SAMLikeAlignment alignment : engine.take(dataUnits.getDataUnitAccessUnit(i))) {
+                    alignments.add(alignment.getReadName() + '\t' + alignment.getPosition() + '\t' +
+                                   alignment.getCigarString() + '\t' + alignment.getSequence());
+                }
+            }
+        }
+        return alignments;
+    }
+
+    private static byte[] decode(final int threads) throws Exception {
+        final Path bam = folder.getRoot().toPath().resolve("sample" + threads + ".bam");
+        MPEGGBytestreamToBAM.decode(TestDataset.read(bytestream), bam.toString(), TestDataset.NAMES,
+                sequencesSource, threads, false, Deflater.DEFAULT_COMPRESSION);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(bam))) {
+            final byte[] buf = new byte[8192];
+            for (int n; (n = in.read(buf)) > 0; ) {
+                out.write(buf, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+}
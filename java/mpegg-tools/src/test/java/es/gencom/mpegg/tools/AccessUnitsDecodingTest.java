@@ -0,0 +1,174 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.mpegg.Record;
+import es.gencom.mpegg.RecordBatch;
+import es.gencom.mpegg.coder.dataunits.DataUnits;
+import es.gencom.mpegg.decoder.AbstractSequencesSource;
+import es.gencom.mpegg.decoder.DataUnitAccessUnitDecoder;
+import es.gencom.mpegg.format.SequenceIdentifier;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class AccessUnitsDecodingTest {
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static Path bytestream;
+    private static AbstractSequencesSource sequencesSource;
+
+    @BeforeClass
+    public static void encode() throws Exception {
+        final TestDataset dataset = TestDataset.create(folder.getRoot().toPath(), 4000, 0);
+        bytestream = dataset.encode(1);
+        sequencesSource = dataset.getSequencesSource();
+    }
+
+    @Test
+    public void testConcurrentDescriptors() throws Exception {
+        final DataUnits expected = TestDataset.read(bytestream);
+        final DataUnits actual = TestDataset.read(bytestream);
+        Assert.assertTrue(expected.getNumberDataUnits() > 1);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            long records = 0;
+            long readCount = 0;
+            for (int i = 0; i < expected.getNumberDataUnits(); i++) {
+                readCount += expected.getDataUnitAccessUnit(i).getHeader().getRead_count();
+                final List<Record> sequential = DataUnitAccessUnitDecoder.decode(
+                        expected.getDataUnitAccessUnit(i), sequencesSource);
+                final List<Record> concurrent = DataUnitAccessUnitDecoder.decode(
+                        actual.getDataUnitAccessUnit(i), sequencesSource, executor);
+                TestDataset.assertEquals(sequential, concurrent);
+                records += sequential.size();
+            }
+            Assert.assertEquals(readCount, records);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testRecordBatch() throws Exception {
+        final DataUnits expected = TestDataset.read(bytestream);
+        final DataUnits actual = TestDataset.read(bytestream);
+
+        // the same batch is reused for all the access units
+        final RecordBatch batch = new RecordBatch(16);
+        for (int i = 0; i < expected.getNumberDataUnits(); i++) {
+            final List<Record> records = DataUnitAccessUnitDecoder.decode(
+                    expected.getDataUnitAccessUnit(i), sequencesSource);
+            batch.clear();
+            DataUnitAccessUnitDecoder.decode(actual.getDataUnitAccessUnit(i), sequencesSource, null, batch);
+            Assert.assertEquals(records.size(), batch.size());
+
+            final RecordBatch.Cursor cursor = batch.cursor();
+            for (Record record : records) {
+                Assert.assertTrue(cursor.next());
+                TestDataset.assertEquals(record, cursor.toRecord());
+
+                Assert.assertEquals(record.getReadName(), cursor.getReadName());
+                Assert.assertEquals(record.getMappingPositionsSegment0()[0][0], cursor.getMappingPosition());
+                final byte[][] sequences = record.getSequenceBytes();
+                Assert.assertEquals(sequences.length, cursor.getNumberSegments());
+                for (int segment_i = 0; segment_i < sequences.length; segment_i++) {
+                    final byte[] sequence = new byte[cursor.getSequenceLength(segment_i)];
+                    cursor.copySequence(segment_i, sequence, 0);
+                    Assert.assertArrayEquals(sequences[segment_i], sequence);
+
+                    final short[] qualities = record.getQualityValues()[segment_i][0];
+                    Assert.assertEquals(qualities.length, cursor.getQualitiesLength(segment_i));
+                    for (int j = 0; j < qualities.length; j++) {
+                        Assert.assertEquals(qualities[j], cursor.getQuality(segment_i, j));
+                    }
+                }
+                assertAlignments(record, cursor);
+            }
+            Assert.assertFalse(cursor.next());
+        }
+    }
+
+    /**
+     * The alignments read by the cursor straight from the batch pools are
+     * the same as the alignments of the decoded record.
+     */
+    private static void assertAlignments(final Record record, final RecordBatch.Cursor cursor) {
+        final long[][] mappingPositionsSegment0 = record.getMappingPositionsSegment0();
+        Assert.assertEquals(mappingPositionsSegment0.length, cursor.getNumberAlignments());
+        for (int alignment_i = 0; alignment_i < mappingPositionsSegment0.length; alignment_i++) {
+            Assert.assertEquals(mappingPositionsSegment0[alignment_i].length, cursor.getNumberSplices(alignment_i));
+            for (int splice_i = 0; splice_i < mappingPositionsSegment0[alignment_i].length; splice_i++) {
+                Assert.assertEquals(mappingPositionsSegment0[alignment_i][splice_i],
+                                    cursor.getMappingPosition(alignment_i, splice_i));
+            }
+            Assert.assertEquals(record.getSplitMate()[alignment_i], cursor.getSplitMate(alignment_i));
+        }
+
+        final long[][] mappingPositionsSegment1 = record.getMappingPositionsSegment1();
+        if (mappingPositionsSegment1 == null) {
+            Assert.assertEquals(0, cursor.getNumberAlignmentsSegment1());
+        } else {
+            Assert.assertEquals(mappingPositionsSegment1.length, cursor.getNumberAlignmentsSegment1());
+            for (int alignment_i = 0; alignment_i < mappingPositionsSegment1.length; alignment_i++) {
+                for (int splice_i = 0; splice_i < mappingPositionsSegment1[alignment_i].length; splice_i++) {
+                    Assert.assertEquals(mappingPositionsSegment1[alignment_i][splice_i],
+                                        cursor.getMappingPositionSegment1(alignment_i, splice_i));
+                }
+                final SequenceIdentifier[] sequenceIdSegment1 = record.getSequenceIdSegment1();
+                Assert.assertEquals(sequenceIdSegment1 == null ? null : sequenceIdSegment1[alignment_i],
+                                    cursor.getSequenceIdSegment1(alignment_i));
+            }
+        }
+
+        final byte[][][][] operationType = record.getOperationType();
+        Assert.assertEquals(operationType.length, cursor.getNumberAlignedSegments());
+        for (int segment_i = 0; segment_i < operationType.length; segment_i++) {
+            for (int alignment_i = 0; alignment_i < operationType[segment_i].length; alignment_i++) {
+                for (int splice_i = 0; splice_i < operationType[segment_i][alignment_i].length; splice_i++) {
+                    final byte[] operations = operationType[segment_i][alignment_i][splice_i];
+                    Assert.assertEquals(operations.length,
+                                        cursor.getNumberOperations(segment_i, alignment_i, splice_i));
+                    final byte[] actualOperations = new byte[operations.length];
+                    cursor.copyOperations(segment_i, alignment_i, splice_i, actualOperations);
+                    Assert.assertArrayEquals(operations, actualOperations);
+
+                    final int[] actualLengths = new int[operations.length];
+                    cursor.copyOperationLengths(segment_i, alignment_i, splice_i, actualLengths);
+                    Assert.assertArrayEquals(
+                            record.getOperationLength()[segment_i][alignment_i][splice_i], actualLengths);
+
+                    final byte[] originalBases = record.getOriginalBase()[segment_i][alignment_i][splice_i];
+                    final byte[] actualBases = new byte[originalBases.length];
+                    Assert.assertEquals(originalBases.length,
+                                        cursor.getNumberOriginalBases(segment_i, alignment_i, splice_i));
+                    cursor.copyOriginalBases(segment_i, alignment_i, splice_i, actualBases);
+                    Assert.assertArrayEquals(originalBases, actualBases);
+
+                    Assert.assertEquals(record.getReverseCompliment()[segment_i][alignment_i][splice_i],
+                                        cursor.isReverseCompliment(segment_i, alignment_i, splice_i));
+                }
+            }
+        }
+
+        final int[][] alignPtr = record.getAlignPtr();
+        Assert.assertEquals(alignPtr == null ? 0 : alignPtr.length, cursor.getNumberAlignPairs());
+        for (int pair_i = 0; alignPtr != null && pair_i < alignPtr.length; pair_i++) {
+            for (int segment_i = 0; segment_i < alignPtr[pair_i].length; segment_i++) {
+                Assert.assertEquals(alignPtr[pair_i][segment_i], cursor.getAlignPtr(pair_i, segment_i));
+            }
+        }
+    }
+}
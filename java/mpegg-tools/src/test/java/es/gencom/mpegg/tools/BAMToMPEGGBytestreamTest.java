@@ -0,0 +1,117 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.mpegg.Record;
+import es.gencom.mpegg.coder.dataunits.DataUnitParameters;
+import es.gencom.mpegg.coder.dataunits.DataUnits;
+import es.gencom.mpegg.decoder.AbstractSequencesSource;
+import es.gencom.mpegg.decoder.DataUnitAccessUnitDecoder;
+import es.gencom.mpegg.io.WritableMSBitChannel;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class BAMToMPEGGBytestreamTest {
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The budget small enough to close access units in the middle of the sequence.
+     */
+    private final static long MEMORY_BUDGET = 1 << 20;
+
+    private static TestDataset dataset;
+
+    @BeforeClass
+    public static void create() throws Exception {
+        dataset = TestDataset.create(folder.getRoot().toPath(), 2000, 0);
+    }
+
+    /**
+     * Trains the parameters on the first access unit of the paired sample,
+     * so the sampling stops while the templates are still pending, and
+     * checks that the bytestream encoded with the trained parameters
+     * decodes to the same records as the one encoded with the default ones.
+     */
+    @Test
+    public void testTrain() throws Exception {
+        final DataUnits trained = new DataUnits();
+        final DataUnitParameters[] parameters = BAMToMPEGGBytestream.createDataUnitParameters(trained);
+        BAMToMPEGGBytestream.train(dataset.bam.toString(), dataset.fasta.toString(),
+                trained, false, 1, 0, 2, MEMORY_BUDGET);
+
+        final DataUnits untrained = new DataUnits();
+        final Path expected = encode(untrained, BAMToMPEGGBytestream.createDataUnitParameters(untrained), "default.mgb");
+        final Path actual = encode(trained, parameters, "trained.mgb");
+
+        final DataUnits expectedDataUnits = TestDataset.read(expected);
+        Assert.assertTrue(expectedDataUnits.getNumberDataUnits() > 2);
+
+        final AbstractSequencesSource sequencesSource = dataset.getSequencesSource();
+        final List<Record> expectedRecords = decode(expectedDataUnits, sequencesSource);
+        Assert.assertFalse(expectedRecords.isEmpty());
+        TestDataset.assertEquals(expectedRecords, decode(TestDataset.read(actual), sequencesSource));
+    }
+
+    private static Path encode(
+            final DataUnits dataUnits,
+            final DataUnitParameters[] parameters,
+            final String name) throws Exception {
+
+        final Path bytestream = folder.getRoot().toPath().resolve(name);
+        try (FileChannel channel = FileChannel.open(bytestream,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            final WritableMSBitChannel writer = new WritableMSBitChannel(channel);
+            for (DataUnitParameters dataUnitParameters : parameters) {
+                dataUnitParameters.write(writer);
+            }
+            BAMToMPEGGBytestream.encode(dataset.bam.toString(), dataset.fasta.toString(), dataUnits,
+                    output -> write(writer, output.toByteBuffer(), output.getLength()),
+                    false, 2, MEMORY_BUDGET);
+            writer.flush();
+        }
+        return bytestream;
+    }
+
+    private static void write(
+            final WritableMSBitChannel writer,
+            final ByteBuffer buf,
+            final long nbits) throws IOException {
+
+        final int nbytes = (int)(nbits >>> 3);
+        buf.limit(nbytes);
+        writer.writeByteBuffer(buf);
+
+        final int remaining = (int)(nbits & 7);
+        if (remaining > 0) {
+            buf.limit(nbytes + 1);
+            writer.writeBits((buf.get(nbytes) & 0xFF) >>> (8 - remaining), remaining);
+        }
+    }
+
+    private static List<Record> decode(
+            final DataUnits dataUnits,
+            final AbstractSequencesSource sequencesSource) throws Exception {
+
+        final List<Record> records = new ArrayList<>();
+        for (int i = 0; i < dataUnits.getNumberDataUnits(); i++) {
+            records.addAll(DataUnitAccessUnitDecoder.decode(dataUnits.getDataUnitAccessUnit(i), sequencesSource));
+        }
+        return records;
+    }
+}
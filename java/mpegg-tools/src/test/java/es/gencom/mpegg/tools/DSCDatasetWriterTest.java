@@ -0,0 +1,203 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.mpegg.Record;
+import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.MappedAccessUnitEncoder;
+import es.gencom.mpegg.coder.dataunits.DATAUNIT_TYPE_ID;
+import es.gencom.mpegg.coder.dataunits.DataUnitAccessUnit;
+import es.gencom.mpegg.coder.dataunits.DataUnitParameters;
+import es.gencom.mpegg.coder.dataunits.DataUnits;
+import es.gencom.mpegg.coder.tokens.GeneralReadIdentifierEncoder;
+import es.gencom.mpegg.decoder.AbstractSequencesSource;
+import es.gencom.mpegg.decoder.DataUnitAccessUnitDecoder;
+import es.gencom.mpegg.format.DATA_CLASS;
+import es.gencom.mpegg.format.DatasetContainer;
+import es.gencom.mpegg.format.DatasetGroupContainer;
+import es.gencom.mpegg.format.DatasetHeader;
+import es.gencom.mpegg.format.SequenceIdentifier;
+import es.gencom.mpegg.io.MSBitOutputArray;
+import es.gencom.mpegg.io.Payload;
+import es.gencom.mpegg.tools.DataUnitsToFile.DSCDatasetWriter;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class DSCDatasetWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final static short THRESHOLD = 5000;
+
+    /**
+     * The width of the access units small enough for some classes to have
+     * no reads in the access unit range.
+     */
+    private final static long WIDTH = 5000;
+
+    /**
+     * The access units encoded from the BAM file are written in parallel and
+     * decoded into the records of the bytestream encoded from the same file.
+     */
+    @Test
+    public void testEncode() throws Exception {
+        final TestDataset dataset = TestDataset.create(folder.getRoot().toPath(), 2000, 3);
+        final AbstractSequencesSource sequencesSource = dataset.getSequencesSource();
+        final List<Record> expected = TestDataset.decode(TestDataset.read(dataset.encode(1)), sequencesSource);
+        Assert.assertFalse(expected.isEmpty());
+
+        final Path mpegg = folder.getRoot().toPath().resolve("sample_dsc.mpegg");
+        final DataUnits dataUnits = new DataUnits();
+        BAMToMPEGGBytestream.createDataUnitParameters(dataUnits);
+
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        try (DSCDatasetWriter writer = dataset.createDSCWriter(mpegg, dataUnits, pool)) {
+            BAMToMPEGGBytestream.encode(dataset.bam.toString(), dataset.fasta.toString(), dataUnits, writer,
+                    false, 3, BAMToMPEGGBytestream.DEFAULT_MEMORY_BUDGET);
+        } finally {
+            pool.shutdown();
+        }
+
+        final List<Record> actual = TestDataset.decode(read(mpegg), sequencesSource);
+        TestDataset.assertEquals(TestDataset.sort(expected), TestDataset.sort(actual));
+    }
+
+    /**
+     * The small access units are written, so the classes have less access
+     * units than the sequence has and the access units miss the blocks of
+     * some descriptors of their class. Some descriptor streams are absent in
+     * some classes. The "not present" entries of the master index table are
+     * skipped when the dataset is read back.
+     */
+    @Test
+    public void testAbsentBlocks() throws Exception {
+        final TestDataset dataset = TestDataset.create(folder.getRoot().toPath(), 2000, 4);
+        final AbstractSequencesSource sequencesSource = dataset.getSequencesSource();
+
+        final DataUnits dataUnits = new DataUnits();
+        final DataUnitParameters[] parameters = BAMToMPEGGBytestream.createDataUnitParameters(dataUnits);
+
+        final List<MSBitOutputArray> accessUnits = new ArrayList<>();
+        final MappedAccessUnitEncoder[][] encoders =
+                new MappedAccessUnitEncoder[TestDataset.NAMES.length][DATA_CLASS.CLASS_I.ID];
+        final int[][] auIds = new int[TestDataset.NAMES.length][DATA_CLASS.CLASS_I.ID];
+
+        dataset.construct(THRESHOLD, (record, dataClass) -> {
+            final int sequence = record.getSequenceId().getSequenceIdentifier();
+            final long position = record.getMappingPositionsSegment0()[0][0];
+            MappedAccessUnitEncoder encoder = encoders[sequence][dataClass.ID - 1];
+            if (encoder != null && position >= encoder.getAuEndPosition()) {
+                accessUnits.add(encode(encoder, parameters));
+                encoder = null;
+            }
+            if (encoder == null) {
+                final long start = position - position % WIDTH;
+                encoder = new MappedAccessUnitEncoder(
+                        dataClass, (short)sequence, auIds[sequence][dataClass.ID - 1]++,
+                        start, start + WIDTH, THRESHOLD, start, start + WIDTH,
+                        sequencesSource, parameters[dataClass.ID - 1], new GeneralReadIdentifierEncoder());
+                encoders[sequence][dataClass.ID - 1] = encoder;
+            }
+            encoder.write(record);
+        });
+        for (MappedAccessUnitEncoder[] classEncoders : encoders) {
+            for (MappedAccessUnitEncoder encoder : classEncoders) {
+                if (encoder != null) {
+                    accessUnits.add(encode(encoder, parameters));
+                }
+            }
+        }
+
+        final List<Record> expected = new ArrayList<>();
+        final Path mpegg = folder.getRoot().toPath().resolve("sample_dsc.mpegg");
+        try (DSCDatasetWriter writer = dataset.createDSCWriter(mpegg, dataUnits, null)) {
+            for (MSBitOutputArray accessUnit : accessUnits) {
+                expected.addAll(DataUnitAccessUnitDecoder.decode(read(accessUnit, dataUnits), sequencesSource));
+                writer.accept(accessUnit);
+            }
+        }
+        Assert.assertFalse(expected.isEmpty());
+
+        final DatasetGroupContainer datasetGroupContainer = TestDataset.readFile(mpegg);
+        final DatasetContainer datasetContainer = datasetGroupContainer.getDatasetContainerByIndex(0);
+        final DatasetHeader datasetHeader = datasetContainer.getDatasetHeader();
+        Assert.assertFalse(datasetHeader.isBlockHeader());
+        Assert.assertTrue(datasetHeader.isMIT());
+
+        final DataUnits actual = DatasetToDataUnits.getDataUnits(datasetGroupContainer, datasetContainer);
+        Assert.assertEquals(accessUnits.size(), actual.getNumberDataUnits());
+
+        int descriptors = 0;
+        for (DATA_CLASS dataClass : datasetHeader.getClass_ids()) {
+            descriptors = Math.max(descriptors, datasetHeader.getNumberOfDescriptors(dataClass));
+        }
+
+        boolean absentStream = false;
+        boolean absentBlock = false;
+        final SequenceIdentifier[] seqIds = datasetHeader.getSeqIds();
+        final long[][] numberAccessUnits = new long[seqIds.length][DATA_CLASS.CLASS_I.ID];
+        for (int i = 0; i < actual.getNumberDataUnits(); i++) {
+            final DataUnitAccessUnit dataUnitAccessUnit = actual.getDataUnitAccessUnit(i);
+            final DATA_CLASS dataClass = dataUnitAccessUnit.getAUType();
+            final int numberDescriptors = datasetHeader.getNumberOfDescriptors(dataClass);
+            absentStream |= numberDescriptors < descriptors;
+            absentBlock |= dataUnitAccessUnit.getBlocks().length < numberDescriptors;
+
+            final SequenceIdentifier sequenceId = dataUnitAccessUnit.getHeader().getSequence_ID();
+            numberAccessUnits[datasetHeader.getSequenceIndex(sequenceId).getIndex()][dataClass.ID - 1]++;
+        }
+        Assert.assertTrue(absentStream);
+        Assert.assertTrue(absentBlock);
+
+        boolean notPresent = false;
+        for (int seq = 0; seq < seqIds.length; seq++) {
+            final long blocks = datasetHeader.getReferenceSequenceBlocks(
+                    datasetHeader.getSequenceIndex(seqIds[seq]));
+            for (DATA_CLASS dataClass : datasetHeader.getClass_ids()) {
+                notPresent |= numberAccessUnits[seq][dataClass.ID - 1] < blocks;
+            }
+        }
+        Assert.assertTrue(notPresent);
+
+        TestDataset.assertEquals(TestDataset.sort(expected),
+                                 TestDataset.sort(TestDataset.decode(actual, sequencesSource)));
+    }
+
+    private static MSBitOutputArray encode(
+            final MappedAccessUnitEncoder encoder,
+            final DataUnitParameters[] parameters) throws IOException {
+
+        final MSBitOutputArray output = new MSBitOutputArray();
+        SAMtoMPEGG.writeAccessUnitToFile(output, encoder, parameters[encoder.getEncodingParametersId()]);
+        return output;
+    }
+
+    /**
+     * Reads the access unit data unit the way the writer does,
+     * so it may be decoded independently of the written one.
+     */
+    private static DataUnitAccessUnit read(
+            final MSBitOutputArray dataUnit,
+            final DataUnits dataUnits) throws IOException {
+
+        final Payload payload = new Payload(dataUnit.toByteBuffer());
+        Assert.assertEquals(DATAUNIT_TYPE_ID.AU, DATAUNIT_TYPE_ID.read(payload));
+        return DataUnitAccessUnit.read(payload, dataUnits);
+    }
+
+    private static DataUnits read(final Path mpegg) throws Exception {
+        final DatasetGroupContainer datasetGroupContainer = TestDataset.readFile(mpegg);
+        return DatasetToDataUnits.getDataUnits(
+                datasetGroupContainer, datasetGroupContainer.getDatasetContainerByIndex(0));
+    }
+}
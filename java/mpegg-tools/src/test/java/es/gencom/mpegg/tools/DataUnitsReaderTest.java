@@ -0,0 +1,164 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.mpegg.Record;
+import es.gencom.mpegg.coder.dataunits.DataUnitAccessUnit;
+import es.gencom.mpegg.coder.dataunits.DataUnitParameters;
+import es.gencom.mpegg.coder.dataunits.DataUnitRawReference;
+import es.gencom.mpegg.coder.dataunits.DataUnits;
+import es.gencom.mpegg.coder.dataunits.DataUnitsReader;
+import es.gencom.mpegg.decoder.AbstractSequencesSource;
+import es.gencom.mpegg.decoder.DataUnitAccessUnitDecoder;
+import es.gencom.mpegg.io.Payload;
+import es.gencom.mpegg.io.ReadableMSBitFileChannel;
+import es.gencom.mpegg.io.WritableMSBitChannel;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class DataUnitsReaderTest {
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static TestDataset dataset;
+    private static Path bytestream;
+    private static Path mixed;
+
+    @BeforeClass
+    public static void create() throws Exception {
+        dataset = TestDataset.create(folder.getRoot().toPath(), 2000, 0);
+        bytestream = dataset.encode(1);
+        mixed = folder.getRoot().toPath().resolve("mixed.mgb");
+
+        final DataUnits dataUnits = TestDataset.read(bytestream);
+        try (FileChannel channel = FileChannel.open(mixed,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            final WritableMSBitChannel writer = new WritableMSBitChannel(channel);
+            writeReserved(writer, 3, 0);
+            for (DataUnitParameters dataUnitParameters : dataUnits.getParameters()) {
+                dataUnitParameters.write(writer);
+                writeReserved(writer, 255, 17);
+            }
+            rawReference().write(writer);
+            for (int i = 0; i < dataUnits.getNumberDataUnits(); i++) {
+                writeReserved(writer, 3 + i, i * 5);
+                dataUnits.getDataUnitAccessUnit(i).write(writer);
+            }
+            writeReserved(writer, 128, 1000);
+            writer.flush();
+        }
+    }
+
+    /**
+     * The reader returns every access unit of the bytestream where the raw
+     * reference and the data units of the reserved types are mixed with
+     * the parameters and the access units.
+     */
+    @Test
+    public void testMixed() throws Exception {
+        final DataUnits expected = TestDataset.read(bytestream);
+        Assert.assertTrue(expected.getNumberDataUnits() > 1);
+
+        final AbstractSequencesSource sequencesSource = dataset.getSequencesSource();
+        final List<Record> records = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(mixed)) {
+            final DataUnitsReader reader = new DataUnitsReader(new ReadableMSBitFileChannel(channel));
+            assertDataUnits(expected, reader.getDataUnits());
+
+            int count = 0;
+            while (reader.hasNext()) {
+                final DataUnitAccessUnit dataUnitAccessUnit = reader.next();
+                assertHeader(expected.getDataUnitAccessUnit(count++).getHeader(), dataUnitAccessUnit.getHeader());
+                records.addAll(DataUnitAccessUnitDecoder.decode(dataUnitAccessUnit, sequencesSource));
+            }
+            Assert.assertEquals(expected.getNumberDataUnits(), count);
+        }
+
+        TestDataset.assertEquals(TestDataset.decode(expected, sequencesSource), records);
+    }
+
+    /**
+     * The data units read from the bytestream at once skip the same reserved
+     * data units.
+     */
+    @Test
+    public void testRead() throws Exception {
+        final DataUnits expected = TestDataset.read(bytestream);
+        final DataUnits actual = TestDataset.read(mixed);
+        assertDataUnits(expected, actual);
+        Assert.assertEquals(expected.getNumberDataUnits(), actual.getNumberDataUnits());
+
+        final AbstractSequencesSource sequencesSource = dataset.getSequencesSource();
+        TestDataset.assertEquals(TestDataset.decode(expected, sequencesSource),
+                                 TestDataset.decode(actual, sequencesSource));
+    }
+
+    private static void assertDataUnits(final DataUnits expected, final DataUnits actual) {
+        Assert.assertEquals(parameterSetIds(expected), parameterSetIds(actual));
+
+        final DataUnitRawReference rawReference = actual.getDataUnitRawReference();
+        Assert.assertNotNull(rawReference);
+        Assert.assertArrayEquals(RAW_REFERENCE, rawReference.getSequence(0).getAllBytes());
+    }
+
+    private static List<Short> parameterSetIds(final DataUnits dataUnits) {
+        final List<Short> ids = new ArrayList<>();
+        for (DataUnitParameters dataUnitParameters : dataUnits.getParameters()) {
+            ids.add(dataUnitParameters.getParameter_set_ID());
+        }
+        return ids;
+    }
+
+    private static void assertHeader(
+            final DataUnitAccessUnit.DataUnitAccessUnitHeader expected,
+            final DataUnitAccessUnit.DataUnitAccessUnitHeader actual) {
+
+        Assert.assertEquals(expected.getAccess_unit_ID(), actual.getAccess_unit_ID());
+        Assert.assertEquals(expected.getAU_type(), actual.getAU_type());
+        Assert.assertEquals(expected.getNum_blocks(), actual.getNum_blocks());
+        Assert.assertEquals(expected.getParameter_set_ID(), actual.getParameter_set_ID());
+        Assert.assertEquals(expected.getRead_count(), actual.getRead_count());
+        Assert.assertEquals(expected.getAu_start_position(), actual.getAu_start_position());
+        Assert.assertEquals(expected.getAu_end_position(), actual.getAu_end_position());
+    }
+
+    private final static byte[] RAW_REFERENCE = "ACGTNACGTTGCA".getBytes();
+
+    private static DataUnitRawReference rawReference() {
+        return new DataUnitRawReference(null, new int[] {0},
+                new Payload[] {new Payload(Arrays.copyOf(RAW_REFERENCE, RAW_REFERENCE.length))},
+                new long[] {0}, new long[] {RAW_REFERENCE.length});
+    }
+
+    /**
+     * Writes the data unit of the reserved type with the payload which
+     * looks like the data unit types.
+     */
+    private static void writeReserved(
+            final WritableMSBitChannel writer,
+            final int data_unit_type,
+            final int size) throws IOException {
+
+        writer.writeUnsignedByte((short)data_unit_type);
+        writer.writeBits(0, 3);
+        writer.writeBits(size + 5, 29);
+        for (int i = 0; i < size; i++) {
+            writer.writeUnsignedByte((short)(i % 3));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.AbstractAccessUnitEncoder;
+import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.MappedAccessUnitEncoder;
+import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.SymbolsBuffer;
+import es.gencom.mpegg.coder.dataunits.DataUnitParameters;
+import es.gencom.mpegg.coder.dataunits.DataUnits;
+import es.gencom.mpegg.coder.tokens.AbstractReadIdentifierEncoder;
+import es.gencom.mpegg.coder.tokens.GeneralReadIdentifierEncoder;
+import es.gencom.mpegg.coder.tokens.RingBuffer;
+import es.gencom.mpegg.decoder.AbstractSequencesSource;
+import es.gencom.mpegg.format.DATA_CLASS;
+import es.gencom.mpegg.io.MSBitOutputArray;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.lang.reflect.Field;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ * The memory counted by the encoders as their buffers grow is compared
+ * with the memory found by walking all the buffers.
+ * </p>
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class EncoderMemoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final static short THRESHOLD = 5000;
+
+    /**
+     * The counters are checked after every record written to the access
+     * units encoders and after the access units are encoded.
+     */
+    @Test
+    public void testAccessUnitEncoder() throws Exception {
+        final TestDataset dataset = TestDataset.create(folder.getRoot().toPath(), 2000, 0);
+        final AbstractSequencesSource sequencesSource = dataset.getSequencesSource();
+        final DataUnitParameters[] parameters = BAMToMPEGGBytestream.createDataUnitParameters(new DataUnits());
+
+        final MappedAccessUnitEncoder[][] encoders =
+                new MappedAccessUnitEncoder[TestDataset.NAMES.length][DATA_CLASS.CLASS_I.ID];
+
+        dataset.construct(THRESHOLD, (record, dataClass) -> {
+            final int sequence = record.getSequenceId().getSequenceIdentifier();
+            MappedAccessUnitEncoder encoder = encoders[sequence][dataClass.ID - 1];
+            if (encoder == null) {
+                final long end = TestDataset.LENGTHS[sequence];
+                encoder = new MappedAccessUnitEncoder(
+                        dataClass, (short)sequence, 0, 0, end, THRESHOLD, 0, end,
+                        sequencesSource, parameters[dataClass.ID - 1], new GeneralReadIdentifierEncoder());
+                encoders[sequence][dataClass.ID - 1] = encoder;
+            }
+            encoder.write(record);
+            assertMemory(encoder);
+        });
+
+        int count = 0;
+        for (MappedAccessUnitEncoder[] classEncoders : encoders) {
+            for (MappedAccessUnitEncoder encoder : classEncoders) {
+                if (encoder != null) {
+                    SAMtoMPEGG.writeAccessUnitToFile(new MSBitOutputArray(), encoder,
+                            parameters[encoder.getEncodingParametersId()]);
+                    assertMemory(encoder);
+                    count++;
+                }
+            }
+        }
+        Assert.assertTrue(count > 1);
+    }
+
+    /**
+     * Encodes enough identifiers to wrap the ring of the recent identifiers
+     * and to drop the old ones from the duplicates lookup.
+     */
+    @Test
+    public void testReadIdentifierEncoder() throws Exception {
+        final GeneralReadIdentifierEncoder encoder = new GeneralReadIdentifierEncoder();
+        final Set<String> identifiers = new HashSet<>();
+        for (int i = 0; i < 50000; i++) {
+            // mates share the identifier, some have the suffix
+            final String identifier = "SRR062634." + (i % 9 == 1 ? i - 1 : i) + (i % 7 == 0 ? "/1" : "");
+            encoder.encode(identifier);
+            identifiers.add(identifier);
+            if (i % 1000 == 0 || (i >= 32766 && i <= 32770) || (identifiers.size() >= 40000 && identifiers.size() <= 40010)) {
+                assertMemory(encoder);
+            }
+        }
+        assertMemory(encoder);
+
+        final Map<?, ?> lookup = (Map<?, ?>)get(get(encoder, "readIdentifierToReadId"), "map");
+        Assert.assertTrue(lookup.size() < identifiers.size());
+
+        encoder.resizeAndGetValues();
+        assertMemory(encoder);
+    }
+
+    private static void assertMemory(final AbstractAccessUnitEncoder encoder) throws Exception {
+        long size = 0;
+        for (String name : new String[] {"symbols", "auxiliaryData_symbols"}) {
+            for (SymbolsBuffer[] buffers : (SymbolsBuffer[][])get(encoder, name)) {
+                for (SymbolsBuffer buffer : buffers) {
+                    size += buffer.getSizeInMemory();
+                }
+            }
+        }
+        final AbstractReadIdentifierEncoder readIdentifierEncoder =
+                (AbstractReadIdentifierEncoder)get(encoder, "readIdentifierEncoder");
+        Assert.assertEquals(size + assertMemory(readIdentifierEncoder), encoder.getTotalSizeInMemory());
+    }
+
+    /**
+     * @return the memory found by walking the encoder data
+     */
+    private static long assertMemory(final AbstractReadIdentifierEncoder encoder) throws Exception {
+        long values = 0;
+        for (short[][] tokenValues : (short[][][])get(encoder, "values")) {
+            for (short[] subsequenceValues : tokenValues) {
+                if (subsequenceValues != null) {
+                    values += 2L * subsequenceValues.length;
+                }
+            }
+        }
+        Assert.assertEquals(values, get(encoder, "valuesSize"));
+
+        final int identifierOverhead = (int)get(encoder, "IDENTIFIER_OVERHEAD");
+        final RingBuffer<?> ring = (RingBuffer<?>)get(encoder, "tokensListRingBuffer");
+        long identifiers = 0;
+        for (int i = 0; i < ring.getSize(); i++) {
+            identifiers += identifierOverhead + ring.getValue(i).toString().length();
+        }
+        Assert.assertEquals(identifiers, get(encoder, "identifiersSize"));
+
+        final Object readIdentifierToReadId = get(encoder, "readIdentifierToReadId");
+        final int entryOverhead = (int)get(readIdentifierToReadId, "ENTRY_OVERHEAD");
+        long lookup = 0;
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>)get(readIdentifierToReadId, "map")).entrySet()) {
+            lookup += entryOverhead + entry.getKey().toString().length();
+        }
+        Assert.assertEquals(lookup, get(readIdentifierToReadId, "sizeInMemory"));
+
+        Assert.assertEquals(values + identifiers + lookup, encoder.getSizeInMemory());
+        return values + identifiers + lookup;
+    }
+
+    /**
+     * Gets the value of the field which the counters do not expose.
+     */
+    private static Object get(final Object object, final String name) throws Exception {
+        for (Class<?> clazz = object.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+            try {
+                final Field field = clazz.getDeclaredField(name);
+                field.setAccessible(true);
+                return field.get(object);
+            } catch (NoSuchFieldException ex) {
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+}
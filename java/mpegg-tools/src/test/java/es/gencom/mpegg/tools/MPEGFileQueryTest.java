@@ -0,0 +1,201 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.integration.bam.BAMFileReader;
+import es.gencom.integration.bam.BAMRecord;
+import es.gencom.mpegg.Record;
+import es.gencom.mpegg.SplitType;
+import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.Operation;
+import es.gencom.mpegg.coder.dataunits.DataUnitAccessUnit;
+import es.gencom.mpegg.coder.dataunits.DataUnits;
+import es.gencom.mpegg.decoder.AbstractSequencesSource;
+import es.gencom.mpegg.decoder.DataUnitAccessUnitDecoder;
+import es.gencom.mpegg.format.DATA_CLASS;
+import es.gencom.mpegg.format.DatasetGroupContainer;
+import es.gencom.mpegg.format.MPEGFile;
+import es.gencom.mpegg.format.SequenceIdentifier;
+import es.gencom.mpegg.io.MappedChunkCache;
+import es.gencom.mpegg.io.ReadableMSBitFileChannel;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class MPEGFileQueryTest {
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static Path mpegg;
+
+    /**
+     * Records of the aligned access units of every sequence decoded
+     * from the whole dataset.
+     */
+    private static List<List<Record>> decoded;
+
+    @BeforeClass
+    public static void encode() throws Exception {
+        final TestDataset dataset = TestDataset.create(folder.getRoot().toPath(), 4000, 1);
+        mpegg = dataset.encodeFile();
+
+        final DatasetGroupContainer datasetGroupContainer = TestDataset.readFile(mpegg);
+        final DataUnits dataUnits = DatasetToDataUnits.getDataUnits(
+                datasetGroupContainer, datasetGroupContainer.getDatasetContainerByIndex(0));
+
+        final AbstractSequencesSource sequencesSource = dataset.getSequencesSource();
+        decoded = new ArrayList<>();
+        for (int i = 0; i < TestDataset.NAMES.length; i++) {
+            decoded.add(new ArrayList<>());
+        }
+        for (int i = 0; i < dataUnits.getNumberDataUnits(); i++) {
+            final DataUnitAccessUnit dataUnitAccessUnit = dataUnits.getDataUnitAccessUnit(i);
+            if (dataUnitAccessUnit.getAUType() != DATA_CLASS.CLASS_U) {
+                decoded.get(dataUnitAccessUnit.getHeader().getSequence_ID().getSequenceIdentifier())
+                        .addAll(DataUnitAccessUnitDecoder.decode(dataUnitAccessUnit, sequencesSource));
+            }
+        }
+    }
+
+    @Test
+    public void testWholeSequences() throws Exception {
+        final MPEGFileQuery query = open();
+        for (int i = 0; i < TestDataset.NAMES.length; i++) {
+            final List<Record> records = query(query, TestDataset.NAMES[i], 0, TestDataset.LENGTHS[i] - 1);
+            Assert.assertFalse(records.isEmpty());
+            TestDataset.assertEquals(TestDataset.sort(decoded.get(i)), TestDataset.sort(records));
+        }
+    }
+
+    @Test
+    public void testRegions() throws Exception {
+        final MPEGFileQuery query = open();
+        final long[][] regions = {{0, 0}, {1000, 1500}, {99900, 100100}, {150000, 230000}, {349990, 399999}};
+        for (int i = 0; i < TestDataset.NAMES.length; i++) {
+            for (long[] region : regions) {
+                final List<Record> expected = new ArrayList<>();
+                for (Record record : decoded.get(i)) {
+                    if (overlaps(record, region[0], region[1])) {
+                        expected.add(record);
+                    }
+                }
+                final List<Record> records = query(query, TestDataset.NAMES[i], region[0], region[1]);
+                TestDataset.assertEquals(TestDataset.sort(expected), TestDataset.sort(records));
+            }
+        }
+    }
+
+    /**
+     * Records found in the access units of the different classes are
+     * written into the coordinate sorted BAM file.
+     */
+    @Test
+    public void testWriteSorted() throws Exception {
+        final Path bam = folder.getRoot().toPath().resolve("query.bam");
+        final long alignments = MPEGGBytestreamToBAM.write(
+                open().query(TestDataset.NAMES[0], 0, TestDataset.LENGTHS[0] - 1),
+                bam.toString(), TestDataset.NAMES, null, Deflater.DEFAULT_COMPRESSION);
+        Assert.assertTrue(alignments > 0);
+
+        try (BAMFileReader reader = new BAMFileReader(bam)) {
+            Assert.assertTrue(reader.getBAMHeader().text.startsWith("@HD\tVN:1.6\tSO:coordinate"));
+
+            long count = 0;
+            int refID = -1;
+            int position = -1;
+            for (Iterator<BAMRecord> iterator = reader.iterator(); iterator.hasNext(); count++) {
+                final BAMRecord record = iterator.next();
+                Assert.assertTrue(record.getRefID() > refID ||
+                                  record.getRefID() == refID && record.getPositionStart() >= position);
+                refID = record.getRefID();
+                position = record.getPositionStart();
+            }
+            Assert.assertEquals(alignments, count);
+        }
+    }
+
+    private static MPEGFileQuery open() throws Exception {
+        final MPEGFile mpegFile = new MPEGFile();
+        mpegFile.read(ReadableMSBitFileChannel.open(mpegg, new MappedChunkCache(1L << 26, (byte)20)), true);
+        return new MPEGFileQuery(mpegFile);
+    }
+
+    private static List<Record> query(
+            final MPEGFileQuery query,
+            final String sequenceName,
+            final long start,
+            final long end) throws Exception {
+
+        final List<Record> records = new ArrayList<>();
+        for (Iterator<Record> iterator = query.query(sequenceName, start, end); iterator.hasNext();) {
+            records.add(iterator.next());
+        }
+        return records;
+    }
+
+    /**
+     * Access units of different classes are interleaved by the query.
+     */
+    /**
+     * Checks whether any alignment of the record (or of its mate stored 
+     * in the same record) covers the region.
+     */
+    private static boolean overlaps(final Record record, final long start, final long end) {
+        final SequenceIdentifier sequenceId = record.getSequenceId();
+        if (overlaps(record.getMappingPositionsSegment0(), record.getOperationType()[0],
+                     record.getOperationLength()[0], start, end)) {
+            return true;
+        }
+        final long[][] mappingPositionsSegment1 = record.getMappingPositionsSegment1();
+        if (mappingPositionsSegment1 == null || record.getOperationType().length < 2 ||
+            record.getSplitMate()[0] != SplitType.SameRecord) {
+            return false;
+        }
+        for (int alignment_i = 0; alignment_i < mappingPositionsSegment1.length; alignment_i++) {
+            if (sequenceId.equals(record.getSequenceIdSegment1()[alignment_i]) &&
+                overlaps(new long[][] {mappingPositionsSegment1[alignment_i]},
+                         new byte[][][] {record.getOperationType()[1][alignment_i]},
+                         new int[][][] {record.getOperationLength()[1][alignment_i]}, start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean overlaps(
+            final long[][] mappingPositions,
+            final byte[][][] operationType,
+            final int[][][] operationLength,
+            final long start,
+            final long end) {
+
+        for (int alignment_i = 0; alignment_i < mappingPositions.length; alignment_i++) {
+            for (int splice_i = 0; splice_i < mappingPositions[alignment_i].length; splice_i++) {
+                long length = 0;
+                final byte[] types = operationType[alignment_i][splice_i];
+                for (int operation_i = 0; operation_i < types.length; operation_i++) {
+                    if (types[operation_i] != Operation.Insert &&
+                        types[operation_i] != Operation.SoftClip &&
+                        types[operation_i] != Operation.HardClip) {
+                        length += operationLength[alignment_i][splice_i][operation_i];
+                    }
+                }
+                final long position = mappingPositions[alignment_i][splice_i];
+                if (position <= end && position + Math.max(length, 1) - 1 >= start) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
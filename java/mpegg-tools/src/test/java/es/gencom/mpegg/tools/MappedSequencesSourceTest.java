@@ -0,0 +1,162 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.mpegg.coder.dataunits.DataUnitRawReference;
+import es.gencom.mpegg.decoder.MappedSequencesSource;
+import es.gencom.mpegg.format.SequenceIdentifier;
+import es.gencom.mpegg.io.Payload;
+import es.gencom.mpegg.io.WritableMSBitChannel;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class MappedSequencesSourceTest {
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private final static String[] NAMES = {"chr1", "chr2"};
+    private final static long[] START = {0, 1000};
+    private final static byte[] NUCLEOTIDES = {'A', 'C', 'G', 'T'};
+
+    private static byte[][] sequences;
+    private static Path rawReference;
+
+    @BeforeClass
+    public static void create() throws Exception {
+        final Random random = new Random(0);
+        sequences = new byte[][] {new byte[20000], new byte[7000]};
+        for (byte[] sequence : sequences) {
+            for (int i = 0; i < sequence.length; i++) {
+                sequence[i] = NUCLEOTIDES[random.nextInt(4)];
+            }
+        }
+
+        rawReference = folder.getRoot().toPath().resolve("sample.rawReference");
+        try (FileChannel channel = FileChannel.open(rawReference,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final WritableMSBitChannel writer = new WritableMSBitChannel(channel);
+            createRawReference().writeDataUnitContent(writer);
+            writer.flush();
+        }
+    }
+
+    /**
+     * The second sequence is split into several buffers, so its payload is copied.
+     */
+    private static DataUnitRawReference createRawReference() {
+        final byte[] fragmented = sequences[1];
+        final Payload[] payloads = {
+            new Payload(Arrays.copyOf(sequences[0], sequences[0].length)),
+            new Payload(new ByteBuffer[] {
+                ByteBuffer.wrap(fragmented, 0, 3000).slice(),
+                ByteBuffer.wrap(fragmented, 3000, fragmented.length - 3000).slice()})
+        };
+        final long[] endPos = {START[0] + sequences[0].length, START[1] + sequences[1].length};
+        return new DataUnitRawReference(null, new int[] {0, 1}, payloads, START.clone(), endPos);
+    }
+
+    @Test
+    public void testRawReference() throws Exception {
+        test(new MappedSequencesSource(createRawReference(), NAMES));
+    }
+
+    @Test
+    public void testMapped() throws Exception {
+        test(MappedSequencesSource.open(rawReference, NAMES));
+    }
+
+    /**
+     * Many threads read the same source without synchronization.
+     */
+    @Test
+    public void testConcurrent() throws Exception {
+        final MappedSequencesSource source = MappedSequencesSource.open(rawReference, NAMES);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final long seed = t;
+                futures.add(executor.submit(() -> {
+                    final Random random = new Random(seed);
+                    final byte[] dst = new byte[300];
+                    for (int i = 0; i < 10000; i++) {
+                        final int sequence_i = random.nextInt(NAMES.length);
+                        final int start = (int)START[sequence_i] - 100 + random.nextInt(sequences[sequence_i].length);
+                        final int length = random.nextInt(dst.length);
+                        source.copySubsequence(new SequenceIdentifier(sequence_i), start, start + length, dst, 0);
+                        Assert.assertArrayEquals(expected(sequence_i, start, start + length),
+                                Arrays.copyOf(dst, length));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void test(final MappedSequencesSource source) throws Exception {
+        for (int sequence_i = 0; sequence_i < NAMES.length; sequence_i++) {
+            final SequenceIdentifier sequenceId = source.getSequenceIdentifier(NAMES[sequence_i]);
+            Assert.assertEquals(sequence_i, sequenceId.getSequenceIdentifier());
+            Assert.assertEquals(NAMES[sequence_i], source.getSequenceName(sequenceId));
+
+            final int start = (int)START[sequence_i];
+            final int end = start + sequences[sequence_i].length;
+
+            // inside, overlapping either end, outside and the padding longer than the shared one
+            final int[][] regions = {
+                {start, end}, {start + 10, start + 110}, {start - 50, start + 50}, {end - 50, end + 50},
+                {start - 200, start - 100}, {end + 100, end + 200}, {start - 5000, end + 5000}, {start, start}};
+
+            for (int[] region : regions) {
+                final byte[] expected = expected(sequence_i, region[0], region[1]);
+
+                final Payload payload = source.getSubsequence(sequenceId, region[0], region[1]);
+                for (ByteBuffer buf : payload.getByteBuffers()) {
+                    Assert.assertTrue(buf.isReadOnly());
+                }
+                Assert.assertArrayEquals(expected, payload.getAllBytes());
+
+                final byte[] dst = new byte[expected.length + 4];
+                Assert.assertEquals(expected.length, source.copySubsequence(sequenceId, region[0], region[1], dst, 2));
+                Assert.assertArrayEquals(expected, Arrays.copyOfRange(dst, 2, 2 + expected.length));
+
+                for (int position = region[0]; position < region[1]; position += 97) {
+                    Assert.assertEquals(expected[position - region[0]], source.getNucleotide(sequenceId, position));
+                }
+            }
+        }
+    }
+
+    private static byte[] expected(final int sequence_i, final int start, final int end) {
+        final byte[] expected = new byte[end - start];
+        for (int position = start; position < end; position++) {
+            final long offset = position - START[sequence_i];
+            expected[position - start] = offset < 0 || offset >= sequences[sequence_i].length ?
+                    (byte)'N' : sequences[sequence_i][(int)offset];
+        }
+        return expected;
+    }
+}
@@ -0,0 +1,110 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.mpegg.decoder.PackedSequencesSource;
+import es.gencom.mpegg.format.SequenceIdentifier;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class PackedReferenceCacheTest {
+
+    private final static byte[] SYMBOLS = "ACGTacgtNnRY".getBytes(StandardCharsets.US_ASCII);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Soft-masked, unknown and ambiguous nucleotides are unpacked as they are
+     * in the FASTA file.
+     */
+    @Test
+    public void testUnpack() throws Exception {
+        final Random random = new Random(0);
+        final byte[][] sequences = {generate(random, 10001), generate(random, 3), generate(random, 65536)};
+        
+        final Path fasta = folder.getRoot().toPath().resolve("masked.fasta");
+        try (BufferedWriter writer = Files.newBufferedWriter(fasta, StandardCharsets.US_ASCII)) {
+            for (int i = 0; i < sequences.length; i++) {
+                writer.write(">seq" + i + "\n");
+                for (int j = 0; j < sequences[i].length; j += 60) {
+                    writer.write(new String(sequences[i], j, Math.min(60, sequences[i].length - j), StandardCharsets.US_ASCII));
+                    writer.write('\n');
+                }
+            }
+        }
+
+        final PackedSequencesSource source = new PackedReferenceCache(
+                folder.getRoot().toPath().resolve("cache")).open(fasta);
+        for (int i = 0; i < sequences.length; i++) {
+            final SequenceIdentifier sequenceId = source.getSequenceIdentifier("seq" + i);
+            Assert.assertEquals(sequences[i].length, source.getSequenceLength(sequenceId));
+
+            final byte[] whole = new byte[sequences[i].length];
+            source.copySubsequence(sequenceId, 0, whole.length, whole, 0);
+            Assert.assertArrayEquals(sequences[i], whole);
+
+            for (int window = 0; window < 1000; window++) {
+                final int start = random.nextInt(sequences[i].length + 20) - 10;
+                final int end = start + random.nextInt(200);
+                final byte[] expected = new byte[end - start];
+                for (int pos = start; pos < end; pos++) {
+                    expected[pos - start] = pos < 0 || pos >= sequences[i].length ? (byte)'N' : sequences[i][pos];
+                }
+                final byte[] actual = new byte[expected.length + 3];
+                source.copySubsequence(sequenceId, start, end, actual, 3);
+                Assert.assertArrayEquals(expected, Arrays.copyOfRange(actual, 3, actual.length));
+            }
+        }
+    }
+
+    /**
+     * The run of the symbol at the end of one sequence is not continued by
+     * the same symbol at the position next to it in the following sequence.
+     */
+    @Test
+    public void testSequenceBoundary() throws Exception {
+        final Path fasta = folder.getRoot().toPath().resolve("boundary.fasta");
+        Files.write(fasta, ">s1\nACNN\n>s2\nACGTN\n>s3\nNNNA\n".getBytes(StandardCharsets.US_ASCII));
+
+        final PackedSequencesSource source = new PackedReferenceCache(
+                folder.getRoot().toPath().resolve("cache")).open(fasta);
+        final String[] expected = {"ACNN", "ACGTN", "NNNA"};
+        for (int i = 0; i < expected.length; i++) {
+            final SequenceIdentifier sequenceId = source.getSequenceIdentifier("s" + (i + 1));
+            final byte[] actual = new byte[expected[i].length()];
+            source.copySubsequence(sequenceId, 0, actual.length, actual, 0);
+            Assert.assertEquals(expected[i], new String(actual, StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * Nucleotides with soft-masked regions, gaps and rare ambiguity codes.
+     */
+    private static byte[] generate(final Random random, final int length) {
+        final byte[] sequence = new byte[length];
+        for (int i = 0; i < length;) {
+            final int symbol = random.nextInt(SYMBOLS.length);
+            if (symbol < 4) {
+                sequence[i++] = SYMBOLS[symbol];
+            } else {
+                // soft-masked nucleotides are random, others are repeated
+                for (int j = random.nextInt(30); j >= 0 && i < length; j--) {
+                    sequence[i++] = symbol < 8 ? SYMBOLS[4 + random.nextInt(4)] : SYMBOLS[symbol];
+                }
+            }
+        }
+        return sequence;
+    }
+}
@@ -0,0 +1,42 @@
+package es.gencom.mpegg.tools;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class ReadAheadIteratorTest {
+
+    @Test
+    public void testClose() throws Exception {
+        final AtomicLong produced = new AtomicLong();
+        final Iterator<Long> endless = new Iterator<Long>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Long next() {
+                return produced.getAndIncrement();
+            }
+        };
+
+        final ReadAheadIterator<Long> iterator = new ReadAheadIterator<>(endless);
+        for (long i = 0; i < 10000; i++) {
+            Assert.assertEquals(i, iterator.next().longValue());
+        }
+        iterator.close();
+        Assert.assertFalse(iterator.hasNext());
+
+        // the producer has stopped
+        final long count = produced.get();
+        Thread.sleep(100);
+        Assert.assertEquals(count, produced.get());
+    }
+}
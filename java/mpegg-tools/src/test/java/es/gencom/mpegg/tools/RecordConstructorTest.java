@@ -0,0 +1,209 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.integration.bam.BAMFileReader;
+import es.gencom.integration.bam.BAMHeader;
+import es.gencom.integration.bam.BAMRecord;
+import es.gencom.mpegg.AlignmentBatch;
+import es.gencom.mpegg.Record;
+import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.MappedAccessUnitEncoder;
+import es.gencom.mpegg.coder.dataunits.DataUnitParameters;
+import es.gencom.mpegg.coder.dataunits.DataUnits;
+import es.gencom.mpegg.coder.tokens.GeneralReadIdentifierEncoder;
+import es.gencom.mpegg.decoder.AbstractSequencesSource;
+import es.gencom.mpegg.format.DATA_CLASS;
+import es.gencom.mpegg.io.MSBitOutputArray;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class RecordConstructorTest {
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private final static short THRESHOLD = 5000;
+
+    private static TestDataset dataset;
+
+    @BeforeClass
+    public static void create() throws Exception {
+        dataset = TestDataset.create(folder.getRoot().toPath(), 2000, 0);
+    }
+
+    /**
+     * Encodes every template both from the record built by the constructor and
+     * from the alignment batch it is appended to and compares the access units.
+     */
+    @Test
+    public void testBatchEncoding() throws Exception {
+        final AbstractSequencesSource sequencesSource = dataset.getSequencesSource();
+        final DataUnitParameters[] parameters =
+                BAMToMPEGGBytestream.createDataUnitParameters(new DataUnits());
+
+        final Map<Integer, MappedAccessUnitEncoder[]> recordEncoders = new HashMap<>();
+        final Map<Integer, MappedAccessUnitEncoder[]> batchEncoders = new HashMap<>();
+        final AlignmentBatch batch = new AlignmentBatch();
+
+        int paired = 0;
+        int split = 0;
+        int softClipped = 0;
+        int unmappedMate = 0;
+
+        try (BAMFileReader reader = new BAMFileReader(dataset.bam)) {
+            final BAMHeader header = reader.getBAMHeader();
+
+            long readId = 0;
+            final LinkedHashMap<String, Template> templates = new LinkedHashMap<>();
+            final Iterator<BAMRecord> iterator = reader.iterator();
+            while (iterator.hasNext()) {
+                final BAMRecord bamRecord = iterator.next();
+                final Template template = templates.get(bamRecord.getQName());
+                if (template != null) {
+                    template.add(bamRecord);
+                } else if (!bamRecord.isUnmappedSegment()) {
+                    templates.put(bamRecord.getQName(), new Template(readId++, bamRecord));
+                }
+
+                // templates are written in the order they were started, as the encoder does
+                final Iterator<Template> pending = templates.values().iterator();
+                while (pending.hasNext()) {
+                    final Template completed = pending.next();
+                    if (!completed.constructor.couldBeCompleted()) {
+                        break;
+                    }
+                    pending.remove();
+
+                    batch.clear();
+                    final boolean appended = completed.constructor.append(batch, sequencesSource, header);
+                    final Record record = completed.constructor.construct(sequencesSource, header);
+                    final DATA_CLASS dataClass = completed.constructor.getDataClass();
+
+                    if (completed.hasUnmappedMate()) {
+                        Assert.assertFalse(appended);
+                        Assert.assertEquals(DATA_CLASS.CLASS_HM, dataClass);
+                        unmappedMate++;
+                        continue;
+                    }
+                    Assert.assertTrue(appended);
+                    Assert.assertEquals(1, batch.size());
+
+                    if (completed.records.size() == 2) {
+                        paired++;
+                    } else if (completed.records.get(0).hasMultipleSegments()) {
+                        split++;
+                    }
+                    if (completed.isSoftClipped()) {
+                        softClipped++;
+                    }
+
+                    final int sequence = record.getSequenceId().getSequenceIdentifier();
+                    Assert.assertEquals(sequence, batch.getSequenceId(0).getSequenceIdentifier());
+                    getEncoder(recordEncoders, sequence, dataClass, sequencesSource, parameters).write(record);
+                    getEncoder(batchEncoders, sequence, dataClass, sequencesSource, parameters).write(batch, 0);
+                }
+            }
+            Assert.assertTrue(templates.isEmpty());
+        }
+
+        Assert.assertTrue(paired > 0);
+        Assert.assertTrue(split > 0);
+        Assert.assertTrue(softClipped > 0);
+        Assert.assertTrue(unmappedMate > 0);
+
+        Assert.assertEquals(recordEncoders.keySet(), batchEncoders.keySet());
+        long size = 0;
+        for (Map.Entry<Integer, MappedAccessUnitEncoder[]> entry : recordEncoders.entrySet()) {
+            final MappedAccessUnitEncoder[] expected = entry.getValue();
+            final MappedAccessUnitEncoder[] actual = batchEncoders.get(entry.getKey());
+            for (int i = 0; i < expected.length; i++) {
+                final byte[] accessUnit = encode(expected[i], parameters);
+                Assert.assertArrayEquals(accessUnit, encode(actual[i], parameters));
+                size += accessUnit.length;
+            }
+        }
+        Assert.assertTrue(size > 0);
+    }
+
+    private static MappedAccessUnitEncoder getEncoder(
+            final Map<Integer, MappedAccessUnitEncoder[]> encoders,
+            final int sequence,
+            final DATA_CLASS dataClass,
+            final AbstractSequencesSource sequencesSource,
+            final DataUnitParameters[] parameters) throws IOException {
+
+        MappedAccessUnitEncoder[] sequenceEncoders = encoders.get(sequence);
+        if (sequenceEncoders == null) {
+            sequenceEncoders = new MappedAccessUnitEncoder[DATA_CLASS.CLASS_I.ID];
+            encoders.put(sequence, sequenceEncoders);
+        }
+        MappedAccessUnitEncoder encoder = sequenceEncoders[dataClass.ID - 1];
+        if (encoder == null) {
+            final long end = TestDataset.LENGTHS[sequence];
+            encoder = new MappedAccessUnitEncoder(
+                    dataClass, (short)sequence, 0, 0, end, THRESHOLD, 0, end,
+                    sequencesSource, parameters[dataClass.ID - 1], new GeneralReadIdentifierEncoder());
+            sequenceEncoders[dataClass.ID - 1] = encoder;
+        }
+        return encoder;
+    }
+
+    private static byte[] encode(
+            final MappedAccessUnitEncoder encoder,
+            final DataUnitParameters[] parameters) throws IOException {
+
+        if (encoder == null) {
+            return new byte[0];
+        }
+        final MSBitOutputArray output = new MSBitOutputArray();
+        SAMtoMPEGG.writeAccessUnitToFile(output, encoder, parameters[encoder.getEncodingParametersId()]);
+        return output.getArray();
+    }
+
+    private static class Template {
+        final RecordConstructor constructor;
+        final List<BAMRecord> records;
+
+        Template(final long readId, final BAMRecord bamRecord) {
+            constructor = new RecordConstructor(readId, bamRecord.getQName(), "", bamRecord, THRESHOLD);
+            records = new ArrayList<>();
+            records.add(bamRecord);
+        }
+
+        void add(final BAMRecord bamRecord) {
+            constructor.addSegment(bamRecord);
+            records.add(bamRecord);
+        }
+
+        boolean hasUnmappedMate() {
+            for (BAMRecord bamRecord : records) {
+                if (bamRecord.isUnmappedSegment() || bamRecord.isNextSegmentUnmapped()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean isSoftClipped() {
+            for (BAMRecord bamRecord : records) {
+                if (bamRecord.getCIGAR().contains("S")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.mpegg.format.ChecksumAlgorithm;
+import es.gencom.mpegg.format.DatasetGroupContainer;
+import es.gencom.mpegg.format.DatasetGroupHeader;
+import es.gencom.mpegg.format.ref.Reference;
+import es.gencom.mpegg.tools.DataUnitsToFile.FASTAToFASTAReference;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class ReferenceChecksumCheckerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final static String[] NAMES = {"chr1", "chr2", "chr3"};
+    private final static int[] LENGTHS = {5000, 12345, 777};
+    private final static char[] NUCLEOTIDES = {'A', 'C', 'G', 'T'};
+
+    @Test
+    public void testValid() throws Exception {
+        testValid("\n");
+    }
+
+    @Test
+    public void testValidCRLF() throws Exception {
+        testValid("\r\n");
+    }
+
+    /**
+     * Verifies the good reference twice, the second time the checksums are
+     * taken from the cache.
+     */
+    private void testValid(final String newLine) throws Exception {
+        final Path fasta = folder.getRoot().toPath().resolve("good.fasta");
+        final Path cache = folder.newFolder("cache").toPath();
+        final String[] sequences = sequences(0);
+        write(fasta, sequences, newLine);
+        final Reference reference = reference(fasta, ChecksumAlgorithm.SHA256);
+
+        try (ReferenceChecksumChecker checker = new ReferenceChecksumChecker(4, cache)) {
+            final List<ReferenceChecksumChecker.SequenceReport> reports = checker.verify(reference);
+            assertReports(reports, new boolean[] {true, true, true}, new boolean[] {false, false, false});
+            for (int i = 0; i < NAMES.length; i++) {
+                Assert.assertEquals(LENGTHS[i], reports.get(i).getLength());
+            }
+            Assert.assertTrue(ReferenceChecksumChecker.isValid(reports));
+
+            assertReports(checker.verify(reference),
+                    new boolean[] {true, true, true}, new boolean[] {true, true, true});
+        }
+    }
+
+    /**
+     * Changes one base of the verified reference keeping its size, so the
+     * changed sequence must be hashed again and fail while others still
+     * come from the cache.
+     */
+    @Test
+    public void testChanged() throws Exception {
+        final Path fasta = folder.getRoot().toPath().resolve("bad.fasta");
+        final Path cache = folder.newFolder("cache").toPath();
+        final String[] sequences = sequences(1);
+        write(fasta, sequences, "\n");
+        final Reference reference = reference(fasta, ChecksumAlgorithm.MD5);
+
+        try (ReferenceChecksumChecker checker = new ReferenceChecksumChecker(2, cache)) {
+            Assert.assertTrue(ReferenceChecksumChecker.isValid(checker.verify(reference)));
+
+            final StringBuilder changed = new StringBuilder(sequences[1]);
+            changed.setCharAt(6000, changed.charAt(6000) == 'A' ? 'C' : 'A');
+            sequences[1] = changed.toString();
+            final FileTime modified = Files.getLastModifiedTime(fasta);
+            write(fasta, sequences, "\n");
+            Files.setLastModifiedTime(fasta, FileTime.fromMillis(modified.toMillis() + 2000));
+
+            final List<ReferenceChecksumChecker.SequenceReport> reports = checker.verify(reference);
+            assertReports(reports, new boolean[] {true, false, true}, new boolean[] {false, false, false});
+            Assert.assertFalse(ReferenceChecksumChecker.isValid(reports));
+
+            // failed checksums are never remembered
+            assertReports(checker.verify(reference),
+                    new boolean[] {true, false, true}, new boolean[] {true, false, true});
+        }
+    }
+
+    /**
+     * The sequences missing in the reference file are reported as invalid.
+     */
+    @Test
+    public void testMissing() throws Exception {
+        final Path fasta = folder.getRoot().toPath().resolve("missing.fasta");
+        final String[] sequences = sequences(2);
+        write(fasta, sequences, "\n");
+        final Reference reference = reference(fasta, ChecksumAlgorithm.SHA256);
+
+        write(fasta, new String[] {sequences[0], sequences[1]}, "\n");
+        try (ReferenceChecksumChecker checker = new ReferenceChecksumChecker(2, null)) {
+            assertReports(checker.verify(reference),
+                    new boolean[] {true, true, false}, new boolean[] {false, false, false});
+        }
+    }
+
+    private static void assertReports(
+            final List<ReferenceChecksumChecker.SequenceReport> reports,
+            final boolean[] valid,
+            final boolean[] cached) {
+
+        Assert.assertEquals(NAMES.length, reports.size());
+        for (int i = 0; i < NAMES.length; i++) {
+            final ReferenceChecksumChecker.SequenceReport report = reports.get(i);
+            Assert.assertEquals(i, report.getIndex());
+            Assert.assertEquals(NAMES[i], report.getName());
+            Assert.assertEquals(NAMES[i], valid[i], report.isValid());
+            Assert.assertEquals(NAMES[i], cached[i], report.isCached());
+        }
+    }
+
+    private static Reference reference(
+            final Path fasta,
+            final ChecksumAlgorithm checksumAlgorithm) throws Exception {
+
+        final DatasetGroupContainer datasetGroupContainer = new DatasetGroupContainer();
+        datasetGroupContainer.setDatasetGroupHeader(new DatasetGroupHeader());
+        return FASTAToFASTAReference.generate(
+                datasetGroupContainer, fasta, "sample", (short)0, (short)0, (short)0,
+                fasta.toString(), checksumAlgorithm);
+    }
+
+    private static String[] sequences(final long seed) {
+        final Random random = new Random(seed);
+        final String[] sequences = new String[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            final StringBuilder sequence = new StringBuilder(LENGTHS[i]);
+            for (int j = 0; j < LENGTHS[i]; j++) {
+                sequence.append(NUCLEOTIDES[random.nextInt(4)]);
+            }
+            sequences[i] = sequence.toString();
+        }
+        return sequences;
+    }
+
+    private static void write(
+            final Path fasta,
+            final String[] sequences,
+            final String newLine) throws Exception {
+
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < sequences.length; i++) {
+            sb.append('>').append(NAMES[i]).append(newLine);
+            for (int j = 0; j < sequences[i].length(); j += 60) {
+                sb.append(sequences[i], j, Math.min(sequences[i].length(), j + 60)).append(newLine);
+            }
+        }
+        Files.write(fasta, sb.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+}
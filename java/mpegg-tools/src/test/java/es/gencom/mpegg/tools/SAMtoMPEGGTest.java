@@ -0,0 +1,100 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.MappedAccessUnitEncoder;
+import es.gencom.mpegg.coder.dataunits.DataUnitParameters;
+import es.gencom.mpegg.coder.dataunits.DataUnits;
+import es.gencom.mpegg.coder.tokens.GeneralReadIdentifierEncoder;
+import es.gencom.mpegg.decoder.AbstractSequencesSource;
+import es.gencom.mpegg.format.DATA_CLASS;
+import es.gencom.mpegg.io.MSBitOutputArray;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class SAMtoMPEGGTest {
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private final static short THRESHOLD = 5000;
+
+    private static DataUnitParameters[] parameters;
+    private static List<MappedAccessUnitEncoder> encoders;
+
+    @BeforeClass
+    public static void create() throws Exception {
+        final TestDataset dataset = TestDataset.create(folder.getRoot().toPath(), 2000, 0);
+        final AbstractSequencesSource sequencesSource = dataset.getSequencesSource();
+        parameters = BAMToMPEGGBytestream.createDataUnitParameters(new DataUnits());
+
+        final MappedAccessUnitEncoder[][] sequenceEncoders =
+                new MappedAccessUnitEncoder[TestDataset.NAMES.length][DATA_CLASS.CLASS_I.ID];
+
+        dataset.construct(THRESHOLD, (record, dataClass) -> {
+            final int sequence = record.getSequenceId().getSequenceIdentifier();
+            MappedAccessUnitEncoder encoder = sequenceEncoders[sequence][dataClass.ID - 1];
+            if (encoder == null) {
+                final long end = TestDataset.LENGTHS[sequence];
+                encoder = new MappedAccessUnitEncoder(
+                        dataClass, (short)sequence, 0, 0, end, THRESHOLD, 0, end,
+                        sequencesSource, parameters[dataClass.ID - 1], new GeneralReadIdentifierEncoder());
+                sequenceEncoders[sequence][dataClass.ID - 1] = encoder;
+            }
+            encoder.write(record);
+        });
+
+        encoders = new ArrayList<>();
+        for (MappedAccessUnitEncoder[] classEncoders : sequenceEncoders) {
+            for (MappedAccessUnitEncoder encoder : classEncoders) {
+                if (encoder != null) {
+                    encoders.add(encoder);
+                }
+            }
+        }
+    }
+
+    /**
+     * Descriptor subsequences encoded in parallel are written in the same
+     * order and with the same content as the ones encoded sequentially.
+     */
+    @Test
+    public void testParallelDescriptors() throws Exception {
+        Assert.assertTrue(encoders.size() > 1);
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        final ExecutorService fixed = Executors.newFixedThreadPool(3);
+        try {
+            for (MappedAccessUnitEncoder encoder : encoders) {
+                final byte[] expected = encode(encoder, null);
+                Assert.assertTrue(expected.length > 0);
+                Assert.assertArrayEquals(expected, encode(encoder, pool));
+                Assert.assertArrayEquals(expected, encode(encoder, fixed));
+            }
+        } finally {
+            pool.shutdown();
+            fixed.shutdown();
+        }
+    }
+
+    private static byte[] encode(
+            final MappedAccessUnitEncoder encoder,
+            final ExecutorService executor) throws Exception {
+
+        final MSBitOutputArray output = new MSBitOutputArray();
+        SAMtoMPEGG.writeAccessUnitToFile(output, encoder,
+                parameters[encoder.getEncodingParametersId()], executor);
+        return output.getArray();
+    }
+}
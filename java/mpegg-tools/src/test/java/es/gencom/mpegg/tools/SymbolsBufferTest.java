@@ -0,0 +1,109 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.mpegg.coder.MPEGCodification.AccessUnitEncoders.SymbolsBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+public class SymbolsBufferTest {
+
+    /**
+     * The largest and the smallest symbols of every width, each followed
+     * by the width of the buffer once it is written.
+     */
+    private final static long[][] BOUNDARIES = {
+        {0, 1}, {0xFFL, 1},
+        {0x100L, 2}, {0xFFFFL, 2},
+        {0x10000L, 4}, {0xFFFFFFFFL, 4},
+        {0x100000000L, 8}, {Long.MAX_VALUE, 8}, {-1, 8}, {Long.MIN_VALUE, 8}};
+
+    /**
+     * Positions at the chunk boundaries and in the chunks far away.
+     */
+    private final static int[] INDEXES = {0, 1, 4095, 4096, 4097, 8191, 8192, 40000, 1 << 20};
+
+    /**
+     * Every symbol is stored and read back in the buffer which has just been
+     * widened to it, while all the symbols written before are preserved.
+     */
+    @Test
+    public void testWidening() {
+        final SymbolsBuffer.Allocation allocation = new SymbolsBuffer.Allocation();
+        final SymbolsBuffer buffer = new SymbolsBuffer(allocation);
+        Assert.assertEquals(1, buffer.getWidth());
+        Assert.assertEquals(0, buffer.getSizeInMemory());
+
+        final Map<Integer, Long> expected = new HashMap<>();
+        int offset = 0;
+        for (long[] boundary : BOUNDARIES) {
+            for (int index : INDEXES) {
+                buffer.set(index + offset, boundary[0]);
+                expected.put(index + offset, boundary[0]);
+            }
+            offset++;
+
+            Assert.assertEquals(boundary[1], buffer.getWidth());
+            Assert.assertEquals(buffer.getSizeInMemory(), allocation.getSize());
+            assertEquals(expected, buffer);
+        }
+
+        // never written symbols are zeros
+        Assert.assertEquals(0, buffer.get(20000));
+        Assert.assertEquals(0, buffer.get(Integer.MAX_VALUE));
+    }
+
+    /**
+     * Symbols of the width never make the buffer wider.
+     */
+    @Test
+    public void testWidth() {
+        for (long[] boundary : BOUNDARIES) {
+            final SymbolsBuffer buffer = new SymbolsBuffer();
+            buffer.set(5000, boundary[0]);
+            buffer.set(0, 0);
+            Assert.assertEquals(boundary[1], buffer.getWidth());
+            Assert.assertEquals(boundary[0], buffer.get(5000));
+            Assert.assertEquals(0, buffer.get(0));
+        }
+    }
+
+    /**
+     * The shared allocation is the sum of the memory taken by the buffers
+     * which grow and widen independently.
+     */
+    @Test
+    public void testAllocation() {
+        final Random random = new Random(0);
+        final SymbolsBuffer.Allocation allocation = new SymbolsBuffer.Allocation();
+        final SymbolsBuffer[] buffers = new SymbolsBuffer[4];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new SymbolsBuffer(allocation);
+        }
+
+        for (int i = 0; i < 20000; i++) {
+            final SymbolsBuffer buffer = buffers[random.nextInt(buffers.length)];
+            final long[] boundary = BOUNDARIES[random.nextInt(i < 19000 ? 4 : BOUNDARIES.length)];
+            buffer.set(random.nextInt(100000), boundary[0]);
+
+            long size = 0;
+            for (SymbolsBuffer b : buffers) {
+                size += b.getSizeInMemory();
+            }
+            Assert.assertEquals(size, allocation.getSize());
+        }
+    }
+
+    private static void assertEquals(final Map<Integer, Long> expected, final SymbolsBuffer buffer) {
+        for (Map.Entry<Integer, Long> entry : expected.entrySet()) {
+            Assert.assertEquals("index " + entry.getKey(),
+                    entry.getValue().longValue(), buffer.get(entry.getKey()));
+        }
+    }
+}
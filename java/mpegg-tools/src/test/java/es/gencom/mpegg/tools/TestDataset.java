@@ -0,0 +1,501 @@
+package es.gencom.mpegg.tools;
+
+import es.gencom.integration.bam.BAMFileOutputStream;
+import es.gencom.integration.bam.BAMFileReader;
+import es.gencom.integration.bam.BAMHeader;
+import es.gencom.integration.bam.BAMRecord;
+import es.gencom.mpegg.Record;
+import es.gencom.mpegg.coder.dataunits.DataUnits;
+import es.gencom.mpegg.decoder.AbstractSequencesSource;
+import es.gencom.mpegg.decoder.DataUnitAccessUnitDecoder;
+import es.gencom.mpegg.decoder.PackedSequencesSource;
+import es.gencom.mpegg.format.Alphabet;
+import es.gencom.mpegg.format.ChecksumAlgorithm;
+import es.gencom.mpegg.format.DATA_CLASS;
+import es.gencom.mpegg.format.DatasetGroupContainer;
+import es.gencom.mpegg.format.DatasetGroupHeader;
+import es.gencom.mpegg.format.MPEGFile;
+import es.gencom.mpegg.format.MPEGFileHeader;
+import es.gencom.mpegg.format.ref.Reference;
+import es.gencom.mpegg.io.MappedChunkCache;
+import es.gencom.mpegg.io.ReadableMSBitFileChannel;
+import es.gencom.mpegg.tools.DataUnitsToFile.AUCNoMITDatasetWriter;
+import es.gencom.mpegg.tools.DataUnitsToFile.DSCDatasetWriter;
+import es.gencom.mpegg.tools.DataUnitsToFile.FASTAToFASTAReference;
+import org.junit.Assert;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * <p>
+ * Synthetic coordinate sorted paired-end BAM file and its reference.
+ * </p>
+ *
+ * Templates mix close pairs (one record), distant and inter-chromosome
+ * pairs (split records), pairs with unmapped mates and single reads.
+ * Alignments have soft clips, insertions, deletions and substitutions.
+ *
+ * @author Dmitry Repchevsky &amp; Daniel Naro
+ */
+
+class TestDataset {
+
+    final static String[] NAMES = {"chr1", "chr2"};
+    final static int[] LENGTHS = {400000, 250000};
+    final static int READ_LENGTH = 100;
+
+    private final static byte[] NUCLEOTIDES = {'A', 'C', 'G', 'T'};
+
+    final Path directory;
+    final Path fasta;
+    final Path bam;
+    final byte[][] sequences;
+
+    private TestDataset(final Path directory) {
+        this.directory = directory;
+        this.fasta = directory.resolve("sample.fasta");
+        this.bam = directory.resolve("sample.bam");
+        this.sequences = new byte[NAMES.length][];
+    }
+
+    /**
+     * Creates the reference and the BAM file in the directory.
+     * Packed references are cached in the same directory.
+     *
+     * @param directory the directory to create the files in
+     * @param templates the number of templates to generate
+     * @param seed the random seed
+     *
+     * @return the dataset
+     *
+     * @throws IOException
+     */
+    static TestDataset create(
+            final Path directory,
+            final int templates,
+            final long seed) throws IOException {
+
+        System.setProperty(PackedReferenceCache.CACHE_DIRECTORY_PROPERTY,
+                directory.resolve("cache").toString());
+
+        final TestDataset dataset = new TestDataset(directory);
+        final Random random = new Random(seed);
+        dataset.writeReference(random);
+        dataset.writeBAM(random, templates);
+        return dataset;
+    }
+
+    /**
+     * @return the packed reference the encoder uses
+     */
+    PackedSequencesSource getSequencesSource() throws IOException {
+        return PackedReferenceCache.getDefault().open(fasta);
+    }
+
+    /**
+     * Constructs the records of the BAM templates in the file order the way
+     * the encoder does. The records of the class HM are left out.
+     *
+     * @param threshold the maximal distance of the template segments in one record
+     * @param handler the handler of the constructed records
+     */
+    void construct(final short threshold, final RecordHandler handler) throws Exception {
+        final AbstractSequencesSource sequencesSource = getSequencesSource();
+        try (BAMFileReader reader = new BAMFileReader(bam)) {
+            final BAMHeader header = reader.getBAMHeader();
+
+            long readId = 0;
+            final LinkedHashMap<String, RecordConstructor> templates = new LinkedHashMap<>();
+            final Iterator<BAMRecord> iterator = reader.iterator();
+            while (iterator.hasNext()) {
+                final BAMRecord bamRecord = iterator.next();
+                final RecordConstructor constructor = templates.get(bamRecord.getQName());
+                if (constructor != null) {
+                    constructor.addSegment(bamRecord);
+                } else if (!bamRecord.isUnmappedSegment()) {
+                    templates.put(bamRecord.getQName(),
+                            new RecordConstructor(readId++, bamRecord.getQName(), "", bamRecord, threshold));
+                }
+
+                final Iterator<RecordConstructor> pending = templates.values().iterator();
+                while (pending.hasNext()) {
+                    final RecordConstructor completed = pending.next();
+                    if (!completed.couldBeCompleted()) {
+                        break;
+                    }
+                    pending.remove();
+
+                    final Record record = completed.construct(sequencesSource, header);
+                    final DATA_CLASS dataClass = completed.getDataClass();
+                    if (dataClass != DATA_CLASS.CLASS_HM) {
+                        handler.handle(record, dataClass);
+                    }
+                }
+            }
+        }
+    }
+
+    interface RecordHandler {
+        void handle(Record record, DATA_CLASS dataClass) throws Exception;
+    }
+
+    /**
+     * Encodes the BAM file into the bytestream.
+     *
+     * @param threads number of encoding threads
+     *
+     * @return the path to the bytestream file
+     */
+    Path encode(final int threads) throws Exception {
+        final Path bytestream = directory.resolve("sample" + threads + ".mgb");
+        BAMToMPEGGBytestream.encode(bam.toString(), fasta.toString(), bytestream.toString(), false, threads);
+        return bytestream;
+    }
+
+    /**
+     * Reads the data units of the bytestream. Decoding consumes the payloads
+     * of the access units, so every decoding needs its own data units.
+     *
+     * @param bytestream the path to the bytestream file
+     *
+     * @return the data units of the bytestream
+     */
+    static DataUnits read(final Path bytestream) throws IOException {
+        try (FileChannel channel = FileChannel.open(bytestream)) {
+            return DataUnits.read(new ReadableMSBitFileChannel(channel));
+        }
+    }
+
+    /**
+     * Encodes the BAM file into the MPEG-G file the way the command line tool does.
+     *
+     * @return the path to the MPEG-G file
+     */
+    Path encodeFile() throws Exception {
+        final Path mpegg = directory.resolve("sample.mpegg");
+
+        final DataUnits dataUnits = new DataUnits();
+        BAMToMPEGGBytestream.createDataUnitParameters(dataUnits);
+
+        final DatasetGroupContainer datasetGroupContainer = new DatasetGroupContainer();
+        final Reference reference = generateReference(datasetGroupContainer);
+
+        try (AUCNoMITDatasetWriter writer = new AUCNoMITDatasetWriter(
+                mpegg, fileHeader(), datasetGroupContainer, 0, dataUnits,
+                reference.getReferenceId(), 100000, Alphabet.DNA_IUPAC)) {
+            BAMToMPEGGBytestream.encode(bam.toString(), fasta.toString(), dataUnits, writer,
+                    false, 1, BAMToMPEGGBytestream.DEFAULT_MEMORY_BUDGET);
+        }
+        return mpegg;
+    }
+
+    /**
+     * Creates the writer of the MPEG-G file with the descriptor stream
+     * contiguous dataset of the access units on the dataset reference.
+     *
+     * @param mpegg the path to the MPEG-G file
+     * @param dataUnits data units with the parameters of the access units
+     * @param executor the executor to write the blocks on or null
+     *
+     * @return the writer
+     */
+    DSCDatasetWriter createDSCWriter(
+            final Path mpegg,
+            final DataUnits dataUnits,
+            final ExecutorService executor) throws Exception {
+
+        final DatasetGroupContainer datasetGroupContainer = new DatasetGroupContainer();
+        final Reference reference = generateReference(datasetGroupContainer);
+        return new DSCDatasetWriter(mpegg, fileHeader(), datasetGroupContainer, 0, dataUnits,
+                reference.getReferenceId(), 100000, Alphabet.DNA_IUPAC, executor);
+    }
+
+    /**
+     * Reads the dataset group of the MPEG-G file.
+     *
+     * @param mpegg the path to the MPEG-G file
+     *
+     * @return the first dataset group of the file
+     */
+    static DatasetGroupContainer readFile(final Path mpegg) throws Exception {
+        final MPEGFile mpegFile = new MPEGFile();
+        mpegFile.read(ReadableMSBitFileChannel.open(mpegg, new MappedChunkCache(1L << 26, (byte)20)));
+        return mpegFile.getDatasetGroupContainer(0);
+    }
+
+    private static MPEGFileHeader fileHeader() {
+        final MPEGFileHeader fileHeader = new MPEGFileHeader();
+        fileHeader.addCompatibleBrand(new String(new byte[4]));
+        return fileHeader;
+    }
+
+    private Reference generateReference(final DatasetGroupContainer datasetGroupContainer) throws Exception {
+        datasetGroupContainer.setDatasetGroupHeader(new DatasetGroupHeader());
+        return FASTAToFASTAReference.generate(
+                datasetGroupContainer, fasta, "sample", (short)0, (short)0, (short)0,
+                fasta.toString(), ChecksumAlgorithm.SHA256);
+    }
+
+    private void writeReference(final Random random) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(fasta, StandardCharsets.US_ASCII)) {
+            for (int i = 0; i < NAMES.length; i++) {
+                final byte[] sequence = new byte[LENGTHS[i]];
+                for (int j = 0; j < sequence.length; j++) {
+                    sequence[j] = NUCLEOTIDES[random.nextInt(4)];
+                }
+                // some gaps in the assembly
+                for (int gap = 0; gap < 5; gap++) {
+                    final int start = random.nextInt(sequence.length - 1000);
+                    Arrays.fill(sequence, start, start + 50 + random.nextInt(500), (byte)'N');
+                }
+                sequences[i] = sequence;
+
+                writer.write(">" + NAMES[i] + "\n");
+                for (int j = 0; j < sequence.length; j += 60) {
+                    writer.write(new String(sequence, j, Math.min(60, sequence.length - j), StandardCharsets.US_ASCII));
+                    writer.write('\n');
+                }
+            }
+        }
+    }
+
+    private void writeBAM(final Random random, final int templates) throws IOException {
+        final List<BAMRecord> records = new ArrayList<>();
+        for (int template_i = 0; template_i < templates; template_i++) {
+            final String name = "read." + template_i;
+            final int refID = random.nextInt(NAMES.length);
+            final int position = random.nextInt(LENGTHS[refID] - 60000);
+            final int type = random.nextInt(20);
+            if (type < 3) {
+                // single read
+                records.add(mapped(random, name, refID, position, random.nextBoolean()));
+            } else if (type < 5) {
+                // unmapped mate placed next to the mapped one
+                final BAMRecord first = mapped(random, name, refID, position, random.nextBoolean());
+                final BAMRecord second = unmapped(random, name, refID, position);
+                pair(first, second, true);
+                records.add(first);
+                records.add(second);
+            } else {
+                final int mateRefID;
+                final int matePosition;
+                if (type < 7) {
+                    mateRefID = refID;
+                    matePosition = position + 10000 + random.nextInt(40000);
+                } else if (type < 8) {
+                    mateRefID = 1 - refID;
+                    matePosition = random.nextInt(LENGTHS[mateRefID] - 1000);
+                } else {
+                    mateRefID = refID;
+                    matePosition = position + random.nextInt(400);
+                }
+                final boolean reverse = random.nextBoolean();
+                final BAMRecord first = mapped(random, name, refID, position, reverse);
+                final BAMRecord second = mapped(random, name, mateRefID, matePosition, !reverse);
+                if (random.nextBoolean()) {
+                    pair(first, second, false);
+                } else {
+                    pair(second, first, false);
+                }
+                records.add(first);
+                records.add(second);
+            }
+        }
+
+        // stable, so unmapped mates follow the mapped ones
+        records.sort(Comparator.comparingInt(BAMRecord::getRefID)
+                .thenComparingInt(BAMRecord::getPositionStart));
+
+        final BAMHeader.Reference[] references = new BAMHeader.Reference[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            references[i] = new BAMHeader.Reference(NAMES[i], LENGTHS[i]);
+        }
+        try (BAMFileOutputStream out = new BAMFileOutputStream(bam, new BAMHeader("", references))) {
+            for (BAMRecord record : records) {
+                out.write(record);
+            }
+        }
+    }
+
+    private BAMRecord mapped(
+            final Random random,
+            final String name,
+            final int refID,
+            final int position,
+            final boolean reverse) {
+
+        final byte[] reference = sequences[refID];
+        final StringBuilder read = new StringBuilder();
+        final String cigar;
+        int ref = position;
+        switch (random.nextInt(8)) {
+            case 0: read.append(random(random, 5));
+                    ref = copy(reference, ref, READ_LENGTH - 5, read);
+                    cigar = "5S95M";
+                    break;
+            case 1: ref = copy(reference, ref, READ_LENGTH - 7, read);
+                    read.append(random(random, 7));
+                    cigar = "93M7S";
+                    break;
+            case 2: ref = copy(reference, ref, 40, read);
+                    read.append(random(random, 2));
+                    ref = copy(reference, ref, 58, read);
+                    cigar = "40M2I58M";
+                    break;
+            case 3: ref = copy(reference, ref, 50, read);
+                    ref = copy(reference, ref + 3, 50, read);
+                    cigar = "50M3D50M";
+                    break;
+            default: ref = copy(reference, ref, READ_LENGTH, read);
+                     cigar = READ_LENGTH + "M";
+        }
+
+        // substitutions and uncalled bases
+        for (int i = 0; i < read.length(); i++) {
+            if (random.nextInt(100) == 0) {
+                read.setCharAt(i, random.nextInt(10) == 0 ? 'N' : (char)NUCLEOTIDES[random.nextInt(4)]);
+            }
+        }
+
+        final BAMRecord record = new BAMRecord();
+        record.setQName(name);
+        record.setRefID(refID);
+        record.setRName(NAMES[refID]);
+        record.setPositionStart(position + 1);
+        record.setMappingQuality((byte)60);
+        record.setCIGAR(cigar);
+        record.setSequence(read.toString());
+        record.setQualityBytes(qualities(random));
+        record.setReverseComplemented(reverse);
+        record.setNext_refID(-1);
+        record.setRNameNext("*");
+        return record;
+    }
+
+    private BAMRecord unmapped(
+            final Random random,
+            final String name,
+            final int refID,
+            final int position) {
+
+        final BAMRecord record = new BAMRecord();
+        record.setQName(name);
+        record.setRefID(refID);
+        record.setRName(NAMES[refID]);
+        record.setPositionStart(position + 1);
+        record.setSequence(random(random, READ_LENGTH));
+        record.setQualityBytes(qualities(random));
+        record.setUnmappedSegment(true);
+        return record;
+    }
+
+    private static void pair(final BAMRecord first, final BAMRecord second, final boolean secondUnmapped) {
+        for (BAMRecord record : new BAMRecord[] {first, second}) {
+            final BAMRecord mate = record == first ? second : first;
+            record.setHasMultipleSegments(true);
+            record.setFirstSegment(record == first);
+            record.setLastSegment(record == second);
+            record.setNext_refID(mate.getRefID());
+            record.setRNameNext(mate.getRName());
+            record.setNextPositionStart(mate.getPositionStart());
+            record.setNextSegmentReverseComplemented(mate.isReverseComplemented());
+        }
+        first.setNextSegmentUnmapped(secondUnmapped);
+        second.setSegmentProperlyAligned(!secondUnmapped);
+        first.setSegmentProperlyAligned(!secondUnmapped);
+    }
+
+    private static int copy(final byte[] reference, final int from, final int length, final StringBuilder read) {
+        for (int i = from; i < from + length; i++) {
+            read.append((char)reference[i]);
+        }
+        return from + length;
+    }
+
+    private static String random(final Random random, final int length) {
+        final StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append((char)NUCLEOTIDES[random.nextInt(4)]);
+        }
+        return sb.toString();
+    }
+
+    private static byte[] qualities(final Random random) {
+        final byte[] qualities = new byte[READ_LENGTH];
+        for (int i = 0; i < qualities.length; i++) {
+            qualities[i] = (byte)(2 + random.nextInt(39));
+        }
+        return qualities;
+    }
+
+    /**
+     * Asserts that the records hold the same data.
+     */
+    static void assertEquals(final Record expected, final Record actual) {
+        final String name = expected.getReadName();
+        Assert.assertEquals(name, expected.getReadId(), actual.getReadId());
+        Assert.assertEquals(name, expected.getReadName(), actual.getReadName());
+        Assert.assertEquals(name, expected.getReadGroup(), actual.getReadGroup());
+        Assert.assertEquals(name, expected.isRead1First(), actual.isRead1First());
+        Assert.assertEquals(name, expected.isUnpaired(), actual.isUnpaired());
+        Assert.assertEquals(name, expected.getSequenceId(), actual.getSequenceId());
+        Assert.assertArrayEquals(name, expected.getSequenceBytes(), actual.getSequenceBytes());
+        Assert.assertArrayEquals(name, expected.getQualityValues(), actual.getQualityValues());
+        Assert.assertArrayEquals(name, expected.getMappingPositionsSegment0(), actual.getMappingPositionsSegment0());
+        Assert.assertArrayEquals(name, expected.getMappingPositionsSegment1(), actual.getMappingPositionsSegment1());
+        Assert.assertArrayEquals(name, expected.getSequenceIdSegment1(), actual.getSequenceIdSegment1());
+        Assert.assertArrayEquals(name, expected.getSplitMate(), actual.getSplitMate());
+        Assert.assertArrayEquals(name, expected.getSpliceLengths(), actual.getSpliceLengths());
+        Assert.assertArrayEquals(name, expected.getOperationType(), actual.getOperationType());
+        Assert.assertArrayEquals(name, expected.getOperationLength(), actual.getOperationLength());
+        Assert.assertArrayEquals(name, expected.getOriginalBase(), actual.getOriginalBase());
+        Assert.assertArrayEquals(name, expected.getReverseCompliment(), actual.getReverseCompliment());
+        Assert.assertArrayEquals(name, expected.getMappingScore(), actual.getMappingScore());
+        Assert.assertArrayEquals(name, expected.getAlignPtr(), actual.getAlignPtr());
+    }
+
+    /**
+     * Decodes all the access units of the data units.
+     */
+    static List<Record> decode(
+            final DataUnits dataUnits,
+            final AbstractSequencesSource sequencesSource) throws Exception {
+
+        final List<Record> records = new ArrayList<>();
+        for (int i = 0; i < dataUnits.getNumberDataUnits(); i++) {
+            records.addAll(DataUnitAccessUnitDecoder.decode(dataUnits.getDataUnitAccessUnit(i), sequencesSource));
+        }
+        return records;
+    }
+
+    /**
+     * Sorts the records, so the records of the access units written
+     * in a different order may be compared.
+     */
+    static List<Record> sort(final List<Record> records) {
+        final List<Record> sorted = new ArrayList<>(records);
+        sorted.sort(Comparator.comparing(Record::getReadName)
+                .thenComparingLong(record -> record.getMappingPositionsSegment0()[0][0]));
+        return sorted;
+    }
+
+    static void assertEquals(final List<Record> expected, final List<Record> actual) {
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), actual.get(i));
+        }
+    }
+}